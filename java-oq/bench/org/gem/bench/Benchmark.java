@@ -0,0 +1,39 @@
+package org.gem.bench;
+
+/**
+ * A single benchmark case run by {@link BenchmarkRunner}.
+ *
+ * Inputs are built once in {@link #setUp()} (outside of the timed region);
+ * {@link #run()} is the operation being measured. It returns a value derived
+ * from its results, which the runner accumulates so that the JIT can't
+ * discard the work as dead code.
+ */
+public abstract class Benchmark
+{
+    private final String name;
+
+    protected Benchmark(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Build the inputs for {@link #run()}. This is called once, before the
+     * warm-up iterations.
+     */
+    public void setUp()
+    {
+    }
+
+    /**
+     * Perform the operation being measured once.
+     *
+     * @return a value derived from the results of the operation
+     */
+    public abstract double run();
+}
@@ -0,0 +1,226 @@
+package org.gem.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal benchmark runner: each {@link Benchmark} is run for a number of
+ * warm-up iterations (to let the JIT compile the hot paths) followed by a
+ * number of measured iterations. Each iteration calls {@link Benchmark#run()}
+ * repeatedly until at least iterationMillis have elapsed, and the time per
+ * operation is reported as the mean (and standard deviation, and minimum) over
+ * the measured iterations.
+ *
+ * Results can be written to a file and later used as the baseline of another
+ * run, in which case the ratio of the new to the baseline mean is reported as
+ * well.
+ */
+public class BenchmarkRunner
+{
+    private int warmupIterations = 3;
+    private int measureIterations = 5;
+    private long iterationMillis = 1000;
+
+    /**
+     * Accumulated results of {@link Benchmark#run()}, printed at the end so
+     * that the work can't be optimized away.
+     */
+    private double checksum = 0;
+
+    public void setWarmupIterations(int warmupIterations)
+    {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public void setMeasureIterations(int measureIterations)
+    {
+        if (measureIterations < 1)
+        {
+            throw new IllegalArgumentException(
+                    "At least one measured iteration is required");
+        }
+        this.measureIterations = measureIterations;
+    }
+
+    public void setIterationMillis(long iterationMillis)
+    {
+        this.iterationMillis = iterationMillis;
+    }
+
+    public double getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * Set up and run a benchmark.
+     *
+     * @param benchmark
+     * @return time per operation
+     */
+    public Result run(Benchmark benchmark)
+    {
+        benchmark.setUp();
+
+        for (int i = 0; i < warmupIterations; i++)
+        {
+            runIteration(benchmark);
+        }
+
+        double[] nsPerOp = new double[measureIterations];
+        long totalOps = 0;
+        for (int i = 0; i < measureIterations; i++)
+        {
+            long start = System.nanoTime();
+            long ops = runIteration(benchmark);
+            nsPerOp[i] = (double) (System.nanoTime() - start) / ops;
+            totalOps += ops;
+        }
+
+        double mean = 0, min = Double.MAX_VALUE;
+        for (double t : nsPerOp)
+        {
+            mean += t;
+            min = Math.min(min, t);
+        }
+        mean /= nsPerOp.length;
+        double var = 0;
+        for (double t : nsPerOp)
+        {
+            var += (t - mean) * (t - mean);
+        }
+        double stdDev =
+                nsPerOp.length > 1 ? Math.sqrt(var / (nsPerOp.length - 1)) : 0;
+
+        return new Result(benchmark.getName(), mean, stdDev, min, totalOps);
+    }
+
+    private long runIteration(Benchmark benchmark)
+    {
+        long ops = 0;
+        long end = System.nanoTime() + iterationMillis * 1000000L;
+        do
+        {
+            checksum += benchmark.run();
+            ops++;
+        }
+        while (System.nanoTime() < end);
+        return ops;
+    }
+
+    /**
+     * Run the benchmarks and print one line of results per benchmark.
+     *
+     * @param benchmarks
+     * @param baseline
+     *            mean ns per operation, keyed by benchmark name, from a
+     *            previous run (can be empty)
+     * @return the results, in the order of the benchmarks
+     */
+    public List<Result> runAll(List<Benchmark> benchmarks,
+            Map<String, Double> baseline)
+    {
+        List<Result> results = new ArrayList<Result>();
+        for (Benchmark benchmark : benchmarks)
+        {
+            Result result = run(benchmark);
+            results.add(result);
+            Double base = baseline.get(result.name);
+            System.out.println(result
+                    + (base == null ? "" : "\t"
+                            + new DecimalFormat("0.000").format(result.mean
+                                    / base) + "x baseline"));
+        }
+        System.out.println("(checksum " + checksum + ")");
+        return results;
+    }
+
+    /**
+     * Write results as tab separated lines of name and mean ns per operation
+     * (the format read by {@link #readBaseline(String)}).
+     */
+    public static void writeResults(List<Result> results, String fileName)
+            throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(fileName));
+        try
+        {
+            for (Result result : results)
+            {
+                out.println(result.name + "\t" + result.mean);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Read the results of a previous run written by
+     * {@link #writeResults(List, String)}.
+     *
+     * @return mean ns per operation, keyed by benchmark name
+     */
+    public static Map<String, Double> readBaseline(String fileName)
+            throws IOException
+    {
+        Map<String, Double> baseline = new HashMap<String, Double>();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                String[] fields = line.split("\t");
+                if (fields.length == 2)
+                {
+                    baseline.put(fields[0], Double.valueOf(fields[1]));
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return baseline;
+    }
+
+    /**
+     * Time per operation of a benchmark, in ns.
+     */
+    public static class Result
+    {
+        public final String name;
+        public final double mean;
+        public final double stdDev;
+        public final double min;
+        public final long ops;
+
+        public Result(String name, double mean, double stdDev, double min,
+                long ops)
+        {
+            this.name = name;
+            this.mean = mean;
+            this.stdDev = stdDev;
+            this.min = min;
+            this.ops = ops;
+        }
+
+        @Override
+        public String toString()
+        {
+            DecimalFormat df = new DecimalFormat("0.0");
+            return name + "\t" + df.format(mean) + " +/- " + df.format(stdDev)
+                    + " ns/op\t(min " + df.format(min) + ", " + ops + " ops)";
+        }
+    }
+}
@@ -0,0 +1,625 @@
+package org.gem.bench;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.gem.calc.DisaggregationCalculator;
+import org.gem.calc.GroundMotionFieldCalculator;
+import org.opensha.commons.data.Site;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.data.function.DiscretizedFuncAPI;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationUtils;
+import org.opensha.sha.calc.HazardCurveCalculator;
+import org.opensha.sha.earthquake.EqkRupture;
+import org.opensha.sha.earthquake.ProbEqkSource;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
+import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.param.PropagationEffectParams.DistanceJBParameter;
+import org.opensha.sha.imr.param.PropagationEffectParams.DistanceRupParameter;
+import org.opensha.sha.imr.param.PropagationEffectParams.PropagationEffectParameter;
+import org.opensha.sha.util.TectonicRegionType;
+
+/**
+ * Benchmarks of the hot paths of the hazard calculators, on the synthetic
+ * inputs of {@link SyntheticInputs}. Usage:
+ *
+ * <pre>
+ * java org.gem.bench.HazardBenchmarks [-warmup n] [-iterations n] [-millis n]
+ *         [-baseline file] [-output file] [name ...]
+ * </pre>
+ *
+ * Only the benchmarks whose name contains one of the given names are run (all
+ * of them if no name is given). To compare a change against a baseline, run
+ * the unchanged code with "-output base.txt", then the changed code with
+ * "-baseline base.txt".
+ *
+ * The benchmarks are not part of java-oq.jar. The package build compiles them
+ * into java-oq-bench.jar (see debian/rules), which is not installed; to run
+ * them, put both jars and the dependencies of java-oq.jar on the class path:
+ *
+ * <pre>
+ * java -cp java-oq.jar:java-oq-bench.jar:... org.gem.bench.HazardBenchmarks
+ * </pre>
+ */
+public class HazardBenchmarks
+{
+    private static final int NUM_AREA_SOURCES = 4;
+    private static final int NUM_FAULT_SOURCES = 4;
+    private static final int NUM_IMLS = 19;
+    private static final int NUM_SITES = 50;
+    private static final int NUM_RUPTURES = 200;
+    private static final double INTEGRATION_DISTANCE = 200.0;
+
+    public static List<Benchmark> getBenchmarks()
+    {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        // separate GMPE instances for each benchmark, as some benchmarks
+        // change the GMPE parameters
+        for (ScalarIntensityMeasureRelationshipAPI gmpe : SyntheticInputs
+                .ngaGmpes())
+        {
+            benchmarks.add(hazardCurve(gmpe));
+        }
+        for (ScalarIntensityMeasureRelationshipAPI gmpe : SyntheticInputs
+                .ngaGmpes())
+        {
+            benchmarks.add(hazardCurves(gmpe));
+        }
+        for (ScalarIntensityMeasureRelationshipAPI gmpe : SyntheticInputs
+                .ngaGmpes())
+        {
+            benchmarks.add(exceedProbabilities(gmpe));
+        }
+        benchmarks.add(distance(new DistanceRupParameter()));
+        benchmarks.add(distance(new DistanceJBParameter()));
+        benchmarks.add(horzDistance("horzDistance"));
+        benchmarks.add(horzDistance("horzDistanceFast"));
+        benchmarks.add(horzDistance("horzDistanceAuto"));
+        benchmarks.add(horzDistance("horzDistances"));
+        benchmarks.add(horzDistance("horzDistancesFast"));
+        benchmarks.add(horzDistance("horzDistancesAuto"));
+        benchmarks.add(getSource());
+        benchmarks.add(groundMotionField(false));
+        benchmarks.add(groundMotionField(true));
+        benchmarks.add(disaggregation());
+
+        return benchmarks;
+    }
+
+    /**
+     * Hazard curve for one site, from all the sources.
+     */
+    private static Benchmark hazardCurve(
+            final ScalarIntensityMeasureRelationshipAPI gmpe)
+    {
+        return new Benchmark("HazardCurveCalculator.getHazardCurve/"
+                + gmpe.getShortName())
+        {
+            private GEM1ERF erf;
+            private Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap;
+            private Site site;
+            private Double[] imls;
+            private HazardCurveCalculator calc;
+
+            @Override
+            public void setUp()
+            {
+                erf = SyntheticInputs.erf(NUM_AREA_SOURCES, NUM_FAULT_SOURCES);
+                gmpeMap = SyntheticInputs.gmpeMap(gmpe);
+                site = SyntheticInputs.sites(1, Collections.singletonList(gmpe)).get(0);
+                imls = SyntheticInputs.imls(NUM_IMLS);
+                try
+                {
+                    calc = new HazardCurveCalculator();
+                    calc.setMaxSourceDistance(INTEGRATION_DISTANCE);
+                }
+                catch (RemoteException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public double run()
+            {
+                DiscretizedFuncAPI hazardCurve = initHazardCurve(imls);
+                try
+                {
+                    calc.getHazardCurve(hazardCurve, site, gmpeMap, erf);
+                }
+                catch (RemoteException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                return hazardCurve.getY(0);
+            }
+        };
+    }
+
+    /**
+     * Hazard curves for a block of NUM_SITES sites, from all the sources, in
+     * a single pass over the ruptures.
+     */
+    private static Benchmark hazardCurves(
+            final ScalarIntensityMeasureRelationshipAPI gmpe)
+    {
+        return new Benchmark("HazardCurveCalculator.getHazardCurves/"
+                + gmpe.getShortName())
+        {
+            private GEM1ERF erf;
+            private Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap;
+            private List<Site> sites;
+            private Double[] imls;
+            private HazardCurveCalculator calc;
+
+            @Override
+            public void setUp()
+            {
+                erf = SyntheticInputs.erf(NUM_AREA_SOURCES, NUM_FAULT_SOURCES);
+                gmpeMap = SyntheticInputs.gmpeMap(gmpe);
+                sites = SyntheticInputs.sites(NUM_SITES, Collections.singletonList(gmpe));
+                imls = SyntheticInputs.imls(NUM_IMLS);
+                try
+                {
+                    calc = new HazardCurveCalculator();
+                    calc.setMaxSourceDistance(INTEGRATION_DISTANCE);
+                }
+                catch (RemoteException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public double run()
+            {
+                List<DiscretizedFuncAPI> hazardCurves =
+                        new ArrayList<DiscretizedFuncAPI>();
+                for (int i = 0; i < sites.size(); i++)
+                {
+                    hazardCurves.add(initHazardCurve(imls));
+                }
+                try
+                {
+                    calc.getHazardCurves(hazardCurves, sites, gmpeMap, erf);
+                }
+                catch (RemoteException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                return hazardCurves.get(0).getY(0);
+            }
+        };
+    }
+
+    /**
+     * Exceedance probabilities of all the IMLs, for one site and
+     * NUM_RUPTURES ruptures.
+     */
+    private static Benchmark exceedProbabilities(
+            final ScalarIntensityMeasureRelationshipAPI gmpe)
+    {
+        return new Benchmark("getExceedProbabilities/" + gmpe.getShortName())
+        {
+            private List<EqkRupture> ruptures;
+            private double[] imls;
+            private double[] poes;
+
+            @Override
+            public void setUp()
+            {
+                ruptures =
+                        ruptures(SyntheticInputs.erf(NUM_AREA_SOURCES,
+                                NUM_FAULT_SOURCES));
+                gmpe.setSite(SyntheticInputs.sites(1,
+                        Collections.singletonList(gmpe)).get(0));
+                Double[] imlVals = SyntheticInputs.imls(NUM_IMLS);
+                imls = new double[imlVals.length];
+                for (int i = 0; i < imls.length; i++)
+                {
+                    imls[i] = imlVals[i];
+                }
+                poes = new double[imls.length];
+            }
+
+            @Override
+            public double run()
+            {
+                double sum = 0;
+                for (EqkRupture rupture : ruptures)
+                {
+                    gmpe.setEqkRupture(rupture);
+                    gmpe.getExceedProbabilities(imls, poes);
+                    sum += poes[0];
+                }
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Distances between NUM_RUPTURES ruptures and NUM_SITES sites.
+     */
+    private static Benchmark distance(final PropagationEffectParameter param)
+    {
+        return new Benchmark(param.getName())
+        {
+            private List<EqkRupture> ruptures;
+            private List<Site> sites;
+
+            @Override
+            public void setUp()
+            {
+                ruptures =
+                        ruptures(SyntheticInputs.erf(NUM_AREA_SOURCES,
+                                NUM_FAULT_SOURCES));
+                sites =
+                        SyntheticInputs.sites(NUM_SITES,
+                                new ArrayList<ScalarIntensityMeasureRelationshipAPI>());
+            }
+
+            @Override
+            public double run()
+            {
+                double sum = 0;
+                for (EqkRupture rupture : ruptures)
+                {
+                    for (Site site : sites)
+                    {
+                        sum += (Double) param.getValue(rupture, site);
+                    }
+                }
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Horizontal distances between NUM_SITES sites and the nodes of the
+     * surface of the largest rupture of the first fault source, with the
+     * given method of LocationUtils ("horzDistance", "horzDistanceFast",
+     * "horzDistanceAuto", or the batch "horzDistances", "horzDistancesFast"
+     * and "horzDistancesAuto" over the node arrays).
+     */
+    private static Benchmark horzDistance(final String method)
+    {
+        return new Benchmark("LocationUtils." + method)
+        {
+            private List<Site> sites;
+            private Location[] nodes;
+            private double[] latRads;
+            private double[] lonRads;
+            private double[] cosLats;
+            private double[] distances;
+
+            @Override
+            public void setUp()
+            {
+                GEM1ERF erf =
+                        SyntheticInputs.erf(NUM_AREA_SOURCES,
+                                NUM_FAULT_SOURCES);
+                ProbEqkSource source = erf.getSource(NUM_AREA_SOURCES);
+                EvenlyGriddedSurfaceAPI surface =
+                        source.getRupture(source.getNumRuptures() - 1)
+                                .getRuptureSurface();
+                List<Location> locs = new ArrayList<Location>();
+                ListIterator<Location> it = surface.getLocationsIterator();
+                while (it.hasNext())
+                {
+                    locs.add(it.next());
+                }
+                nodes = locs.toArray(new Location[locs.size()]);
+                latRads = new double[nodes.length];
+                lonRads = new double[nodes.length];
+                cosLats = new double[nodes.length];
+                for (int i = 0; i < nodes.length; i++)
+                {
+                    latRads[i] = nodes[i].getLatRad();
+                    lonRads[i] = nodes[i].getLonRad();
+                    cosLats[i] = Math.cos(latRads[i]);
+                }
+                distances = new double[nodes.length];
+                sites =
+                        SyntheticInputs.sites(NUM_SITES,
+                                new ArrayList<ScalarIntensityMeasureRelationshipAPI>());
+            }
+
+            @Override
+            public double run()
+            {
+                double sum = 0;
+                for (Site site : sites)
+                {
+                    Location loc = site.getLocation();
+                    if (method.startsWith("horzDistances"))
+                    {
+                        if (method.equals("horzDistancesFast"))
+                        {
+                            LocationUtils.horzDistancesFast(loc, latRads,
+                                    lonRads, 0, nodes.length, distances);
+                        }
+                        else if (method.equals("horzDistancesAuto"))
+                        {
+                            LocationUtils.horzDistancesAuto(loc, latRads,
+                                    lonRads, cosLats, 0, nodes.length,
+                                    distances);
+                        }
+                        else
+                        {
+                            LocationUtils.horzDistances(loc, latRads, lonRads,
+                                    cosLats, 0, nodes.length, distances);
+                        }
+                        for (double distance : distances)
+                        {
+                            sum += distance;
+                        }
+                    }
+                    else if (method.equals("horzDistanceFast"))
+                    {
+                        for (Location node : nodes)
+                        {
+                            sum += LocationUtils.horzDistanceFast(loc, node);
+                        }
+                    }
+                    else if (method.equals("horzDistanceAuto"))
+                    {
+                        for (Location node : nodes)
+                        {
+                            sum += LocationUtils.horzDistanceAuto(loc, node);
+                        }
+                    }
+                    else
+                    {
+                        for (Location node : nodes)
+                        {
+                            sum += LocationUtils.horzDistance(loc, node);
+                        }
+                    }
+                }
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Creation of all the sources of the ERF.
+     */
+    private static Benchmark getSource()
+    {
+        return new Benchmark("GEM1ERF.getSource")
+        {
+            private GEM1ERF erf;
+
+            @Override
+            public void setUp()
+            {
+                erf = SyntheticInputs.erf(NUM_AREA_SOURCES, NUM_FAULT_SOURCES);
+            }
+
+            @Override
+            public double run()
+            {
+                double sum = 0;
+                for (int i = 0; i < erf.getNumSources(); i++)
+                {
+                    sum += erf.getSource(i).getNumRuptures();
+                }
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Ground motion field at NUM_SITES sites for the largest rupture of the
+     * first fault source (with a new calculator each time, as for each
+     * rupture of a stochastic event set: the Cholesky decomposition of the
+     * correlated case is cached across calculators, so the per-rupture work
+     * is measured).
+     */
+    private static Benchmark groundMotionField(final boolean correlated)
+    {
+        return new Benchmark("GroundMotionFieldCalculator."
+                + (correlated ? "correlated_JB2009" : "uncorrelated"))
+        {
+            private ScalarIntensityMeasureRelationshipAPI gmpe;
+            private EqkRupture rupture;
+            private List<Site> sites;
+
+            @Override
+            public void setUp()
+            {
+                gmpe = SyntheticInputs.ngaGmpes().get(0);
+                GEM1ERF erf =
+                        SyntheticInputs.erf(NUM_AREA_SOURCES,
+                                NUM_FAULT_SOURCES);
+                ProbEqkSource source = erf.getSource(NUM_AREA_SOURCES);
+                rupture = source.getRupture(source.getNumRuptures() - 1);
+                sites =
+                        SyntheticInputs.sites(NUM_SITES, Collections
+                                .singletonList(gmpe));
+            }
+
+            @Override
+            public double run()
+            {
+                GroundMotionFieldCalculator calc =
+                        new GroundMotionFieldCalculator(gmpe, rupture, sites);
+                Random rn = new Random(SyntheticInputs.SEED);
+                Map<Site, Double> gmf =
+                        correlated ? calc
+                                .getCorrelatedGroundMotionField_JB2009(rn)
+                                : calc.getUncorrelatedGroundMotionField(rn);
+                return gmf.get(sites.get(0));
+            }
+        };
+    }
+
+    /**
+     * Disaggregation matrix for one site, given its hazard curve.
+     */
+    private static Benchmark disaggregation()
+    {
+        return new Benchmark("DisaggregationCalculator.computeMatrix")
+        {
+            private GEM1ERF erf;
+            private Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap;
+            private Site site;
+            private DiscretizedFuncAPI hazardCurve;
+            private DisaggregationCalculator calc;
+            private double minMag;
+
+            @Override
+            public void setUp()
+            {
+                ScalarIntensityMeasureRelationshipAPI gmpe =
+                        SyntheticInputs.ngaGmpes().get(0);
+                erf = SyntheticInputs.erf(NUM_AREA_SOURCES, NUM_FAULT_SOURCES);
+                gmpeMap = SyntheticInputs.gmpeMap(gmpe);
+                site = SyntheticInputs.sites(1, Collections.singletonList(gmpe)).get(0);
+                hazardCurve = initHazardCurve(SyntheticInputs.imls(NUM_IMLS));
+                try
+                {
+                    new HazardCurveCalculator().getHazardCurve(hazardCurve,
+                            site, gmpeMap, erf);
+                }
+                catch (RemoteException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                minMag = (Double) erf.getParameter(GEM1ERF.MIN_MAG_NAME).getValue();
+
+                double minLat = SyntheticInputs.MIN_LAT - 1.0;
+                double minLon = SyntheticInputs.MIN_LON - 1.0;
+                double size = SyntheticInputs.REGION_SIZE + 2.0;
+                calc =
+                        new DisaggregationCalculator(binEdges(minLat, minLat
+                                + size, 10), binEdges(minLon, minLon + size,
+                                10), binEdges(5.0, 7.5, 5), binEdges(-3.0,
+                                3.0, 6));
+            }
+
+            @Override
+            public double run()
+            {
+                return calc.computeMatrix(site, erf, gmpeMap, 0.1,
+                        hazardCurve, minMag).getGMV();
+            }
+        };
+    }
+
+    private static DiscretizedFuncAPI initHazardCurve(Double[] imls)
+    {
+        DiscretizedFuncAPI hazardCurve = new ArbitrarilyDiscretizedFunc();
+        for (double iml : imls)
+        {
+            hazardCurve.set(iml, 1.0);
+        }
+        return hazardCurve;
+    }
+
+    /**
+     * The first NUM_RUPTURES ruptures, taken in turn from each source.
+     */
+    private static List<EqkRupture> ruptures(GEM1ERF erf)
+    {
+        List<EqkRupture> ruptures = new ArrayList<EqkRupture>();
+        for (int r = 0; ruptures.size() < NUM_RUPTURES; r++)
+        {
+            int numAdded = 0;
+            for (int s = 0; s < erf.getNumSources()
+                    && ruptures.size() < NUM_RUPTURES; s++)
+            {
+                ProbEqkSource source = erf.getSource(s);
+                if (r < source.getNumRuptures())
+                {
+                    ruptures.add(source.getRupture(r));
+                    numAdded++;
+                }
+            }
+            if (numAdded == 0)
+            {
+                break;
+            }
+        }
+        return ruptures;
+    }
+
+    private static Double[] binEdges(double min, double max, int numBins)
+    {
+        Double[] edges = new Double[numBins + 1];
+        for (int i = 0; i <= numBins; i++)
+        {
+            edges[i] = min + i * (max - min) / numBins;
+        }
+        return edges;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        Map<String, Double> baseline = Collections.emptyMap();
+        String output = null;
+        List<String> names = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("-warmup"))
+            {
+                runner.setWarmupIterations(Integer.parseInt(args[++i]));
+            }
+            else if (args[i].equals("-iterations"))
+            {
+                runner.setMeasureIterations(Integer.parseInt(args[++i]));
+            }
+            else if (args[i].equals("-millis"))
+            {
+                runner.setIterationMillis(Long.parseLong(args[++i]));
+            }
+            else if (args[i].equals("-baseline"))
+            {
+                baseline = BenchmarkRunner.readBaseline(args[++i]);
+            }
+            else if (args[i].equals("-output"))
+            {
+                output = args[++i];
+            }
+            else
+            {
+                names.add(args[i]);
+            }
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (Benchmark benchmark : getBenchmarks())
+        {
+            boolean selected = names.isEmpty();
+            for (String name : names)
+            {
+                selected |= benchmark.getName().contains(name);
+            }
+            if (selected)
+            {
+                benchmarks.add(benchmark);
+            }
+        }
+
+        List<BenchmarkRunner.Result> results =
+                runner.runAll(benchmarks, baseline);
+        if (output != null)
+        {
+            BenchmarkRunner.writeResults(results, output);
+        }
+
+        // HazardCurveCalculator is an RMI object, whose threads would
+        // otherwise keep the JVM alive
+        System.exit(0);
+    }
+}
@@ -0,0 +1,193 @@
+package org.gem.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.opensha.commons.data.Site;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.geo.BorderType;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.param.ParameterAPI;
+import org.opensha.sha.earthquake.FocalMechanism;
+import org.opensha.sha.earthquake.griddedForecast.MagFreqDistsForFocalMechs;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMAreaSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMFaultSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSourceData;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.imr.AttenuationRelationship;
+import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.attenRelImpl.AS_2008_AttenRel;
+import org.opensha.sha.imr.attenRelImpl.BA_2008_AttenRel;
+import org.opensha.sha.imr.attenRelImpl.CB_2008_AttenRel;
+import org.opensha.sha.imr.attenRelImpl.CY_2008_AttenRel;
+import org.opensha.sha.imr.param.IntensityMeasureParams.PGA_Param;
+import org.opensha.sha.imr.param.OtherParams.SigmaTruncLevelParam;
+import org.opensha.sha.imr.param.OtherParams.SigmaTruncTypeParam;
+import org.opensha.sha.magdist.GutenbergRichterMagFreqDist;
+import org.opensha.sha.util.TectonicRegionType;
+
+/**
+ * Reproducible synthetic inputs for the benchmarks: a source model of area
+ * and fault sources, sites, intensity measure levels and the NGA GMPEs. All
+ * random values come from generators with fixed seeds, so that every run (and
+ * every version of the code) is given exactly the same inputs.
+ */
+public class SyntheticInputs
+{
+    public static final long SEED = 20111017L;
+
+    /**
+     * Study region (south-west corner and size, in decimal degrees).
+     */
+    public static final double MIN_LAT = 38.0;
+    public static final double MIN_LON = 13.0;
+    public static final double REGION_SIZE = 2.0;
+
+    public static final double TIME_SPAN = 50.0;
+
+    /**
+     * Build an ERF with numAreaSources area sources (tiling the study region)
+     * and numFaultSources fault sources (with random traces inside it).
+     */
+    public static GEM1ERF erf(int numAreaSources, int numFaultSources)
+    {
+        Random rn = new Random(SEED);
+        ArrayList<GEMSourceData> sources = new ArrayList<GEMSourceData>();
+
+        int numCells = (int) Math.ceil(Math.sqrt(numAreaSources));
+        double cellSize = REGION_SIZE / numCells;
+        for (int i = 0; i < numAreaSources; i++)
+        {
+            double lat = MIN_LAT + (i / numCells) * cellSize;
+            double lon = MIN_LON + (i % numCells) * cellSize;
+            LocationList border = new LocationList();
+            border.add(new Location(lat, lon));
+            border.add(new Location(lat, lon + cellSize));
+            border.add(new Location(lat + cellSize, lon + cellSize));
+            border.add(new Location(lat + cellSize, lon));
+            Region region = new Region(border, BorderType.MERCATOR_LINEAR);
+
+            GutenbergRichterMagFreqDist mfd =
+                    new GutenbergRichterMagFreqDist(1.0, 0.01 + 0.05 * rn
+                            .nextDouble(), 5.05, 6.95, 20);
+            MagFreqDistsForFocalMechs mfdFocMech =
+                    new MagFreqDistsForFocalMechs(mfd, new FocalMechanism(
+                            0.0, 90.0, 0.0));
+            ArbitrarilyDiscretizedFunc topOfRupture =
+                    new ArbitrarilyDiscretizedFunc();
+            topOfRupture.set(6.0, 2.0);
+            topOfRupture.set(8.0, 0.0);
+            sources.add(new GEMAreaSourceData("area" + i, "area" + i,
+                    TectonicRegionType.ACTIVE_SHALLOW, region, mfdFocMech,
+                    topOfRupture, 5.0));
+        }
+
+        for (int i = 0; i < numFaultSources; i++)
+        {
+            FaultTrace trace = new FaultTrace("fault" + i);
+            double lat = MIN_LAT + REGION_SIZE * rn.nextDouble();
+            double lon = MIN_LON + REGION_SIZE * rn.nextDouble();
+            trace.add(new Location(lat, lon, 0.0));
+            trace.add(new Location(lat + 0.2 + 0.3 * rn.nextDouble(), lon + 0.2
+                    + 0.3 * rn.nextDouble(), 0.0));
+            GutenbergRichterMagFreqDist mfd =
+                    new GutenbergRichterMagFreqDist(1.0, 0.005 + 0.01 * rn
+                            .nextDouble(), 6.05, 7.05, 11);
+            sources.add(new GEMFaultSourceData("fault" + i, "fault" + i,
+                    TectonicRegionType.ACTIVE_SHALLOW, mfd, trace, 60.0, 90.0,
+                    15.0, 0.0, true));
+        }
+
+        return GEM1ERF.getGEM1ERF(sources, TIME_SPAN);
+    }
+
+    /**
+     * The NGA GMPEs, with default parameter values, PGA as the intensity
+     * measure and a one sided truncation at 3 standard deviations.
+     */
+    public static List<ScalarIntensityMeasureRelationshipAPI> ngaGmpes()
+    {
+        List<ScalarIntensityMeasureRelationshipAPI> gmpes =
+                new ArrayList<ScalarIntensityMeasureRelationshipAPI>();
+        gmpes.add(new BA_2008_AttenRel(null));
+        gmpes.add(new CB_2008_AttenRel(null));
+        gmpes.add(new CY_2008_AttenRel(null));
+        gmpes.add(new AS_2008_AttenRel(null));
+        for (ScalarIntensityMeasureRelationshipAPI gmpe : gmpes)
+        {
+            ((AttenuationRelationship) gmpe).setParamDefaults();
+            gmpe.setIntensityMeasure(PGA_Param.NAME);
+            ((SigmaTruncTypeParam) gmpe.getParameter(SigmaTruncTypeParam.NAME))
+                    .setValue(SigmaTruncTypeParam.SIGMA_TRUNC_TYPE_1SIDED);
+            ((SigmaTruncLevelParam) gmpe.getParameter(SigmaTruncLevelParam.NAME))
+                    .setValue(3.0);
+        }
+        return gmpes;
+    }
+
+    /**
+     * @return map with the given GMPE for the tectonic region type of the
+     *         sources built by {@link #erf(int, int)}
+     */
+    public static Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI>
+            gmpeMap(ScalarIntensityMeasureRelationshipAPI gmpe)
+    {
+        Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> map =
+                new HashMap<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI>();
+        map.put(TectonicRegionType.ACTIVE_SHALLOW, gmpe);
+        return map;
+    }
+
+    /**
+     * Random sites inside the study region, with the default values of the
+     * site parameters of all the given GMPEs.
+     */
+    public static List<Site> sites(int numSites,
+            List<ScalarIntensityMeasureRelationshipAPI> gmpes)
+    {
+        Random rn = new Random(SEED + 1);
+        List<Site> sites = new ArrayList<Site>();
+        for (int i = 0; i < numSites; i++)
+        {
+            Site site =
+                    new Site(new Location(MIN_LAT + REGION_SIZE
+                            * rn.nextDouble(), MIN_LON + REGION_SIZE
+                            * rn.nextDouble()));
+            for (ScalarIntensityMeasureRelationshipAPI gmpe : gmpes)
+            {
+                ListIterator<ParameterAPI<?>> it = gmpe.getSiteParamsIterator();
+                while (it.hasNext())
+                {
+                    ParameterAPI<?> param = it.next();
+                    if (!site.containsParameter(param.getName()))
+                    {
+                        site.addParameter((ParameterAPI<?>) param.clone());
+                    }
+                }
+            }
+            sites.add(site);
+        }
+        return sites;
+    }
+
+    /**
+     * Natural logs of numImls levels, log-spaced from 0.005 g to 2.5 g.
+     */
+    public static Double[] imls(int numImls)
+    {
+        Double[] imls = new Double[numImls];
+        double step = Math.log(2.5 / 0.005) / (numImls - 1);
+        for (int i = 0; i < numImls; i++)
+        {
+            imls[i] = Math.log(0.005) + i * step;
+        }
+        return imls;
+    }
+}
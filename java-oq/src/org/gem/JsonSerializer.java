@@ -1,17 +1,28 @@
 package org.gem;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import org.gem.engine.hazard.redis.Cache;
+import org.jredis.protocol.BulkDataHandler;
 import org.opensha.commons.data.DataPoint2D;
 import org.opensha.commons.data.Site;
 import org.opensha.commons.data.function.DiscretizedFuncAPI;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1SourceCache;
 import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSourceData;
 import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
 import org.opensha.sha.util.TectonicRegionType;
@@ -47,6 +58,11 @@ public class JsonSerializer {
 
     /* End Hazard Curve to JSON stuff */
 
+    /**
+     * Charset of the JSON values in the cache.
+     */
+    private static final String JSON_CHARSET = "UTF-8";
+
     /**
      * Serializes and array list of GEMSourceData
      *
@@ -60,7 +76,7 @@ public class JsonSerializer {
 
     public static void serializeSourceList(Cache cache, String key,
             ArrayList<GEMSourceData> sources) {
-        cache.set(key, getJsonSourceList(sources));
+        setJson(cache, key, sources, sources.getClass());
     }
 
     public static List<GEMSourceData> getSourceListFromCache(Cache cache,
@@ -73,10 +89,39 @@ public class JsonSerializer {
         // At least up to gson 1.6 what we get is a LinkedList<GEMSourceData>
         // while GEM1ERF.GEM1ERF is expecting ArrayList<GEMSourceData>.
         List<GEMSourceData> result =
-            gson.create().fromJson((String) cache.get(key), listType);
+            getJson(cache, key, gson.create(), listType);
         return new ArrayList<GEMSourceData>(result);
     }
 
+    /**
+     * Content keys of the sources of a source model, for sharing a
+     * {@link GEM1SourceCache} between the ERFs built from different copies of
+     * the same source model (see
+     * {@link GEM1ERF#setSourceCache(GEM1SourceCache, Map)}). The key of a
+     * source is its ID together with the digest of the serialized source
+     * model and the index of the source in it, so the digest is computed once
+     * per source model (when it is stored) rather than for each ERF built
+     * from it. Sources of other source models (e.g. from other logic tree
+     * samples) get different keys.
+     *
+     * @param sources
+     *            the sources of the source model, in serialization order
+     * @param modelDigest
+     *            digest of the serialized source model
+     * @return map from each source (by identity) to its key
+     */
+    public static Map<GEMSourceData, String> getSourceKeys(
+            List<GEMSourceData> sources, String modelDigest) {
+        Map<GEMSourceData, String> keys =
+                new IdentityHashMap<GEMSourceData, String>();
+        int index = 0;
+        for (GEMSourceData source : sources) {
+            keys.put(source, source.getID() + "/" + modelDigest + "/"
+                    + index++);
+        }
+        return keys;
+    }
+
     public static HashMap<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> getGmpeMapFromCache(
             Cache cache, String key) {
 
@@ -90,18 +135,81 @@ public class JsonSerializer {
                 new TypeToken<HashMap<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI>>() {
                 }.getType();
 
-        return gson.create().fromJson((String) cache.get(key), hashType);
+        return getJson(cache, key, gson.create(), hashType);
     }
 
     public static void serializeConfigurationFile(Cache cache, String key,
             Properties configProperties) {
-        String json = new Gson().toJson(configProperties, Properties.class);
-        cache.set(key, json);
+        setJson(cache, key, configProperties, Properties.class);
     }
 
     public static Properties getConfigurationPropertiesFromCache(Cache cache,
             String key) {
-        return new Gson().fromJson((String) cache.get(key), Properties.class);
+        return getJson(cache, key, new Gson(), Properties.class);
+    }
+
+    /**
+     * Writes the object to the cache as JSON, which is encoded straight to a
+     * byte buffer (no intermediate String) and streamed from it.
+     */
+    private static void setJson(Cache cache, String key, Object src,
+            Type typeOfSrc) {
+        JsonBuffer buffer = new JsonBuffer();
+        try {
+            Writer writer = new OutputStreamWriter(buffer, JSON_CHARSET);
+            new Gson().toJson(src, typeOfSrc, writer);
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        cache.set(key, buffer.getInputStream(), buffer.size());
+    }
+
+    /**
+     * Reads the object from its JSON in the cache, which is parsed as it is
+     * read from the connection (no intermediate byte[] or String).
+     *
+     * @return null if the key doesn't exist
+     */
+    private static <T> T getJson(Cache cache, String key, Gson gson,
+            Type typeOfT) {
+        JsonValueReader<T> reader = new JsonValueReader<T>(gson, typeOfT);
+        cache.get(key, reader);
+        return reader.value;
+    }
+
+    /**
+     * Parses a JSON value streamed from the cache.
+     */
+    private static class JsonValueReader<T> implements BulkDataHandler {
+        private final Gson gson;
+        private final Type typeOfT;
+        private T value;
+
+        JsonValueReader(Gson gson, Type typeOfT) {
+            this.gson = gson;
+            this.typeOfT = typeOfT;
+        }
+
+        @Override
+        public void handleBulkData(InputStream data, int length)
+                throws IOException {
+            value = gson.fromJson(new InputStreamReader(data, JSON_CHARSET),
+                    typeOfT);
+        }
+    }
+
+    /**
+     * A byte buffer whose content can be read without copying it.
+     */
+    private static class JsonBuffer extends ByteArrayOutputStream {
+        JsonBuffer() {
+            super(8192);
+        }
+
+        InputStream getInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
     }
 
     /**
@@ -1,12 +1,22 @@
 package org.gem.calc;
 
+import java.lang.reflect.Constructor;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.ListIterator;
+import java.util.Map;
 
 import org.apache.commons.collections.Closure;
 import org.opensha.commons.data.function.DiscretizedFuncAPI;
+import org.opensha.commons.param.DependentParameterAPI;
+import org.opensha.commons.param.ParameterAPI;
+import org.opensha.commons.param.WarningParameterAPI;
+import org.opensha.commons.param.event.ParameterChangeWarningListener;
 import org.opensha.sha.earthquake.EqkRupForecastAPI;
 import org.opensha.sha.earthquake.ProbEqkSource;
+import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
 import org.opensha.sha.imr.param.SiteParams.Vs30_TypeParam.Vs30Type;
+import org.opensha.sha.util.TectonicRegionType;
 
 public class CalcUtils
 {
@@ -152,4 +162,102 @@ public class CalcUtils
             throw new InputValidationException(e);
         }
     }
+
+    /**
+     * Make an independent copy of a GMPE (Ground Motion Prediction Equation).
+     *
+     * GMPEs hold the current site, rupture and intensity measure level as
+     * state, so a single instance cannot be shared between threads. The copy
+     * is a fresh instance of the same class (created the same way
+     * {@link org.gem.ScalarIntensityMeasureRelationshipApiDeserializer} does)
+     * with the intensity measure, its independent parameters (period,
+     * damping) and the "other" parameters (component, standard deviation
+     * type, truncation type and level, ...) set to the values of the
+     * original.
+     *
+     * Site and rupture parameters are not copied: they are set by the
+     * calculators for each site and rupture anyway.
+     *
+     * @param gmpe the GMPE to copy
+     * @return a new GMPE configured like <code>gmpe</code>
+     */
+    public static ScalarIntensityMeasureRelationshipAPI copyGmpe(
+            ScalarIntensityMeasureRelationshipAPI gmpe)
+    {
+        ScalarIntensityMeasureRelationshipAPI copy = null;
+        try
+        {
+            Constructor<?> cstr =
+                    gmpe.getClass().getConstructor(
+                            ParameterChangeWarningListener.class);
+            copy =
+                    (ScalarIntensityMeasureRelationshipAPI) cstr
+                            .newInstance((ParameterChangeWarningListener) null);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException("Cannot copy GMPE "
+                    + gmpe.getClass().getName(), e);
+        }
+
+        copyParameterValues(gmpe.getOtherParamsIterator(), copy);
+
+        ParameterAPI<?> im = gmpe.getIntensityMeasure();
+        if (im != null)
+        {
+            copy.setIntensityMeasure(im.getName());
+            if (im instanceof DependentParameterAPI)
+            {
+                copyParameterValues(((DependentParameterAPI<?>) im)
+                        .getIndependentParametersIterator(), copy);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Copy each GMPE of a tectonic region type / GMPE map, see
+     * {@link #copyGmpe(ScalarIntensityMeasureRelationshipAPI)}.
+     *
+     * @param gmpeMap
+     * @return a new map with the same keys and copied GMPEs
+     */
+    public static Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> copyGmpeMap(
+            Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap)
+    {
+        Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> copy =
+                new HashMap<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI>();
+        for (Map.Entry<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> entry : gmpeMap
+                .entrySet())
+        {
+            copy.put(entry.getKey(), copyGmpe(entry.getValue()));
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void copyParameterValues(ListIterator<?> params,
+            ScalarIntensityMeasureRelationshipAPI target)
+    {
+        while (params.hasNext())
+        {
+            ParameterAPI<?> param = (ParameterAPI<?>) params.next();
+            ParameterAPI<Object> targetParam =
+                    target.getParameter(param.getName());
+            if (param.getValue() == null && !targetParam.isNullAllowed())
+            {
+                // never set on the original either
+                continue;
+            }
+            if (targetParam instanceof WarningParameterAPI)
+            {
+                ((WarningParameterAPI<Object>) targetParam)
+                        .setValueIgnoreWarning(param.getValue());
+            }
+            else
+            {
+                targetParam.setValue(param.getValue());
+            }
+        }
+    }
 }
@@ -1,9 +1,16 @@
 package org.gem.calc;
 
 import java.rmi.RemoteException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.opensha.commons.data.Site;
 import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
@@ -18,6 +25,8 @@ import org.opensha.sha.earthquake.EqkRupForecastAPI;
 import org.opensha.sha.earthquake.ProbEqkRupture;
 import org.opensha.sha.earthquake.ProbEqkSource;
 import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
+import org.opensha.sha.faultSurface.FlatGriddedSurfaceAPI;
 import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
 import org.opensha.sha.imr.param.OtherParams.StdDevTypeParam;
 import org.opensha.sha.imr.param.SiteParams.DepthTo1pt0kmPerSecParam;
@@ -25,8 +34,8 @@ import org.opensha.sha.imr.param.SiteParams.DepthTo2pt5kmPerSecParam;
 import org.opensha.sha.imr.param.SiteParams.Vs30_Param;
 import org.opensha.sha.imr.param.SiteParams.Vs30_TypeParam;
 import org.opensha.sha.util.TectonicRegionType;
-import static org.gem.Utils.digitize;
 import static org.gem.calc.CalcUtils.assertPoissonian;
+import static org.gem.calc.CalcUtils.copyGmpeMap;
 import static org.gem.calc.CalcUtils.getGMV;
 import static org.gem.calc.CalcUtils.notNull;
 import static org.gem.calc.CalcUtils.isSorted;
@@ -46,12 +55,22 @@ public class DisaggregationCalculator {
     private final Double[] lonBinLims;
     private final Double[] magBinLims;
     private final Double[] epsilonBinLims;
+    // the same bin limits, as primitives for the binary searches
+    private final double[] latBinEdges;
+    private final double[] lonBinEdges;
+    private final double[] magBinEdges;
+    private final double[] epsilonBinEdges;
     private static final TectonicRegionType[] tectonicRegionTypes = TectonicRegionType.values();
     /**
      * Dimensions for matrices produced by this calculator, based on the length
      * of the bin limits passed to the constructor.
      */
     private final long[] dims;
+    /**
+     * Row-major strides of the flat matrices, and their size.
+     */
+    private final int[] strides;
+    private final int size;
 
     public DisaggregationCalculator(
             Double[] latBinEdges,
@@ -72,12 +91,25 @@ public class DisaggregationCalculator {
         this.magBinLims = magBinEdges;
         this.epsilonBinLims = epsilonBinEdges;
 
+        this.latBinEdges = toPrimitive(latBinEdges);
+        this.lonBinEdges = toPrimitive(lonBinEdges);
+        this.magBinEdges = toPrimitive(magBinEdges);
+        this.epsilonBinEdges = toPrimitive(epsilonBinEdges);
+
         this.dims = new long[5];
         this.dims[0] = this.latBinLims.length - 1;
         this.dims[1] = this.lonBinLims.length - 1;
         this.dims[2] = this.magBinLims.length - 1;
         this.dims[3] = this.epsilonBinLims.length - 1;
         this.dims[4] = tectonicRegionTypes.length;
+
+        long[] strides = DisaggregationResult.getStrides(this.dims);
+        this.strides = new int[strides.length];
+        for (int i = 0; i < strides.length; i++)
+        {
+            this.strides[i] = (int) strides[i];
+        }
+        this.size = (int) (strides[0] * this.dims[0]);
     }
 
     /**
@@ -137,19 +169,143 @@ public class DisaggregationCalculator {
         assertPoissonian(erf);
         assertNonZeroStdDev(imrMap);
 
-        double disaggMatrix[][][][][] =
-                new double[(int) dims[0]]
-                          [(int) dims[1]]
-                          [(int) dims[2]]
-                          [(int) dims[3]]
-                          [(int) dims[4]];
+        double[] disaggMatrix = new double[size];
+
+        double logGMV = getGMV(hazardCurve, poe);
 
         // value by which to normalize the final matrix
+        double totalAnnualRate = addRates(disaggMatrix, site, erf, imrMap,
+                logGMV, minMag, 0, 1);
+
+        disaggMatrix = normalize(disaggMatrix, totalAnnualRate);
+
+        DisaggregationResult daResult = new DisaggregationResult();
+        daResult.setGMV(Math.exp(logGMV));
+        daResult.setMatrix(disaggMatrix, dims);
+        return daResult;
+    }
+
+    /**
+     * Same as {@link #computeMatrix(Site, EqkRupForecastAPI, Map, double,
+     * DiscretizedFuncAPI, double)}, with <code>numThreads</code> worker
+     * threads. Worker w handles the sources w, w + numThreads, ..., with its
+     * own copy of the attenuation relationships, and adds their rates to its
+     * own matrix; the matrices are then summed in the order of the workers,
+     * so the result only depends on the number of threads (and is the same as
+     * that of the single-threaded method for one thread). The earthquake
+     * rupture forecast is shared by the workers, so its forecast must be up to
+     * date before calling this method.
+     */
+    public DisaggregationResult computeMatrix(
+            final Site site,
+            final EqkRupForecastAPI erf,
+            Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> imrMap,
+            double poe,
+            DiscretizedFuncAPI hazardCurve,
+            final double minMag,
+            int numThreads)
+    {
+        if (numThreads < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Number of threads must be at least 1");
+        }
+
+        assertPoissonian(erf);
+        assertNonZeroStdDev(imrMap);
+
+        final double logGMV = getGMV(hazardCurve, poe);
+
+        final int numWorkers = Math.max(1, Math.min(numThreads, erf.getNumSources()));
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        List<Future<double[]>> partials = new ArrayList<Future<double[]>>();
+        final double[] totalAnnualRates = new double[numWorkers];
+        double[] disaggMatrix = null;
+        try
+        {
+            for (int w = 0; w < numWorkers; w++)
+            {
+                final int worker = w;
+                // IMRs are copied here, not in the worker, so that the
+                // original instances are only ever touched by this thread
+                final Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> workerImrMap =
+                        copyGmpeMap(imrMap);
+                partials.add(executor.submit(new Callable<double[]>()
+                {
+                    @Override
+                    public double[] call()
+                    {
+                        double[] partial = new double[size];
+                        totalAnnualRates[worker] = addRates(partial, site,
+                                erf, workerImrMap, logGMV, minMag, worker,
+                                numWorkers);
+                        return partial;
+                    }
+                }));
+            }
+            for (Future<double[]> partial : partials)
+            {
+                if (disaggMatrix == null)
+                {
+                    disaggMatrix = partial.get();
+                }
+                else
+                {
+                    add(disaggMatrix, partial.get());
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // Future.get() makes the rates of the workers visible
         double totalAnnualRate = 0.0;
+        for (double rate : totalAnnualRates)
+        {
+            totalAnnualRate += rate;
+        }
 
-        double logGMV = getGMV(hazardCurve, poe);
+        disaggMatrix = normalize(disaggMatrix, totalAnnualRate);
+
+        DisaggregationResult daResult = new DisaggregationResult();
+        daResult.setGMV(Math.exp(logGMV));
+        daResult.setMatrix(disaggMatrix, dims);
+        return daResult;
+    }
+
+    /**
+     * Adds the annual rates of the ruptures of the sources firstSource,
+     * firstSource + sourceStep, ... to the bins of the matrix, and returns
+     * their sum.
+     */
+    private double addRates(
+            double[] disaggMatrix,
+            Site site,
+            EqkRupForecastAPI erf,
+            Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> imrMap,
+            double logGMV,
+            double minMag,
+            int firstSource,
+            int sourceStep)
+    {
+        double totalAnnualRate = 0.0;
 
-        for (int srcCnt = 0; srcCnt < erf.getNumSources(); srcCnt++)
+        for (int srcCnt = firstSource; srcCnt < erf.getNumSources(); srcCnt += sourceStep)
         {
             ProbEqkSource source = erf.getSource(srcCnt);
 
@@ -157,6 +313,7 @@ public class DisaggregationCalculator {
             double totRate = -Math.log(1 - totProb);
 
             TectonicRegionType trt = source.getTectonicRegionType();
+            int trtIndex = trt.ordinal();
 
             ScalarIntensityMeasureRelationshipAPI imr = imrMap.get(trt);
             imr.setSite(site);
@@ -167,7 +324,7 @@ public class DisaggregationCalculator {
                 ProbEqkRupture rupture = source.getRupture(rupCnt);
                 imr.setEqkRupture(rupture);
 
-                Location location = closestLocation(rupture.getRuptureSurface().getLocationList(), site.getLocation());
+                Location location = closestLocation(rupture.getRuptureSurface(), site.getLocation());
 
                 double lat, lon, mag, epsilon;
                 lat = location.getLatitude();
@@ -175,30 +332,29 @@ public class DisaggregationCalculator {
                 mag = rupture.getMag();
                 epsilon = imr.getEpsilon();
 
-                if (!allInRange(lat, lon, mag, epsilon))
+                int latIndex = binIndex(latBinEdges, lat);
+                int lonIndex = binIndex(lonBinEdges, lon);
+                int magIndex = binIndex(magBinEdges, mag);
+                int epsilonIndex = binIndex(epsilonBinEdges, epsilon);
+                if (latIndex < 0 || lonIndex < 0 || magIndex < 0 || epsilonIndex < 0)
                 {
                     // one or more of the parameters is out of range;
                     // skip this rupture
                     continue;
                 }
 
-                int[] binIndices = getBinIndices(lat, lon, mag, epsilon, trt);
-
                 double annualRate = totRate
                         * imr.getExceedProbability()
                         * rupture.getProbability();
 
-                disaggMatrix[binIndices[0]][binIndices[1]][binIndices[2]][binIndices[3]][binIndices[4]] += annualRate;
+                disaggMatrix[latIndex * strides[0] + lonIndex * strides[1]
+                        + magIndex * strides[2] + epsilonIndex * strides[3]
+                        + trtIndex] += annualRate;
                 totalAnnualRate += annualRate;
             }  // end rupture loop
         }  // end source loop
 
-        disaggMatrix = normalize(disaggMatrix, totalAnnualRate);
-
-        DisaggregationResult daResult = new DisaggregationResult();
-        daResult.setGMV(Math.exp(logGMV));
-        daResult.setMatrix(disaggMatrix);
-        return daResult;
+        return totalAnnualRate;
     }
 
     public boolean allInRange(
@@ -245,12 +401,66 @@ public class DisaggregationCalculator {
             double epsilon, TectonicRegionType trt)
     {
         int[] result = new int[5];
-        result[0] = digitize(this.latBinLims, lat);
-        result[1] = digitize(this.lonBinLims, lon);
-        result[2] = digitize(this.magBinLims, mag);
-        result[3] = digitize(this.epsilonBinLims, epsilon);
-        result[4] = Arrays.asList(TectonicRegionType.values()).indexOf(trt);
+        result[0] = digitize(this.latBinEdges, lat);
+        result[1] = digitize(this.lonBinEdges, lon);
+        result[2] = digitize(this.magBinEdges, mag);
+        result[3] = digitize(this.epsilonBinEdges, epsilon);
+        result[4] = trt.ordinal();
+
+        return result;
+    }
+
+    /**
+     * Same as {@link org.gem.Utils#digitize(Double[], Double)}, with a binary
+     * search.
+     */
+    private static int digitize(double[] bins, double value)
+    {
+        int index = binIndex(bins, value);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Value '" + value + "' is outside the expected range");
+        }
+        return index;
+    }
+
+    /**
+     * Binary search for the bin [bins[i], bins[i + 1]) containing the value,
+     * in sorted bin limits: returns i, the last index such that bins[i] <=
+     * value, or -1 if the value is outside [bins[0], bins[bins.length - 1]).
+     */
+    private static int binIndex(double[] bins, double value)
+    {
+        if (!(value >= bins[0] && value < bins[bins.length - 1]))
+        {
+            return -1;
+        }
+        int low = 0;
+        int high = bins.length - 1;
+        // invariant: bins[low] <= value < bins[high]
+        while (high - low > 1)
+        {
+            int mid = (low + high) >>> 1;
+            if (bins[mid] <= value)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
 
+    private static double[] toPrimitive(Double[] values)
+    {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            result[i] = values[i];
+        }
         return result;
     }
 
@@ -267,11 +477,12 @@ public class DisaggregationCalculator {
 
         double minDistance = Double.MAX_VALUE;
 
+        // squared distances, which have the same order
         for (Location loc : list)
         {
             double horzDist = LocationUtils.horzDistance(loc, target);
             double vertDist = LocationUtils.vertDistance(loc, target);
-            double distance = Math.sqrt(Math.pow(horzDist, 2) + Math.pow(vertDist, 2));
+            double distance = horzDist * horzDist + vertDist * vertDist;
             if (distance < minDistance)
             {
                 minDistance = distance;
@@ -281,6 +492,96 @@ public class DisaggregationCalculator {
         return closest;
     }
 
+    /**
+     * Same as {@link #closestLocation(LocationList, Location)} for the
+     * locations of a surface, without copying them to a list. The nodes of a
+     * FlatGriddedSurfaceAPI are read from its arrays, a row at a time, and
+     * only the closest one is made a Location.
+     */
+    private static Location closestLocation(EvenlyGriddedSurfaceAPI surface, Location target)
+    {
+        if (!(surface instanceof FlatGriddedSurfaceAPI))
+        {
+            Location closest = null;
+            double minDistance = Double.MAX_VALUE;
+            ListIterator<Location> it = surface.getLocationsIterator();
+            while (it.hasNext())
+            {
+                Location loc = it.next();
+                double horzDist = LocationUtils.horzDistance(loc, target);
+                double vertDist = LocationUtils.vertDistance(loc, target);
+                double distance = horzDist * horzDist + vertDist * vertDist;
+                if (distance < minDistance)
+                {
+                    minDistance = distance;
+                    closest = loc;
+                }
+            }
+            return closest;
+        }
+
+        FlatGriddedSurfaceAPI flatSurface = (FlatGriddedSurfaceAPI) surface;
+        double[] latRads = flatSurface.getLatRads();
+        double[] lonRads = flatSurface.getLonRads();
+        double[] cosLats = flatSurface.getCosLats();
+        double[] depths = flatSurface.getDepths();
+        int numCols = flatSurface.getNumCols();
+        double[] horzDists = new double[numCols];
+        double targetDepth = target.getDepth();
+
+        int closestRow = -1;
+        int closestCol = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (int row = 0; row < flatSurface.getNumRows(); row++)
+        {
+            int start = flatSurface.getIndex(row, 0);
+            // with the target as first point, as horzDistance(loc, target)
+            // is symmetric
+            LocationUtils.horzDistances(target, latRads, lonRads, cosLats,
+                    start, numCols, horzDists);
+            for (int col = 0; col < numCols; col++)
+            {
+                double horzDist = horzDists[col];
+                double vertDist = targetDepth - depths[start + col];
+                double distance = horzDist * horzDist + vertDist * vertDist;
+                if (distance < minDistance)
+                {
+                    minDistance = distance;
+                    closestRow = row;
+                    closestCol = col;
+                }
+            }
+        }
+        return closestRow < 0 ? null : surface.getLocation(closestRow, closestCol);
+    }
+
+    /**
+     * Add a flat matrix to another one of the same size.
+     * @param matrix
+     * @param other
+     */
+    private static void add(double[] matrix, double[] other)
+    {
+        for (int i = 0; i < matrix.length; i++)
+        {
+            matrix[i] += other[i];
+        }
+    }
+
+    /**
+     * Normalize a flat matrix by the given value.
+     * @param matrix
+     * @param normFactor
+     */
+    public static double[] normalize(double[] matrix, double normFactor)
+    {
+        for (int i = 0; i < matrix.length; i++)
+        {
+            matrix[i] /= normFactor;
+        }
+        return matrix;
+    }
+
     /**
      * Normalize a 5D matrix by the given value.
      * @param matrix
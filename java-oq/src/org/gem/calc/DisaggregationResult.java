@@ -1,18 +1,162 @@
 package org.gem.calc;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The disaggregation matrix of a site, and its ground motion value.
+ *
+ * The matrix is held in a single flat array, in row-major (C) order: the
+ * element (i, j, k, l, m) is at i * strides[0] + j * strides[1] + ... +
+ * m * strides[4], with strides[4] == 1. This is the layout of numpy arrays
+ * and of HDF5 datasets, so the matrix can be copied to them in one block
+ * (see {@link #getMatrix(ByteBuffer)}).
+ */
 public class DisaggregationResult
 {
-    private double[][][][][] matrix;
+    private double[] values;
+    private long[] dims;
+    private long[] strides;
     private double gmv;
 
+    /**
+     * @return the matrix as nested arrays, which are created from the flat
+     *         array at each call
+     */
     public double[][][][][] getMatrix()
     {
+        if (values == null)
+        {
+            return null;
+        }
+        double[][][][][] matrix =
+                new double[(int) dims[0]]
+                          [(int) dims[1]]
+                          [(int) dims[2]]
+                          [(int) dims[3]]
+                          [(int) dims[4]];
+        int index = 0;
+        for (double[][][][] m1 : matrix)
+        {
+            for (double[][][] m2 : m1)
+            {
+                for (double[][] m3 : m2)
+                {
+                    for (double[] m4 : m3)
+                    {
+                        System.arraycopy(values, index, m4, 0, m4.length);
+                        index += m4.length;
+                    }
+                }
+            }
+        }
         return matrix;
     }
 
     public void setMatrix(double[][][][][] matrix)
     {
-        this.matrix = matrix;
+        long[] dims = new long[] { matrix.length, matrix[0].length,
+                matrix[0][0].length, matrix[0][0][0].length,
+                matrix[0][0][0][0].length };
+        double[] values = new double[(int) (dims[0] * dims[1] * dims[2]
+                * dims[3] * dims[4])];
+        int index = 0;
+        for (double[][][][] m1 : matrix)
+        {
+            for (double[][][] m2 : m1)
+            {
+                for (double[][] m3 : m2)
+                {
+                    for (double[] m4 : m3)
+                    {
+                        System.arraycopy(m4, 0, values, index, m4.length);
+                        index += m4.length;
+                    }
+                }
+            }
+        }
+        setMatrix(values, dims);
+    }
+
+    /**
+     * Copies the matrix, in row-major order and as doubles in the native byte
+     * order, to the given buffer, from its current position (which is left
+     * unchanged). Given a direct buffer wrapping the memory of an array of
+     * another language (such as a numpy array with the dimensions of
+     * {@link #getDims()}), the matrix is copied in one block, without
+     * converting its elements one at a time.
+     *
+     * @throws IllegalStateException
+     *             if no matrix has been set
+     * @throws IllegalArgumentException
+     *             if the buffer is null, or has less than 8 bytes per element
+     *             of the matrix remaining
+     */
+    public void getMatrix(ByteBuffer target)
+    {
+        if (values == null)
+        {
+            throw new IllegalStateException("No matrix has been set");
+        }
+        if (target == null)
+        {
+            throw new IllegalArgumentException("Target buffer cannot be null");
+        }
+        long size = (long) values.length * 8;
+        if (target.remaining() < size)
+        {
+            throw new IllegalArgumentException("The matrix needs " + size
+                    + " bytes, but the buffer has " + target.remaining()
+                    + " bytes remaining");
+        }
+        target.duplicate().order(ByteOrder.nativeOrder()).asDoubleBuffer()
+                .put(values);
+    }
+
+    /**
+     * @return the flat array of the matrix (not a copy), in row-major order
+     */
+    public double[] getFlatMatrix()
+    {
+        return values;
+    }
+
+    /**
+     * Sets the matrix from its flat array, in row-major order, which is not
+     * copied.
+     */
+    public void setMatrix(double[] values, long[] dims)
+    {
+        long size = 1;
+        for (long dim : dims)
+        {
+            size *= dim;
+        }
+        if (dims.length != 5 || size != values.length)
+        {
+            throw new IllegalArgumentException(
+                    "Matrix size doesn't match the dimensions");
+        }
+        this.values = values;
+        this.dims = dims.clone();
+        this.strides = getStrides(dims);
+    }
+
+    /**
+     * @return the dimensions of the matrix
+     */
+    public long[] getDims()
+    {
+        return dims.clone();
+    }
+
+    /**
+     * @return the offsets in the flat array between consecutive elements of
+     *         each dimension
+     */
+    public long[] getStrides()
+    {
+        return strides.clone();
     }
 
     public double getGMV()
@@ -24,4 +168,19 @@ public class DisaggregationResult
     {
         this.gmv = gmv;
     }
+
+    /**
+     * Row-major strides for the given dimensions.
+     */
+    public static long[] getStrides(long[] dims)
+    {
+        long[] strides = new long[dims.length];
+        long stride = 1;
+        for (int i = dims.length - 1; i >= 0; i--)
+        {
+            strides[i] = stride;
+            stride *= dims[i];
+        }
+        return strides;
+    }
 }
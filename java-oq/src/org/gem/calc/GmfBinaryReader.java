@@ -0,0 +1,143 @@
+package org.gem.calc;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gem.engine.hazard.redis.Cache;
+
+/**
+ * Reads the ground motion fields written by {@link GmfBinaryWriter} (see there
+ * for the format).
+ */
+public class GmfBinaryReader {
+
+    private static Log logger = LogFactory.getLog(GmfBinaryReader.class);
+
+    private final String gmfId;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final List<Integer> ruptureIndices = new ArrayList<Integer>();
+    private final List<int[]> siteIndices = new ArrayList<int[]>();
+    private final List<double[]> values = new ArrayList<double[]>();
+
+    /**
+     * Reads the ground motion fields stored in the cache under the given key.
+     */
+    public GmfBinaryReader(Cache cache, String key) {
+        this(cache.getBytes(key));
+    }
+
+    /**
+     * Decodes the ground motion fields from their binary format.
+     */
+    public GmfBinaryReader(byte[] data) {
+        if (data == null) {
+            String msg = "Ground motion field data cannot be null";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != GmfBinaryWriter.MAGIC) {
+                String msg = "Not binary ground motion field data";
+                logger.error(msg);
+                throw new IllegalArgumentException(msg);
+            }
+            int version = in.readInt();
+            if (version != GmfBinaryWriter.VERSION) {
+                String msg =
+                        "Unsupported ground motion field format version: "
+                                + version;
+                logger.error(msg);
+                throw new IllegalArgumentException(msg);
+            }
+            gmfId = in.readUTF();
+            int numSites = in.readInt();
+            latitudes = new double[numSites];
+            longitudes = new double[numSites];
+            for (int i = 0; i < numSites; i++) {
+                latitudes[i] = in.readDouble();
+                longitudes[i] = in.readDouble();
+            }
+
+            // the rupture records are read in bulk
+            ByteBuffer buffer =
+                    ByteBuffer.wrap(data, data.length - in.available(),
+                            in.available());
+            while (buffer.hasRemaining()) {
+                ruptureIndices.add(buffer.getInt());
+                int n = buffer.getInt();
+                int[] sites = new int[n];
+                double[] gmvs = new double[n];
+                buffer.asIntBuffer().get(sites);
+                buffer.position(buffer.position() + 4 * n);
+                buffer.asDoubleBuffer().get(gmvs);
+                buffer.position(buffer.position() + 8 * n);
+                siteIndices.add(sites);
+                values.add(gmvs);
+            }
+        } catch (IOException e) {
+            String msg = "Truncated ground motion field data";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg, e);
+        } catch (BufferUnderflowException e) {
+            String msg = "Truncated ground motion field data";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg, e);
+        }
+    }
+
+    public String getGmfId() {
+        return gmfId;
+    }
+
+    public int getNumSites() {
+        return latitudes.length;
+    }
+
+    public double getLatitude(int site) {
+        return latitudes[site];
+    }
+
+    public double getLongitude(int site) {
+        return longitudes[site];
+    }
+
+    /**
+     * @return the number of rupture records
+     */
+    public int getNumRuptures() {
+        return ruptureIndices.size();
+    }
+
+    /**
+     * @return the index (in the stochastic event set) of the i-th rupture
+     *         record
+     */
+    public int getRuptureIndex(int i) {
+        return ruptureIndices.get(i);
+    }
+
+    /**
+     * @return the indices of the sites of the i-th rupture record
+     */
+    public int[] getSiteIndices(int i) {
+        return siteIndices.get(i);
+    }
+
+    /**
+     * @return the ground motion values of the i-th rupture record, in the
+     *         order of {@link #getSiteIndices(int)}
+     */
+    public double[] getValues(int i) {
+        return values.get(i);
+    }
+}
@@ -0,0 +1,146 @@
+package org.gem.calc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gem.engine.hazard.redis.Cache;
+import org.opensha.commons.data.Site;
+
+/**
+ * Writes the ground motion fields of a stochastic event set to a Cache in a
+ * compact binary format, one rupture at a time (so the fields of the whole
+ * event set never have to be held in memory, or encoded as one big string).<br>
+ * <br>
+ * All values are big-endian. The value stored under the key is a header:<br>
+ * int MAGIC, int VERSION, gmf id (as written by
+ * {@link DataOutputStream#writeUTF(String)}), int number of sites, and the
+ * latitude and longitude (doubles) of each site<br>
+ * followed by one record for each rupture:<br>
+ * int rupture index, int number of values n, int[n] site indices, double[n]
+ * ground motion values<br>
+ * <br>
+ * The site indices refer to the order of the sites in the header. The values
+ * are those computed by the {@link GroundMotionFieldCalculator}, i.e. the
+ * natural logarithm of the ground motion. See {@link GmfBinaryReader} for the
+ * matching reader.
+ */
+public class GmfBinaryWriter {
+
+    private static Log logger = LogFactory.getLog(GmfBinaryWriter.class);
+
+    /**
+     * "GMFB"
+     */
+    public static final int MAGIC = 0x474D4642;
+
+    public static final int VERSION = 1;
+
+    private final Cache cache;
+    private final String key;
+    private final List<Site> sites;
+
+    /**
+     * Writes the header (replacing any value stored under the key).
+     *
+     * @param cache
+     * @param key
+     *            the cache key under which the fields are stored
+     * @param gmfId
+     *            identifier of the stochastic event set
+     * @param sites
+     *            the sites of the ground motion fields
+     */
+    public GmfBinaryWriter(Cache cache, String key, String gmfId,
+            List<Site> sites) {
+        if (cache == null) {
+            String msg = "Cache cannot be null";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.cache = cache;
+        this.key = key;
+        this.sites = sites;
+        logger.debug("Saving GMF to " + key);
+        cache.set(key, encodeHeader(gmfId, sites));
+    }
+
+    /**
+     * Appends the ground motion field of a rupture. Sites that are not in the
+     * field are skipped.
+     *
+     * @param ruptureIndex
+     *            index of the rupture in the stochastic event set
+     * @param groundMotionField
+     *            ground motion values keyed by the sites given to the
+     *            constructor
+     */
+    public void write(int ruptureIndex, Map<Site, Double> groundMotionField) {
+        cache.append(key, encodeRupture(ruptureIndex, sites,
+                groundMotionField));
+    }
+
+    /**
+     * @return the header of the binary format, for the given gmf id and
+     *         sites
+     */
+    public static byte[] encodeHeader(String gmfId, List<Site> sites) {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(16 + gmfId.length() + 16
+                        * sites.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(gmfId);
+            out.writeInt(sites.size());
+            for (Site site : sites) {
+                out.writeDouble(site.getLocation().getLatitude());
+                out.writeDouble(site.getLocation().getLongitude());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // can't happen with a ByteArrayOutputStream
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the record of the binary format for the ground motion field of
+     *         a rupture
+     */
+    public static byte[] encodeRupture(int ruptureIndex, List<Site> sites,
+            Map<Site, Double> groundMotionField) {
+        int numSites = sites.size();
+        int[] siteIndices = new int[numSites];
+        double[] values = new double[numSites];
+        int n = 0;
+        for (int i = 0; i < numSites; i++) {
+            Double value = groundMotionField.get(sites.get(i));
+            if (value != null) {
+                siteIndices[n] = i;
+                values[n++] = value;
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 12 * n);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(ruptureIndex);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++)
+                out.writeInt(siteIndices[i]);
+            for (int i = 0; i < n; i++)
+                out.writeDouble(values[i]);
+            out.flush();
+        } catch (IOException e) {
+            // can't happen with a ByteArrayOutputStream
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -1,17 +1,16 @@
 package org.gem.calc;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.commons.math.linear.CholeskyDecompositionImpl;
-import org.apache.commons.math.linear.OpenMapRealMatrix;
-import org.apache.commons.math.linear.RealMatrix;
 import org.opensha.commons.data.Site;
-import org.opensha.commons.geo.LocationUtils;
+import org.opensha.commons.geo.Location;
 import org.opensha.sha.earthquake.EqkRupture;
 import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
 import org.opensha.sha.imr.param.IntensityMeasureParams.PeriodParam;
@@ -41,10 +40,41 @@ public class GroundMotionFieldCalculator {
 	 */
 	private List<Site> sites;
 	/**
-	 * lower triangular matrix obtained from cholesky decomposition of
-	 * covariance matrix (used for correlated ground motion field calculations)
+	 * Maximum number of correlation matrix decompositions kept in
+	 * correlationFactorCache
 	 */
-	private RealMatrix lowerTriangularCovarianceMatrix;
+	private static final int MAX_CACHED_CORRELATION_FACTORS = 4;
+
+	/**
+	 * sparse lower triangular matrices obtained from cholesky decomposition of
+	 * Jayaram and Baker (2009) correlation matrices, shared by all the
+	 * calculators (and thus by all the ruptures of a stochastic event set),
+	 * and keyed on what they depend on (see CorrelationKey). The least
+	 * recently used one is removed when the cache is full.
+	 */
+	private static final Map<CorrelationKey, SparseCorrelationFactor> correlationFactorCache = new LinkedHashMap<CorrelationKey, SparseCorrelationFactor>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<CorrelationKey, SparseCorrelationFactor> eldest) {
+			return size() > MAX_CACHED_CORRELATION_FACTORS;
+		}
+	};
+
+	/**
+	 * lower triangular matrix obtained from cholesky decomposition of the
+	 * correlation matrix of the intra-event residuals (used for correlated
+	 * ground motion field calculations)
+	 */
+	private SparseCorrelationFactor lowerTriangularCorrelationMatrix;
+
+	/**
+	 * intra-event standard deviation at each site (used for correlated ground
+	 * motion field calculations)
+	 */
+	private double[] intraEventStdDevs;
 
 	/**
 	 * Jayaram and Baker 2009 Vs30 cluster parameter. The default is false (no
@@ -90,9 +120,10 @@ public class GroundMotionFieldCalculator {
 		this.rup = rup;
 		this.sites = sites;
 		// the lower triangular matrix coming from cholesky decomposition of
-		// covariance matrix is set to null and calculated only if correlated
-		// ground motion calculation is requested
-		lowerTriangularCovarianceMatrix = null;
+		// correlation matrix is set to null and calculated (or taken from the
+		// cache) only if correlated ground motion calculation is requested
+		lowerTriangularCorrelationMatrix = null;
+		intraEventStdDevs = null;
 	}
 
 	/**
@@ -177,7 +208,17 @@ public class GroundMotionFieldCalculator {
 	 * Intra-event residuals are calculated by generating Gaussian deviates from
 	 * a multivariate normal distribution using Cholesky factorization
 	 * (decompose covariance matrix, take lower triangular and multiply by a
-	 * vector of uncorrelated, standard Gaussian variables)
+	 * vector of uncorrelated, standard Gaussian variables). The covariance
+	 * matrix is D*R*D, where R is the correlation matrix (which only depends on
+	 * the site locations, the period, the Vs30 clustering flag and the
+	 * correlation truncation level) and D is the diagonal matrix of the
+	 * intra-event standard deviations (which depend on the rupture), so its
+	 * lower triangular matrix is D times that of R: the decomposition of R is
+	 * cached and reused for all the ruptures, and only the standard deviations
+	 * are computed for each rupture. R is sparse (correlations beyond the
+	 * truncation distance are zero), and so is its decomposition (see
+	 * {@link SparseCorrelationFactor}), so large numbers of sites can be
+	 * handled.
 	 *
 	 * @param rn
 	 *            : {@link Random} random number generator
@@ -193,20 +234,14 @@ public class GroundMotionFieldCalculator {
 		checkRandomNumberIsNotNull(rn);
 		validateInputCorrelatedGmfCalc(attenRel);
 
-		// covariance matrix and cholesky decompositions are computed only once.
-		// If multiple ground motion fields are needed for
-		// the same rupture, these calculations are not redone.
-		if (lowerTriangularCovarianceMatrix == null) {
-			CholeskyDecompositionImpl cholDecomp = null;
-			try {
-				cholDecomp = new CholeskyDecompositionImpl(
-						getCovarianceMatrix_JB2009());
-			} catch (Exception e) {
-				String msg = "Unexpected exception: " + e.getMessage();
-				logger.error(msg);
-				throw new RuntimeException(e);
-			}
-			lowerTriangularCovarianceMatrix = cholDecomp.getL();
+		// the correlation matrix decomposition is computed only once for the
+		// same sites and period (see correlationFactorCache), and the
+		// intra-event standard deviations once per rupture. If multiple ground
+		// motion fields are needed for the same rupture, these calculations
+		// are not redone.
+		if (lowerTriangularCorrelationMatrix == null) {
+			lowerTriangularCorrelationMatrix = getCorrelationFactor_JB2009();
+			intraEventStdDevs = getIntraEventStdDevs();
 		}
 
 		Map<Site, Double> groundMotionField = getMeanGroundMotionField();
@@ -280,7 +315,9 @@ public class GroundMotionFieldCalculator {
 
 	/**
 	 * Compute intra-event residuals, by multiplying the lower triangular matrix
-	 * with a vector of univariate Gaussian deviates
+	 * of the correlation matrix with a vector of univariate Gaussian deviates,
+	 * and scaling the result by the intra-event standard deviation of each
+	 * site
 	 */
 	private void computeAndAddCorrelatedIntraEventResidual(Random rn,
 			Map<Site, Double> groundMotionField) {
@@ -298,13 +335,14 @@ public class GroundMotionFieldCalculator {
 							.getValue(), rn);
 		}
 
-		double[] intraEventResiduals = lowerTriangularCovarianceMatrix
-				.operate(gaussianDeviates);
+		double[] correlatedDeviates = lowerTriangularCorrelationMatrix
+				.correlate(gaussianDeviates);
 
 		int indexSite = 0;
 		for (Site site : sites) {
 			double val = groundMotionField.get(site);
-			groundMotionField.put(site, val + intraEventResiduals[indexSite]);
+			groundMotionField.put(site, val + intraEventStdDevs[indexSite]
+					* correlatedDeviates[indexSite]);
 			indexSite = indexSite + 1;
 		}
 
@@ -367,26 +405,16 @@ public class GroundMotionFieldCalculator {
 	}
 
 	/**
-	 * Calculates covariance matrix for intra-event residuals using correlation
-	 * model of Jayamram & Baker (2009):
+	 * Returns the lower triangular matrix of the cholesky decomposition of the
+	 * correlation matrix of the intra-event residuals, using correlation model
+	 * of Jayamram & Baker (2009):
 	 * "Correlation model for spatially distributed ground-motion intensities"
 	 * Nirmal Jayaram and Jack W. Baker, Earthquake Engng. Struct. Dyn (2009)
-	 *
-	 * @return covariance matrix as {@link OpenMapRealMatrix}
+	 * The decomposition is taken from the cache if it has already been
+	 * computed for the same sites, period, Vs30 clustering flag and
+	 * correlation truncation level.
 	 */
-	private OpenMapRealMatrix getCovarianceMatrix_JB2009() {
-
-		logger.debug("Compute covariance matrix...");
-		// get current time
-		long start = System.currentTimeMillis();
-
-		int numberOfSites = sites.size();
-		OpenMapRealMatrix covarianceMatrix = new OpenMapRealMatrix(
-				numberOfSites, numberOfSites);
-
-		attenRel.setEqkRupture(rup);
-		attenRel.getParameter(StdDevTypeParam.NAME).setValue(
-				StdDevTypeParam.STD_DEV_TYPE_INTRA);
+	private SparseCorrelationFactor getCorrelationFactor_JB2009() {
 
 		// default value for period is zero. Only if spectral acceleration
 		// calculation is requested, the value of the period variable is
@@ -398,6 +426,21 @@ public class GroundMotionFieldCalculator {
 					.getValue();
 		}
 
+		CorrelationKey key = new CorrelationKey(sites, period,
+				JB2009_Vs30ClusterParam, correlationTruncationLevel);
+		SparseCorrelationFactor factor;
+		synchronized (correlationFactorCache) {
+			factor = correlationFactorCache.get(key);
+		}
+		if (factor != null) {
+			logger.debug("Correlation matrix decomposition found in cache");
+			return factor;
+		}
+
+		logger.debug("Compute correlation matrix decomposition...");
+		// get current time
+		long start = System.currentTimeMillis();
+
 		double correlationRange = Double.NaN;
 		if (period < 1 && JB2009_Vs30ClusterParam == false)
 			correlationRange = 8.5 + 17.2 * period;
@@ -405,32 +448,31 @@ public class GroundMotionFieldCalculator {
 			correlationRange = 40.7 - 15.0 * period;
 		else if (period >= 1)
 			correlationRange = 22.0 + 3.7 * period;
-		double intraEventStd_i = Double.NaN;
-		double intraEventStd_j = Double.NaN;
-		double distance = Double.NaN;
-		double covarianceValue = Double.NaN;
-		for (int i = 0; i < numberOfSites; i++) {
-			Site site_i = sites.get(i);
-			attenRel.setSite(site_i);
-			intraEventStd_i = attenRel.getStdDev();
-			logger.debug("Covariance matrix row: " + (i + 1) + " of "
-					+ numberOfSites);
-			for (int j = i; j < numberOfSites; j++) {
-				Site site_j = sites.get(j);
-				distance = LocationUtils.horzDistance(site_i.getLocation(),
-						site_j.getLocation());
-				if (distance > correlationTruncationLevel * correlationRange) {
-					continue;
-				}
-				attenRel.setSite(site_j);
-				intraEventStd_j = attenRel.getStdDev();
-				covarianceValue = intraEventStd_i * intraEventStd_j
-						* Math.exp(-3 * (distance / correlationRange));
-				covarianceMatrix.setEntry(i, j, covarianceValue);
-				covarianceMatrix.setEntry(j, i, covarianceValue);
-			}
+		factor = new SparseCorrelationFactor(sites, correlationRange,
+				correlationTruncationLevel * correlationRange);
+		synchronized (correlationFactorCache) {
+			correlationFactorCache.put(key, factor);
 		}
-		return covarianceMatrix;
+
+		getAndPrintElapsedTime(start);
+
+		return factor;
+	}
+
+	/**
+	 * Returns the intra-event standard deviation at each site, for the
+	 * rupture
+	 */
+	private double[] getIntraEventStdDevs() {
+		attenRel.setEqkRupture(rup);
+		attenRel.getParameter(StdDevTypeParam.NAME).setValue(
+				StdDevTypeParam.STD_DEV_TYPE_INTRA);
+		double[] stdDevs = new double[sites.size()];
+		for (int i = 0; i < stdDevs.length; i++) {
+			attenRel.setSite(sites.get(i));
+			stdDevs[i] = attenRel.getStdDev();
+		}
+		return stdDevs;
 	}
 
 	private static Boolean validateInput(
@@ -494,4 +536,47 @@ public class GroundMotionFieldCalculator {
 		logger.debug("Elapsed time (min): " + elapsedTimeMin + "\n");
 	}
 
+	/**
+	 * Key of correlationFactorCache: the site locations, the period, the Vs30
+	 * clustering flag and the correlation truncation level
+	 */
+	private static final class CorrelationKey {
+
+		private final List<Location> locations;
+		private final double period;
+		private final boolean vs30Cluster;
+		private final double truncationLevel;
+
+		CorrelationKey(List<Site> sites, double period, boolean vs30Cluster,
+				double truncationLevel) {
+			locations = new ArrayList<Location>(sites.size());
+			for (Site site : sites) {
+				locations.add(site.getLocation());
+			}
+			this.period = period;
+			this.vs30Cluster = vs30Cluster;
+			this.truncationLevel = truncationLevel;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CorrelationKey))
+				return false;
+			CorrelationKey key = (CorrelationKey) obj;
+			return period == key.period && vs30Cluster == key.vs30Cluster
+					&& truncationLevel == key.truncationLevel
+					&& locations.equals(key.locations);
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(period) * 31
+					+ Double.doubleToLongBits(truncationLevel);
+			return ((int) (bits ^ (bits >>> 32)) * 31 + locations.hashCode())
+					* 31 + (vs30Cluster ? 1 : 0);
+		}
+	}
+
 }
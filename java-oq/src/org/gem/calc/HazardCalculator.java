@@ -3,13 +3,21 @@ package org.gem.calc;
 import java.rmi.RemoteException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -21,6 +29,8 @@ import org.opensha.commons.data.function.DiscretizedFuncAPI;
 import org.opensha.sha.calc.HazardCurveCalculator;
 import org.opensha.sha.earthquake.EqkRupForecastAPI;
 import org.opensha.sha.earthquake.EqkRupture;
+import org.opensha.sha.earthquake.ProbEqkSource;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
 import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
 import org.opensha.sha.util.TectonicRegionType;
 
@@ -37,6 +47,13 @@ public class HazardCalculator {
 
     private static Log logger = LogFactory.getLog(HazardCalculator.class);
 
+    /**
+     * Number of sites whose hazard curves are computed together, in a single
+     * pass over the ruptures of the forecast (see
+     * {@link HazardCurveCalculator#getHazardCurves(List, List, Map, EqkRupForecastAPI)}).
+     */
+    private static final int SITE_BLOCK_SIZE = 100;
+
     /**
      * Calculate hazard curves for a set of sites from an earthquake rupture
      * forecast using the classical PSHA approach
@@ -64,47 +81,198 @@ public class HazardCalculator {
                     Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
                     Double[] imlVals, double integrationDistance) {
         validateInput(siteList, erf, gmpeMap);
-        if (imlVals == null) {
-            String msg = "Array of intensity measure levels cannot be null";
-            logger.error(msg);
-            throw new IllegalArgumentException(msg);
+        validateImlVals(imlVals);
+        Map<Site, DiscretizedFuncAPI> results =
+                new HashMap<Site, DiscretizedFuncAPI>();
+        HazardCurveCalculator curveCalculator = null;
+        try {
+            curveCalculator = new HazardCurveCalculator();
+            curveCalculator.setMaxSourceDistance(integrationDistance);
+            int numSites = siteList.size();
+            for (int from = 0; from < numSites; from += SITE_BLOCK_SIZE) {
+                List<Site> block =
+                        siteList.subList(from,
+                                Math.min(from + SITE_BLOCK_SIZE, numSites));
+                results.putAll(computeHazardCurves(curveCalculator, block,
+                        erf, gmpeMap, imlVals));
+                logger.info("Computed hazard curve for site #" + (from + block.size()) + " of " + numSites);
+            }
+        } catch (RemoteException e) {
+            logger.error(e);
+            throw new RuntimeException(e);
         }
-        if (imlVals.length == 0) {
-            String msg =
-                    "Array of intensity measure levels must"
-                            + " contain at least one value";
+        return results;
+    }
+
+    /**
+     * Calculate hazard curves for a set of sites using a pool of
+     * <code>numThreads</code> worker threads.
+     *
+     * The site list is split into contiguous blocks, one per worker. Each
+     * worker has its own {@link HazardCurveCalculator} and its own copy of
+     * the GMPEs in <code>gmpeMap</code> (see
+     * {@link CalcUtils#copyGmpeMap(Map)}), because both keep per-site and
+     * per-rupture state. The earthquake rupture forecast is shared, so its
+     * forecast must be up to date before calling this method. Only a
+     * {@link GEM1ERF} is shared, as its sources can be taken by several
+     * threads at the same time (see {@link GEM1ERF#getSource(int)}); the
+     * sources of other forecasts may keep per-rupture state, so for them the
+     * curves are computed serially. The resulting curves are the same as the
+     * ones computed by
+     * {@link #getHazardCurves(List, EqkRupForecastAPI, Map, Double[], double)}.
+     *
+     * @param siteList
+     *            : list of sites ({@link Site}) where to compute hazard curves
+     * @param erf
+     *            : earthquake rupture forecast {@link EqkRupForecastAPI}
+     * @param gmpeMap
+     *            : map associating tectonic region types (
+     *            {@link TectonicRegionType}) with attenuation relationships (
+     *            {@link ScalarIntensityMeasureRelationshipAPI})
+     * @param imlVals
+     *            : intensity measure levels (double[]) for which calculating
+     *            probabilities of exceedence
+     * @param integrationDistance
+     *            : maximum distance used for integration
+     * @param numThreads
+     *            : number of worker threads; 1 runs the serial calculation
+     * @return
+     */
+    public static
+            Map<Site, DiscretizedFuncAPI>
+            getHazardCurves(
+                    List<Site> siteList,
+                    EqkRupForecastAPI erf,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+                    final Double[] imlVals, final double integrationDistance,
+                    int numThreads) {
+        if (numThreads < 1) {
+            String msg = "Number of threads must be at least 1";
             logger.error(msg);
             throw new IllegalArgumentException(msg);
         }
+        if (numThreads == 1 || siteList == null || siteList.size() < 2) {
+            return getHazardCurves(siteList, erf, gmpeMap, imlVals,
+                    integrationDistance);
+        }
+        if (!(erf instanceof GEM1ERF)) {
+            logger.warn("Earthquake rupture forecast "
+                    + (erf == null ? null : erf.getClass().getName())
+                    + " can't be shared between threads,"
+                    + " computing hazard curves serially");
+            return getHazardCurves(siteList, erf, gmpeMap, imlVals,
+                    integrationDistance);
+        }
+        validateInput(siteList, erf, gmpeMap);
+        validateImlVals(imlVals);
+
+        final EqkRupForecastAPI sharedErf = erf;
+        final int numSites = siteList.size();
+        int numWorkers = Math.min(numThreads, numSites);
+        int blockSize = (numSites + numWorkers - 1) / numWorkers;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        List<Future<Map<Site, DiscretizedFuncAPI>>> blocks =
+                new ArrayList<Future<Map<Site, DiscretizedFuncAPI>>>();
         Map<Site, DiscretizedFuncAPI> results =
                 new HashMap<Site, DiscretizedFuncAPI>();
-        HazardCurveCalculator curveCalculator = null;
         try {
-            curveCalculator = new HazardCurveCalculator();
-            curveCalculator.setMaxSourceDistance(integrationDistance);
-            int site_num = 0;
-            for (Site site : siteList) {
-                site_num += 1;
-                DiscretizedFuncAPI hazardCurve =
-                        new ArbitrarilyDiscretizedFunc();
-                for (double val : imlVals)
-                    hazardCurve.set(val, 1.0);
-                curveCalculator.getHazardCurve(hazardCurve, site, gmpeMap, erf);
-                if ((site_num % 100) == 0) {
-                    logger.info("Computed hazard curve for site #" + site_num + " of " + siteList.size());
-                }
-                results.put(site, hazardCurve);
+            for (int from = 0; from < numSites; from += blockSize) {
+                final List<Site> block =
+                        siteList.subList(from,
+                                Math.min(from + blockSize, numSites));
+                // GMPEs are copied here, not in the worker, so that the
+                // original instances are only ever touched by this thread
+                final Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> workerGmpeMap =
+                        CalcUtils.copyGmpeMap(gmpeMap);
+                blocks.add(executor
+                        .submit(new Callable<Map<Site, DiscretizedFuncAPI>>() {
+                            @Override
+                            public Map<Site, DiscretizedFuncAPI> call()
+                                    throws RemoteException {
+                                HazardCurveCalculator curveCalculator =
+                                        new HazardCurveCalculator();
+                                curveCalculator
+                                        .setMaxSourceDistance(integrationDistance);
+                                Map<Site, DiscretizedFuncAPI> curves =
+                                        new HashMap<Site, DiscretizedFuncAPI>();
+                                for (int from = 0; from < block.size(); from +=
+                                        SITE_BLOCK_SIZE) {
+                                    curves.putAll(computeHazardCurves(
+                                            curveCalculator, block.subList(
+                                                    from, Math.min(from
+                                                            + SITE_BLOCK_SIZE,
+                                                            block.size())),
+                                            sharedErf, workerGmpeMap, imlVals));
+                                }
+                                return curves;
+                            }
+                        }));
             }
-            if ((site_num % 100) != 0) {
-                logger.info("Computed hazard curve for site #" + site_num + " of " + siteList.size());
+            int site_num = 0;
+            for (Future<Map<Site, DiscretizedFuncAPI>> block : blocks) {
+                Map<Site, DiscretizedFuncAPI> curves = block.get();
+                results.putAll(curves);
+                site_num += curves.size();
+                logger.info("Computed hazard curve for site #" + site_num + " of " + numSites);
             }
-        } catch (RemoteException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             logger.error(e);
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            logger.error(e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
         return results;
     }
 
+    /**
+     * Computes the hazard curves of a block of sites in a single pass over
+     * the ruptures of the forecast.
+     */
+    private static Map<Site, DiscretizedFuncAPI> computeHazardCurves(
+            HazardCurveCalculator curveCalculator,
+            List<Site> sites,
+            EqkRupForecastAPI erf,
+            Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+            Double[] imlVals) throws RemoteException {
+        List<DiscretizedFuncAPI> hazardCurves =
+                new ArrayList<DiscretizedFuncAPI>(sites.size());
+        for (int i = 0; i < sites.size(); i++) {
+            DiscretizedFuncAPI hazardCurve = new ArbitrarilyDiscretizedFunc();
+            for (double val : imlVals)
+                hazardCurve.set(val, 1.0);
+            hazardCurves.add(hazardCurve);
+        }
+        curveCalculator.getHazardCurves(hazardCurves, sites, gmpeMap, erf);
+        Map<Site, DiscretizedFuncAPI> curves =
+                new HashMap<Site, DiscretizedFuncAPI>();
+        for (int i = 0; i < sites.size(); i++)
+            curves.put(sites.get(i), hazardCurves.get(i));
+        return curves;
+    }
+
+    private static void validateImlVals(Double[] imlVals) {
+        if (imlVals == null) {
+            String msg = "Array of intensity measure levels cannot be null";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (imlVals.length == 0) {
+            String msg =
+                    "Array of intensity measure levels must"
+                            + " contain at least one value";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
     /**
      * Get the site/hazard curve pairs as a list of JSON Strings.
      *
@@ -130,10 +298,42 @@ public class HazardCalculator {
         return returnCurves.toArray(new String[returnCurves.size()]);
     }
 
+    /**
+     * Get the site/hazard curve pairs as a list of JSON Strings, computing the
+     * curves with <code>numThreads</code> worker threads (see
+     * {@link #getHazardCurves(List, EqkRupForecastAPI, Map, Double[], double, int)}).
+     *
+     * @param siteList
+     * @param erf
+     * @param gmpeMap
+     * @param imlVals
+     * @param integrationDistance
+     * @param numThreads
+     * @return
+     */
+    public static
+            String[]
+            getHazardCurvesAsJson(
+                    List<Site> siteList,
+                    EqkRupForecastAPI erf,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+                    Double[] imlVals, double integrationDistance,
+                    int numThreads) {
+        Map<Site, DiscretizedFuncAPI> curves =
+                getHazardCurves(siteList, erf, gmpeMap, imlVals,
+                        integrationDistance, numThreads);
+        List<String> returnCurves =
+                JsonSerializer.hazardCurvesToJson(curves, siteList);
+        return returnCurves.toArray(new String[returnCurves.size()]);
+    }
+
     /**
      * Calculate ground motion fields (correlated or uncorrelated) from a
      * stochastic event set generated through random sampling of an earthquake
-     * rupture forecast
+     * rupture forecast. A rupture occurring several times in the event set
+     * only keeps the ground motion field of its last occurrence; use
+     * {@link #getGroundMotionFieldsPerOccurrence(List, EqkRupForecastAPI, Map, Random, boolean)}
+     * to get all of them.
      *
      * @param siteList
      *            : list of sites ({@link Site}) where to compute ground motion
@@ -159,34 +359,297 @@ public class HazardCalculator {
                     EqkRupForecastAPI erf,
                     Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
                     Random rn, boolean correlation) {
+        Map<EqkRupture, List<Map<Site, Double>>> occurrenceFields =
+                getGroundMotionFieldsPerOccurrence(siteList, erf, gmpeMap, rn,
+                        correlation);
+        Map<EqkRupture, Map<Site, Double>> groundMotionFields =
+                new HashMap<EqkRupture, Map<Site, Double>>();
+        for (Map.Entry<EqkRupture, List<Map<Site, Double>>> entry : occurrenceFields
+                .entrySet()) {
+            List<Map<Site, Double>> fields = entry.getValue();
+            groundMotionFields.put(entry.getKey(), fields
+                    .get(fields.size() - 1));
+        }
+        return groundMotionFields;
+    }
+
+    /**
+     * Calculate ground motion fields (correlated or uncorrelated) from a
+     * stochastic event set generated through random sampling of an earthquake
+     * rupture forecast, as
+     * {@link #getGroundMotionFields(List, EqkRupForecastAPI, Map, Random, boolean)}
+     * does, except that a rupture occurring several times in the event set
+     * gets a ground motion field for each occurrence.
+     *
+     * @param siteList
+     *            : list of sites ({@link Site}) where to compute ground motion
+     *            values
+     * @param erf
+     *            : earthquake rupture forecast {@link EqkRupForecastAPI}
+     * @param gmpeMap
+     *            : map associating tectonic region types (
+     *            {@link TectonicRegionType}) with attenuation relationships (
+     *            {@link ScalarIntensityMeasureRelationshipAPI})
+     * @param rn
+     *            : random ({@link Random}) number generator
+     * @param : correlation flag, if true compute correlated ground motion
+     *        fields using Jayaram and Baker (2009) correlation model
+     *        considering no Vs30 clustering; if false compute uncorrelated
+     *        ground motion fields
+     * @return the ruptures of the event set, in the order of the event set,
+     *         each with the ground motion fields of its occurrences
+     */
+    public static
+            Map<EqkRupture, List<Map<Site, Double>>>
+            getGroundMotionFieldsPerOccurrence(
+                    List<Site> siteList,
+                    EqkRupForecastAPI erf,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+                    Random rn, boolean correlation) {
         validateInput(siteList, erf, gmpeMap);
         if (rn == null) {
             String msg = "Random number generator cannot be null";
             logger.error(msg);
             throw new IllegalArgumentException(msg);
         }
-        Map<EqkRupture, Map<Site, Double>> groundMotionFields =
-                new HashMap<EqkRupture, Map<Site, Double>>();
-        List<EqkRupture> eqkRupList =
+        StochasticEventSet eventSet =
                 StochasticEventSetGenerator
-                        .getStochasticEventSetFromPoissonianERF(erf, rn);
-        for (EqkRupture rup : eqkRupList) {
-            logger.debug("rupture mag is " + rup.getMag());
-            GroundMotionFieldCalculator gmfCalc =
+                        .getStochasticEventSetFromPoissonianERF(erf, rn, 0);
+        return getGroundMotionFields(siteList, erf, gmpeMap, eventSet, rn,
+                correlation);
+    }
+
+    /**
+     * Calculate the ground motion fields of the events of a stochastic event
+     * set in compact form, drawing them one after the other from rn.
+     */
+    private static
+            Map<EqkRupture, List<Map<Site, Double>>>
+            getGroundMotionFields(
+                    List<Site> siteList,
+                    EqkRupForecastAPI erf,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+                    StochasticEventSet eventSet, Random rn, boolean correlation) {
+        Map<EqkRupture, List<Map<Site, Double>>> groundMotionFields =
+                new LinkedHashMap<EqkRupture, List<Map<Site, Double>>>();
+        ProbEqkSource src = null;
+        for (int j = 0; j < eventSet.getNumEntries(); j++) {
+            // the entries of a source are consecutive
+            if (j == 0
+                    || eventSet.getSourceIndex(j) != eventSet
+                            .getSourceIndex(j - 1))
+                src = erf.getSource(eventSet.getSourceIndex(j));
+            EqkRupture rup = eventSet.getRupture(src, j);
+            groundMotionFields.put(rup, getGroundMotionFields(rup, eventSet
+                    .getNumOccurrences(j), siteList, gmpeMap, rn, correlation));
+        }
+        return groundMotionFields;
+    }
+
+    /**
+     * Calculate the ground motion fields of numOccurrences occurrences of a
+     * rupture, drawing them one after the other from rn.
+     */
+    private static
+            List<Map<Site, Double>>
+            getGroundMotionFields(
+                    EqkRupture rup,
+                    int numOccurrences,
+                    List<Site> siteList,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+                    Random rn, boolean correlation) {
+        logger.debug("rupture mag is " + rup.getMag());
+        GroundMotionFieldCalculator gmfCalc =
                 new GroundMotionFieldCalculator(
-                        gmpeMap.get(rup.getTectRegType()),rup,siteList);
-            if (correlation == true) {
-                groundMotionFields.put(rup, gmfCalc
-                        .getCorrelatedGroundMotionField_JB2009(
-                        		rn));
-            } else {
-                groundMotionFields.put(rup, gmfCalc
-                        .getUncorrelatedGroundMotionField(rn));
+                        gmpeMap.get(rup.getTectRegType()), rup, siteList);
+        List<Map<Site, Double>> fields =
+                new ArrayList<Map<Site, Double>>(numOccurrences);
+        for (int k = 0; k < numOccurrences; k++)
+            fields.add(getGroundMotionField(gmfCalc, rn, correlation));
+        return fields;
+    }
+
+    /**
+     * Calculate ground motion fields (correlated or uncorrelated) for each
+     * event of stochastic event sets in compact form, with
+     * <code>numThreads</code> worker threads. Instead of a single random
+     * number generator, each event uses its own random number stream, derived
+     * from the seed (see {@link RandomStreams}): the ground motion field of the
+     * k-th occurrence of a rupture in event set i is computed with the stream
+     * identified by (i, source index, rupture index, k), so the results don't
+     * depend on the number of threads. Each rupture is created once, when its
+     * ground motion fields are computed, and repeated occurrences of a rupture
+     * each get their own ground motion field.
+     * <p>
+     * Each worker computes the ground motion fields with its own copy of the
+     * GMPEs. The earthquake rupture forecast is shared, so its forecast must
+     * be up to date before calling this method.
+     *
+     * @param eventSets
+     *            : stochastic event sets (see
+     *            {@link StochasticEventSetGenerator#getMultipleStochasticEventSetsFromPoissonianERF(EqkRupForecastAPI, int, long, int)})
+     * @param seed
+     *            : seed of the random number streams
+     * @param numThreads
+     *            : number of worker threads
+     * @return for each stochastic event set, the ground motion fields of its
+     *         events, in the order of the events (see
+     *         {@link StochasticEventSet})
+     * @see #getGroundMotionFieldsPerOccurrence(List, EqkRupForecastAPI, Map,
+     *      Random, boolean)
+     */
+    public static
+            List<List<Map<Site, Double>>>
+            getGroundMotionFields(
+                    final List<Site> siteList,
+                    final EqkRupForecastAPI erf,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
+                    final List<StochasticEventSet> eventSets, final long seed,
+                    final boolean correlation, int numThreads) {
+        validateInput(siteList, erf, gmpeMap);
+        if (eventSets == null) {
+            String msg = "List of stochastic event sets cannot be null";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (numThreads < 1) {
+            String msg = "Number of threads must be at least 1";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // the work is split in groups of consecutive entries of the same
+        // source, so that each source is got once per event set; for each
+        // group, its event set, first and last entry, and first event
+        int numGroups = 0;
+        for (StochasticEventSet eventSet : eventSets) {
+            for (int j = 0; j < eventSet.getNumEntries(); j++) {
+                if (j == 0
+                        || eventSet.getSourceIndex(j) != eventSet
+                                .getSourceIndex(j - 1))
+                    numGroups++;
             }
         }
-        return groundMotionFields;
+        final int[] groupEventSets = new int[numGroups];
+        final int[] groupFirstEntries = new int[numGroups];
+        final int[] groupEndEntries = new int[numGroups];
+        final int[] groupFirstEvents = new int[numGroups];
+        final List<List<Map<Site, Double>>> results =
+                new ArrayList<List<Map<Site, Double>>>(eventSets.size());
+        for (int i = 0, g = -1; i < eventSets.size(); i++) {
+            StochasticEventSet eventSet = eventSets.get(i);
+            for (int j = 0, event = 0; j < eventSet.getNumEntries(); j++) {
+                if (j == 0
+                        || eventSet.getSourceIndex(j) != eventSet
+                                .getSourceIndex(j - 1)) {
+                    g++;
+                    groupEventSets[g] = i;
+                    groupFirstEntries[g] = j;
+                    groupFirstEvents[g] = event;
+                }
+                groupEndEntries[g] = j + 1;
+                event += eventSet.getNumOccurrences(j);
+            }
+            results.add(new ArrayList<Map<Site, Double>>(Collections
+                    .<Map<Site, Double>> nCopies(eventSet.getNumEvents(),
+                            null)));
+        }
+        if (numGroups == 0) {
+            return results;
+        }
+
+        final AtomicInteger nextGroup = new AtomicInteger();
+        int numWorkers = Math.min(numThreads, numGroups);
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+        try {
+            for (int w = 0; w < numWorkers; w++) {
+                // GMPEs are copied here, not in the worker, so that the
+                // original instances are only ever touched by this thread
+                final Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> workerGmpeMap =
+                        CalcUtils.copyGmpeMap(gmpeMap);
+                workers.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int count = 0;
+                        for (int g = nextGroup.getAndIncrement(); g < groupEventSets.length; g =
+                                nextGroup.getAndIncrement()) {
+                            StochasticEventSet eventSet =
+                                    eventSets.get(groupEventSets[g]);
+                            // each worker sets distinct elements, and
+                            // Future.get() makes them visible
+                            List<Map<Site, Double>> fields =
+                                    results.get(groupEventSets[g]);
+                            ProbEqkSource src =
+                                    erf.getSource(eventSet
+                                            .getSourceIndex(groupFirstEntries[g]));
+                            int event = groupFirstEvents[g];
+                            for (int j = groupFirstEntries[g]; j < groupEndEntries[g]; j++) {
+                                EqkRupture rup = eventSet.getRupture(src, j);
+                                GroundMotionFieldCalculator gmfCalc =
+                                        new GroundMotionFieldCalculator(
+                                                workerGmpeMap.get(rup
+                                                        .getTectRegType()),
+                                                rup, siteList);
+                                for (int k = 0; k < eventSet
+                                        .getNumOccurrences(j); k++) {
+                                    Random rn =
+                                            RandomStreams
+                                                    .newRandom(
+                                                            seed,
+                                                            RandomStreams.GROUND_MOTION_FIELD,
+                                                            eventSet.getIndex(),
+                                                            eventSet.getSourceIndex(j),
+                                                            eventSet.getRuptureIndex(j),
+                                                            k);
+                                    fields.set(event++, getGroundMotionField(
+                                            gmfCalc, rn, correlation));
+                                    count++;
+                                }
+                            }
+                        }
+                        return count;
+                    }
+                }));
+            }
+            int event_num = 0;
+            for (Future<Integer> worker : workers) {
+                event_num += worker.get();
+            }
+            logger.info("Computed ground motion fields of " + event_num
+                    + " events in " + eventSets.size() + " event sets");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(e);
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            logger.error(e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
     }
 
+    /**
+     * Calculate the ground motion fields of a stochastic event set, as
+     * {@link #getGroundMotionFieldsPerOccurrence(List, EqkRupForecastAPI, Map, Random, boolean)}
+     * does, and save them to a cache one event at a time, in the binary format
+     * of {@link GmfBinaryWriter}. The events (each occurrence of a rupture) are
+     * identified by their index in the stochastic event set, the sites by
+     * their index in siteList.
+     *
+     * @param cache
+     *            : cache where to save the ground motion fields
+     * @param key
+     *            : cache key
+     * @param gmf_id
+     *            : identifier of the stochastic event set
+     * @see GmfBinaryReader
+     */
     public static
             void
             generateAndSaveGMFs(
@@ -197,21 +660,39 @@ public class HazardCalculator {
                     EqkRupForecastAPI erf,
                     Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap,
                     Random rn, boolean correlation) {
-        Map<EqkRupture, Map<Site, Double>> gmfs =
-                getGroundMotionFields(siteList, erf, gmpeMap, rn, correlation);
-
-        String[] site_ids = new String[siteList.size()];
-        ListIterator<Site> sites = siteList.listIterator();
-        while (sites.hasNext()) {
-            sites.next();
-            site_ids[sites.nextIndex() - 1] =
-                    Integer.toString(sites.nextIndex() - 1);
+        validateInput(siteList, erf, gmpeMap);
+        if (rn == null) {
+            String msg = "Random number generator cannot be null";
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        StochasticEventSet eventSet =
+                StochasticEventSetGenerator
+                        .getStochasticEventSetFromPoissonianERF(erf, rn, 0);
+        GmfBinaryWriter writer =
+                new GmfBinaryWriter(cache, key, gmf_id, siteList);
+        int eventIndex = 0;
+        ProbEqkSource src = null;
+        for (int j = 0; j < eventSet.getNumEntries(); j++) {
+            if (j == 0
+                    || eventSet.getSourceIndex(j) != eventSet
+                            .getSourceIndex(j - 1))
+                src = erf.getSource(eventSet.getSourceIndex(j));
+            EqkRupture rup = eventSet.getRupture(src, j);
+            for (Map<Site, Double> field : getGroundMotionFields(rup, eventSet
+                    .getNumOccurrences(j), siteList, gmpeMap, rn, correlation)) {
+                writer.write(eventIndex++, field);
+            }
         }
-        String[] rupture_ids = new String[gmfs.keySet().size()];
-        for (int x = 0; x < gmfs.keySet().size(); x++) {
-            rupture_ids[x] = Integer.toString(x);
+    }
+
+    private static Map<Site, Double> getGroundMotionField(
+            GroundMotionFieldCalculator gmfCalc, Random rn, boolean correlation) {
+        if (correlation == true) {
+            return gmfCalc.getCorrelatedGroundMotionField_JB2009(rn);
+        } else {
+            return gmfCalc.getUncorrelatedGroundMotionField(rn);
         }
-        gmfToMemcache(cache, key, gmf_id, rupture_ids, site_ids, gmfs);
     }
 
     public static
@@ -262,7 +743,10 @@ public class HazardCalculator {
      * job_id!block_id!site!gmf
      *
      * @return
+     * @deprecated ground motion fields are saved in the binary format of
+     *             {@link GmfBinaryWriter}
      */
+    @Deprecated
     protected static String gmfToJson(String gmfId, String[] eqkRuptureIds,
             String[] siteIds,
             Map<EqkRupture, Map<Site, Double>> groundMotionFields) {
@@ -351,7 +835,9 @@ public class HazardCalculator {
      *            The GMF to be saved to memcache
      * @param cache
      *            The memcache
+     * @deprecated use {@link GmfBinaryWriter}
      */
+    @Deprecated
     protected static void gmfToMemcache(Cache cache, String memCacheKey,
             String gmfId, String[] eqkRuptureIds, String[] siteIds,
             Map<EqkRupture, Map<Site, Double>> groundMotionFields) {
@@ -0,0 +1,57 @@
+package org.gem.calc;
+
+import static org.opensha.commons.util.DataUtils.mix64;
+
+import java.util.Random;
+
+/**
+ * Independent random number streams derived from a single job seed.
+ * <p>
+ * Each stream is identified by the seed and a sequence of indices (for
+ * instance a stream kind, an event set, a source and a rupture index), which
+ * are combined with the SplitMix64 mixing function (Steele, Lea and Flood,
+ * "Fast Splittable Pseudorandom Number Generators", OOPSLA 2014) into the seed
+ * of a {@link Random}. The numbers drawn from a stream only depend on the job
+ * seed and on the indices, so work that is split into streams gives the same
+ * results whatever the order (or the thread) in which the streams are used.
+ */
+public final class RandomStreams {
+
+    /**
+     * Stream kind of the Poisson sampling of the number of occurrences of a
+     * rupture in an event set, indexed by event set, source and rupture
+     */
+    public static final int RUPTURE_OCCURRENCES = 0;
+
+    /**
+     * Stream kind of the ground motion field of an occurrence of a rupture,
+     * indexed by event set, source, rupture and occurrence
+     */
+    public static final int GROUND_MOTION_FIELD = 1;
+
+    // odd constant of SplitMix64 (the fractional part of the golden ratio)
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private RandomStreams() {
+    }
+
+    /**
+     * @return the seed of the stream identified by the job seed and the given
+     *         indices
+     */
+    public static long deriveSeed(long seed, int... indices) {
+        long h = mix64(seed + GOLDEN_GAMMA);
+        for (int index : indices) {
+            h = mix64(h + GOLDEN_GAMMA * (index + 1L));
+        }
+        return h;
+    }
+
+    /**
+     * @return a new random number generator for the stream identified by the
+     *         job seed and the given indices
+     */
+    public static Random newRandom(long seed, int... indices) {
+        return new Random(deriveSeed(seed, indices));
+    }
+}
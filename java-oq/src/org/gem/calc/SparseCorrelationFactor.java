@@ -0,0 +1,365 @@
+package org.gem.calc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opensha.commons.data.Site;
+import org.opensha.commons.geo.GeoTools;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationUtils;
+
+/**
+ * Cholesky factor of the spatial correlation matrix of the intra-event
+ * residuals at a list of sites, for an exponential correlation model truncated
+ * at a distance (the correlation between two sites at distance d is
+ * exp(-3 * d / correlationRange) if d <= truncationDistance, and zero
+ * otherwise), as used by the Jayaram and Baker (2009) model of the
+ * {@link GroundMotionFieldCalculator}.<br>
+ * <br>
+ * The correlation matrix is never built as a dense matrix, so that large site
+ * meshes fit in memory:
+ * <ul>
+ * <li>the pairs of correlated sites are found with a regular grid of cells
+ * (of the size of the truncation distance), by only testing the pairs of
+ * sites in neighbouring cells</li>
+ * <li>the sites are reordered with the reverse Cuthill-McKee algorithm, which
+ * clusters the correlated pairs close to the diagonal of the matrix (a
+ * fill-reducing ordering)</li>
+ * <li>the Cholesky decomposition is done in envelope (skyline) storage: each
+ * row of the lower triangular factor is stored from its first non-zero
+ * column to the diagonal, and the decomposition doesn't create non-zeros
+ * outside of this envelope</li>
+ * </ul>
+ * Memory and time thus grow with the number of correlated neighbours of the
+ * sites (and the width of the envelope) rather than with the square of the
+ * number of sites.
+ */
+public class SparseCorrelationFactor {
+
+    private static Log logger = LogFactory
+            .getLog(SparseCorrelationFactor.class);
+
+    /**
+     * Diagonal values of the factor whose square is below this threshold are
+     * treated as zero (the matrix is not positive definite)
+     */
+    private static final double POSITIVITY_THRESHOLD = 1.0e-10;
+
+    private final int numberOfSites;
+    /**
+     * site index of each row of the factor (the reverse Cuthill-McKee order)
+     */
+    private final int[] siteOfRow;
+    /**
+     * first non-zero column of each row of the factor
+     */
+    private final int[] firstColumn;
+    /**
+     * index in values of the first stored element of each row (the values of
+     * row i, from column firstColumn[i] to i, are at rowStart[i] to
+     * rowStart[i + 1] - 1)
+     */
+    private final int[] rowStart;
+    private final double[] values;
+
+    /**
+     * Computes the factor of the correlation matrix of the given sites.
+     *
+     * @param sites
+     * @param correlationRange
+     *            range of the exponential correlation model (km)
+     * @param truncationDistance
+     *            distance (km) beyond which the correlation is zero
+     * @throws IllegalArgumentException
+     *             if the correlation matrix is not positive definite
+     */
+    public SparseCorrelationFactor(List<Site> sites, double correlationRange,
+            double truncationDistance) {
+        numberOfSites = sites.size();
+        Location[] locations = new Location[numberOfSites];
+        for (int i = 0; i < numberOfSites; i++) {
+            locations[i] = sites.get(i).getLocation();
+        }
+
+        int[][] neighbours = new int[numberOfSites][];
+        double[][] correlations = new double[numberOfSites][];
+        findCorrelatedPairs(locations, correlationRange, truncationDistance,
+                neighbours, correlations);
+
+        siteOfRow = getReverseCuthillMcKeeOrder(neighbours);
+        int[] rowOfSite = new int[numberOfSites];
+        for (int i = 0; i < numberOfSites; i++) {
+            rowOfSite[siteOfRow[i]] = i;
+        }
+
+        // envelope of the lower triangle of the reordered matrix
+        firstColumn = new int[numberOfSites];
+        rowStart = new int[numberOfSites + 1];
+        for (int i = 0; i < numberOfSites; i++) {
+            int first = i;
+            for (int neighbour : neighbours[siteOfRow[i]]) {
+                first = Math.min(first, rowOfSite[neighbour]);
+            }
+            firstColumn[i] = first;
+            rowStart[i + 1] = rowStart[i] + (i - first + 1);
+        }
+        logger.debug("Correlation matrix envelope: " + rowStart[numberOfSites]
+                + " values for " + numberOfSites + " sites");
+
+        values = new double[rowStart[numberOfSites]];
+        for (int i = 0; i < numberOfSites; i++) {
+            int site = siteOfRow[i];
+            values[rowStart[i + 1] - 1] = 1.0;
+            for (int k = 0; k < neighbours[site].length; k++) {
+                int j = rowOfSite[neighbours[site][k]];
+                if (j < i) {
+                    values[rowStart[i] + j - firstColumn[i]] =
+                            correlations[site][k];
+                }
+            }
+        }
+
+        decompose();
+    }
+
+    /**
+     * @return the number of values stored for the factor
+     */
+    public int getNumberOfValues() {
+        return values.length;
+    }
+
+    /**
+     * Multiplies the factor by a vector of independent standard Gaussian
+     * deviates, which gives deviates with the correlation of the sites.
+     *
+     * @param gaussianDeviates
+     *            one independent deviate for each site
+     * @return the correlated deviates, in the order of the sites
+     */
+    public double[] correlate(double[] gaussianDeviates) {
+        if (gaussianDeviates.length != numberOfSites) {
+            String msg =
+                    "Expected " + numberOfSites + " deviates, got "
+                            + gaussianDeviates.length;
+            logger.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        double[] correlated = new double[numberOfSites];
+        for (int i = 0; i < numberOfSites; i++) {
+            double sum = 0.0;
+            int first = firstColumn[i];
+            int offset = rowStart[i] - first;
+            for (int j = first; j <= i; j++) {
+                sum += values[offset + j] * gaussianDeviates[siteOfRow[j]];
+            }
+            correlated[siteOfRow[i]] = sum;
+        }
+        return correlated;
+    }
+
+    /*
+     * Row-oriented Cholesky decomposition in place, in envelope storage.
+     */
+    private void decompose() {
+        for (int i = 0; i < numberOfSites; i++) {
+            int firstI = firstColumn[i];
+            int offsetI = rowStart[i] - firstI;
+            for (int j = firstI; j < i; j++) {
+                int offsetJ = rowStart[j] - firstColumn[j];
+                double sum = values[offsetI + j];
+                for (int k = Math.max(firstI, firstColumn[j]); k < j; k++) {
+                    sum -= values[offsetI + k] * values[offsetJ + k];
+                }
+                values[offsetI + j] = sum / values[offsetJ + j];
+            }
+            double diagonal = values[offsetI + i];
+            for (int k = firstI; k < i; k++) {
+                diagonal -= values[offsetI + k] * values[offsetI + k];
+            }
+            if (diagonal < POSITIVITY_THRESHOLD) {
+                String msg =
+                        "Correlation matrix is not positive definite (site "
+                                + siteOfRow[i] + ")";
+                logger.error(msg);
+                throw new IllegalArgumentException(msg);
+            }
+            values[offsetI + i] = Math.sqrt(diagonal);
+        }
+    }
+
+    /*
+     * Fills in, for each site, the indices of the other sites within the
+     * truncation distance and their correlation. Only the sites in the same
+     * and the neighbouring cells of a grid are tested: the cells are
+     * truncationDistance high, and wide enough that two sites farther apart
+     * in longitude can't be within truncationDistance at the latitudes of the
+     * sites. Longitudes are taken relative to the first site, so a mesh
+     * crossing +/-180 degrees isn't split (if it spans less than 180 degrees
+     * of longitude).
+     */
+    private static void findCorrelatedPairs(Location[] locations,
+            double correlationRange, double truncationDistance,
+            int[][] neighbours, double[][] correlations) {
+        int n = locations.length;
+        double lon0 = n > 0 ? locations[0].getLonRad() : 0.0;
+        double[] lons = new double[n];
+        double minCosLat = 1.0;
+        for (int i = 0; i < n; i++) {
+            double lon = locations[i].getLonRad() - lon0;
+            lons[i] =
+                    lon - GeoTools.TWOPI
+                            * Math.floor(lon / GeoTools.TWOPI + 0.5);
+            minCosLat = Math.min(minCosLat, locations[i].getCosLat());
+        }
+        double angle = truncationDistance / GeoTools.EARTH_RADIUS_MEAN;
+        double cellHeight = angle;
+        double cellWidth = GeoTools.TWOPI;
+        if (minCosLat > Math.sin(angle / 2)) {
+            cellWidth = 2 * Math.asin(Math.sin(angle / 2) / minCosLat);
+        }
+        if (!(cellHeight > 0.0)) {
+            // only identical sites are correlated; test all the pairs
+            cellHeight = GeoTools.TWOPI;
+            cellWidth = GeoTools.TWOPI;
+        }
+
+        Map<Long, List<Integer>> cells = new HashMap<Long, List<Integer>>();
+        long[] cellX = new long[n];
+        long[] cellY = new long[n];
+        for (int i = 0; i < n; i++) {
+            cellX[i] = (long) Math.floor(lons[i] / cellWidth);
+            cellY[i] = (long) Math.floor(locations[i].getLatRad() / cellHeight);
+            Long key = cellKey(cellX[i], cellY[i]);
+            List<Integer> cell = cells.get(key);
+            if (cell == null) {
+                cell = new ArrayList<Integer>();
+                cells.put(key, cell);
+            }
+            cell.add(i);
+        }
+
+        int[] pairSites = new int[16];
+        double[] pairCorrelations = new double[16];
+        for (int i = 0; i < n; i++) {
+            int count = 0;
+            for (long x = cellX[i] - 1; x <= cellX[i] + 1; x++) {
+                for (long y = cellY[i] - 1; y <= cellY[i] + 1; y++) {
+                    List<Integer> cell = cells.get(cellKey(x, y));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int j : cell) {
+                        if (j == i) {
+                            continue;
+                        }
+                        double distance =
+                                LocationUtils.horzDistance(locations[i],
+                                        locations[j]);
+                        if (distance > truncationDistance) {
+                            continue;
+                        }
+                        if (count == pairSites.length) {
+                            pairSites = Arrays.copyOf(pairSites, 2 * count);
+                            pairCorrelations =
+                                    Arrays.copyOf(pairCorrelations, 2 * count);
+                        }
+                        pairSites[count] = j;
+                        pairCorrelations[count] =
+                                Math.exp(-3 * (distance / correlationRange));
+                        count++;
+                    }
+                }
+            }
+            neighbours[i] = Arrays.copyOf(pairSites, count);
+            correlations[i] = Arrays.copyOf(pairCorrelations, count);
+        }
+    }
+
+    private static Long cellKey(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    /*
+     * Reverse Cuthill-McKee ordering of the graph of correlated sites: a
+     * breadth-first traversal of each connected component, from a vertex of
+     * minimum degree and visiting the neighbours of a vertex by increasing
+     * degree, reversed. Returns the site of each position.
+     */
+    private static int[] getReverseCuthillMcKeeOrder(int[][] neighbours) {
+        final int n = neighbours.length;
+        Integer[] byDegree = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byDegree[i] = i;
+        }
+        Arrays.sort(byDegree, new DegreeComparator(neighbours));
+
+        int[] order = new int[n];
+        boolean[] visited = new boolean[n];
+        int head = 0;
+        int tail = 0;
+        Integer[] adjacent = new Integer[0];
+        Comparator<Integer> byIncreasingDegree =
+                new DegreeComparator(neighbours);
+        for (int start : byDegree) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            order[tail++] = start;
+            while (head < tail) {
+                int site = order[head++];
+                int count = 0;
+                if (adjacent.length < neighbours[site].length) {
+                    adjacent = new Integer[neighbours[site].length];
+                }
+                for (int neighbour : neighbours[site]) {
+                    if (!visited[neighbour]) {
+                        visited[neighbour] = true;
+                        adjacent[count++] = neighbour;
+                    }
+                }
+                Arrays.sort(adjacent, 0, count, byIncreasingDegree);
+                for (int k = 0; k < count; k++) {
+                    order[tail++] = adjacent[k];
+                }
+            }
+        }
+
+        int[] reversed = new int[n];
+        for (int i = 0; i < n; i++) {
+            reversed[i] = order[n - 1 - i];
+        }
+        return reversed;
+    }
+
+    /*
+     * Orders sites by increasing number of correlated neighbours, then by
+     * index (so the ordering is deterministic).
+     */
+    private static class DegreeComparator implements Comparator<Integer> {
+
+        private final int[][] neighbours;
+
+        DegreeComparator(int[][] neighbours) {
+            this.neighbours = neighbours;
+        }
+
+        @Override
+        public int compare(Integer a, Integer b) {
+            int degreeA = neighbours[a].length;
+            int degreeB = neighbours[b].length;
+            if (degreeA != degreeB) {
+                return degreeA < degreeB ? -1 : 1;
+            }
+            return a.compareTo(b);
+        }
+    }
+
+}
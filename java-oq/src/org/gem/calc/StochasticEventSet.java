@@ -0,0 +1,130 @@
+package org.gem.calc;
+
+import java.util.Arrays;
+
+import org.opensha.sha.earthquake.EqkRupForecastAPI;
+import org.opensha.sha.earthquake.EqkRupture;
+import org.opensha.sha.earthquake.ProbEqkRupture;
+import org.opensha.sha.earthquake.ProbEqkSource;
+
+/**
+ * A stochastic event set in compact form: the ruptures of an earthquake
+ * rupture forecast that occur at least once, each given as an entry made of
+ * the index of its source, the index of the rupture in the source and its
+ * number of occurrences, stored in primitive arrays. The ruptures themselves
+ * are only created when needed (see {@link #getRupture(EqkRupForecastAPI, int)}).
+ * <p>
+ * The events of the set are the occurrences of its entries, in the order of
+ * the entries: entry j contributes getNumOccurrences(j) consecutive events.
+ * Entries are added in the order of the sources and ruptures of the forecast
+ * by {@link StochasticEventSetGenerator}, so the entries of the same source
+ * are consecutive.
+ */
+public class StochasticEventSet {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int index;
+    private int[] sourceIndices = new int[INITIAL_CAPACITY];
+    private int[] ruptureIndices = new int[INITIAL_CAPACITY];
+    private int[] numOccurrences = new int[INITIAL_CAPACITY];
+    private int numEntries = 0;
+    private int numEvents = 0;
+
+    /**
+     * @param index
+     *            : index of the event set, which identifies its random number
+     *            streams (see {@link RandomStreams})
+     */
+    public StochasticEventSet(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the index of the event set
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Adds an entry for a rupture occurring numOccurrences times.
+     */
+    public void add(int sourceIndex, int ruptureIndex, int numOccurrences) {
+        if (numOccurrences < 1) {
+            throw new IllegalArgumentException(
+                    "Number of occurrences must be at least 1");
+        }
+        if (numEntries == sourceIndices.length) {
+            int capacity = 2 * numEntries;
+            sourceIndices = Arrays.copyOf(sourceIndices, capacity);
+            ruptureIndices = Arrays.copyOf(ruptureIndices, capacity);
+            this.numOccurrences = Arrays.copyOf(this.numOccurrences, capacity);
+        }
+        sourceIndices[numEntries] = sourceIndex;
+        ruptureIndices[numEntries] = ruptureIndex;
+        this.numOccurrences[numEntries] = numOccurrences;
+        numEntries++;
+        numEvents += numOccurrences;
+    }
+
+    /**
+     * @return the number of entries (of distinct ruptures)
+     */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * @return the number of events (the sum of the numbers of occurrences)
+     */
+    public int getNumEvents() {
+        return numEvents;
+    }
+
+    public int getSourceIndex(int entry) {
+        checkEntry(entry);
+        return sourceIndices[entry];
+    }
+
+    public int getRuptureIndex(int entry) {
+        checkEntry(entry);
+        return ruptureIndices[entry];
+    }
+
+    public int getNumOccurrences(int entry) {
+        checkEntry(entry);
+        return numOccurrences[entry];
+    }
+
+    /**
+     * Creates the rupture of an entry from the given source of the
+     * forecast, which must be erf.getSource(getSourceIndex(entry)). The
+     * rupture has the magnitude, rake, surface and hypocenter of the rupture
+     * of the source, and the tectonic region type of the source.
+     */
+    public EqkRupture getRupture(ProbEqkSource src, int entry) {
+        checkEntry(entry);
+        ProbEqkRupture rup = src.getRupture(ruptureIndices[entry]);
+        EqkRupture eqk =
+                new EqkRupture(rup.getMag(), rup.getAveRake(),
+                        rup.getRuptureSurface(), rup.getHypocenterLocation());
+        eqk.setTectRegType(src.getTectonicRegionType());
+        return eqk;
+    }
+
+    /**
+     * Creates the rupture of an entry (see
+     * {@link #getRupture(ProbEqkSource, int)}).
+     */
+    public EqkRupture getRupture(EqkRupForecastAPI erf, int entry) {
+        return getRupture(erf.getSource(getSourceIndex(entry)), entry);
+    }
+
+    private void checkEntry(int entry) {
+        if (entry < 0 || entry >= numEntries) {
+            throw new IndexOutOfBoundsException("Entry " + entry
+                    + " out of range [0, " + numEntries + ")");
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.gem.calc;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.opensha.sha.earthquake.EqkRupForecast;
 import org.opensha.sha.earthquake.EqkRupForecastAPI;
@@ -49,33 +55,19 @@ public class StochasticEventSetGenerator {
             for (int ruptureIdx = 0; ruptureIdx < src.getNumRuptures(); ruptureIdx++) {
                 ProbEqkRupture rup = src.getRupture(ruptureIdx);
                 double numExpectedRup = -Math.log(1 - rup.getProbability());
+                // sample Poisson distribution using inverse transfom method
+                // get number of rupture realizations (nRup) given
+                // number of expected ruptures (numExpectedRup). nRup copies of
+                // the same rupture are then added to the stochastic event set.
+                int nRup = sampleNumberOfOccurrences(numExpectedRup,
+                        rn.nextDouble());
+                if (nRup == 0)
+                    continue;
                 EqkRupture eqk =
                         new EqkRupture(rup.getMag(), rup.getAveRake(),
                                 rup.getRuptureSurface(),
                                 rup.getHypocenterLocation());
                 eqk.setTectRegType(tectonicRegionType);
-                // sample Poisson distribution using inverse transfom method
-                // p is the Poisson probability
-                // F is the cumulative distribution function
-                // get number of rupture realizations (nRup) given
-                // number of expected ruptures (numExpectedRup). nRup copies of
-                // the same rupture are then added to the stochastic event set.
-                int nRup = 0;
-                boolean flag = true;
-                double u = rn.nextDouble();
-                int i = 0;
-                double p = Math.exp(-numExpectedRup);
-                double F = p;
-                while (flag == true) {
-                    if (u <= F) {
-                        nRup = i;
-                        flag = false;
-                    } else {
-                        p = numExpectedRup * p / (i + 1);
-                        i = i + 1;
-                        F = F + p;
-                    }
-                }
                 for (int j = 0; j < nRup; j++)
                     stochasticEventSet.add(eqk);
             }
@@ -83,6 +75,118 @@ public class StochasticEventSetGenerator {
         return stochasticEventSet;
     }
 
+    /**
+     * Generate a stochastic event set from a Poissonian ERF, as
+     * {@link #getStochasticEventSetFromPoissonianERF(EqkRupForecastAPI, Random)}
+     * does (drawing the same random numbers), but in compact form (see
+     * {@link StochasticEventSet}), so that the repeated occurrences of a
+     * rupture can be told apart.
+     * 
+     * @param erf
+     *            {@link EqkRupForecast} earthquake rupture forecast
+     * @param rn
+     *            {@link Random} random number generator
+     * @param eventSetIndex
+     *            index of the stochastic event set
+     * @return: {@link StochasticEventSet} representing the sampled events.
+     */
+    public static StochasticEventSet getStochasticEventSetFromPoissonianERF(
+            EqkRupForecastAPI erf, Random rn, int eventSetIndex) {
+
+        validateInput(erf, rn);
+
+        StochasticEventSet stochasticEventSet =
+                new StochasticEventSet(eventSetIndex);
+        for (int sourceIdx = 0; sourceIdx < erf.getNumSources(); sourceIdx++) {
+            ProbEqkSource src = erf.getSource(sourceIdx);
+            for (int ruptureIdx = 0; ruptureIdx < src.getNumRuptures(); ruptureIdx++) {
+                ProbEqkRupture rup = src.getRupture(ruptureIdx);
+                double numExpectedRup = -Math.log(1 - rup.getProbability());
+                int nRup = sampleNumberOfOccurrences(numExpectedRup,
+                        rn.nextDouble());
+                if (nRup > 0)
+                    stochasticEventSet.add(sourceIdx, ruptureIdx, nRup);
+            }
+        }
+        return stochasticEventSet;
+    }
+
+    /**
+     * Generate a stochastic event set from a Poissonian ERF, as
+     * {@link #getStochasticEventSetFromPoissonianERF(EqkRupForecastAPI, Random)}
+     * does, but in compact form (see {@link StochasticEventSet}), and drawing
+     * the number of occurrences of each rupture from its own random number
+     * stream, derived from the seed, the index of the event set and the
+     * indices of the source and of the rupture (see {@link RandomStreams}).
+     * The event set only depends on these, so event sets can be generated in
+     * any order, or concurrently. No {@link EqkRupture} is created: see
+     * {@link #getRuptures(EqkRupForecastAPI, StochasticEventSet)}.
+     * 
+     * @param erf
+     *            {@link EqkRupForecast} earthquake rupture forecast
+     * @param seed
+     *            seed of the random number streams
+     * @param eventSetIndex
+     *            index of the stochastic event set
+     * @return: {@link StochasticEventSet} representing the sampled events.
+     */
+    public static StochasticEventSet getStochasticEventSetFromPoissonianERF(
+            EqkRupForecastAPI erf, long seed, int eventSetIndex) {
+
+        validateInput(erf);
+
+        StochasticEventSet stochasticEventSet =
+                new StochasticEventSet(eventSetIndex);
+        for (int sourceIdx = 0; sourceIdx < erf.getNumSources(); sourceIdx++) {
+            ProbEqkSource src = erf.getSource(sourceIdx);
+            for (int ruptureIdx = 0; ruptureIdx < src.getNumRuptures(); ruptureIdx++) {
+                ProbEqkRupture rup = src.getRupture(ruptureIdx);
+                double numExpectedRup = -Math.log(1 - rup.getProbability());
+                double u =
+                        RandomStreams.newRandom(seed,
+                                RandomStreams.RUPTURE_OCCURRENCES,
+                                eventSetIndex, sourceIdx, ruptureIdx)
+                                .nextDouble();
+                int nRup = sampleNumberOfOccurrences(numExpectedRup, u);
+                if (nRup > 0)
+                    stochasticEventSet.add(sourceIdx, ruptureIdx, nRup);
+            }
+        }
+        return stochasticEventSet;
+    }
+
+    /**
+     * Create the ruptures of the events of a stochastic event set in compact
+     * form, in the order of the events: one {@link EqkRupture} per entry,
+     * added as many times as it occurs (as in the event sets of
+     * {@link #getStochasticEventSetFromPoissonianERF(EqkRupForecastAPI, Random)}).
+     * 
+     * @param erf
+     *            {@link EqkRupForecast} earthquake rupture forecast the event
+     *            set was generated from
+     * @param eventSet
+     *            {@link StochasticEventSet} stochastic event set
+     * @return {@link ArrayList} of {@link EqkRupture} representing the events.
+     */
+    public static ArrayList<EqkRupture> getRuptures(EqkRupForecastAPI erf,
+            StochasticEventSet eventSet) {
+        ArrayList<EqkRupture> ruptures =
+                new ArrayList<EqkRupture>(eventSet.getNumEvents());
+        ProbEqkSource src = null;
+        int sourceIdx = -1;
+        for (int j = 0; j < eventSet.getNumEntries(); j++) {
+            // the entries of a source are consecutive
+            if (eventSet.getSourceIndex(j) != sourceIdx) {
+                sourceIdx = eventSet.getSourceIndex(j);
+                src = erf.getSource(sourceIdx);
+            }
+            EqkRupture eqk = eventSet.getRupture(src, j);
+            for (int k = 0; k < eventSet.getNumOccurrences(j); k++)
+                ruptures.add(eqk);
+        }
+        return ruptures;
+    }
+
     /**
      * Generate multiple stochastic event sets by calling the
      * getStochasticEvenSetFromPoissonianERF method.
@@ -108,6 +212,100 @@ public class StochasticEventSetGenerator {
         return multiStocEventSet;
     }
 
+    /**
+     * Generate multiple stochastic event sets in compact form concurrently,
+     * with <code>numThreads</code> worker threads. The i-th event set is the
+     * one returned by
+     * {@link #getStochasticEventSetFromPoissonianERF(EqkRupForecastAPI, long, int)}
+     * for the seed and the index i, so the result doesn't depend on the number
+     * of threads. The earthquake rupture forecast is shared by the workers, so
+     * its forecast must be up to date before calling this method.
+     * 
+     * @param erf
+     *            {@link EqkRupForecast} earthquake rupture forecast
+     * @param num
+     *            number of stochastic event sets
+     * @param seed
+     *            seed of the random number streams
+     * @param numThreads
+     *            number of worker threads
+     * @return {@link ArrayList} of {@link StochasticEventSet}.
+     */
+    public static ArrayList<StochasticEventSet>
+            getMultipleStochasticEventSetsFromPoissonianERF(
+                    final EqkRupForecastAPI erf, int num, final long seed,
+                    int numThreads) {
+
+        validateInput(erf);
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be at least 1");
+        }
+
+        ArrayList<StochasticEventSet> multiStocEventSet =
+                new ArrayList<StochasticEventSet>();
+        if (num <= 0)
+            return multiStocEventSet;
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(numThreads, num));
+        List<Future<StochasticEventSet>> eventSets =
+                new ArrayList<Future<StochasticEventSet>>();
+        try {
+            for (int i = 0; i < num; i++) {
+                final int eventSetIndex = i;
+                eventSets.add(executor
+                        .submit(new Callable<StochasticEventSet>() {
+                            @Override
+                            public StochasticEventSet call() {
+                                return getStochasticEventSetFromPoissonianERF(
+                                        erf, seed, eventSetIndex);
+                            }
+                        }));
+            }
+            for (Future<StochasticEventSet> eventSet : eventSets) {
+                multiStocEventSet.add(eventSet.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return multiStocEventSet;
+    }
+
+    /**
+     * Sample the Poisson distribution with the given mean using the inverse
+     * transform method, for the given uniform deviate u.
+     */
+    private static int sampleNumberOfOccurrences(double numExpectedRup,
+            double u) {
+        // p is the Poisson probability
+        // F is the cumulative distribution function
+        int nRup = 0;
+        boolean flag = true;
+        int i = 0;
+        double p = Math.exp(-numExpectedRup);
+        double F = p;
+        while (flag == true) {
+            if (u <= F) {
+                nRup = i;
+                flag = false;
+            } else {
+                p = numExpectedRup * p / (i + 1);
+                i = i + 1;
+                F = F + p;
+            }
+        }
+        return nRup;
+    }
+
     /**
      * Check if the ERF contains only Poissonian sources
      * 
@@ -135,4 +333,15 @@ public class StochasticEventSetGenerator {
 
         return true;
     }
+
+    private static Boolean validateInput(EqkRupForecastAPI erf) {
+        if (erf == null) {
+            throw new IllegalArgumentException(
+                    "Earthquake rupture forecast cannot be null");
+        }
+
+        ensurePoissonian(erf);
+
+        return true;
+    }
 }
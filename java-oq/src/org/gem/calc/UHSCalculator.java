@@ -44,6 +44,11 @@ public class UHSCalculator
     private Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> imrMap;
     private double maxDistance;
     private Map<Double, DiscretizedFuncAPI> hazCurveMap;
+    // primitive copy of imls, plus reusable buffers for the exceedance
+    // probabilities computed per rupture (see updateHazCurve*)
+    private double[] imlVals;
+    private double[] poeBuf1;
+    private double[] poeBuf2;
 
     /**
      * @param periods
@@ -87,6 +92,14 @@ public class UHSCalculator
         {
             hazCurveMap.put(period, initHazCurve(this.imls));
         }
+
+        imlVals = new double[this.imls.length];
+        for (int i = 0; i < imlVals.length; i++)
+        {
+            imlVals[i] = this.imls[i];
+        }
+        poeBuf1 = new double[imlVals.length];
+        poeBuf2 = new double[imlVals.length];
     }
 
     private void validateInput()
@@ -306,19 +319,25 @@ public class UHSCalculator
         hazCurve.set(iml, hcValue * Math.pow(1 - rupProb, poe));
     }
 
+    private void updateHazCurve(
+            DiscretizedFuncAPI hazCurve,
+            double rupProb,
+            double[] poes)
+    {
+        for (int i = 0; i < imlVals.length; i++)
+        {
+            updateHazCurve(hazCurve, rupProb, imlVals[i], poes[i]);
+        }
+    }
+
     private void updateHazCurveForPGA(
             DiscretizedFuncAPI hazCurve,
             ScalarIntensityMeasureRelationshipAPI imr,
             double rupProb)
     {
         imr.setIntensityMeasure(PGA_Param.NAME);
-
-        for (double iml : imls)
-        {
-            imr.setIntensityMeasureLevel(iml);
-            updateHazCurve(hazCurve, rupProb, iml, imr.getExceedProbability());
-        }
-
+        imr.getExceedProbabilities(imlVals, poeBuf1);
+        updateHazCurve(hazCurve, rupProb, poeBuf1);
     }
 
     private void updateHazCurveForSupportedSAPeriod(
@@ -329,12 +348,8 @@ public class UHSCalculator
     {
         imr.setIntensityMeasure(SA_Param.NAME);
         imr.getParameter(PeriodParam.NAME).setValue(period);
-
-        for (double iml : imls)
-        {
-            imr.setIntensityMeasureLevel(iml);
-            updateHazCurve(hazCurve, rupProb, iml, imr.getExceedProbability());
-        }
+        imr.getExceedProbabilities(imlVals, poeBuf1);
+        updateHazCurve(hazCurve, rupProb, poeBuf1);
     }
 
     private void updateHazCurveBetweenPGAandSA(
@@ -346,21 +361,18 @@ public class UHSCalculator
     {
         double periodPGA = 0.0;  // PGA
         double periodSA = periodList.get(0);  // First SA period
-        
-        for (double iml : imls)
+
+        imr.setIntensityMeasure(PGA_Param.NAME);
+        imr.getExceedProbabilities(imlVals, poeBuf1);
+
+        imr.setIntensityMeasure(SA_Param.NAME);
+        imr.getParameter(PeriodParam.NAME).setValue(periodSA);
+        imr.getExceedProbabilities(imlVals, poeBuf2);
+
+        for (int i = 0; i < imlVals.length; i++)
         {
-            double poePGA, poeSA, poe;
-            imr.setIntensityMeasureLevel(iml);
-            
-            imr.setIntensityMeasure(PGA_Param.NAME);
-            poePGA = imr.getExceedProbability();
-            
-            imr.setIntensityMeasure(SA_Param.NAME);
-            imr.getParameter(PeriodParam.NAME).setValue(periodSA);
-            poeSA = imr.getExceedProbability();
-
-            poe = interpolatePoe(periodPGA, periodSA, poePGA, poeSA, period);
-            updateHazCurve(hazCurve, rupProb, iml, poe);
+            double poe = interpolatePoe(periodPGA, periodSA, poeBuf1[i], poeBuf2[i], period);
+            updateHazCurve(hazCurve, rupProb, imlVals[i], poe);
         }
     }
 
@@ -378,20 +390,16 @@ public class UHSCalculator
 
         imr.setIntensityMeasure(SA_Param.NAME);
 
-        for (double iml : imls)
-        {
-            double poe1, poe2, poe;
-
-            imr.setIntensityMeasureLevel(iml);
-
-            imr.getParameter(PeriodParam.NAME).setValue(period1);
-            poe1 = imr.getExceedProbability();
+        imr.getParameter(PeriodParam.NAME).setValue(period1);
+        imr.getExceedProbabilities(imlVals, poeBuf1);
 
-            imr.getParameter(PeriodParam.NAME).setValue(period2);
-            poe2 = imr.getExceedProbability();
+        imr.getParameter(PeriodParam.NAME).setValue(period2);
+        imr.getExceedProbabilities(imlVals, poeBuf2);
 
-            poe = interpolatePoe(period1, period2, poe1, poe2, period);
-            updateHazCurve(hazCurve, rupProb, iml, poe);
+        for (int i = 0; i < imlVals.length; i++)
+        {
+            double poe = interpolatePoe(period1, period2, poeBuf1[i], poeBuf2[i], period);
+            updateHazCurve(hazCurve, rupProb, imlVals[i], poe);
         }
     }
 }
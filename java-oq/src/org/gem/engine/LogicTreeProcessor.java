@@ -4,12 +4,11 @@ import java.util.Properties;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationConverter;
+import org.gem.JsonSerializer;
 import org.gem.engine.hazard.redis.Cache;
 import org.opensha.commons.data.TimeSpan;
 import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
 
-import com.google.gson.Gson;
-
 public class LogicTreeProcessor {
     /**
      * WARNING, this file is deprecated in favor of python implementation!
@@ -81,7 +80,7 @@ public class LogicTreeProcessor {
      */
     public LogicTreeProcessor(Cache cache, String key) {
         Properties properties =
-                new Gson().fromJson((String) cache.get(key), Properties.class);
+                JsonSerializer.getConfigurationPropertiesFromCache(cache, key);
 
         config = ConfigurationConverter.getConfiguration(properties);
     }
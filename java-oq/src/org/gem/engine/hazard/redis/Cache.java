@@ -1,42 +1,51 @@
 package org.gem.engine.hazard.redis;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 
 import org.jredis.ClientRuntimeException;
 import org.jredis.RedisException;
 import org.jredis.connector.ConnectionSpec;
-import org.jredis.ri.alphazero.JRedisClient;
+import org.jredis.protocol.BulkDataHandler;
+import org.jredis.ri.alphazero.JRedisService;
 import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
 
 /**
  * Store stuff in Redis.
  * 
- * This wraps the jredis library.
+ * This wraps the jredis library. The requests are served by a pool of
+ * connections, so a cache can be shared by many threads.
  * 
  * @author Christopher MacGown
  */
 public class Cache {
-    private JRedisClient client;
+    private JRedisService client;
 
     /**
      * Default client constructor, defaults to database 0.
      */
     public Cache(String host, int port) {
-        try {
-            // Do the connection.
-            client = new JRedisClient(getConnectionSpec(host, port, 0));
-        } catch (ClientRuntimeException e) {
-            throw new RuntimeException(e);
-        }
+        this(host, port, 0);
     }
 
     /**
      * Constructor for specifying database.
      */
     public Cache(String host, int port, int db) {
+        this(host, port, db, JRedisService.default_connection_count);
+    }
+
+    /**
+     * Constructor for specifying database and the number of connections
+     * shared by the threads using the cache.
+     */
+    public Cache(String host, int port, int db, int connectionCount) {
         try {
-            // Do the connection.
-            client = new JRedisClient(getConnectionSpec(host, port, db));
+            // Do the connections.
+            client =
+                    new JRedisService(getConnectionSpec(host, port, db),
+                            connectionCount);
         } catch (ClientRuntimeException e) {
             throw new RuntimeException(e);
         }
@@ -81,6 +90,78 @@ public class Cache {
         }
     }
 
+    /**
+     * Given a key and a byte array, write that array to Redis.
+     * <p>
+     * 
+     * @param key
+     *            The key to use.
+     * @param value
+     *            The value to be written.
+     */
+    public void set(String key, byte[] value) {
+        try {
+            client.set(key, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Given a key and a stream, write length bytes of the stream to Redis,
+     * without holding them in memory.
+     * <p>
+     * 
+     * @param key
+     *            The key to use.
+     * @param in
+     *            The value to be written (not closed).
+     * @param length
+     *            The number of bytes of the value.
+     */
+    public void set(String key, InputStream in, int length) {
+        try {
+            client.set(key, in, length);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Given a key and a byte array, append that array to the value stored in
+     * Redis (which is created if the key doesn't exist).
+     * <p>
+     * 
+     * @param key
+     *            The key to use.
+     * @param value
+     *            The bytes to be appended.
+     * @return The length of the value after the append.
+     */
+    public long append(String key, byte[] value) {
+        try {
+            return client.append(key, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Given a key, return the raw value from the client (null if the key
+     * doesn't exist).
+     * <p>
+     * 
+     * @param key
+     *            The key to use.
+     */
+    public byte[] getBytes(String key) {
+        try {
+            return client.get(key);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Given a key, return the value from the client.
      * <p>
@@ -96,6 +177,45 @@ public class Cache {
         }
     }
 
+    /**
+     * Given a key, copy the raw value to the stream as it is read from the
+     * client.
+     * <p>
+     * 
+     * @param key
+     *            The key to use.
+     * @param out
+     *            The stream for the value (not closed).
+     * @return false if the key doesn't exist.
+     */
+    public boolean get(String key, OutputStream out) {
+        try {
+            return client.get(key, out);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Given a key, pass the raw value to the handler as a stream, as it is
+     * read from the client (e.g. to parse it from a Reader).
+     * <p>
+     * 
+     * @param key
+     *            The key to use.
+     * @param handler
+     *            The handler of the value (not called if the key doesn't
+     *            exist).
+     * @return false if the key doesn't exist.
+     */
+    public boolean get(String key, BulkDataHandler handler) {
+        try {
+            return client.get(key, handler);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void flush() {
         try {
             client.flushdb();
@@ -103,4 +223,12 @@ public class Cache {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Close the connections of the cache (and stop their heartbeats). The
+     * cache can't be used afterwards.
+     */
+    public void close() {
+        client.quit();
+    }
 }
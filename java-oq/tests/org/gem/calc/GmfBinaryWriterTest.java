@@ -0,0 +1,233 @@
+package org.gem.calc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensha.commons.data.Site;
+import org.opensha.commons.geo.Location;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+public class GmfBinaryWriterTest {
+
+    private static final String GMF_ID = "gmf-\u00e9";
+
+    /**
+     * Reads the file given as second argument with read_gmfs() of the module
+     * given as first argument, and prints the result as JSON (with Python 2
+     * or 3, without leaving compiled files in the source tree).
+     */
+    private static final String PYTHON_READER =
+            "import json, sys\n"
+                    + "sys.dont_write_bytecode = True\n"
+                    + "try:\n"
+                    + "    import importlib.util as util\n"
+                    + "    spec = util.spec_from_file_location('gmf_binary', sys.argv[1])\n"
+                    + "    module = util.module_from_spec(spec)\n"
+                    + "    spec.loader.exec_module(module)\n"
+                    + "except ImportError:\n"
+                    + "    import imp\n"
+                    + "    module = imp.load_source('gmf_binary', sys.argv[1])\n"
+                    + "data = open(sys.argv[2], 'rb').read()\n"
+                    + "sys.stdout.write(json.dumps(module.read_gmfs(data)))\n";
+
+    /** modules of the python-oq and noq event-based calculators */
+    private static final String[] PYTHON_MODULES = {
+            "python-oq/openquake/calculators/hazard/event_based/gmf_binary.py",
+            "noq/openquake/calculators/hazard/event_based/gmf_binary.py" };
+
+    private List<Site> sites;
+    private List<Map<Site, Double>> fields;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        sites = new ArrayList<Site>();
+        sites.add(new Site(new Location(38.1, 13.2)));
+        sites.add(new Site(new Location(38.3, 13.4)));
+        sites.add(new Site(new Location(-0.5, -179.9)));
+
+        fields = new ArrayList<Map<Site, Double>>();
+        Map<Site, Double> field = new HashMap<Site, Double>();
+        field.put(sites.get(0), Math.log(0.12));
+        field.put(sites.get(1), -Math.PI);
+        field.put(sites.get(2), 1e-300);
+        fields.add(field);
+        // a field without a value for the second site
+        field = new HashMap<Site, Double>();
+        field.put(sites.get(0), Math.log(0.3));
+        field.put(sites.get(2), 0.0);
+        fields.add(field);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(GmfBinaryWriter.encodeHeader(GMF_ID, sites));
+        for (int i = 0; i < fields.size(); i++)
+            out.write(GmfBinaryWriter.encodeRupture(i, sites, fields.get(i)));
+        data = out.toByteArray();
+    }
+
+    @Test
+    public void javaReaderReadsWrittenFields() {
+        GmfBinaryReader reader = new GmfBinaryReader(data);
+        assertEquals(GMF_ID, reader.getGmfId());
+        assertEquals(sites.size(), reader.getNumSites());
+        for (int s = 0; s < sites.size(); s++) {
+            assertEquals(sites.get(s).getLocation().getLatitude(),
+                    reader.getLatitude(s), 0.0);
+            assertEquals(sites.get(s).getLocation().getLongitude(),
+                    reader.getLongitude(s), 0.0);
+        }
+        assertEquals(fields.size(), reader.getNumRuptures());
+        assertEquals(0, reader.getRuptureIndex(0));
+        assertArrayEquals(new int[] { 0, 1, 2 }, reader.getSiteIndices(0));
+        assertEquals(1, reader.getRuptureIndex(1));
+        assertArrayEquals(new int[] { 0, 2 }, reader.getSiteIndices(1));
+        for (int i = 0; i < fields.size(); i++) {
+            int[] siteIndices = reader.getSiteIndices(i);
+            double[] values = reader.getValues(i);
+            assertEquals(siteIndices.length, values.length);
+            for (int j = 0; j < siteIndices.length; j++)
+                assertEquals(fields.get(i).get(sites.get(siteIndices[j])),
+                        values[j], 0.0);
+        }
+    }
+
+    /**
+     * Decodes the written fields with read_gmfs() of both Python packages,
+     * into the nested dict consumed by the event-based calculators. Skipped
+     * if there is no python on the path, or the test doesn't run in a
+     * checkout of the repository.
+     */
+    @Test
+    public void pythonReadersReadWrittenFields() throws Exception {
+        File root = findRepositoryRoot();
+        assumeNotNull(root);
+        String python = findPython();
+        assumeNotNull(python);
+
+        File file = File.createTempFile("gmf", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            for (String module : PYTHON_MODULES) {
+                String json =
+                        run(python, "-c", PYTHON_READER, new File(root,
+                                module).getPath(), file.getPath());
+                assertPythonFields(module, json);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertPythonFields(String module, String json) {
+        Type type =
+                new TypeToken<Map<String, Map<String, Map<String, Map<String, Double>>>>>() {
+                }.getType();
+        Map<String, Map<String, Map<String, Map<String, Double>>>> gmfs =
+                new Gson().fromJson(json, type);
+        assertEquals(module, 1, gmfs.size());
+        Map<String, Map<String, Map<String, Double>>> ruptures =
+                gmfs.get(GMF_ID);
+        assertEquals(module, fields.size(), ruptures.size());
+        for (int i = 0; i < fields.size(); i++) {
+            Map<Site, Double> field = fields.get(i);
+            Map<String, Map<String, Double>> values =
+                    ruptures.get(String.valueOf(i));
+            assertEquals(module, field.size(), values.size());
+            for (int s = 0; s < sites.size(); s++) {
+                Site site = sites.get(s);
+                Map<String, Double> value = values.get(String.valueOf(s));
+                if (!field.containsKey(site)) {
+                    assertEquals(module, null, value);
+                    continue;
+                }
+                assertEquals(module, site.getLocation().getLatitude(),
+                        value.get("lat"), 0.0);
+                assertEquals(module, site.getLocation().getLongitude(),
+                        value.get("lon"), 0.0);
+                assertEquals(module, field.get(site), value.get("mag"), 0.0);
+            }
+        }
+    }
+
+    /**
+     * @return the first directory containing the Python packages, from the
+     *         working directory up, or null
+     */
+    private static File findRepositoryRoot() {
+        File dir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+        for (; dir != null; dir = dir.getParentFile()) {
+            if (new File(dir, PYTHON_MODULES[0]).isFile()
+                    && new File(dir, PYTHON_MODULES[1]).isFile())
+                return dir;
+        }
+        return null;
+    }
+
+    /**
+     * @return the first python command that runs, or null
+     */
+    private static String findPython() {
+        for (String python : new String[] { "python", "python3" }) {
+            try {
+                run(python, "-c", "pass");
+                return python;
+            } catch (IOException e) {
+                // try the next one
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the command and returns its standard output.
+     *
+     * @throws IOException
+     *             if the command can't be run or exits with an error
+     */
+    private static String run(String... command) throws IOException {
+        Process process =
+                new ProcessBuilder(command).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        InputStream in = process.getInputStream();
+        try {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            char[] buffer = new char[4096];
+            int n;
+            while ((n = reader.read(buffer)) != -1)
+                output.append(buffer, 0, n);
+        } finally {
+            in.close();
+        }
+        try {
+            if (process.waitFor() != 0)
+                throw new IOException(command[0] + " failed: " + output);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(command[0] + " was interrupted");
+        }
+        return output.toString();
+    }
+}
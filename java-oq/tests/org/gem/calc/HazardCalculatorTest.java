@@ -0,0 +1,145 @@
+package org.gem.calc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensha.commons.data.Site;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.data.function.DiscretizedFuncAPI;
+import org.opensha.commons.geo.BorderType;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.param.ParameterAPI;
+import org.opensha.sha.earthquake.FocalMechanism;
+import org.opensha.sha.earthquake.griddedForecast.MagFreqDistsForFocalMechs;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1SourceCache;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMAreaSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMFaultSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSourceData;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.attenRelImpl.BA_2008_AttenRel;
+import org.opensha.sha.imr.param.IntensityMeasureParams.PGA_Param;
+import org.opensha.sha.magdist.GutenbergRichterMagFreqDist;
+import org.opensha.sha.util.TectonicRegionType;
+
+public class HazardCalculatorTest {
+
+    private static final double INTEGRATION_DISTANCE = 200.0;
+
+    private List<Site> sites;
+    private Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> gmpeMap;
+    private Double[] imlVals;
+
+    @Before
+    public void setUp() {
+        BA_2008_AttenRel gmpe = new BA_2008_AttenRel(null);
+        gmpe.setParamDefaults();
+        gmpe.setIntensityMeasure(PGA_Param.NAME);
+        gmpeMap =
+                new HashMap<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI>();
+        gmpeMap.put(TectonicRegionType.ACTIVE_SHALLOW, gmpe);
+
+        // more sites than a block of the serial calculation, so that both the
+        // workers and the serial calculation go through several blocks
+        Random rn = new Random(42);
+        sites = new ArrayList<Site>();
+        for (int i = 0; i < 250; i++) {
+            Site site =
+                    new Site(new Location(37.9 + rn.nextDouble(),
+                            12.9 + 1.2 * rn.nextDouble()));
+            ListIterator<ParameterAPI<?>> it = gmpe.getSiteParamsIterator();
+            while (it.hasNext())
+                site.addParameter((ParameterAPI<?>) it.next().clone());
+            sites.add(site);
+        }
+
+        imlVals = new Double[19];
+        for (int i = 0; i < imlVals.length; i++)
+            imlVals[i] = Math.log(0.005 * Math.pow(1.4, i));
+    }
+
+    @Test
+    public void parallelCurvesEqualSerialCurves() {
+        Map<Site, DiscretizedFuncAPI> serial =
+                HazardCalculator.getHazardCurves(sites, erf(), gmpeMap,
+                        imlVals, INTEGRATION_DISTANCE);
+        Map<Site, DiscretizedFuncAPI> parallel =
+                HazardCalculator.getHazardCurves(sites, erf(), gmpeMap,
+                        imlVals, INTEGRATION_DISTANCE, 4);
+        assertSameCurves(serial, parallel);
+    }
+
+    @Test
+    public void parallelCurvesWithCachedSourcesEqualSerialCurves() {
+        Map<Site, DiscretizedFuncAPI> serial =
+                HazardCalculator.getHazardCurves(sites, erf(), gmpeMap,
+                        imlVals, INTEGRATION_DISTANCE);
+        GEM1ERF erf = erf();
+        erf.setSourceCache(new GEM1SourceCache());
+        Map<Site, DiscretizedFuncAPI> parallel =
+                HazardCalculator.getHazardCurves(sites, erf, gmpeMap,
+                        imlVals, INTEGRATION_DISTANCE, 4);
+        assertSameCurves(serial, parallel);
+    }
+
+    private void assertSameCurves(Map<Site, DiscretizedFuncAPI> expected,
+            Map<Site, DiscretizedFuncAPI> actual) {
+        assertEquals(sites.size(), expected.size());
+        assertEquals(sites.size(), actual.size());
+        for (Site site : sites) {
+            DiscretizedFuncAPI expectedCurve = expected.get(site);
+            DiscretizedFuncAPI actualCurve = actual.get(site);
+            assertEquals(expectedCurve.getNum(), actualCurve.getNum());
+            for (int i = 0; i < expectedCurve.getNum(); i++) {
+                assertEquals(expectedCurve.getX(i), actualCurve.getX(i), 0.0);
+                assertEquals(expectedCurve.getY(i), actualCurve.getY(i), 0.0);
+            }
+        }
+    }
+
+    /**
+     * An area source and a fault source crossing it.
+     */
+    private static GEM1ERF erf() {
+        ArrayList<GEMSourceData> sources = new ArrayList<GEMSourceData>();
+
+        LocationList border = new LocationList();
+        border.add(new Location(38.0, 13.0));
+        border.add(new Location(38.0, 14.0));
+        border.add(new Location(38.8, 14.0));
+        border.add(new Location(38.8, 13.0));
+        Region region = new Region(border, BorderType.MERCATOR_LINEAR);
+        MagFreqDistsForFocalMechs mfdFocMech =
+                new MagFreqDistsForFocalMechs(new GutenbergRichterMagFreqDist(
+                        1.0, 0.05, 5.05, 6.95, 20), new FocalMechanism(0.0,
+                        90.0, 0.0));
+        ArbitrarilyDiscretizedFunc topOfRupture =
+                new ArbitrarilyDiscretizedFunc();
+        topOfRupture.set(6.0, 2.0);
+        topOfRupture.set(8.0, 0.0);
+        sources.add(new GEMAreaSourceData("1", "area",
+                TectonicRegionType.ACTIVE_SHALLOW, region, mfdFocMech,
+                topOfRupture, 5.0));
+
+        FaultTrace trace = new FaultTrace("fault");
+        trace.add(new Location(38.2, 13.2, 0.0));
+        trace.add(new Location(38.6, 13.8, 0.0));
+        sources.add(new GEMFaultSourceData("2", "fault",
+                TectonicRegionType.ACTIVE_SHALLOW,
+                new GutenbergRichterMagFreqDist(1.0, 0.01, 6.05, 7.05, 11),
+                trace, 60.0, 90.0, 15.0, 0.0, true));
+
+        return GEM1ERF.getGEM1ERF(sources, 50.0);
+    }
+}
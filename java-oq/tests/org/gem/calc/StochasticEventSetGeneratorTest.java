@@ -0,0 +1,131 @@
+package org.gem.calc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.geo.BorderType;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.Region;
+import org.opensha.sha.earthquake.EqkRupture;
+import org.opensha.sha.earthquake.FocalMechanism;
+import org.opensha.sha.earthquake.griddedForecast.MagFreqDistsForFocalMechs;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMAreaSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSourceData;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
+import org.opensha.sha.magdist.GutenbergRichterMagFreqDist;
+import org.opensha.sha.util.TectonicRegionType;
+
+public class StochasticEventSetGeneratorTest {
+
+    private static final long SEED = 123456789L;
+
+    private static final int NUM_EVENT_SETS = 20;
+
+    @Test
+    public void eventSetsDoNotDependOnNumberOfThreads() {
+        GEM1ERF serialErf = erf(false);
+        List<StochasticEventSet> serial =
+                StochasticEventSetGenerator
+                        .getMultipleStochasticEventSetsFromPoissonianERF(
+                                serialErf, NUM_EVENT_SETS, SEED, 1);
+        // the ruptures of a streaming ERF are made again each time they are
+        // needed, so their random strikes must not depend on when they are
+        // made either
+        GEM1ERF parallelErf = erf(true);
+        List<StochasticEventSet> parallel =
+                StochasticEventSetGenerator
+                        .getMultipleStochasticEventSetsFromPoissonianERF(
+                                parallelErf, NUM_EVENT_SETS, SEED, 4);
+
+        assertEquals(NUM_EVENT_SETS, serial.size());
+        assertEquals(NUM_EVENT_SETS, parallel.size());
+        int numEvents = 0;
+        int numLineRuptures = 0;
+        for (int i = 0; i < NUM_EVENT_SETS; i++) {
+            StochasticEventSet expected = serial.get(i);
+            StochasticEventSet actual = parallel.get(i);
+            assertEquals(i, expected.getIndex());
+            assertEquals(i, actual.getIndex());
+            assertEquals(expected.getNumEntries(), actual.getNumEntries());
+            assertEquals(expected.getNumEvents(), actual.getNumEvents());
+            for (int j = 0; j < expected.getNumEntries(); j++) {
+                assertEquals(expected.getSourceIndex(j),
+                        actual.getSourceIndex(j));
+                assertEquals(expected.getRuptureIndex(j),
+                        actual.getRuptureIndex(j));
+                assertEquals(expected.getNumOccurrences(j),
+                        actual.getNumOccurrences(j));
+            }
+
+            List<EqkRupture> expectedRuptures =
+                    StochasticEventSetGenerator.getRuptures(serialErf,
+                            expected);
+            List<EqkRupture> actualRuptures =
+                    StochasticEventSetGenerator.getRuptures(parallelErf,
+                            actual);
+            assertEquals(expectedRuptures.size(), actualRuptures.size());
+            for (int k = 0; k < expectedRuptures.size(); k++) {
+                EqkRupture expectedRupture = expectedRuptures.get(k);
+                EqkRupture actualRupture = actualRuptures.get(k);
+                assertEquals(expectedRupture.getMag(), actualRupture.getMag(),
+                        0.0);
+                EvenlyGriddedSurfaceAPI expectedSurface =
+                        expectedRupture.getRuptureSurface();
+                EvenlyGriddedSurfaceAPI actualSurface =
+                        actualRupture.getRuptureSurface();
+                assertEquals(expectedSurface.getNumCols(),
+                        actualSurface.getNumCols());
+                int last = expectedSurface.getNumCols() - 1;
+                assertEquals(expectedSurface.getLocation(0, 0),
+                        actualSurface.getLocation(0, 0));
+                assertEquals(expectedSurface.getLocation(0, last),
+                        actualSurface.getLocation(0, last));
+                if (last > 0)
+                    numLineRuptures++;
+            }
+            numEvents += expected.getNumEvents();
+        }
+        // the event sets aren't trivially equal
+        assertTrue(numEvents > 0);
+        assertTrue(numLineRuptures > 0);
+    }
+
+    /**
+     * An area source of line ruptures with random strikes.
+     */
+    private static GEM1ERF erf(boolean streamRuptures) {
+        ArrayList<GEMSourceData> sources = new ArrayList<GEMSourceData>();
+
+        LocationList border = new LocationList();
+        border.add(new Location(38.0, 13.0));
+        border.add(new Location(38.0, 14.0));
+        border.add(new Location(38.8, 14.0));
+        border.add(new Location(38.8, 13.0));
+        Region region = new Region(border, BorderType.MERCATOR_LINEAR);
+        MagFreqDistsForFocalMechs mfdFocMech =
+                new MagFreqDistsForFocalMechs(new GutenbergRichterMagFreqDist(
+                        1.0, 0.5, 5.05, 6.95, 20), new FocalMechanism(
+                        Double.NaN, 90.0, 0.0));
+        ArbitrarilyDiscretizedFunc topOfRupture =
+                new ArbitrarilyDiscretizedFunc();
+        topOfRupture.set(6.0, 2.0);
+        topOfRupture.set(8.0, 0.0);
+        sources.add(new GEMAreaSourceData("1", "area",
+                TectonicRegionType.ACTIVE_SHALLOW, region, mfdFocMech,
+                topOfRupture, 5.0));
+
+        GEM1ERF erf = GEM1ERF.getGEM1ERF(sources, 50.0);
+        erf.setParameter(GEM1ERF.AREA_SRC_RUP_TYPE_NAME,
+                GEM1ERF.AREA_SRC_RUP_TYPE_LINE);
+        erf.setParameter(GEM1ERF.STREAM_RUPTURES_PARAM_NAME, streamRuptures);
+        erf.updateForecast();
+        return erf;
+    }
+}
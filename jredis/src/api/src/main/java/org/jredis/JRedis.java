@@ -16,10 +16,16 @@
 
 package org.jredis;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.Map;
 
+import org.jredis.protocol.BulkDataHandler;
+
 
 /**
  * <p>This is effectively a one to one mapping to Redis commands.  And that
@@ -125,6 +131,27 @@ public interface JRedis {
 	 */
 	public <K extends Object, T extends Serializable> 
 		   void set (K key, T object) throws RedisException;
+	/**
+	 * Binds the value, streamed from the {@link InputStream}, to the key -- large values
+	 * are sent without being held in memory.
+	 * @Redis SET
+	 * @param key
+	 * @param in the value -- exactly <code>length</code> bytes are read, and the stream is not closed
+	 * @param length of the value
+	 * @throws RedisException
+	 * @see {@link JRedis#set(String, byte[])}
+	 */
+	public <K extends Object> void set (K key, InputStream in, int length) throws RedisException;
+	/**
+	 * Binds the value, streamed from the (blocking) {@link ReadableByteChannel}, to the key.
+	 * @Redis SET
+	 * @param key
+	 * @param channel the value -- exactly <code>length</code> bytes are read, and the channel is not closed
+	 * @param length of the value
+	 * @throws RedisException
+	 * @see {@link JRedis#set(Object, InputStream, int)}
+	 */
+	public <K extends Object> void set (K key, ReadableByteChannel channel, int length) throws RedisException;
 
 	/**
 	 * @Redis SETNX
@@ -146,6 +173,38 @@ public interface JRedis {
 	 * @throws RedisException
 	 */
 	public <K extends Object> byte[] get (K key)  throws RedisException;
+	/**
+	 * Copies the value of the key to the {@link OutputStream} as it is read from the 
+	 * connection -- large values are received without being held in memory.
+	 * @Redis GET
+	 * @param key
+	 * @param out for the value -- not flushed or closed
+	 * @return false if the key does not exist (nothing is written)
+	 * @throws RedisException
+	 */
+	public <K extends Object> boolean get (K key, OutputStream out)  throws RedisException;
+	/**
+	 * Copies the value of the key to the (blocking) {@link WritableByteChannel} as it is read 
+	 * from the connection.
+	 * @Redis GET
+	 * @param key
+	 * @param channel for the value -- not closed
+	 * @return false if the key does not exist (nothing is written)
+	 * @throws RedisException
+	 * @see {@link JRedis#get(Object, OutputStream)}
+	 */
+	public <K extends Object> boolean get (K key, WritableByteChannel channel)  throws RedisException;
+	/**
+	 * Streams the value of the key to the handler as it is read from the connection, e.g. to
+	 * parse it through a {@link java.io.Reader} of the handler's data stream.
+	 * @Redis GET
+	 * @param key
+	 * @param handler of the value -- not called if the key does not exist
+	 * @return false if the key does not exist
+	 * @throws RedisException
+	 * @see {@link BulkDataHandler}
+	 */
+	public <K extends Object> boolean get (K key, BulkDataHandler handler)  throws RedisException;
 
 	public <K extends Object> byte[] getset (K key, byte[] value) throws RedisException;
 	public <K extends Object> byte[] getset (K key, String stringValue) throws RedisException;
@@ -17,11 +17,15 @@
 package org.jredis.connector;
 
 import java.util.concurrent.ExecutionException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.Future;
 import org.jredis.ClientRuntimeException;
 import org.jredis.NotSupportedException;
 import org.jredis.ProviderException;
 import org.jredis.RedisException;
+import org.jredis.protocol.BulkDataHandler;
+import org.jredis.protocol.BulkResponse;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Response;
@@ -91,6 +95,43 @@ public interface Connection {
 	 */
 	public Response serviceRequest (Command cmd, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException; 
 	
+	/**
+	 * A <b>blocking call</b> to service the specified request, with its last arg (the value) streamed 
+	 * from the <code>data</code> stream, e.g. to {@link Command#SET} large values without holding them
+	 * in a byte[].  Exactly <code>length</code> bytes are read from the stream, which is not closed.
+	 * <p>
+	 * Only {@link Modality#Synchronous} connections support streaming.
+	 * 
+	 * @param cmd
+	 * @param data the value to send after the args
+	 * @param length of the value
+	 * @param args
+	 * @return
+	 * @throws RedisException
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 * @see Connection#serviceRequest(Command, byte[]...)
+	 */
+	public Response serviceRequest (Command cmd, InputStream data, int length, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException;
+	
+	/**
+	 * A <b>blocking call</b> to service the specified request of a {@link Command} with a bulk response,
+	 * with the bulk data (if any) streamed to the <code>handler</code> as it is read from the connection.
+	 * The {@link BulkResponse#getBulkData()} of the returned response is null.
+	 * <p>
+	 * Only {@link Modality#Synchronous} connections support streaming.
+	 * 
+	 * @param cmd
+	 * @param handler
+	 * @param args
+	 * @return
+	 * @throws RedisException
+	 * @throws ClientRuntimeException if the connection fails, or if the handler raises an {@link IOException}
+	 * @throws ProviderException
+	 * @see Connection#serviceRequest(Command, byte[]...)
+	 */
+	public Response serviceRequest (Command cmd, BulkDataHandler handler, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException;
+	
 	
 	/**
 	 * A <b>non-blocking call</b> to service the specified request at some point in the future.  
@@ -290,6 +331,8 @@ public interface Connection {
     	STATEFUL,
     	/** if true service requests are logged (verbose/slower due to io)  */
     	TRACE,
+    	/** if true uses a non-blocking channel serviced by a shared selector thread (asynchronous modality only) */
+    	NIO,
     	;
 		public final int bitmask;
 		static final int OPAQUE_BITMASK = 0x0000;
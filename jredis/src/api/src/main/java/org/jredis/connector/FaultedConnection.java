@@ -16,11 +16,13 @@
 
 package org.jredis.connector;
 
+import java.io.InputStream;
 import java.util.concurrent.Future;
 import org.jredis.ClientRuntimeException;
 import org.jredis.NotSupportedException;
 import org.jredis.ProviderException;
 import org.jredis.RedisException;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Response;
 
@@ -70,6 +72,22 @@ public class FaultedConnection implements Connection {
 		throw new ClientRuntimeException (errorMsg);
 	}
 
+	/* (non-Javadoc) @see org.jredis.connector.Connection#serviceRequest(org.jredis.protocol.Command, java.io.InputStream, int, byte[][]) */
+//	@Override
+	public Response serviceRequest(Command cmd, InputStream data, int length, byte[]... args) throws RedisException, ClientRuntimeException,
+			ProviderException 
+	{
+		throw new ClientRuntimeException (errorMsg);
+	}
+
+	/* (non-Javadoc) @see org.jredis.connector.Connection#serviceRequest(org.jredis.protocol.Command, org.jredis.protocol.BulkDataHandler, byte[][]) */
+//	@Override
+	public Response serviceRequest(Command cmd, BulkDataHandler handler, byte[]... args) throws RedisException, ClientRuntimeException,
+			ProviderException 
+	{
+		throw new ClientRuntimeException (errorMsg);
+	}
+
 	/* (non-Javadoc) @see org.jredis.connector.Connection#queueRequest(org.jredis.protocol.Command, byte[][]) */
 //	@Override
 	public Future<Response> queueRequest(Command cmd, byte[]... args)
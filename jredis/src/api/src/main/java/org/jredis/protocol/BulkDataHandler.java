@@ -0,0 +1,44 @@
+/*
+ *   Copyright 2026 agent
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes the bulk data of a response as it is read from the connection, so that large 
+ * values can be copied to a stream or channel, or parsed (e.g. through a {@link java.io.Reader}), 
+ * without holding them in a byte[].
+ *
+ * @author  agent (agent@local)
+ * @version alpha.0, Oct 17, 2026
+ * @since   alpha.0
+ * 
+ */
+public interface BulkDataHandler {
+	
+	/**
+	 * Called (once) by the response, if the value is not null, with the bulk data as a stream that
+	 * ends (returns -1) after <code>length</code> bytes.  The stream is only valid for the duration 
+	 * of the call: any data not consumed by the handler is skipped when it returns.
+	 * 
+	 * @param data the bulk data -- should not be closed
+	 * @param length of the bulk data
+	 * @throws IOException
+	 */
+	public void handleBulkData (InputStream data, int length) throws IOException;
+}
@@ -16,6 +16,8 @@
 
 package org.jredis.protocol;
 
+import java.io.InputStream;
+
 import org.jredis.ClientRuntimeException;
 import org.jredis.NotSupportedException;
 import org.jredis.ProviderException;
@@ -55,6 +57,19 @@ public interface Protocol {
 	 * @throws IllegalArgumentException
 	 */
 	public Request createRequest (Command cmd, byte[]...args) throws ProviderException, IllegalArgumentException;
+	
+	/**
+	 * Creates a request with the args, followed by a (last) arg of <code>length</code> bytes that is streamed from 
+	 * <code>data</code> when the request is written.
+	 * @param cmd
+	 * @param data
+	 * @param length
+	 * @param args
+	 * @return
+	 * @throws ProviderException
+	 * @throws IllegalArgumentException
+	 */
+	public Request createRequest (Command cmd, InputStream data, int length, byte[]...args) throws ProviderException, IllegalArgumentException;
 
 	/**
 	 * Creates a response object for the {@link Command} specified.  
@@ -71,6 +86,18 @@ public interface Protocol {
 	 */
 	public Response createResponse (Command cmd) throws ProviderException, ClientRuntimeException ;
 	
+	/**
+	 * Creates a response object for the {@link Command} specified, which must have a bulk response, 
+	 * that streams the bulk data to the handler as it is read.  
+	 * @param cmd
+	 * @param handler
+	 * @return the response object that is ready to be read from the network connection.
+	 * @throws ProviderException
+	 * @throws ClientRuntimeException
+	 * @see BulkDataHandler
+	 */
+	public Response createResponse (Command cmd, BulkDataHandler handler) throws ProviderException, ClientRuntimeException ;
+	
 	public interface Factory {
 		/**
 		 * Creates a {@link Protocol} instance for a connection per the specified
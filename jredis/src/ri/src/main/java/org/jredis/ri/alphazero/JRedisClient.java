@@ -16,6 +16,7 @@
 
 package org.jredis.ri.alphazero;
 
+import java.io.InputStream;
 import java.net.UnknownHostException;
 import org.jredis.ClientRuntimeException;
 import org.jredis.JRedis;
@@ -24,6 +25,7 @@ import org.jredis.Redis;
 import org.jredis.RedisException;
 import org.jredis.connector.Connection;
 import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Response;
 import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
@@ -150,6 +152,18 @@ public class JRedisClient extends SyncJRedisBase  {
 	{
 		return connection.serviceRequest(cmd, args);
 	}
+	@Override
+	protected Response serviceRequest(Command cmd, InputStream data, int length, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		return connection.serviceRequest(cmd, data, length, args);
+	}
+	@Override
+	protected Response serviceRequest(Command cmd, BulkDataHandler handler, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		return connection.serviceRequest(cmd, handler, args);
+	}
 	
 
 	// TODO: what's the use of this?
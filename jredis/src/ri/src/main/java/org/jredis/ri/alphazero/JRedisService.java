@@ -1,221 +1,447 @@
-///*
-// *   Copyright 2009 Joubin Houshyar
-// * 
-// *   Licensed under the Apache License, Version 2.0 (the "License");
-// *   you may not use this file except in compliance with the License.
-// *   You may obtain a copy of the License at
-// *    
-// *   http://www.apache.org/licenses/LICENSE-2.0
-// *    
-// *   Unless required by applicable law or agreed to in writing, software
-// *   distributed under the License is distributed on an "AS IS" BASIS,
-// *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-// *   See the License for the specific language governing permissions and
-// *   limitations under the License.
-// */
-//
-//package org.jredis.ri.alphazero;
-//
-//import java.util.concurrent.Semaphore;
-//import org.jredis.ClientRuntimeException;
-//import org.jredis.JRedis;
-//import org.jredis.ProviderException;
-//import org.jredis.RedisException;
-//import org.jredis.connector.Connection;
-//import org.jredis.connector.ConnectionSpec;
-//import org.jredis.protocol.Command;
-//import org.jredis.protocol.Response;
-//import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
-//import org.jredis.ri.alphazero.support.Assert;
-//import org.jredis.ri.alphazero.support.Log;
-//
-///**
-// * This class utilizes a (configurable) number of {@link Connection}s in a pool
-// * and can be utilized in multi-threaded usage contexts, such as web containers,
-// * etc.  
-// * <p>
-// * The service uses an internal pool of connections (see {@link JRedisService#default_connection_count}.  If
-// * the number of service requests being processed reaches that limit, then any further calls will block until
-// * a connection becomes available.  
-// * <p>
-// *
-// * @author  Joubin Houshyar (alphazero@sensesay.net)
-// * @version alpha.0, Apr 21, 2009
-// * @since   alpha.0
-// * 
-// */
-//
-//public class JRedisService extends SynchJRedisBase {
-//
-//	// ------------------------------------------------------------------------
-//	// Consts
-//	// ------------------------------------------------------------------------
-//	/** Default value: 5 */
-//	public static final int 	default_connection_count = 5;
-//	
-//	// ------------------------------------------------------------------------
-//	// Properties
-//	// ------------------------------------------------------------------------
-//
-//	/** counting semaphore for limiting concurrent access to pool to the count */
-//	private Semaphore   			connPoolAccess;
-//	/** in use flag for the connections */
-//	private boolean 				connInUse[];
-//	/** the connections */
-//	private Connection 				conns[];
-//	
-//	/** connection spec shared by all connections in pool */
-//	private final ConnectionSpec 	connectionSpec;
-//	/** number of connections in pool */
-//	private final int				connCount;
-//
-//	// ------------------------------------------------------------------------
-//	// Construct and initialize
-//	// ------------------------------------------------------------------------
-//	
-//	/**
-//	 * @param host
-//	 * @param port
-//	 */
-//	public JRedisService (String host, int port) {
-//		this(host, port, null, 0, default_connection_count);
-//	}
-//	
-//	/**
-//	 * @param host
-//	 * @param port
-//	 * @param password
-//	 * @param database
-//	 * @param connectionCount
-//	 */
-//	public JRedisService (String host, int port, String password, int database, int connectionCount) {
-//		byte[] credentials = password != null ? password.getBytes() : null;
-//		connectionSpec = DefaultConnectionSpec.newSpec(host, port, database, credentials);
-//		connCount = connectionCount;
-//		initialize();
-//	}
-//	
-//	/**
-//	 * @param connectionSpec
-//	 * @param connectionCount
-//	 */
-//	public JRedisService (ConnectionSpec connectionSpec, int connectionCount) {
-//		this.connectionSpec = connectionSpec;
-//		// regardless of user spec, service has to assume shared connections
-//		connectionSpec.setConnectionFlag(Connection.Flag.SHARED, true);
-//		connCount = connectionCount;
-//		
-//		initialize();
-//	}
-//	
-//	/**
-//	 * Initialize the connection pool using the connection spec.
-//	 */
-//	private final void initialize () {
-//		connPoolAccess = new Semaphore(connCount);
-//		conns = new Connection[connCount];
-//		connInUse = new boolean [connCount];
-//		Connection conn = null;
-//		connectionSpec.setConnectionFlag(Connection.Flag.RELIABLE, true);
-//		connectionSpec.setConnectionFlag(Connection.Flag.SHARED, true);
-//		for(int i=0; i< connCount;i++) {
-//			try {
-//				conn = Assert.notNull(createSynchConnection(connectionSpec), "Connection " + i, ClientRuntimeException.class);
-//				conns[i] = conn;
-//				connInUse[i] = false;
-//			} 
-//			catch (Exception e) {
-//				// TODO: remove this stacktrace
-//				e.printStackTrace();
-//				throw new ClientRuntimeException("Could not create connection for service", e);
-//			}		
-//		}
-//	}
-//
-//	// ------------------------------------------------------------------------
-//	// super overrides.
-//	// ------------------------------------------------------------------------
-//	/* (non-Javadoc)
-//	 * @see org.jredis.ri.alphazero.SynchJRedisBase#setConnection(org.jredis.connector.Connection)
-//	 */
+/*
+ *   Copyright 2009 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jredis.ClientRuntimeException;
+import org.jredis.JRedis;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.BulkDataHandler;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+import org.jredis.ri.alphazero.connection.HeartbeatJinn;
+import org.jredis.ri.alphazero.connection.SyncConnection;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * This class utilizes a (configurable) number of {@link Connection}s in a pool
+ * and can be utilized in multi-threaded usage contexts, such as web containers,
+ * etc.
+ * <p>
+ * The service uses an internal pool of {@link SyncConnection}s (see {@link JRedisService#default_connection_count}.  If
+ * the number of service requests being processed reaches that limit, then any further calls will block until
+ * a connection becomes available.  Blocked callers are served in arrival order (fair checkout).
+ * <p>
+ * Each pooled connection is health checked by a {@link HeartbeatJinn}, which PINGs the connection per the
+ * heartbeat period of the {@link ConnectionSpec}, so that dropped connections are detected (and reconnected)
+ * while idle in the pool.  The connections are {@link Connection.Flag#RELIABLE}, so the PINGs and the
+ * requests of the pool users are serialized.
+ * <p>
+ * A connection that is left disconnected (e.g. its reconnect attempts failed, or it was closed on
+ * a protocol error) is replaced by a new connection when it is checked in, or when it is checked
+ * out after its heartbeat found it disconnected in the pool.  Replacements are counted as faults.
+ * <p>
+ * Pool metrics (checkouts, wait time, connections in use, and faults) are available through the service's
+ * accessors.
+ *
+ * @author  Joubin Houshyar (alphazero@sensesay.net)
+ * @version alpha.0, Apr 21, 2009
+ * @since   alpha.0
+ *
+ */
+
+public class JRedisService extends SyncJRedisBase {
+
+	// ------------------------------------------------------------------------
+	// Consts
+	// ------------------------------------------------------------------------
+	/** Default value: 5 */
+	public static final int 	default_connection_count = 5;
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** the available connections -- fair, so blocked callers are served in order */
+	private BlockingQueue<Connection>	available;
+	/** the connections */
+	private Connection 				conns[];
+	/** health check (PING) threads of the connections */
+	private HeartbeatJinn 			heartbeats[];
+	/** connection states of the connections */
+	private ConnectionMonitor		monitors[];
+	/** guards the replacement of connections */
+	private final Object			poolLock = new Object();
+	/** set on quit: disconnected connections are no longer replaced */
+	private volatile boolean		quitting;
+
+	/** connection spec shared by all connections in pool */
+	private final ConnectionSpec 	connectionSpec;
+	/** number of connections in pool */
+	private final int				connCount;
+
+	/* metrics */
+
+	/** number of connections checked out */
+	private final AtomicInteger		inUse = new AtomicInteger();
+	/** number of checkouts */
+	private final AtomicLong		checkouts = new AtomicLong();
+	/** total time waited for connections, in nanosecs */
+	private final AtomicLong		waitTime = new AtomicLong();
+	/** max time waited for a connection, in nanosecs */
+	private final AtomicLong		maxWaitTime = new AtomicLong();
+	/** number of requests that failed with {@link ClientRuntimeException}s, and of connections replaced */
+	private final AtomicLong		faults = new AtomicLong();
+
+	// ------------------------------------------------------------------------
+	// Construct and initialize
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param host
+	 * @param port
+	 */
+	public JRedisService (String host, int port) {
+		this(host, port, null, 0, default_connection_count);
+	}
+
+	/**
+	 * @param host
+	 * @param port
+	 * @param password
+	 * @param database
+	 * @param connectionCount
+	 */
+	public JRedisService (String host, int port, String password, int database, int connectionCount) {
+		this(DefaultConnectionSpec.newSpec(host, port, database, password != null ? password.getBytes() : null), connectionCount);
+	}
+
+	/**
+	 * @param connectionSpec
+	 * @param connectionCount
+	 */
+	public JRedisService (ConnectionSpec connectionSpec, int connectionCount) {
+		Assert.isTrue(connectionCount > 0, "connectionCount must be positive", IllegalArgumentException.class);
+		this.connectionSpec = connectionSpec;
+		connCount = connectionCount;
+
+		initialize();
+	}
+
+	/**
+	 * Initialize the connection pool using the connection spec.
+	 */
+	private final void initialize () {
+		available = new ArrayBlockingQueue<Connection>(connCount, true);
+		conns = new Connection[connCount];
+		heartbeats = new HeartbeatJinn[connCount];
+		monitors = new ConnectionMonitor[connCount];
+		// regardless of user spec, service has to assume shared (reliable) synchronous connections
+		connectionSpec.setConnectionFlag(Connection.Flag.RELIABLE, true);
+		connectionSpec.setConnectionFlag(Connection.Flag.SHARED, true);
+		connectionSpec.setModality(Connection.Modality.Synchronous);
+		for(int i=0; i< connCount;i++) {
+			available.add(newConnection(i));
+		}
+	}
+	
+	/**
+	 * Creates the i-th connection of the pool, and starts its heartbeat.
+	 * @param i
+	 * @return the new connection
+	 * @throws ClientRuntimeException if the connection can not be created
+	 */
+	private final Connection newConnection (int i) throws ClientRuntimeException {
+		try {
+			conns[i] = Assert.notNull(createSyncConnection(connectionSpec), "Connection " + i, ClientRuntimeException.class);
+		}
+		catch (Exception e) {
+			Log.error("Could not create connection " + i + " for service: " + e.getLocalizedMessage());
+			throw new ClientRuntimeException("Could not create connection for service", e);
+		}
+		monitors[i] = new ConnectionMonitor();
+		conns[i].addListener(monitors[i]);
+		heartbeats[i] = new HeartbeatJinn(conns[i], connectionSpec.getHeartbeat(), " [" + conns[i] + "] heartbeat", true);
+		heartbeats[i].start();
+		return conns[i];
+	}
+
+	// ------------------------------------------------------------------------
+	// super overrides.
+	// ------------------------------------------------------------------------
+	/**
+	 * Called by {@link SyncJRedisBase#createSyncConnection(ConnectionSpec)} when a pool connection
+	 * can not be created, in which case the pool is not usable.
+	 * @see org.jredis.ri.alphazero.SyncJRedisBase#setConnection(org.jredis.connector.Connection)
+	 */
+	@Override
+	protected void setConnection(Connection connection) {
+		throw new ClientRuntimeException("Could not create connection for service: " + connection);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.jredis.ri.alphazero.JRedisSupport#serviceRequest(org.jredis.protocol.Command, byte[][])
+	 */
+	@Override
+	protected Response serviceRequest(Command cmd, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException
+	{
+		Connection conn = checkout();
+		try {
+			return conn.serviceRequest(cmd, args);
+		}
+		catch (ClientRuntimeException e) {
+			faults.incrementAndGet();
+			throw e;
+		}
+		finally {
+			checkin(conn);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jredis.ri.alphazero.JRedisSupport#serviceRequest(org.jredis.protocol.Command, java.io.InputStream, int, byte[][])
+	 */
+	@Override
+	protected Response serviceRequest(Command cmd, InputStream data, int length, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException
+	{
+		Connection conn = checkout();
+		try {
+			return conn.serviceRequest(cmd, data, length, args);
+		}
+		catch (ClientRuntimeException e) {
+			faults.incrementAndGet();
+			throw e;
+		}
+		finally {
+			checkin(conn);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.jredis.ri.alphazero.JRedisSupport#serviceRequest(org.jredis.protocol.Command, org.jredis.protocol.BulkDataHandler, byte[][])
+	 */
+	@Override
+	protected Response serviceRequest(Command cmd, BulkDataHandler handler, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException
+	{
+		Connection conn = checkout();
+		try {
+			return conn.serviceRequest(cmd, handler, args);
+		}
+		catch (ClientRuntimeException e) {
+			faults.incrementAndGet();
+			throw e;
+		}
+		finally {
+			checkin(conn);
+		}
+	}
+
+	/**
+	 * Quits all the connections of the pool, and stops their heartbeats.
+	 * @see org.jredis.ri.alphazero.JRedisSupport#quit()
+	 */
+	@Override
+	public <K extends Object> void quit () {
+		synchronized (poolLock) {
+			quitting = true;
+			for(HeartbeatJinn heartbeat : heartbeats)
+				heartbeat.shutdown();
+		}
+
+		// wait for all connections to be returned to the pool
+		Connection[] quitting = new Connection[connCount];
+		for(int i=0; i<connCount; i++)
+			quitting[i] = checkout();
+		try {
+			for(Connection conn : quitting){
+				try {
+					conn.serviceRequest(Command.QUIT);
+				}
+				catch (RedisException e) {
+					throw new ProviderException ("Quit raised an unexpected RedisException -- Bug");
+				}
+				catch (ClientRuntimeException e) { /* NotConnectedException is OK */
+					Log.problem("JRedisService.quit() -- " + e.getLocalizedMessage());
+				}
+			}
+		}
+		finally {
+			for(Connection conn : quitting)
+				checkin(conn);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops: pool management
+	// ------------------------------------------------------------------------
+	/**
+	 * Blocks until a connection is available.
+	 * @return
+	 * @throws ClientRuntimeException if interrupted while waiting
+	 */
+	private final Connection checkout () throws ClientRuntimeException {
+		final long start = System.nanoTime();
+		Connection conn;
+		try {
+			conn = available.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Log.log("Thread <%s> was interrupted in JRedisService.serviceRequest", Thread.currentThread().getName());
+			throw new ClientRuntimeException("Interrupted while waiting for a connection", e);
+		}
+		final long waited = System.nanoTime() - start;
+		waitTime.addAndGet(waited);
+		long max;
+		while(waited > (max = maxWaitTime.get()) && !maxWaitTime.compareAndSet(max, waited));
+		checkouts.incrementAndGet();
+		inUse.incrementAndGet();
+		return replaceIfDisconnected(conn);
+	}
+
+	/**
+	 * Returns the connection to the pool (or its replacement, if it is disconnected).
+	 * @param conn
+	 */
+	private final void checkin (Connection conn) {
+		conn = replaceIfDisconnected(conn);
+		inUse.decrementAndGet();
+		if(!available.offer(conn))
+			throw new ProviderException("BUG: JRedisService connection pool manager - pool is full on checkin!");
+	}
+
+	/**
+	 * Replaces the (checked out) connection with a new one if it is disconnected, unless quitting.
+	 * If the new connection can not be created, the disconnected connection is kept, and its 
+	 * replacement is attempted again on its next checkin or checkout.
+	 * @param conn
+	 * @return the connection to use in place of conn
+	 */
+	private final Connection replaceIfDisconnected (Connection conn) {
+		synchronized (poolLock) {
+			if(quitting) return conn;
+			int i = 0;
+			while(conns[i] != conn) i++;
+			if(monitors[i].connected.get()) return conn;
+			
+			Log.problem("JRedisService -- replacing disconnected connection " + conn);
+			faults.incrementAndGet();
+			HeartbeatJinn heartbeat = heartbeats[i];
+			ConnectionMonitor monitor = monitors[i];
+			Connection replacement;
+			try {
+				replacement = newConnection(i);
+			}
+			catch (ClientRuntimeException e) {
+				return conn;
+			}
+			heartbeat.shutdown();
+			conn.removeListener(monitor);
+			close(conn);
+			return replacement;
+		}
+	}
+
+	/**
+	 * Quits a connection dropped from the pool, in case it still holds its socket.
+	 * @param conn
+	 */
+	private final void close (Connection conn) {
+		try {
+			conn.serviceRequest(Command.QUIT);
+		}
+		catch (RedisException e) {
+			throw new ProviderException ("Quit raised an unexpected RedisException -- Bug");
+		}
+		catch (ClientRuntimeException e) { /* NotConnectedException is OK */ }
+	}
+
+	// ------------------------------------------------------------------------
+	// Metrics
+	// ------------------------------------------------------------------------
+	/** @return the number of connections of the pool */
+	public int getConnectionCount () {
+		return connCount;
+	}
+	/** @return the number of connections in use */
+	public int getInUseCount () {
+		return inUse.get();
+	}
+	/** @return the number of connection checkouts (requests) */
+	public long getCheckoutCount () {
+		return checkouts.get();
+	}
+	/** @return the total time waited for connections, in nanosecs */
+	public long getTotalWaitTime () {
+		return waitTime.get();
+	}
+	/** @return the longest time waited for a connection, in nanosecs */
+	public long getMaxWaitTime () {
+		return maxWaitTime.get();
+	}
+	/** @return the number of requests that failed with {@link ClientRuntimeException}s (e.g. connection resets) */
+	public long getFaultCount () {
+		return faults.get();
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// =========================================================== Resource<T>
+	/*
+	 * Provides basic Resource support without any state management.  Extensions
+	 * that use context in a simply manner can rely on these methods.  Others may
+	 * wish to override.
+	 */
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see org.jredis.resource.Resource#getInterface()
+	 */
 //	@Override
-//	protected void setConnection(Connection connection) {
-//		throw new RuntimeException("who called me?");
-//	}
-//
-//	
-//	/* (non-Javadoc)
-//	 * @see org.jredis.ri.alphazero.JRedisSupport#serviceRequest(org.jredis.protocol.Command, byte[][])
-//	 */
-//	@Override
-//	protected Response serviceRequest(Command cmd, byte[]... args)
-//			throws RedisException, ClientRuntimeException, ProviderException 
-//	{
-//		Response response = null;
-//		
-//		try {
-//			// we're using a counting semaphore to remain within
-//			// bounds of the connection count
-//			// if more than cnt requests are being serviced, we block here
-//			connPoolAccess.acquire();
-//			
-//			int i = 0;
-//			try {
-//				// bare bones connection pool - mark the first available
-//				// connection as inUse and then use it
-//				// this is faster than using the synch collections of JDK and sufficient
-//				synchronized(connInUse){	// Note: could use finer grained sync on conns[i] in loop instead ..
-//					for(; i<connInUse.length;i++){
-//						if(connInUse[i]==false) {
-//							connInUse[i] = true;
-//							break;
-//						}
-//					}
-//				}
-//				
-//				// This shouldn't happen -- but lets make sure, hey?
-//				if(i>=connCount) 
-//					throw new ProviderException("BUG: JRedisService connection pool manager - index exceeds bounds!");
-//				
-//				response = conns[i].serviceRequest(cmd, args);
-//			}
-//			finally {
-//				// return the connection to the pool
-//				synchronized(connInUse){
-//					if(connInUse[i] != true) 
-//						throw new ProviderException("BUG: JRedisService connection pool manager - connection should have been marked in use!");
-//					connInUse[i] = false;
-//				}
-//				
-//				// release the bounds sem.
-//				connPoolAccess.release();
-//			}
-//		} 
-//		catch (InterruptedException e) {
-//			// TODO: need meaningful action here
-//			// its not clear what can be done since the interrupt is occurring on the
-//			// user (calling) thread and is not connection specific, and the situation
-//			// is ambiguous.  We can note it for now.
-//			e.printStackTrace();
-//			Log.log("Thread <%s> was interrupted in JRedisService.serviceRequest", Thread.currentThread().getName());
-//		}
-//		return response;
-//	}
-//	// ------------------------------------------------------------------------
-//	// Interface
-//	// =========================================================== Resource<T>
-//	/*
-//	 * Provides basic Resource support without any state management.  Extensions
-//	 * that use context in a simply manner can rely on these methods.  Others may
-//	 * wish to override.
-//	 */
-//	// ------------------------------------------------------------------------
-//	
-//	/* (non-Javadoc)
-//	 * @see org.jredis.resource.Resource#getInterface()
-//	 */
-////	@Override
-//	public JRedis getInterface() {
-//		return this;
-//	}
-//}
+	public JRedis getInterface() {
+		return this;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	/**
+	 * Tracks the connected state of a pool connection through its events: a connection
+	 * that is disconnected, and not (yet) reconnected, is replaced by the pool.
+	 */
+	private static final class ConnectionMonitor implements Connection.Listener {
+		/** pool connections are connected on creation */
+		final AtomicBoolean connected = new AtomicBoolean(true);
+		
+		public void onEvent (Connection.Event event) {
+			switch (event.getType()){
+				case CONNECTED:
+					connected.set(true);
+					break;
+				case DISCONNECTED:
+					connected.set(false);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+}
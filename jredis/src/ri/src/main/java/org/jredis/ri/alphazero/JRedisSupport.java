@@ -16,7 +16,14 @@
 
 package org.jredis.ri.alphazero;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +36,7 @@ import java.util.concurrent.TimeUnit;
 import org.jredis.ClientRuntimeException;
 import org.jredis.JRedis;
 import org.jredis.KeyValueSet;
+import org.jredis.NotSupportedException;
 import org.jredis.ObjectInfo;
 import org.jredis.ProviderException;
 import org.jredis.Redis;
@@ -37,6 +45,7 @@ import org.jredis.RedisType;
 import org.jredis.Sort;
 import org.jredis.ZSetEntry;
 import org.jredis.connector.Connection;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.BulkResponse;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.MultiBulkResponse;
@@ -93,6 +102,41 @@ public abstract class JRedisSupport implements JRedis {
 	 * @throws ProviderException
 	 */
 	protected abstract Response serviceRequest (Command cmd, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException; 
+	
+	/**
+	 * Mimics {@link Connection#serviceRequest(Command, InputStream, int, byte[]...)}, for requests
+	 * with streamed values.  Not supported by default -- extensions using synchronous connections 
+	 * should delegate to them.
+	 * 
+	 * @param cmd
+	 * @param data
+	 * @param length
+	 * @param args
+	 * @return
+	 * @throws RedisException
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	protected Response serviceRequest (Command cmd, InputStream data, int length, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException {
+		throw new NotSupportedException ("Streamed request values are not supported by " + getClass().getName());
+	}
+	
+	/**
+	 * Mimics {@link Connection#serviceRequest(Command, BulkDataHandler, byte[]...)}, for requests
+	 * with streamed (bulk) responses.  Not supported by default -- extensions using synchronous 
+	 * connections should delegate to them.
+	 * 
+	 * @param cmd
+	 * @param handler
+	 * @param args
+	 * @return
+	 * @throws RedisException
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	protected Response serviceRequest (Command cmd, BulkDataHandler handler, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException {
+		throw new NotSupportedException ("Streamed response data is not supported by " + getClass().getName());
+	}
 	// ------------------------------------------------------------------------
 	// INTERFACE
 	// ================================================================ Redis
@@ -394,6 +438,19 @@ public abstract class JRedisSupport implements JRedis {
 		set(key, DefaultCodec.encode(value));
 	}
 	
+	@Override
+	public <K extends Object> void set(K key, InputStream in, int length) throws RedisException {
+		byte[] keybytes = null;
+		if((keybytes = getKeyBytes(key)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		this.serviceRequest(Command.SET, in, length, keybytes);
+	}
+	@Override
+	public <K extends Object> void set(K key, ReadableByteChannel channel, int length) throws RedisException {
+		set(key, Channels.newInputStream(channel), length);
+	}
+	
 	@Override
 	public <K extends Object> byte[] getset(K key, byte[] value) throws RedisException {
 		byte[] keybytes = null;
@@ -961,6 +1018,24 @@ public abstract class JRedisSupport implements JRedis {
 		}
 		return bulkData;
 	}
+	@Override
+	public <K extends Object> boolean get(K key, OutputStream out) throws RedisException {
+		return get(key, new BulkDataCopier(out, null, null));
+	}
+	@Override
+	public <K extends Object> boolean get(K key, WritableByteChannel channel) throws RedisException {
+		return get(key, new BulkDataCopier(null, channel, null));
+	}
+	@Override
+	public <K extends Object> boolean get(K key, BulkDataHandler handler) throws RedisException {
+		byte[] keybytes = null;
+		if((keybytes = getKeyBytes(key)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		BulkDataCopier copier = handler instanceof BulkDataCopier ? (BulkDataCopier) handler : new BulkDataCopier(null, null, handler);
+		this.serviceRequest(Command.GET, copier, keybytes);
+		return copier.handled;
+	}
 
 	@Override
 	public <K extends Object> byte[] lindex(K key, long index) throws RedisException {
@@ -2058,4 +2133,48 @@ public abstract class JRedisSupport implements JRedis {
 	public static <K extends Object> byte[] getKeyBytes(K key) throws IllegalArgumentException {
 		return DefaultKeyCodec.provider().encode(key);
 	}
+	
+	/** max size of the chunks of streamed values copied by {@link BulkDataCopier} */
+	private static final int	BULK_DATA_CHUNK_SIZE = 1024 * 64;
+	
+	/**
+	 * Copies the streamed bulk data of a response to the stream or channel, or 
+	 * delegates to the user's handler, and notes if there was any data (a value).
+	 */
+	private static final class BulkDataCopier implements BulkDataHandler {
+		private final OutputStream			out;
+		private final WritableByteChannel	channel;
+		private final BulkDataHandler		handler;
+		/** set if the data was handled -- i.e. the value was not null */
+		private boolean 					handled;
+		
+		BulkDataCopier (OutputStream out, WritableByteChannel channel, BulkDataHandler handler) {
+			this.out = out;
+			this.channel = channel;
+			this.handler = handler;
+		}
+//		@Override
+		public void handleBulkData (InputStream data, int length) throws IOException {
+			handled = true;
+			if(handler != null) {
+				handler.handleBulkData(data, length);
+				return;
+			}
+			byte[] chunk = new byte[Math.min(length, BULK_DATA_CHUNK_SIZE)];
+			int readcnt;
+			for(int remaining = length; remaining > 0; remaining -= readcnt){
+				readcnt = data.read(chunk, 0, Math.min(remaining, chunk.length));
+				if(readcnt == -1) 
+					throw new IOException ("bulk data ended with " + remaining + " bytes remaining");
+				if(out != null) {
+					out.write(chunk, 0, readcnt);
+				}
+				else {
+					ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, readcnt);
+					while(buffer.hasRemaining()) 
+						channel.write(buffer);
+				}
+			}
+		}
+	}
 }
@@ -38,6 +38,7 @@ import org.jredis.RedisException;
 import org.jredis.connector.Connection;
 import org.jredis.connector.ConnectionSpec;
 import org.jredis.connector.Connection.Event.Type;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Response;
@@ -155,6 +156,24 @@ public abstract class ConnectionBase implements Connection{
 				"byte[]...) is not supported.");
 	}
 
+//	@Override
+	public Response serviceRequest(Command cmd, InputStream data, int length, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		throw new NotSupportedException (
+				"Response.serviceRequest(Command cmd, InputStream, " +
+				"int, byte[]...) is not supported.");
+	}
+	
+//	@Override
+	public Response serviceRequest(Command cmd, BulkDataHandler handler, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		throw new NotSupportedException (
+				"Response.serviceRequest(Command cmd, BulkDataHandler, " +
+				"byte[]...) is not supported.");
+	}
+
 //	@Override
 	public Future<Response> queueRequest(Command cmd, byte[]... args) 
 		throws ClientRuntimeException, ProviderException 
@@ -265,6 +284,23 @@ public abstract class ConnectionBase implements Connection{
      * @return
      */
     protected OutputStream newOutputStream(OutputStream socketOutputStream) { return socketOutputStream; }
+
+    /**
+     * Extension point: override to return a socket per requirement (e.g. the socket of a
+     * {@link java.nio.channels.SocketChannel}).  Base implementation returns a new, unconnected {@link java.net.Socket}.
+     * @return
+     * @throws IOException
+     */
+    protected java.net.Socket newSocket() throws IOException { return new java.net.Socket(); }
+    
+    /**
+     * Extension point: callback on this method when the socket has connected and its streams
+     * have been obtained, before the connection is initialized (e.g. AUTH and SELECT requests).
+     * Base implementation does nothing.
+     * @param socket the connected socket
+     * @throws IOException
+     */
+    protected void notifySocketConnected(java.net.Socket socket) throws IOException { }
     
 	// ------------------------------------------------------------------------
 	// Inner ops: event management
@@ -352,6 +388,13 @@ public abstract class ConnectionBase implements Connection{
 			throw new ClientRuntimeException("Error obtaining connected socket's streams ", e);
 		}
 		
+		try {
+			notifySocketConnected (socket);
+		} 
+		catch (IOException e) {
+			throw new ClientRuntimeException("Error setting up the connected socket ", e);
+		}
+		
 		isConnected = true;
 		
 		try {
@@ -402,7 +445,7 @@ public abstract class ConnectionBase implements Connection{
 	private final void newSocketConnect () 
 		throws IOException 
 	{
-		socket = new java.net.Socket ();
+		socket = newSocket ();
 		
 		socket.setKeepAlive (
 				spec.getSocketFlag (Connection.Socket.Flag.SO_KEEP_ALIVE));
@@ -532,8 +575,17 @@ public abstract class ConnectionBase implements Connection{
 //		this.protocol = notNull(protocolHandler, "protocolHandler for ConnectionBase", ClientRuntimeException.class);
 	}
 	
+	/**
+	 * @return the protocol handler of the calling thread -- a new handler is created on first
+	 * use by a thread other than the one that initialized the connection (e.g. pooled connections).
+	 */
 	final protected Protocol getProtocolHandler() {
-		return notNull(thrdProtocol.get(), "protocolHandler for ConnectionBase", ClientRuntimeException.class);
+		Protocol protocol = thrdProtocol.get();
+		if(protocol == null) {
+			protocol = notNull(newProtocolHandler(), "protocolHandler for ConnectionBase", ClientRuntimeException.class);
+			thrdProtocol.set(protocol);
+		}
+		return protocol;
 	}
 
 	final protected OutputStream getOutputStream() {
@@ -71,7 +71,10 @@ public class DefaultConnectionFactory implements Connection.Factory {
     private Connection newAsyncConnection (ConnectionSpec spec) {
 
     	Connection conn = null;
-    	if(spec.getConnectionFlag(Flag.PIPELINE)){
+    	if(spec.getConnectionFlag(Flag.NIO)){
+			conn = new NioConnection(spec);
+    	}
+    	else if(spec.getConnectionFlag(Flag.PIPELINE)){
 			conn = new AsyncPipelineConnection(spec); // why not for all asyncs?
     	}
     	else {
@@ -68,13 +68,27 @@ public class HeartbeatJinn extends Thread implements Connection.Listener{
 	 * @param name associated with this (heartbeat) thread.
 	 */
 	public HeartbeatJinn (Connection conn, int periodInSecs, String name) {
+		this (conn, periodInSecs, name, false);
+	}
+	
+	/**
+	 * Instantiate and initialize the HeartbeatJinn for a connection that may already
+	 * be connected (e.g. connections of a pool), which (being connected) will not raise
+	 * the {@link Connection.Event.Type#CONNECTED} event.
+	 * 
+	 * @param conn associated with this instnace
+	 * @param periodInSecs a reasonable value is 1.  Internally converted to millisecs.
+	 * @param name associated with this (heartbeat) thread.
+	 * @param isConnected the current connection state
+	 */
+	public HeartbeatJinn (Connection conn, int periodInSecs, String name, boolean isConnected) {
 		super (name);
 		setDaemon(true);
 		this.conn = conn;
 		conn.addListener(this);
 		this.modality = conn.getSpec().getModality();
 		this.period = periodInSecs * 1000;
-		this.connected = new AtomicBoolean(false);
+		this.connected = new AtomicBoolean(isConnected);
 		this.mustBeat = new AtomicBoolean(true);
 	}
 
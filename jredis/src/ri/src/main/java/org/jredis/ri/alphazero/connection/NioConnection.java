@@ -0,0 +1,451 @@
+/*
+ *   Copyright 2026 agent
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis.NotSupportedException;
+import org.jredis.ProviderException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.NotConnectedException;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Protocol;
+import org.jredis.protocol.Response;
+import org.jredis.protocol.Command.ResponseType;
+import org.jredis.ri.alphazero.protocol.ConcurrentSyncProtocol;
+import org.jredis.ri.alphazero.protocol.ProtocolBase;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * An {@link Connection.Modality#Asynchronous} connection over a non-blocking {@link SocketChannel},
+ * serviced by the shared {@link NioEventLoop} thread, so any number of these connections are
+ * multiplexed by a single thread (where {@link AsyncConnection} dedicates a thread to each).
+ * <p>
+ * {@link NioConnection#queueRequest(Command, byte[]...)} encodes the request to buffers (the args
+ * are not copied) and queues it on the connection, and the event loop writes the queued requests
+ * with gathering writes.  Replies are read into the connection's receive buffer and each complete
+ * reply completes the {@link Future} of the oldest pending request.
+ * <p>
+ * If the connection is {@link Connection.Flag#RELIABLE}, a fault (including the server closing
+ * the connection) fails the pending requests and the connection is reconnected by a separate
+ * thread, as the reconnect blocks (e.g. on the AUTH and SELECT replies, which are read by the
+ * event loop).  Requests queued while reconnecting are rejected.
+ * <p>
+ * Created by the {@link DefaultConnectionFactory} for asynchronous specs with the
+ * {@link Connection.Flag#NIO} flag set.
+ *
+ * @author  agent (agent@local)
+ * @version alpha.0, Oct 17, 2026
+ * @since   alpha.0
+ *
+ */
+
+public class NioConnection extends ConnectionBase implements Connection {
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/*
+	 * Note: initialized in initializeComponents (and not in declarations) as the
+	 * base constructor may connect.
+	 */
+
+	/** max number of buffers per gathering write */
+	private static final int	MAX_GATHER = 1024;
+
+	/**  */
+	private NioEventLoop		eventLoop;
+
+	/** response handler of the event loop */
+	private Protocol			protocol;
+
+	/**  */
+	private volatile SocketChannel	channel;
+
+	/** guards the order of the queues and the open state */
+	private Object				queueLock;
+
+	/** false before connect, and after quit or faults: requests are rejected */
+	private boolean				open;
+
+	/** request buffers yet to be handed to the event loop */
+	private Queue<ByteBuffer[]>	writeQueue;
+
+	/** requests awaiting their reply, in write order */
+	private Queue<PendingRequest>	pendingQueue;
+
+	/** true if the connection is scheduled on the event loop */
+	private AtomicBoolean		flushScheduled;
+
+	/* event loop state */
+
+	/**  */
+	private SelectionKey		key;
+	/** buffers being written -- [outOffset, outCount) are not (fully) written */
+	private ByteBuffer[]		outgoing;
+	private int					outOffset;
+	private int					outCount;
+	/** received data -- in write (fill) mode between reads */
+	private ByteBuffer			readBuffer;
+	/** scan state of the (incomplete) reply at the start of readBuffer */
+	private ProtocolBase.ReplyScanner	replyScanner;
+
+	// ------------------------------------------------------------------------
+	// Constructors
+	// ------------------------------------------------------------------------
+	public NioConnection (
+			ConnectionSpec connectionSpec
+		)
+		throws ClientRuntimeException, ProviderException
+	{
+		super (connectionSpec.setModality(Modality.Asynchronous));
+	}
+
+	// ------------------------------------------------------------------------
+	// Extension
+	// ------------------------------------------------------------------------
+	/**
+     *
+     */
+	@Override
+    protected void initializeComponents () {
+    	super.initializeComponents();
+
+    	eventLoop = NioEventLoop.getDefault();
+    	protocol = Assert.notNull (newProtocolHandler(), "the delegate protocol handler", ClientRuntimeException.class);
+    	queueLock = new Object();
+    	writeQueue = new ConcurrentLinkedQueue<ByteBuffer[]>();
+    	pendingQueue = new ConcurrentLinkedQueue<PendingRequest>();
+    	flushScheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Replies are read by the event loop thread: must use a concurrent protocol handler.
+     *
+     * @see org.jredis.ri.alphazero.connection.ConnectionBase#newProtocolHandler()
+     */
+    @Override
+    protected Protocol newProtocolHandler () {
+		return new ConcurrentSyncProtocol();
+    }
+
+    /**
+     * @return the socket of a new {@link SocketChannel}
+     */
+    @Override
+    protected java.net.Socket newSocket () throws IOException {
+    	return SocketChannel.open().socket();
+    }
+
+    /**
+     * Switches the (connected) channel to non-blocking mode and schedules its
+     * registration with the event loop.
+     */
+    @Override
+    protected void notifySocketConnected (java.net.Socket socket) throws IOException {
+    	channel = Assert.notNull(socket.getChannel(), "socket channel", ProviderException.class);
+    	channel.configureBlocking(false);
+    	synchronized (queueLock) {
+    		open = true;
+    	}
+    	flushScheduled.set(true);
+    	eventLoop.schedule(this);
+    }
+
+    /**
+     * Fails the pending requests.
+     */
+    @Override
+    protected void cleanup () {
+    	super.cleanup();
+    	failPending(new ClientRuntimeException("Connection closed"));
+    }
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ======================================================= ProtocolHandler
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see org.jredis.connector.Connection#getModality()
+	 */
+	public final Modality getModality() {
+		return Connection.Modality.Asynchronous;
+	}
+
+	/**
+	 * Queues the request and schedules the connection on the event loop, unless already scheduled.
+	 * As with {@link AsyncConnection}, QUIT is not sent: the connection is closed once the replies of
+	 * the requests queued before it have been received.  The other virtual commands (SHUTDOWN and
+	 * MONITOR) have no reply to pair with a pending request and are not supported.
+	 * <p>
+	 * The pending request is queued before its buffers, as the event loop polls the write queue
+	 * without the queue lock and may read the reply as soon as the request is written.
+     * @see org.jredis.ri.alphazero.connection.ConnectionBase#queueRequest(org.jredis.protocol.Command, byte[][])
+     */
+    @Override
+    public Future<Response> queueRequest (Command cmd, byte[]... args)
+    	throws ClientRuntimeException, ProviderException
+    {
+		if(!isConnected())
+			throw new NotConnectedException ("Not connected!");
+
+		if(cmd.responseType == ResponseType.VIRTUAL && cmd != Command.QUIT)
+			throw new NotSupportedException (cmd.code + " is not supported by " + getClass().getSimpleName());
+
+		PendingRequest pending = new PendingRequest(cmd, args);
+		ByteBuffer[] buffers = cmd == Command.QUIT ? null : ProtocolBase.createRequestBuffers(cmd, args);
+		synchronized (queueLock) {
+			if(!open)
+				throw new NotConnectedException ("Not connected!");
+			pendingQueue.add(pending);
+			if(buffers != null)
+				writeQueue.add(buffers);
+			if(cmd == Command.QUIT)
+				open = false;
+		}
+		if(flushScheduled.compareAndSet(false, true))
+			eventLoop.schedule(this);
+
+		return pending;
+    }
+
+	// ------------------------------------------------------------------------
+	// Event loop callbacks
+	// ------------------------------------------------------------------------
+    /**
+     * Registers the channel (on first call after connect) and writes the queued requests.
+     * @param selector of the event loop
+     */
+    final void onScheduled (Selector selector) {
+    	flushScheduled.set(false);
+    	SocketChannel channel = this.channel;
+    	if(channel == null || !channel.isOpen()) return;
+    	try {
+    		if(key == null || key.channel() != channel) {
+    			key = channel.register(selector, SelectionKey.OP_READ, this);
+    			outgoing = new ByteBuffer[16];
+    			outOffset = outCount = 0;
+    			readBuffer = ByteBuffer.allocate(spec.getSocketProperty(Connection.Socket.Property.SO_RCVBUF));
+    			replyScanner = new ProtocolBase.ReplyScanner();
+    		}
+    		else if(!key.isValid()) {
+    			return;	// faulted channel, pending reconnect
+    		}
+    		flush();
+    		completeQuit();
+    	}
+    	catch (IOException e) {
+    		onFault("IOException on write: " + e.getLocalizedMessage(), e);
+    	}
+    }
+
+    /**
+     * Reads the replies and/or writes the remaining requests, per ready ops.
+     * @param key
+     */
+    final void onSelected (SelectionKey key) {
+    	if(key != this.key) return; // of a faulted channel
+    	try {
+    		if(key.isValid() && key.isReadable())
+    			read();
+    		if(key.isValid() && key.isWritable())
+    			flush();
+    	}
+    	catch (IOException e) {
+    		onFault("IOException on channel io: " + e.getLocalizedMessage(), e);
+    	}
+    	catch (ProviderException e) {
+    		onFault("ProviderException on channel io: " + e.getLocalizedMessage(), e);
+    	}
+    }
+
+	// ------------------------------------------------------------------------
+	// Inner ops: event loop
+	// ------------------------------------------------------------------------
+    /**
+     * Writes the queued buffers until all are written, or the socket's send buffer is full,
+     * in which case write readiness is selected.
+     * @throws IOException
+     */
+    private void flush () throws IOException {
+    	ByteBuffer[] buffers;
+    	while((buffers = writeQueue.poll()) != null)
+    		append(buffers);
+
+    	while(outOffset < outCount){
+    		long written = channel.write(outgoing, outOffset, Math.min(outCount - outOffset, MAX_GATHER));
+    		while(outOffset < outCount && !outgoing[outOffset].hasRemaining())
+    			outgoing[outOffset++] = null;
+    		if(written == 0) break;
+    	}
+    	if(outOffset == outCount) {
+    		outOffset = outCount = 0;
+    		key.interestOps(SelectionKey.OP_READ);
+    	}
+    	else {
+    		key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    	}
+    }
+
+    private void append (ByteBuffer[] buffers) {
+    	if(outCount + buffers.length > outgoing.length) {
+    		int pending = outCount - outOffset;
+    		ByteBuffer[] target = outgoing;
+    		if(pending + buffers.length > outgoing.length)
+    			target = new ByteBuffer[Math.max(2 * outgoing.length, pending + buffers.length)];
+    		System.arraycopy(outgoing, outOffset, target, 0, pending);
+    		for(int i=pending; i<outCount; i++) target[i] = null;
+    		outgoing = target;
+    		outOffset = 0;
+    		outCount = pending;
+    	}
+    	System.arraycopy(buffers, 0, outgoing, outCount, buffers.length);
+    	outCount += buffers.length;
+    }
+
+    /**
+     * Reads what is available, completing the pending requests with the complete replies received.
+     * @throws IOException
+     * @throws ProviderException if the replies can not be framed, or there is no request pending for a reply
+     */
+    private void read () throws IOException, ProviderException {
+    	int read;
+    	while((read = channel.read(readBuffer)) > 0){
+    		processReplies();
+    		if(readBuffer.hasRemaining()) break;
+    	}
+    	if(read < 0)
+    		throw new IOException("Connection closed by the server");
+    	completeQuit();
+    }
+
+    private void processReplies () throws ProviderException {
+    	readBuffer.flip();
+    	final byte[] data = readBuffer.array();
+    	final int limit = readBuffer.limit();
+    	int offset = readBuffer.position();
+    	int length;
+    	while((length = replyScanner.scan(data, offset, limit)) > 0){
+    		PendingRequest pending = pendingQueue.poll();
+    		if(pending == null)
+    			throw new ProviderException("Received a reply with no pending request");
+    		try {
+    			Response response = protocol.createResponse(pending.cmd);
+    			response.read(new ByteArrayInputStream(data, offset, length));
+    			pending.setResponse(response);
+    			if(response.getStatus().isError()) {
+    				Log.error ("(Nio) Error response for " + pending.cmd.code + " => " + response.getStatus().message());
+    			}
+    		}
+    		catch (ClientRuntimeException cre) {
+    			Log.error ("ClientRuntimeException: " + cre.getLocalizedMessage());
+    			pending.setCRE(cre);
+    		}
+    		offset += length;
+    	}
+    	readBuffer.position(offset);
+    	readBuffer.compact();
+    	// a reply larger than the buffer
+    	if(!readBuffer.hasRemaining()) {
+    		ByteBuffer larger = ByteBuffer.allocate(2 * readBuffer.capacity());
+    		readBuffer.flip();
+    		larger.put(readBuffer);
+    		readBuffer = larger;
+    	}
+    }
+
+    /**
+     * Completes a QUIT that is no longer preceded by requests awaiting replies, and disconnects.
+     */
+    private void completeQuit () {
+    	PendingRequest head = pendingQueue.peek();
+    	if(head != null && head.cmd == Command.QUIT) {
+    		pendingQueue.poll();
+    		head.setResponse(protocol.createResponse(head.cmd));
+    		if(isConnected()) disconnect();
+    	}
+    }
+
+    /**
+     * Fails the pending requests, and reconnects (off the loop thread) if the connection is
+     * {@link Connection.Flag#RELIABLE} and was not quitting, or disconnects.
+     */
+    private void onFault (String fault, Exception e) {
+    	boolean wasOpen;
+    	synchronized (queueLock) {
+    		wasOpen = open;
+    	}
+    	onConnectionFault(fault, false);
+    	failPending(new ClientRuntimeException(fault, e));
+    	outgoing = new ByteBuffer[16];
+    	outOffset = outCount = 0;
+    	if(readBuffer != null) readBuffer.clear();
+    	if(replyScanner != null) replyScanner.reset();
+    	if(key != null) key.cancel();
+    	if(!isConnected()) return;
+    	if(wasOpen && spec.getConnectionFlag(Connection.Flag.RELIABLE))
+    		reconnectAsync();
+    	else
+    		disconnect();
+    }
+
+    /**
+     * Reconnects with a new (daemon) thread: the connection initialization requests must not
+     * be serviced by the loop thread, which reads their replies.
+     */
+    private void reconnectAsync () {
+    	Thread reconnector = new Thread(new Runnable() {
+			public void run () {
+				try {
+					reconnect();
+				}
+				catch (RuntimeException e) {
+					Log.error("(Nio) Failed to reconnect: " + e.getLocalizedMessage());
+				}
+			}
+		}, "jredis-nio-reconnect");
+    	reconnector.setDaemon(true);
+    	reconnector.start();
+    }
+
+    /**
+     * Rejects further requests and fails those that are pending.
+     * @param cre
+     */
+    private void failPending (ClientRuntimeException cre) {
+    	if(queueLock == null) return;
+    	synchronized (queueLock) {
+    		open = false;
+    	}
+    	writeQueue.clear();
+    	PendingRequest pending;
+    	while((pending = pendingQueue.poll()) != null)
+    		pending.setCRE(cre);
+    }
+}
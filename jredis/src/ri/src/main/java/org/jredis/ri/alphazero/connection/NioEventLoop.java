@@ -0,0 +1,144 @@
+/*
+ *   Copyright 2026 agent
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jredis.ProviderException;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * A single (daemon) thread multiplexing the channels of any number of {@link NioConnection}s
+ * with a {@link Selector}.  All channel io of the connections is performed by this thread:
+ * the requesting threads only queue their requests and {@link NioEventLoop#schedule(NioConnection)}
+ * the connection, which is then flushed (and registered, on first use) by the loop.
+ * <p>
+ * Connections share the {@link NioEventLoop#getDefault()} loop.
+ *
+ * @author  agent (agent@local)
+ * @version alpha.0, Oct 17, 2026
+ * @since   alpha.0
+ *
+ */
+
+public final class NioEventLoop implements Runnable {
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** the shared loop -- lazily started */
+	private static NioEventLoop		defaultLoop;
+
+	/**  */
+	private final Selector			selector;
+
+	/** connections with pending registration or writes -- drained by the loop */
+	private final Queue<NioConnection>	scheduled = new ConcurrentLinkedQueue<NioConnection>();
+
+	/**  */
+	private final Thread			thread;
+
+	// ------------------------------------------------------------------------
+	// Constructors
+	// ------------------------------------------------------------------------
+	/**
+	 * Opens the selector and starts the loop thread.
+	 * @param name of the loop thread
+	 * @throws ProviderException if the selector can not be opened
+	 */
+	public NioEventLoop (String name) throws ProviderException {
+		try {
+	        selector = Selector.open();
+        }
+        catch (IOException e) {
+        	throw new ProviderException("Failed to open the selector for the event loop", e);
+        }
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+	}
+
+	/**
+	 * @return the event loop shared by the {@link NioConnection}s.
+	 */
+	public static synchronized NioEventLoop getDefault () {
+		if(defaultLoop == null)
+			defaultLoop = new NioEventLoop("jredis-nio-event-loop");
+		return defaultLoop;
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	/**
+	 * Queues the connection for servicing by the loop thread and wakes up the selector.
+	 * @param conn
+	 */
+	final void schedule (NioConnection conn) {
+		scheduled.add(conn);
+		selector.wakeup();
+	}
+
+	/**
+	 * @return true if the caller is the loop thread.
+	 */
+	final boolean inEventLoop () {
+		return Thread.currentThread() == thread;
+	}
+
+	// ------------------------------------------------------------------------
+	// Runnable
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Loops forever: registers and flushes the scheduled connections, and services
+	 * the selected (ready) channels.  Faults are handled by the connections -- an
+	 * exception escaping a connection is logged and the loop continues.
+	 */
+	public void run () {
+		Log.log("NioEventLoop thread <%s> started.", Thread.currentThread().getName());
+		while(true){
+			try {
+				selector.select();
+
+				NioConnection conn;
+				while((conn = scheduled.poll()) != null) {
+					conn.onScheduled(selector);
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					conn = (NioConnection) key.attachment();
+					conn.onSelected(key);
+				}
+			}
+			catch (IOException e) {
+				Log.error("IOException on select: " + e.getLocalizedMessage());
+			}
+			catch (RuntimeException e) {
+				Log.error("Unexpected RuntimeException in event loop: " + e.getLocalizedMessage(), e);
+			}
+		}
+	}
+}
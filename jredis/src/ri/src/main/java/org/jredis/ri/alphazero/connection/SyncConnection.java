@@ -16,6 +16,8 @@
 
 package org.jredis.ri.alphazero.connection;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.jredis.ClientRuntimeException;
@@ -25,6 +27,7 @@ import org.jredis.connector.Connection;
 import org.jredis.connector.ConnectionReset;
 import org.jredis.connector.ConnectionSpec;
 import org.jredis.connector.NotConnectedException;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Request;
@@ -98,11 +101,63 @@ public class SyncConnection extends ConnectionBase implements Connection {
 		return Connection.Modality.Synchronous;
 	}
 
-	/* (non-Javadoc)
+	/**
+	 * If the connection is {@link Connection.Flag#RELIABLE}, requests are serialized by the
+	 * connection's lock, so that it may be shared with its {@link HeartbeatJinn} (e.g. in pools).
 	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#serviceRequest(org.jredis.protocol.Command, byte[][])
 	 */
 	public Response serviceRequest (Command cmd, byte[]... args) 
 		throws RedisException
+	{
+		return doServiceRequest(cmd, null, 0, null, args);
+	}
+	
+	/**
+	 * Streams the value from <code>data</code> through the request buffer of the protocol.
+	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#serviceRequest(org.jredis.protocol.Command, java.io.InputStream, int, byte[][])
+	 */
+	@Override
+	public Response serviceRequest (Command cmd, InputStream data, int length, byte[]... args) 
+		throws RedisException
+	{
+		Assert.notNull(data, "data", IllegalArgumentException.class);
+		return doServiceRequest(cmd, data, length, null, args);
+	}
+	
+	/**
+	 * Faults of the handler (e.g. parse errors) do not reset the connection: the remaining bulk 
+	 * data is read and the fault is raised after the response has been read -- {@link IOException}s
+	 * as {@link ClientRuntimeException}s.
+	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#serviceRequest(org.jredis.protocol.Command, org.jredis.protocol.BulkDataHandler, byte[][])
+	 */
+	@Override
+	public Response serviceRequest (Command cmd, BulkDataHandler handler, byte[]... args) 
+		throws RedisException
+	{
+		Assert.notNull(handler, "handler", IllegalArgumentException.class);
+		GuardedDataHandler guard = new GuardedDataHandler(handler);
+		Response response = doServiceRequest(cmd, null, 0, guard, args);
+		guard.raiseFault();
+		return response;
+	}
+	
+	private Response doServiceRequest (Command cmd, InputStream data, int length, BulkDataHandler handler, byte[]... args) 
+		throws RedisException
+	{
+		if(lock == null) 
+			return processRequest(cmd, data, length, handler, args);
+		
+		acquireLock();
+		try {
+			return processRequest(cmd, data, length, handler, args);
+		}
+		finally {
+			releaseLock();
+		}
+	}
+	
+	private Response processRequest (Command cmd, InputStream data, int length, BulkDataHandler handler, byte[]... args) 
+		throws RedisException
 	{
 		if(!isConnected()) throw new NotConnectedException ("Not connected!");
 		
@@ -115,12 +170,14 @@ public class SyncConnection extends ConnectionBase implements Connection {
 			// 1 - Request
 			//				Log.log("RedisConnection - requesting ..." + cmd.code);
 			
-			request = Assert.notNull(protocol.createRequest (cmd, args), "request object from handler", ProviderException.class);
+			request = data == null ? protocol.createRequest (cmd, args) : protocol.createRequest (cmd, data, length, args);
+			request = Assert.notNull(request, "request object from handler", ProviderException.class);
 			request.write(super.getOutputStream());
 
 			// 2 - response
 			//				Log.log("RedisConnection - read response ..." + cmd.code);
-			response = Assert.notNull(protocol.createResponse(cmd), "response object from handler", ProviderException.class);
+			response = handler == null ? protocol.createResponse(cmd) : protocol.createResponse(cmd, handler);
+			response = Assert.notNull(response, "response object from handler", ProviderException.class);
 			response.read(super.getInputStream());
 
 			//				break;
@@ -160,13 +217,46 @@ public class SyncConnection extends ConnectionBase implements Connection {
 
 		return response;
 	}
-	@SuppressWarnings("unused")
     private Lock acquireLock() {
 		lock.lock();
 		return lock;
 	}
-	@SuppressWarnings("unused")
     private void releaseLock() {
 		lock.unlock();
 	}
+    
+	// ------------------------------------------------------------------------
+	// Inner Type
+	// ------------------------------------------------------------------------
+	/**
+	 * Records the fault of the user's {@link BulkDataHandler}, so that the response is 
+	 * read to its end and the connection stays in sync with the server.
+	 */
+	private static final class GuardedDataHandler implements BulkDataHandler {
+		/**  */
+		private final BulkDataHandler handler;
+		/**  */
+		private IOException ioFault;
+		/**  */
+		private RuntimeException fault;
+		
+		GuardedDataHandler (BulkDataHandler handler) {
+			this.handler = handler;
+		}
+//		@Override
+		public void handleBulkData (InputStream data, int length) {
+			try {
+				handler.handleBulkData(data, length);
+			}
+			catch (IOException e) { ioFault = e; }
+			catch (RuntimeException e) { fault = e; }
+		}
+		/** raises the fault of the handler, if any */
+		void raiseFault () throws ClientRuntimeException {
+			if(fault != null) 
+				throw fault;
+			if(ioFault != null) 
+				throw new ClientRuntimeException ("bulk data handler failed: " + ioFault.getLocalizedMessage(), ioFault);
+		}
+	}
 }
@@ -21,11 +21,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 
 import org.jredis.ClientRuntimeException;
 import org.jredis.NotSupportedException;
 import org.jredis.ProviderException;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.Command;
+import org.jredis.protocol.Command.RequestType;
+import org.jredis.protocol.Command.ResponseType;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
@@ -60,6 +64,12 @@ public abstract class ProtocolBase implements Protocol {
 	public static final byte	NUM_BYTE 	= (byte) 58; // :
 	public static final byte	ASCII_ZERO	= (byte) 48; // 0
 	
+	/** min size of the request buffers of {@link GatheringRequest}s -- fits any header line */
+	public static final int		MIN_REQUEST_BUFFER_SIZE = 64;
+	
+	/** sent for null args of bulk set commands */
+	private static final byte[]	EMPTY_ARG = new byte[0];
+	
 	// ------------------------------------------------------------------------
 	// Protocol Revision specific consts
 	// ------------------------------------------------------------------------
@@ -75,79 +85,30 @@ public abstract class ProtocolBase implements Protocol {
 		return version.equals("0.09");
 	}
 	
-	/* (non-Javadoc)
+	/**
+	 * Creates a {@link GatheringRequest} using this protocol's (pooled) request buffer.
+	 * <p>
+	 * Null args are only accepted (and sent as empty values) for the bulk set commands.
 	 * @see org.jredis.connector.Protocol#createRequest(org.jredis.Command, byte[][])
 	 */
 	@Override
 	public Request createRequest(Command cmd, byte[]... args) throws ProviderException, IllegalArgumentException {
-		
-		ByteArrayOutputStream buffer = createRequestBufffer (cmd);
-
-		try {
-			byte[] cmdLenBytes = Convert.toBytes(cmd.bytes.length);
-			byte[] lineCntBytes = Convert.toBytes(args.length+1);
-
-            buffer.write(COUNT_BYTE);
-            buffer.write(lineCntBytes);
-            buffer.write(CRLF);
-            buffer.write(SIZE_BYTE);
-            buffer.write(cmdLenBytes);
-            buffer.write(CRLF);
-            buffer.write(cmd.bytes);
-            buffer.write(CRLF);
-            
-			switch (cmd.requestType) {
-
-			case NO_ARG:
-			    break;
-			    
-			// TODO: check w/ antirez if in fact nulls are now generally accepted
-			// that is the only diff here.
-			case BULK_SET:
-				String errmsg = "Only MSET, MSETNX, LINSERT bulk commands are supported";
-				Assert.isTrue(cmd == Command.MSET || cmd == Command.MSETNX || cmd == Command.LINSERT, errmsg, NotSupportedException.class);
-
-				// THIS IS CLEARLY BROKEN ... SO MUCH FOR COMPREHSIVE TESTS ...
-				buffer.write(COUNT_BYTE);
-				buffer.write(lineCntBytes);
-				buffer.write(CRLF);
-				buffer.write(SIZE_BYTE);
-				buffer.write(cmdLenBytes);
-				buffer.write(CRLF);
-				buffer.write(cmd.bytes);
-				buffer.write(CRLF);
-				
-				for(int s=0; s<args.length; s++){
-					buffer.write(SIZE_BYTE);
-					if (args[s] != null) {
-	  					buffer.write(Convert.toBytes(args[s].length));
-	  					buffer.write(CRLF);
-	  					buffer.write(args[s]);
-	  					buffer.write(CRLF);
-	  				} else {
-						buffer.write(ASCII_ZERO);
-						buffer.write(CRLF);
-						buffer.write(CRLF);
-	  				}
-				}
-				break;
-			
-			default:
-				for(int i=0;i<args.length; i++){
-					buffer.write(SIZE_BYTE);
-					buffer.write(Convert.toBytes(Assert.notNull(args[i], i, ProviderException.class).length));
-					buffer.write(CRLF);
-					buffer.write(args[i]);
-					buffer.write(CRLF);
-				}
-				break;
-			
-			}
-		}
-		catch (IOException e) {
-			throw new ProviderException("Problem writing to the buffer" + e.getLocalizedMessage(), e);
-		}
-		return createRequest(buffer);
+		checkRequestArgs(cmd, args);
+		return new GatheringRequest(getRequestBuffer(cmd), cmd, args);
+	}
+	
+	/**
+	 * Creates a {@link GatheringRequest} that streams its last arg from <code>data</code>, through 
+	 * this protocol's (pooled) request buffer.
+	 * @see org.jredis.protocol.Protocol#createRequest(org.jredis.protocol.Command, java.io.InputStream, int, byte[][])
+	 */
+	@Override
+	public Request createRequest(Command cmd, InputStream data, int length, byte[]... args) throws ProviderException, IllegalArgumentException {
+		Assert.isTrue(cmd.requestType != RequestType.BULK_SET, "Bulk set commands can not stream their values", NotSupportedException.class);
+		Assert.notNull(data, "data", IllegalArgumentException.class);
+		Assert.isTrue(length >= 0, "length must not be negative", IllegalArgumentException.class);
+		checkRequestArgs(cmd, args);
+		return new GatheringRequest(getRequestBuffer(cmd), cmd, data, length, args);
 	}
 	
 	/* (non-Javadoc)
@@ -185,16 +146,156 @@ public abstract class ProtocolBase implements Protocol {
 		return response;
 	
 	}
+	
+	/* (non-Javadoc)
+	 * @see org.jredis.protocol.Protocol#createResponse(org.jredis.protocol.Command, org.jredis.protocol.BulkDataHandler)
+	 */
+	@Override
+	public Response createResponse(Command cmd, BulkDataHandler handler) throws ProviderException, ClientRuntimeException {
+		Assert.isTrue(cmd.responseType == ResponseType.BULK, cmd.code + " does not have a bulk response", NotSupportedException.class);
+		Assert.notNull(handler, "handler", IllegalArgumentException.class);
+		return createBulkResponse(cmd, handler);
+	}
+
+
+	// ------------------------------------------------------------------------
+	// Non-blocking (channel) support
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Encodes the request as a sequence of buffers for a single gathering write to
+	 * a channel.  The framing of the request (counts, sizes, and CRLFs) is put in one
+	 * header array, sliced between the args, and the args are wrapped, not copied.  
+	 * <p>
+	 * Note that the args must not be modified until the buffers have been written.
+	 * 
+	 * @param cmd
+	 * @param args
+	 * @return the buffers of the request, in write order
+	 * @throws ProviderException
+	 */
+	public static ByteBuffer[] createRequestBuffers (Command cmd, byte[]... args) 
+		throws ProviderException, IllegalArgumentException 
+	{
+		checkRequestArgs(cmd, args);
+		
+		// header lines of the count and the command, and size lines of the args
+		int headerLen = headerLength(args.length + 1) + headerLength(cmd.bytes.length) + cmd.bytes.length + CRLF_LEN;
+		for(byte[] arg : args)
+			headerLen += CRLF_LEN + headerLength(arg != null ? arg.length : 0);
+		
+		final byte[] header = new byte[headerLen];
+		ByteBuffer[] buffers = new ByteBuffer[2 * args.length + 1];
+		int start = 0;
+		int pos = putHeader(header, 0, COUNT_BYTE, args.length + 1);
+		pos = putHeader(header, pos, SIZE_BYTE, cmd.bytes.length);
+		System.arraycopy(cmd.bytes, 0, header, pos, cmd.bytes.length);
+		pos += cmd.bytes.length;
+		for(int i=0; i<args.length; i++){
+			byte[] arg = args[i] != null ? args[i] : EMPTY_ARG;
+			header[pos++] = CRLF[0];
+			header[pos++] = CRLF[1];
+			pos = putHeader(header, pos, SIZE_BYTE, arg.length);
+			buffers[2*i] = ByteBuffer.wrap(header, start, pos - start);
+			buffers[2*i + 1] = ByteBuffer.wrap(arg);
+			start = pos;
+		}
+		header[pos++] = CRLF[0];
+		header[pos++] = CRLF[1];
+		buffers[2 * args.length] = ByteBuffer.wrap(header, start, pos - start);
+		return buffers;
+	}
+	
+	/**
+	 * Scans the buffer for a complete reply starting at offset, without parsing it.  Used
+	 * by non-blocking connections to determine if a reply has been fully received, before 
+	 * handing it to the (blocking) {@link Response#read(InputStream)}.
+	 * <p>
+	 * The scan starts over on each call: connections that receive a reply over several
+	 * reads should use a {@link ReplyScanner}, which resumes where the previous read ended.
+	 * 
+	 * @param buffer
+	 * @param offset start of the reply
+	 * @param limit end (exclusive) of the received data
+	 * @return the length of the reply, or -1 if the reply is not yet complete.
+	 * @throws ProviderException if the size or count of a reply is not a number
+	 */
+	public static int replyLength (byte[] buffer, int offset, int limit) throws ProviderException {
+		return new ReplyScanner().scan(buffer, offset, limit);
+	}
 
+	/**
+	 * Checks that the command may be requested with the args.
+	 * @param cmd
+	 * @param args
+	 */
+	static void checkRequestArgs (Command cmd, byte[]... args) {
+		// TODO: check w/ antirez if in fact nulls are now generally accepted
+		// that is the only diff here.
+		if(cmd.requestType == RequestType.BULK_SET) {
+			String errmsg = "Only MSET, MSETNX, LINSERT bulk commands are supported";
+			Assert.isTrue(cmd == Command.MSET || cmd == Command.MSETNX || cmd == Command.LINSERT, errmsg, NotSupportedException.class);
+		}
+		else {
+			for(int i=0;i<args.length; i++)
+				Assert.notNull(args[i], i, ProviderException.class);
+		}
+	}
+	
+	/** @return the length of a header line of the number, e.g. <code>$123\r\n</code> */
+	static int headerLength (int n) {
+		return 1 + Convert.toBytes(n).length + CRLF_LEN;
+	}
+	
+	/**
+	 * Puts a header line of the type and number, e.g. <code>$123\r\n</code>, in the buffer.
+	 * @return the position in buffer after the line
+	 */
+	static int putHeader (byte[] buffer, int pos, byte type, int n) {
+		byte[] digits = Convert.toBytes(n);
+		buffer[pos++] = type;
+		System.arraycopy(digits, 0, buffer, pos, digits.length);
+		pos += digits.length;
+		buffer[pos++] = CRLF[0];
+		buffer[pos++] = CRLF[1];
+		return pos;
+	}
+	
+	/** @return the index of the CR of the first CRLF in [from, limit) or -1 */
+	private static int seekCRLF (byte[] buffer, int from, int limit) {
+		for(int i=from; i<limit-1; i++){
+			if(buffer[i] == CRLF[0] && buffer[i+1] == CRLF[1]) return i;
+		}
+		return -1;
+	}
+	
+	private static int parseInt (byte[] buffer, int from, int to) throws ProviderException {
+		boolean negative = from < to && buffer[from] == (byte) '-';
+		int i = negative ? from + 1 : from;
+		if(i == to) throw new ProviderException("Expected a number in the reply header");
+		int value = 0;
+		for(; i<to; i++){
+			int digit = buffer[i] - ASCII_ZERO;
+			if(digit < 0 || digit > 9) 
+				throw new ProviderException("Expected a number in the reply header: " + new String(buffer, from, to - from));
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
 
 	// ------------------------------------------------------------------------
 	// Extension Points
 	// ------------------------------------------------------------------------
 	
-	protected abstract ByteArrayOutputStream createRequestBufffer(Command cmd);
-	protected abstract Request createRequest (ByteArrayOutputStream buffer);
+	/**
+	 * @param cmd {@link Command} of the request - potentially useful for optimizing buffers.
+	 * @return the buffer used by {@link GatheringRequest}s for the request headers (and args that fit), 
+	 * which may be pooled by the protocol (at least {@link ProtocolBase#MIN_REQUEST_BUFFER_SIZE} bytes).
+	 */
+	protected abstract byte[] getRequestBuffer (Command cmd);
 	protected abstract Response createMultiBulkResponse(Command cmd) ;
 	protected abstract Response createBulkResponse(Command cmd) ;
+	protected abstract Response createBulkResponse(Command cmd, BulkDataHandler handler) ;
 	protected abstract Response createNumberResponse(Command cmd /*, boolean bigNum*/) ;
 	protected abstract Response createBooleanResponse(Command cmd) ;
 	protected abstract Response createStringResponse(Command cmd) ;
@@ -205,6 +306,215 @@ public abstract class ProtocolBase implements Protocol {
 	// Inner Types
 	// ========================================================================
 	
+	/**
+	 * Incremental {@link ProtocolBase#replyLength(byte[], int, int)}: keeps the scan state of
+	 * an incomplete reply (the length of its complete lines and bulks, and the number of 
+	 * elements yet to be received) between calls, so that the data of a reply received
+	 * over many reads is scanned once, and not again on each read.
+	 * <p>
+	 * The received data of the reply must be kept between calls, but may be moved (e.g. by
+	 * {@link java.nio.ByteBuffer#compact()}) as long as the reply starts at the given offset.
+	 *
+	 * @author  agent (agent@local)
+	 * @version alpha.0, Oct 17, 2026
+	 * @since   alpha.0
+	 * 
+	 */
+	public static final class ReplyScanner {
+		/** length of the scanned (complete) elements of the reply */
+		private int		scanned;
+		/** number of elements (lines and bulks) of the reply yet to be scanned */
+		private int		expected = 1;
+		
+		/**
+		 * Continues the scan of the reply starting at offset, from where the previous call ended.
+		 * The scanner is reset once the reply is complete.
+		 * @param buffer
+		 * @param offset start of the reply
+		 * @param limit end (exclusive) of the received data
+		 * @return the length of the reply, or -1 if the reply is not yet complete.
+		 * @throws ProviderException if the size or count of a reply is not a number
+		 */
+		public int scan (byte[] buffer, int offset, int limit) throws ProviderException {
+			int pos = offset + scanned;
+			while(expected > 0){
+				if(pos >= limit) break;
+				byte type = buffer[pos];
+				int eol = seekCRLF(buffer, pos+1, limit);
+				if(eol < 0) break;
+				expected--;
+				switch (type){
+					case SIZE_BYTE:
+						int size = parseInt(buffer, pos+1, eol);
+						pos = eol + CRLF_LEN;
+						if(size >= 0) pos += size + CRLF_LEN;
+						break;
+					case COUNT_BYTE:
+						int count = parseInt(buffer, pos+1, eol);
+						pos = eol + CRLF_LEN;
+						if(count > 0) expected += count;
+						break;
+					default:
+						pos = eol + CRLF_LEN;
+						break;
+				}
+			}
+			scanned = pos - offset;
+			// incomplete: elements to scan, or a bulk that is not fully received
+			if(expected > 0 || pos > limit) return -1;
+			
+			reset();
+			return pos - offset;
+		}
+		
+		/** Discards the scan state, e.g. after a fault. */
+		public void reset () {
+			scanned = 0;
+			expected = 1;
+		}
+	}
+	
+	/**
+	 * GatheringRequest writes the request framing (and the args that fit) through
+	 * a (likely) pooled buffer, and the args that do not fit directly from their
+	 * arrays to the stream, without intermediate copies.
+	 * <p>
+	 * The last arg may instead be streamed from an {@link InputStream} of known length, through
+	 * the buffer, e.g. to set large values that are not held in memory.
+	 * <p>
+	 * As with {@link StreamBufferRequest}, if the buffer is shared, the request must be
+	 * written before the user obtains another request from the same protocol.
+	 *
+	 * @author  agent (agent@local)
+	 * @version alpha.0, Oct 17, 2026
+	 * @since   alpha.0
+	 * 
+	 */
+	public static class GatheringRequest implements Request {
+
+		/**  */
+		private final byte[]	buffer;
+		/**  */
+		private final Command	cmd;
+		/**  */
+		private final byte[][]	args;
+		/** optional streamed (last) arg */
+		private final InputStream	data;
+		/**  */
+		private final int		dataLength;
+		/** write position in buffer */
+		private int				pos;
+		/**
+		 * @param buffer header buffer -- at least {@link ProtocolBase#MIN_REQUEST_BUFFER_SIZE} bytes
+		 * @param cmd
+		 * @param args checked args of the cmd
+		 */
+		public GatheringRequest (byte[] buffer, Command cmd, byte[]... args) {
+			this (buffer, cmd, null, 0, args);
+		}
+		/**
+		 * @param buffer header buffer -- at least {@link ProtocolBase#MIN_REQUEST_BUFFER_SIZE} bytes
+		 * @param cmd
+		 * @param data the last arg, streamed after args -- may be null
+		 * @param length of data 
+		 * @param args checked args of the cmd
+		 */
+		public GatheringRequest (byte[] buffer, Command cmd, InputStream data, int length, byte[]... args) {
+			Assert.isTrue(buffer.length >= MIN_REQUEST_BUFFER_SIZE, "buffer is smaller than MIN_REQUEST_BUFFER_SIZE", IllegalArgumentException.class);
+			this.buffer = buffer;
+			this.cmd = cmd;
+			this.args = args;
+			this.data = data;
+			this.dataLength = length;
+		}
+		/* (non-Javadoc)
+		 * @see com.alphazero.jredis.connector.Message#read(java.io.InputStream)
+		 */
+		@Override
+		public void read(InputStream in) throws ClientRuntimeException, ProviderException {
+			throw new ProviderException("Request.read is not supported by this class! [Apr 2, 2009]");
+		}
+
+		/**
+		 * Writes the entire request to the output stream and flushes it.
+		 * 
+		 * @param out the stream to write the Request message to.
+		 */
+		@Override
+		public void write(OutputStream out) throws ClientRuntimeException, ProviderException {
+			try {
+				pos = 0;
+				putHeader(out, COUNT_BYTE, args.length + (data != null ? 2 : 1));
+				putBulk(out, cmd.bytes);
+				for(byte[] arg : args)
+					putBulk(out, arg != null ? arg : EMPTY_ARG);
+				if(data != null)
+					putData(out);
+				out.write(buffer, 0, pos);
+				out.flush();
+			}
+			catch (SocketException e){
+				Log.error("GatheringRequest.write(): SocketException on write: " + e.getLocalizedMessage());
+				throw new ClientRuntimeException ("socket exception", e);
+			}
+			catch (IOException e) { 
+				Log.error("GatheringRequest.write(): IOException on write: " + e.getLocalizedMessage());
+				throw new ClientRuntimeException ("stream io exception", e);
+			}
+		}
+		
+		/** buffers the header line, writing out the buffer first if the line does not fit */
+		private void putHeader (OutputStream out, byte type, int n) throws IOException {
+			if(buffer.length - pos < MIN_REQUEST_BUFFER_SIZE){
+				out.write(buffer, 0, pos);
+				pos = 0;
+			}
+			pos = ProtocolBase.putHeader(buffer, pos, type, n);
+		}
+		
+		/** buffers the size line and data (with its CRLF) -- data that does not fit is written directly */
+		private void putBulk (OutputStream out, byte[] data) throws IOException {
+			putHeader(out, SIZE_BYTE, data.length);
+			if(buffer.length - pos >= data.length + CRLF_LEN) {
+				System.arraycopy(data, 0, buffer, pos, data.length);
+				pos += data.length;
+			}
+			else {
+				out.write(buffer, 0, pos);
+				out.write(data);
+				pos = 0;
+			}
+			buffer[pos++] = CRLF[0];
+			buffer[pos++] = CRLF[1];
+		}
+		
+		/** 
+		 * streams the data through the buffer.  Note that if the data stream fails, the connection
+		 * is left with a partial request -- that is flagged as a {@link ClientRuntimeException}.
+		 */
+		private void putData (OutputStream out) throws IOException {
+			putHeader(out, SIZE_BYTE, dataLength);
+			int remaining = dataLength;
+			while(remaining > 0){
+				if(pos == buffer.length){
+					out.write(buffer, 0, pos);
+					pos = 0;
+				}
+				int readcnt = data.read(buffer, pos, Math.min(buffer.length - pos, remaining));
+				if(readcnt == -1) 
+					throw new ClientRuntimeException ("data stream ended after " + (dataLength - remaining) + " of " + dataLength + " bytes");
+				pos += readcnt;
+				remaining -= readcnt;
+			}
+			if(buffer.length - pos < CRLF_LEN){
+				out.write(buffer, 0, pos);
+				pos = 0;
+			}
+			buffer[pos++] = CRLF[0];
+			buffer[pos++] = CRLF[1];
+		}
+	}
+	
 	/**
 	 * SimpleRequest implements the required {@link Request#read(InputStream)}
 	 * using a (likely) shared data buffer.  It is not thread safe and can only
@@ -17,15 +17,16 @@
 package org.jredis.ri.alphazero.protocol;
 
 //import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import org.jredis.ClientRuntimeException;
 import org.jredis.ProviderException;
 import org.jredis.connector.ConnectionReset;
+import org.jredis.protocol.BulkDataHandler;
 import org.jredis.protocol.BulkResponse;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.MultiBulkResponse;
@@ -37,6 +38,7 @@ import org.jredis.protocol.StatusResponse;
 import org.jredis.protocol.ValueResponse;
 import org.jredis.ri.alphazero.connection.UnexpectedEOFException;
 import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.FastBufferedInputStream;
 import org.jredis.ri.alphazero.support.Log;
 
 
@@ -67,11 +69,11 @@ public class SyncProtocol extends ProtocolBase {
 	// SyncConnection's can use the same buffers again and again and ...
 	// ------------------------------------------------------------------------
 	
-	/** Shared by <b>all</b> {@link Request} instances of this <b>non-thread-safe</b> {@link Protocol} implementation. */
-	private final ByteArrayOutputStream sharedRequestBuffer;
-
-	/** Shared {@link Request} instance of this <b>non-thread-safe</b> {@link Protocol} implementation. */
-	private final StreamBufferRequest   sharedRequestObject;
+	/** 
+	 * Shared by <b>all</b> {@link Request} instances of this <b>non-thread-safe</b> {@link Protocol} implementation:
+	 * request headers, and the args that fit, are gathered here -- larger args are written directly. 
+	 */
+	private final byte[] 	sharedRequestBuffer;
 
 	/** Shared by <b>all</b> {@link Response} instances of this <b>non-thread-safe</b> {@link Protocol} implementation. */
 	private final byte[]	sharedResponseBuffer;
@@ -81,8 +83,7 @@ public class SyncProtocol extends ProtocolBase {
 	// ------------------------------------------------------------------------
 	
 	public SyncProtocol() {
-		sharedRequestBuffer = new ByteArrayOutputStream (PREFERRED_REQUEST_BUFFER_SIZE);
-		sharedRequestObject = new StreamBufferRequest (sharedRequestBuffer);
+		sharedRequestBuffer = new byte [PREFERRED_REQUEST_BUFFER_SIZE];
 		sharedResponseBuffer = new byte [PREFERRED_LINE_BUFFER_SIZE];
 
 	}
@@ -94,19 +95,13 @@ public class SyncProtocol extends ProtocolBase {
 	 * @param cmd {@link Command} for this request - potentially useful for 
 	 * optimizing buffers.
 	 * 
-	 * @return the shared instance of {@link ByteArrayOutputStream} that
-	 * is used <b>by all requests</b> created by this {@link Protocol} implementation.
+	 * @return the shared request buffer that is used <b>by all requests</b> 
+	 * created by this {@link Protocol} implementation.
 	 */
 	@Override
-	protected ByteArrayOutputStream createRequestBufffer(Command cmd) {
-		sharedRequestBuffer.reset();
+	protected byte[] getRequestBuffer (Command cmd) {
 		return sharedRequestBuffer;
 	}
-	
-	protected Request createRequest (ByteArrayOutputStream buffer) {
-//		sharedRequestObject.reset(buffer);
-		return sharedRequestObject;
-	}
 
 	SyncLineResponse cache_syncLineResponse = null;
 	@Override
@@ -157,6 +152,13 @@ public class SyncProtocol extends ProtocolBase {
 		}
 		return cache_syncBulkResponse;
 	}
+	
+	@Override
+	protected Response createBulkResponse(Command cmd, BulkDataHandler handler) {
+		SyncBulkResponse response = (SyncBulkResponse) createBulkResponse(cmd);
+		response.setDataHandler(handler);
+		return response;
+	}
 
 	
 	SyncMultiBulkResponse  cache_syncMultiBulkResponse = null;
@@ -222,24 +224,8 @@ public class SyncProtocol extends ProtocolBase {
 		 * @param in
 		 */
 		void readSingleLineResponse (InputStream in) {
-			offset = 0;
-			int c = -1;
-			int available = buffer.length;
 			try {
-				while ((c = in.read(buffer, offset, 1)) != -1) {
-					offset += c; 
-					available -= c;
-					if(offset > 2 && buffer[offset-2]==(byte)13 && buffer[offset-1]==(byte)10){
-						break;  // we're done
-					}
-					if(available == 0) {
-						byte[] newbuff = new byte[buffer.length * 2];
-						System.arraycopy(buffer, 0, newbuff, 0, buffer.length);
-						buffer = newbuff;
-						available = buffer.length - offset;
-					}
-				}
-				if(c == -1) {
+				if(!readLine(in)) {
 					Log.error("-1 read count in readLine() while reading response line.");
 					throw new UnexpectedEOFException ("Unexpected EOF (read -1) in readLine.  Command: " + cmd.code);
 				}
@@ -257,6 +243,33 @@ public class SyncProtocol extends ProtocolBase {
 				throw new ClientRuntimeException ("IOException in readLine.  Command: " + cmd.code, e);
 			}
 		}
+		
+		/**
+		 * Reads a line, including its CRLF, into the buffer (from 0 to offset), growing the
+		 * buffer as required.  The line is scanned for in the buffer of a {@link FastBufferedInputStream};
+		 * other streams are read a byte at a time.
+		 * @param in
+		 * @return false on EOF
+		 * @throws IOException
+		 */
+		final boolean readLine (InputStream in) throws IOException {
+			final FastBufferedInputStream fin = in instanceof FastBufferedInputStream ? (FastBufferedInputStream) in : null;
+			offset = 0;
+			while (true) {
+				int c = fin != null ? fin.readLine(buffer, offset, buffer.length - offset) : in.read(buffer, offset, 1);
+				if(c == -1) 
+					return false;
+				offset += c;
+				if(offset > 2 && buffer[offset-2]==(byte)13 && buffer[offset-1]==(byte)10){
+					return true;  // we're done
+				}
+				if(offset == buffer.length) {
+					byte[] newbuff = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, newbuff, 0, offset);
+					buffer = newbuff;
+				}
+			}
+		}
 	}
 	// ------------------------------------------------------------------------
 	// Inner Type
@@ -368,30 +381,16 @@ public class SyncProtocol extends ProtocolBase {
 		 * @param in
 		 */
 		void seekToCRLF (InputStream in){
-			offset = 0;
-			int c = -1;
-			int available = buffer.length;
+			boolean found;
 			try {
-				while ((c = in.read(buffer, offset, 1)) != -1) {
-					offset += c;
-					available -= c;
-					if(offset > 2 && buffer[offset-2]==(byte)13 && buffer[offset-1]==(byte)10){
-						break;  // we're done
-					}
-					if(available == 0) {
-						byte[] newbuff = new byte[buffer.length * 2];
-						System.arraycopy(buffer, 0, newbuff, 0, buffer.length);
-						buffer = newbuff;
-						available = buffer.length - offset;
-					}
-				}
+				found = readLine(in);
 			}
 			catch (IOException e) {
 				e.printStackTrace();
 				throw new ClientRuntimeException ("IOEx while reading line for command " + cmd.code, e);
 			}
 			
-			if(c==-1) throw new ClientRuntimeException ("in.read returned -1");
+			if(!found) throw new ClientRuntimeException ("in.read returned -1");
 		}
 		/**
 		 * @param in
@@ -416,6 +415,9 @@ public class SyncProtocol extends ProtocolBase {
 		/**
 		 * Will read up expected bulkdata bytes from the input stream.  Routine will
 		 * also read in the last two bytes and will check that they are indeed CRLF.
+		 * <p>
+		 * The data is read into an array of the (known) length -- a {@link FastBufferedInputStream}
+		 * reads large data straight from the socket into it.
 		 *  
 		 * @param in the stream to read from.
 		 * @param length expected bulk data length (NOT including the trailing CRLF).  
@@ -426,27 +428,92 @@ public class SyncProtocol extends ProtocolBase {
 		public final byte[] readBulkData (InputStream in, int length)
 			throws IOException, RuntimeException
 		{
-			byte[] data = new byte[length]; // TODO: optimize me
-//			byte[] term = new byte[CRLF.length]; // FIX: http://github.com/alphazero/jredis/issues#issue/5 -- N/A
+			byte[] data = new byte[length];
+			readBulkData(in, data, 0, length);
+			return data;
+		}
+		
+		/**
+		 * Will read up expected bulkdata bytes from the input stream into the target buffer, 
+		 * from its position (which is advanced by length), e.g. a pooled buffer of the caller.
+		 * 
+		 * @param in the stream to read from.
+		 * @param length expected bulk data length (NOT including the trailing CRLF).  
+		 * @param target with at least length bytes remaining
+		 * @throws IOException 
+		 */
+		public final void readBulkData (InputStream in, int length, ByteBuffer target)
+			throws IOException, RuntimeException
+		{
+			if(target.remaining() < length)
+				throw new IllegalArgumentException ("target buffer has " + target.remaining() + " bytes remaining for " + length + " bytes of data");
+			
+			if(target.hasArray()) {
+				readBulkData(in, target.array(), target.arrayOffset() + target.position(), length);
+				target.position(target.position() + length);
+			}
+			else {
+				byte[] chunk = new byte[Math.min(length, PREFERRED_REQUEST_BUFFER_SIZE)];
+				int remaining = length;
+				while(remaining > chunk.length) {
+					readFully(in, chunk, 0, chunk.length);
+					target.put(chunk);
+					remaining -= chunk.length;
+				}
+				readBulkData(in, chunk, 0, remaining);
+				target.put(chunk, 0, remaining);
+			}
+		}
+		
+		/**
+		 * Passes the expected bulkdata bytes, as a stream of length bytes, to the handler.  Any
+		 * data not consumed by the handler, and the trailing CRLF, are then read and discarded.
+		 * 
+		 * @param in the stream to read from.
+		 * @param length expected bulk data length (NOT including the trailing CRLF).  
+		 * @param handler
+		 * @throws IOException 
+		 */
+		public final void readBulkData (InputStream in, int length, BulkDataHandler handler)
+			throws IOException, RuntimeException
+		{
+			BulkDataInputStream data = new BulkDataInputStream(in, length);
+			handler.handleBulkData(data, length);
 			
+			byte[] chunk = null;
+			while(data.remaining > 0){
+				if(chunk == null) chunk = new byte[Math.min(data.remaining, PREFERRED_LINE_BUFFER_SIZE * 64)];
+				readFully(data, chunk, 0, Math.min(data.remaining, chunk.length));
+			}
+			readCRLF(in);
+		}
+		
+		private final void readFully (InputStream in, byte[] data, int offset, int length) throws IOException {
 			int readcnt = -1;
-			int offset = 0;
-
-			while(offset < length){
-				if((readcnt = in.read (data, offset, length-offset)) ==-1 ) throw new ClientRuntimeException("IO - read returned -1 -- problem");
+			final int end = offset + length;
+			while(offset < end){
+				if((readcnt = in.read (data, offset, end-offset)) ==-1 ) throw new ClientRuntimeException("IO - read returned -1 -- problem");
 				offset += readcnt;
 			}
+		}
+		
+		/** reads the data and its trailing CRLF */
+		private final void readBulkData (InputStream in, byte[] data, int offset, int length)
+			throws IOException, RuntimeException
+		{
+			readFully(in, data, offset, length);
+			readCRLF(in);
+		}
+		
+		/** reads the trailing CRLF of bulk data */
+		private final void readCRLF (InputStream in) throws IOException, RuntimeException {
 			// FIX: http://github.com/alphazero/jredis/issues#issue/5 -- BEGIN
 			for(int i=0; i<CRLF_LEN; i++){
 				if (in.read() == -1){
 					throw new RuntimeException ("read got EOF (-1) while consuming the " +(i+1)+ "-th byte of CRLF bytes!");
 				}
 			}
-//			if((readcnt = in.read (term, 0, CRLF.length)) != CRLF.length) { 
-//				throw new RuntimeException ("Only read " + readcnt + " bytes for CRLF!");
-//			}
 			// http://github.com/alphazero/jredis/issues#issue/5 -- END
-			return data;
 		}
 	}
 	// ------------------------------------------------------------------------
@@ -456,6 +523,12 @@ public class SyncProtocol extends ProtocolBase {
 	public class SyncBulkResponse extends SyncMultiLineResponseBase implements BulkResponse {
 		/**  */
 		byte[] data = null;
+		/** length of the bulk data, -1 for null */
+		int dataLength = -1;
+		/** optional caller supplied buffer for the bulk data */
+		ByteBuffer dataBuffer = null;
+		/** optional caller supplied handler of the bulk data */
+		BulkDataHandler dataHandler = null;
 
 		/**
 		 * Uses the sharedResponseBuffer for reading of the response control line.
@@ -472,13 +545,51 @@ public class SyncProtocol extends ProtocolBase {
 		protected void reset (Command cmd){
 			super.reset(cmd, Type.Bulk);
 			this.data = null;
+			this.dataLength = -1;
+			this.dataBuffer = null;
+			this.dataHandler = null;
 		}
 
+		/**
+		 * @return the bulk data, or null if the value is null or was read into the 
+		 * {@link SyncBulkResponse#setDataBuffer(ByteBuffer)} buffer or passed to the
+		 * {@link SyncBulkResponse#setDataHandler(BulkDataHandler)} handler.
+		 */
 		@Override
 		public byte[] getBulkData() {
 			assertResponseRead();
 			return data;
 		}
+		
+		/**
+		 * Sets a buffer (e.g. pooled by the caller) for the bulk data, before the
+		 * response is read.  If the data fits in the remaining bytes of the buffer, it is 
+		 * read into the buffer from its position (which is advanced by the data length),
+		 * and {@link SyncBulkResponse#getBulkData()} returns null.  Otherwise, the data is
+		 * read into a new array, as usual.
+		 * @param buffer
+		 */
+		public void setDataBuffer (ByteBuffer buffer) {
+			this.dataBuffer = buffer;
+		}
+		
+		/**
+		 * Sets a handler that the bulk data is streamed to, before the response is read.
+		 * Takes precedence over the data buffer.
+		 * @param handler
+		 * @see BulkDataHandler
+		 */
+		public void setDataHandler (BulkDataHandler handler) {
+			this.dataHandler = handler;
+		}
+		
+		/**
+		 * @return the length of the bulk data, or -1 if the value is null.
+		 */
+		public int getBulkDataLength() {
+			assertResponseRead();
+			return dataLength;
+		}
 
 		@Override
 		public void read(InputStream in) throws ClientRuntimeException, ProviderException {
@@ -489,7 +600,13 @@ public class SyncProtocol extends ProtocolBase {
 
 			if(!status.isError() && size >= 0){
 				try {
-					data = super.readBulkData(in, size);
+					dataLength = size;
+					if(dataHandler != null)
+						super.readBulkData(in, size, dataHandler);
+					else if(dataBuffer != null && dataBuffer.remaining() >= size)
+						super.readBulkData(in, size, dataBuffer);
+					else
+						data = super.readBulkData(in, size);
 				}
 				catch (IllegalArgumentException bug){ 
 					throw new ProviderException ("Bug: in converting the bulk data length bytes", bug);
@@ -570,4 +687,48 @@ public class SyncProtocol extends ProtocolBase {
 			return;
 		}
 	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Type
+	// ============================================================ Bulk data
+	// ------------------------------------------------------------------------
+	/**
+	 * The bulk data of a response, as a stream of its (known) length over the
+	 * connection's stream, for {@link BulkDataHandler}s.  Closing the stream has
+	 * no effect.
+	 */
+	private static final class BulkDataInputStream extends InputStream {
+		/**  */
+		private final InputStream in;
+		/** bytes of the bulk data not yet read */
+		private int remaining;
+		
+		BulkDataInputStream (InputStream in, int length){
+			this.in = in;
+			this.remaining = length;
+		}
+		@Override
+		public int read () throws IOException {
+			if(remaining == 0) return -1;
+			int b = in.read();
+			if(b == -1) throw new UnexpectedEOFException ("EOF with " + remaining + " bytes of bulk data remaining");
+			remaining--;
+			return b;
+		}
+		@Override
+		public int read (byte[] b, int off, int len) throws IOException {
+			if(len == 0) return 0;
+			if(remaining == 0) return -1;
+			int readcnt = in.read(b, off, Math.min(len, remaining));
+			if(readcnt == -1) throw new UnexpectedEOFException ("EOF with " + remaining + " bytes of bulk data remaining");
+			remaining -= readcnt;
+			return readcnt;
+		}
+		@Override
+		public int available () throws IOException {
+			return Math.min(in.available(), remaining);
+		}
+		@Override
+		public void close () {}
+	}
 }
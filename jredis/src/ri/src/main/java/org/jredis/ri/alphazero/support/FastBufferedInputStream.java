@@ -2,12 +2,16 @@ package org.jredis.ri.alphazero.support;
 
 import java.io.IOException;
 import java.io.InputStream;
-import org.jredis.ProviderException;
 
 /**
  * Extension of {@link java.io.InputStream} that uses the enclosing instance's
  * {@link InputStream} its data source. This is not supposed to be a general purpose
  * implementation.
+ * <p>
+ * Data is read from the source in chunks of up to the buffer size, and large reads
+ * (of at least the buffer size) go straight from the source into the destination.
+ * {@link FastBufferedInputStream#readLine(byte[], int, int)} scans for line ends in
+ * the buffered data, for protocol handlers reading response lines.
  *
  * @author  Joubin Houshyar (alphazero@sensesay.net)
  * @version alpha.0, Sep 5, 2009
@@ -19,76 +23,92 @@ public final class FastBufferedInputStream extends java.io.InputStream {
 	// ------------------------------------------------------------------------
 	// Properties
 	// ------------------------------------------------------------------------
-	/** data buffer (cache) */
+	/** data buffer (cache) -- the buffered data is [offset, limit) */
+	final
 	private byte[] buffer;
 
 	/** current (read) offset of {@link FastBufferedInputStream#buffer} */
 	private int   offset = 0;
 
-	/** 
-	 * underlying input stream read buffer -- the size of this buffer determines the
-	 * maximum bytes read  
-	 */
-	final 
-	private byte[] iobuffer;;
+	/** end of the buffered data in {@link FastBufferedInputStream#buffer} */
+	private int   limit = 0;
 
 	/** underying input stream */
 	final
 	private InputStream in;
 
+	/** line feed */
+	private static final byte LF = (byte) 10;
+
 	// ------------------------------------------------------------------------
 	// Constructor
 	// ------------------------------------------------------------------------
 	/**
 	 * @param in the input source
-	 * @param bufferSize size of the {@link FastBufferedInputStream#iobuffer}
+	 * @param bufferSize size of the {@link FastBufferedInputStream#buffer}, which
+	 * determines the maximum bytes read from the source in one call
 	 * 
 	 */
 	public FastBufferedInputStream (InputStream in, int bufferSize) {
 		this.in = in;
-		buffer = new byte [0];
-		iobuffer = new byte[bufferSize];
+		buffer = new byte[bufferSize];
 	}
 
 	// ------------------------------------------------------------------------
 	// Inner Ops
 	// ------------------------------------------------------------------------
 	/**
-	 * Get more bytes from the underling {@link InputStream}.  
-	 * Only reads from input source if len exceeds available data in 
-	 * {@link FastBufferedInputStream#buffer}.
+	 * Get more bytes from the underling {@link InputStream}.  Must only be called 
+	 * when the buffered data has been consumed.
 	 * <p>
-	 * This call will block until (minimally) len bytes have been read.
+	 * This call will block until (minimally) 1 byte has been read.
 	 * 
-	 * @param len
+	 * @return the number of bytes read, or -1 on EOF
 	 * @throws IOException if a read on the underlying stream returns 0 length bytes.
 	 * This (obviously) shouldn't happen but if it does, it would be treated as an exception.
 	 */
-	private final int getMoreBytes (int len) throws IOException {
-
-		// hit the date source until we have enough bytes
-		// compact (reset offset to 0) on first copy
-		int rlen = 0;
-		while (len > buffer.length - offset) {
-			int c = in.read(iobuffer, 0, iobuffer.length);
-			if(c==-1) {
-				return -1;
-			}
-			else if(c > 0){
-				int bufflen = buffer.length - offset;
-				rlen+=c;
-				byte[] newbuffer = new byte[bufflen + c];
-				System.arraycopy(buffer, offset, newbuffer, 0, bufflen);
-				System.arraycopy(iobuffer, 0, newbuffer, bufflen, c);
-				offset = 0;
-				buffer = newbuffer;
-			}
-			else {// should never happen per contract of inputstream ...
-				Log.bug (String.format("ZERO! <= %d\n", c));
-				throw new IOException ("input stream read return 0 bytes!");
-			}
+	private final int getMoreBytes () throws IOException {
+		offset = limit = 0;
+		int c = in.read(buffer, 0, buffer.length);
+		if(c == 0) {// should never happen per contract of inputstream ...
+			Log.bug (String.format("ZERO! <= %d\n", c));
+			throw new IOException ("input stream read return 0 bytes!");
+		}
+		if(c > 0) limit = c;
+		return c;
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	/**
+	 * Reads up to and including the next line feed, scanning for it in the buffered
+	 * data, or len bytes, whichever comes first.  Blocks on the underlying {@link InputStream}
+	 * only if there is no buffered data.
+	 * 
+	 * @param b the destination
+	 * @param off offset in b
+	 * @param len max bytes to read
+	 * @return the number of bytes read -- the last of which is the line feed unless no
+	 * line feed was found in the data available or in len bytes -- or -1 on EOF.
+	 * @throws IOException
+	 */
+	public int readLine (byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len <= 0 || off + len > b.length) {
+			throw new ArrayIndexOutOfBoundsException();
 		}
-		return rlen;
+		if(offset == limit && getMoreBytes() == -1) 
+			return -1;
+
+		final int end = Math.min(limit, offset + len);
+		int i = offset;
+		while(i < end && buffer[i] != LF) i++;
+		if(i < end) i++;
+
+		final int c = i - offset;
+		System.arraycopy(buffer, offset, b, off, c);
+		offset = i;
+		return c;
 	}
 
 	// ------------------------------------------------------------------------
@@ -101,39 +121,48 @@ public final class FastBufferedInputStream extends java.io.InputStream {
 	 * to the extent that <b>call will block</b> on the underlying {@link InputStream} 
 	 * until it gets all the <code>len</code> bytes specified.
 	 * <p>
-	 * Also, this call will return -1 if and only if it (a) needs to get more 
-	 * data by calling {@link FastBufferedInputStream#getMoreBytes(int)},
-	 * and (b) that call returns -1.  Note that it is possible, in a general 
-	 * context, that -1 is returned but there is previously accumulated data in 
-	 * {@link FastBufferedInputStream#buffer} and thus 
-	 * {@link FastBufferedInputStream#available()} returns a non zero positive 
-	 * integer which is less than specified <b>len</b>.  But that is not expected
-	 * in the specific context of Redis protocol.
+	 * Also, this call will return -1 if and only if it needs to get more data and
+	 * the underlying stream returns -1.  Note that it is possible, in a general 
+	 * context, that -1 is returned after some of the data has been read.  But that
+	 * is not expected in the specific context of Redis protocol.
+	 * <p>
+	 * Once the buffered data is consumed, the remainder of reads of at least the buffer
+	 * size is read directly into <code>b</code>.
 	 * 
 	 * @see java.io.InputStream#read(byte[], int, int)
 	 */
-	int maxRead = 0;
 	@Override
 	public int read (byte[] b, int off, int len) throws IOException {
-		if (off < 0 || off >= b.length || len < 0 || off + len > b.length) {
+		if (off < 0 || len < 0 || off + len > b.length) {
 			throw new ArrayIndexOutOfBoundsException();
 		}
-		int available = buffer.length - offset;
-		if(len > available) {
-			int c = getMoreBytes (len);  // this is a potentially blocking call
-			if(c==-1) return -1;
-			else if(c < len - available) 
-				throw new ProviderException ("Bug: getMoreBytes() returned less bytes than requested.  c="+c+" len=" + len + "available=" + available);
-		}
-
-		if(len == 1){
-			b[off] = buffer[offset];
-		}
-		else {
-			System.arraycopy(buffer, offset, b, off, len);
+		int n = 0;
+		while(n < len) {
+			int available = limit - offset;
+			if(available == 0) {
+				if(len - n >= buffer.length) {
+					int c = in.read(b, off + n, len - n);  // this is a potentially blocking call
+					if(c == -1) return -1;
+					else if(c == 0) {
+						Log.bug (String.format("ZERO! <= %d\n", c));
+						throw new IOException ("input stream read return 0 bytes!");
+					}
+					n += c;
+					continue;
+				}
+				if(getMoreBytes() == -1) return -1;  // this is a potentially blocking call
+				available = limit - offset;
+			}
+			int c = Math.min(available, len - n);
+			if(c == 1){
+				b[off + n] = buffer[offset];
+			}
+			else {
+				System.arraycopy(buffer, offset, b, off + n, c);
+			}
+			offset += c;
+			n += c;
 		}
-
-		offset += len;
 		return len;
 	}
 	
@@ -144,7 +173,7 @@ public final class FastBufferedInputStream extends java.io.InputStream {
 	 */
 	@Override
 	public int available () throws IOException {
-		return buffer.length - offset;
+		return limit - offset;
 	}
 
 	/**
@@ -165,9 +194,8 @@ public final class FastBufferedInputStream extends java.io.InputStream {
 	 */
 	@Override
 	public int read () throws IOException { 
-		byte[] b = new byte[1];
-		int c = read(b, 0, 1);
-		if(c == -1) return -1;
-		return (int) b[0];
+		if(offset == limit && getMoreBytes() == -1) 
+			return -1;
+		return buffer[offset++] & 0xFF;
 	}
-}
\ No newline at end of file
+}
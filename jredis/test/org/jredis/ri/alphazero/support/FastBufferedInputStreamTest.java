@@ -0,0 +1,229 @@
+/*
+ *   Copyright 2026 agent
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.MultiBulkResponse;
+import org.jredis.protocol.Protocol;
+import org.jredis.protocol.Response;
+import org.jredis.protocol.ValueResponse;
+import org.jredis.ri.alphazero.protocol.SyncProtocol;
+import org.junit.Test;
+
+/**
+ * Reads replies through {@link FastBufferedInputStream}s with small buffers, from sources that
+ * return the data in chunks of every size, so that lines, CRLFs and bulk data are split across
+ * buffer fills and across reads of the source.
+ *
+ * @author  agent (agent@local)
+ * @version alpha.0, Oct 17, 2026
+ * @since   alpha.0
+ *
+ */
+
+public class FastBufferedInputStreamTest {
+
+	/** a status, an error, a number, a bulk, a null bulk, an empty bulk and a multibulk reply */
+	private static final String REPLIES =
+		"+OK\r\n" +
+		"-ERR unknown command\r\n" +
+		":1234567890\r\n" +
+		"$12\r\nhello\r\nworld\r\n" +
+		"$-1\r\n" +
+		"$0\r\n\r\n" +
+		"*3\r\n$3\r\nfoo\r\n$-1\r\n$6\r\nbar\r\nb\r\n";
+
+	// ------------------------------------------------------------------------
+	// Tests
+	// ------------------------------------------------------------------------
+
+	@Test
+	public void linesSplitAcrossBufferBoundaries () throws IOException {
+		byte[] data = REPLIES.getBytes();
+		for(int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+			for(int chunk = 1; chunk <= data.length; chunk++) {
+				FastBufferedInputStream in = new FastBufferedInputStream(new ChunkedInputStream(data, chunk), bufferSize);
+				ByteArrayOutputStream lines = new ByteArrayOutputStream();
+				byte[] line;
+				while((line = readLine(in)) != null) {
+					assertEquals(10, line[line.length - 1]);
+					lines.write(line);
+				}
+				assertArrayEquals(data, lines.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void crlfSplitAcrossReads () throws IOException {
+		byte[] data = "+OK\r\n-ERR no such key\r\n".getBytes();
+		// each read of the source ends between a CR and its LF
+		FastBufferedInputStream in = new FastBufferedInputStream(new ChunkedInputStream(data, 4, 18, 1), 64);
+		byte[] buffer = new byte[64];
+		assertEquals("+OK\r", new String(buffer, 0, in.readLine(buffer, 0, buffer.length)));
+		assertEquals("\n", new String(buffer, 0, in.readLine(buffer, 0, buffer.length)));
+		assertEquals("-ERR no such key\r", new String(buffer, 0, in.readLine(buffer, 0, buffer.length)));
+		assertEquals("\n", new String(buffer, 0, in.readLine(buffer, 0, buffer.length)));
+		assertEquals(-1, in.readLine(buffer, 0, buffer.length));
+
+		in = new FastBufferedInputStream(new ChunkedInputStream(data, 4, 18, 1), 64);
+		Protocol protocol = new SyncProtocol();
+		Response response = protocol.createResponse(Command.PING);
+		response.read(in);
+		assertFalse(response.isError());
+		response = protocol.createResponse(Command.PING);
+		response.read(in);
+		assertTrue(response.isError());
+		assertEquals("ERR no such key", response.getStatus().message());
+	}
+
+	@Test
+	public void readsOfAtLeastTheBufferSize () throws IOException {
+		final int bufferSize = 16;
+		byte[] data = new byte[1000];
+		new Random(23).nextBytes(data);
+		for(int chunk : new int[] {1, 7, bufferSize, 100, data.length}) {
+			ChunkedInputStream source = new ChunkedInputStream(data, chunk);
+			FastBufferedInputStream in = new FastBufferedInputStream(source, bufferSize);
+			byte[] read = new byte[data.length];
+			assertEquals(3, in.read(read, 0, 3));
+			// the buffered rest of the first fill, then straight from the source
+			assertEquals(data.length - 3 - bufferSize, in.read(read, 3, data.length - 3 - bufferSize));
+			// exactly the buffer size
+			assertEquals(bufferSize, in.read(read, data.length - bufferSize, bufferSize));
+			assertArrayEquals(data, read);
+			assertEquals(-1, in.read());
+			// more than a buffer in one read of the source: read into the destination
+			if(chunk > bufferSize) 
+				assertTrue(source.maxRead > bufferSize);
+		}
+	}
+
+	@Test
+	public void repliesSplitAcrossBufferBoundaries () throws IOException {
+		byte[] data = REPLIES.getBytes();
+		for(int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+			for(int chunk = 1; chunk <= data.length; chunk++) {
+				InputStream in = new FastBufferedInputStream(new ChunkedInputStream(data, chunk), bufferSize);
+				Protocol protocol = new SyncProtocol();
+
+				Response response = protocol.createResponse(Command.PING);
+				response.read(in);
+				assertFalse(response.isError());
+
+				response = protocol.createResponse(Command.PING);
+				response.read(in);
+				assertEquals("ERR unknown command", response.getStatus().message());
+
+				response = protocol.createResponse(Command.INCR);
+				response.read(in);
+				assertEquals(1234567890L, ((ValueResponse) response).getLongValue());
+
+				response = protocol.createResponse(Command.GET);
+				response.read(in);
+				assertEquals("hello\r\nworld", new String(((BulkResponse) response).getBulkData()));
+
+				response = protocol.createResponse(Command.GET);
+				response.read(in);
+				assertEquals(null, ((BulkResponse) response).getBulkData());
+
+				response = protocol.createResponse(Command.GET);
+				response.read(in);
+				assertEquals(0, ((BulkResponse) response).getBulkData().length);
+
+				response = protocol.createResponse(Command.MGET);
+				response.read(in);
+				List<byte[]> values = ((MultiBulkResponse) response).getMultiBulkData();
+				assertEquals(3, values.size());
+				assertEquals("foo", new String(values.get(0)));
+				assertEquals(null, values.get(1));
+				assertEquals("bar\r\nb", new String(values.get(2)));
+
+				assertEquals(-1, in.read());
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	/**
+	 * Reads a line through its LF, as the protocol handlers do.
+	 * @return the line, or null on EOF
+	 */
+	private static byte[] readLine (FastBufferedInputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3];
+		while(true) {
+			int c = in.readLine(buffer, 0, buffer.length);
+			if(c == -1) {
+				assertEquals(0, line.size());
+				return null;
+			}
+			line.write(buffer, 0, c);
+			if(buffer[c - 1] == 10) return line.toByteArray();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	/**
+	 * Returns its data in chunks of the given sizes (the last size repeating), as a socket may.
+	 */
+	private static final class ChunkedInputStream extends InputStream {
+		private final byte[]	data;
+		private final int[]		chunks;
+		private int				offset;
+		private int				reads;
+		/** the most bytes returned by a read */
+		int						maxRead;
+
+		ChunkedInputStream (byte[] data, int... chunks) {
+			this.data = data;
+			this.chunks = chunks;
+		}
+
+		@Override
+		public int read (byte[] b, int off, int len) {
+			if(offset == data.length) return -1;
+			int c = Math.min(Math.min(len, chunks[Math.min(reads++, chunks.length - 1)]), data.length - offset);
+			System.arraycopy(data, offset, b, off, c);
+			offset += c;
+			maxRead = Math.max(maxRead, c);
+			return c;
+		}
+
+		@Override
+		public int read () {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+	}
+}
@@ -28,6 +28,7 @@ from openquake import kvs
 from openquake import logs
 from openquake import shapes
 from openquake.calculators.hazard import general
+from openquake.calculators.hazard.event_based.gmf_binary import read_gmfs
 from openquake.output import hazard as hazard_output
 from openquake.utils import config
 from openquake.utils import stats
@@ -40,7 +41,12 @@ __KVS_CONN_CACHE = {}
 
 
 def create_java_cache(fn):
-    """A decorator for creating java cache object"""
+    """A decorator for creating java cache object
+
+    Unless the kvs connections are cached, the cache created for a call is
+    closed when the call returns (it holds a pool of connections and their
+    heartbeat threads), and the cache of an enclosing call is restored.
+    """
 
     @functools.wraps(fn)
     def decorated(self, *args, **kwargs):  # pylint: disable=C0111
@@ -51,10 +57,15 @@ def create_java_cache(fn):
             if key not in __KVS_CONN_CACHE:
                 __KVS_CONN_CACHE[key] = java.jclass("KVS")(*kvs_data)
             self.cache = __KVS_CONN_CACHE[key]
-        else:
-            self.cache = java.jclass("KVS")(*kvs_data)
+            return fn(self, *args, **kwargs)
 
-        return fn(self, *args, **kwargs)
+        outer_cache = getattr(self, "cache", None)
+        self.cache = cache = java.jclass("KVS")(*kvs_data)
+        try:
+            return fn(self, *args, **kwargs)
+        finally:
+            cache.close()
+            self.cache = outer_cache
 
     return decorated
 
@@ -116,7 +127,7 @@ class EventBasedHazardCalculator(general.BaseHazardCalculator):
                 stochastic_set_key = kvs.tokens.stochastic_set_key(
                     self.job_ctxt.job_id, i, j)
                 LOG.info("Writing output for ses %s" % stochastic_set_key)
-                ses = kvs.get_value_json_decoded(stochastic_set_key)
+                ses = read_gmfs(kvs.get_client().get(stochastic_set_key))
                 if ses:
                     self.serialize_gmf(ses)
 
@@ -18,6 +18,7 @@
 
 """Common code for the hazard calculators."""
 
+import hashlib
 import os
 import random
 import re
@@ -87,6 +88,30 @@ def get_iml_list(imls, intensity_measure_type):
         [IML_SCALING[intensity_measure_type](x) for x in imls])
 
 
+# Module-private source cache, as a (job_id, cache) pair, to be used by
+# get_source_cache().
+__SOURCE_CACHE = [None, None]
+
+
+def get_source_cache(job_id):
+    """Get the source cache shared by the ERFs of a job in this process.
+
+    The ERFs built by :func:`generate_erf` for each block of sites use it to
+    build each source of the model only once. Only the cache of the latest
+    job is kept. Its size (in ruptures) is set by the `source_cache_size`
+    setting of the `hazard` section of openquake.cfg.
+
+    :param int job_id: id of the job
+    :returns: jpype instance of
+        `org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1SourceCache`
+    """
+    if __SOURCE_CACHE[0] != job_id:
+        __SOURCE_CACHE[1] = java.jclass("GEM1SourceCache")(
+            config.hazard_source_cache_size())
+        __SOURCE_CACHE[0] = job_id
+    return __SOURCE_CACHE[1]
+
+
 @java.unpack_exception
 def generate_erf(job_id, cache):
     """ Generate the Earthquake Rupture Forecast from the source model data
@@ -108,6 +133,16 @@ def generate_erf(job_id, cache):
     calc = java.jclass("LogicTreeProcessor")(cache, job_key)
     calc.setGEM1ERFParams(erf)
 
+    # the sources are keyed on the digest of the source model stored by
+    # store_source_model(), so that the sources of a source model are shared
+    # by the ERFs of all blocks of sites, but not with the ones of other logic
+    # tree samples
+    digest = kvs.get_client().get(kvs.tokens.source_model_digest_key(job_id))
+    if digest is not None:
+        erf.setSourceCache(
+            get_source_cache(job_id),
+            java.jclass("JsonSerializer").getSourceKeys(sources, digest))
+
     return erf
 
 
@@ -139,8 +174,12 @@ def store_source_model(job_id, seed, params, calc):
     logs.LOG.info("Storing source model from job config")
     key = kvs.tokens.source_model_key(job_id)
     mfd_bin_width = float(params.get('WIDTH_OF_MFD_BIN'))
-    calc.sample_and_save_source_model_logictree(
-        kvs.get_client(), key, seed, mfd_bin_width)
+    sources = calc.sample_source_model_logictree(seed, mfd_bin_width)
+    client = kvs.get_client()
+    client.set(key, sources)
+    # keys the sources for the source caches of the ERFs (see generate_erf)
+    client.set(kvs.tokens.source_model_digest_key(job_id),
+               hashlib.sha1(sources.encode("utf-8")).hexdigest())
 
 
 def store_gmpe_map(job_id, seed, calc):
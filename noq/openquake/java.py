@@ -41,6 +41,8 @@ JAVA_CLASSES = {
     "EventSetGen": "org.gem.calc.StochasticEventSetGenerator",
     "Random": "java.util.Random",
     "GEM1ERF": "org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF",
+    "GEM1SourceCache":
+        "org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1SourceCache",
     "HazardCalculator": "org.gem.calc.HazardCalculator",
     "Properties": "java.util.Properties",
     "CalculatorConfigHelper": "org.gem.engine.CalculatorConfigHelper",
@@ -123,6 +123,18 @@ def hazard_block_size(default=8192):
     return block_size
 
 
+def hazard_source_cache_size(default=100000):
+    """Return the default or configured maximum number of ruptures of the
+    sources cached by a worker process for the ERFs of a job."""
+    cache_size = get("hazard", "source_cache_size")
+    if cache_size is not None:
+        cache_size = int(cache_size.strip())
+
+    if cache_size and cache_size > 0:
+        return cache_size
+    return default
+
+
 def flag_set(section, setting):
     """True if the given boolean setting is enabled in openquake.cfg
 
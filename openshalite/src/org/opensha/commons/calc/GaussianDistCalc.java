@@ -49,12 +49,50 @@ public final class GaussianDistCalc {
     static double d5 = 0.0000488906;
     static double d6 = 0.0000053830;
 
+    /*
+     * Table of the lower tail, getCDF(-v), and of its derivative with respect
+     * to v (multiplied by the table spacing) at v = i / CDF_TABLE_STEPS for
+     * 0 <= v <= CDF_TABLE_MAX. These are used for cubic Hermite interpolation
+     * in getCDF_FromTable(). The spacing is a power of two so that the index
+     * computation is exact.
+     */
+    private static final int CDF_TABLE_STEPS = 256;
+    private static final double CDF_TABLE_MAX = 8.0;
+    private static final double[] cdfTailTable;
+    private static final double[] cdfTailSlopeTable;
+
+    static {
+        int num = (int) (CDF_TABLE_MAX * CDF_TABLE_STEPS) + 1;
+        cdfTailTable = new double[num];
+        cdfTailSlopeTable = new double[num];
+        for (int i = 0; i < num; i++) {
+            double val = (double) i / CDF_TABLE_STEPS;
+            double poly =
+                    (((((d6 * val + d5) * val + d4) * val + d3) * val + d2)
+                            * val + d1)
+                            * val + 1;
+            double polyDeriv =
+                    ((((6 * d6 * val + 5 * d5) * val + 4 * d4) * val + 3 * d3)
+                            * val + 2 * d2)
+                            * val + d1;
+            cdfTailTable[i] = 0.5 * Math.pow(poly, -16);
+            cdfTailSlopeTable[i] =
+                    -8.0 * Math.pow(poly, -17) * polyDeriv / CDF_TABLE_STEPS;
+        }
+    }
+
+    // whether the exceedance probability methods use getCDF_FromTable()
+    private static volatile boolean useCDFTable = false;
+
+    // the most recently used truncation normalisers (see getTruncation())
+    private static volatile Truncation lastTruncation = new Truncation(0, 0.0);
+
     /*
      * This function calculates the Gaussian exceedance probability for the
      * standardized random variable assuming no truncation of the distribution.
      */
     public static double getExceedProb(double stdRndVariable) {
-        return 1.0 - getCDF(stdRndVariable);
+        return 1.0 - cdf(stdRndVariable, useCDFTable);
     }
 
     /**
@@ -85,14 +123,14 @@ public final class GaussianDistCalc {
                                 + "cannot be negative");
         }
 
-        double prob = getCDF(stdRndVariable);
+        double prob = cdf(stdRndVariable, useCDFTable);
 
         // compute probability based on truncation type
         if (truncType == 1) { // upper truncation
             if (stdRndVariable > truncLevel)
                 return 0.0;
             else {
-                double pUp = getCDF(truncLevel);
+                double pUp = getTruncation(truncType, truncLevel).pUp;
                 return (1.0 - prob / pUp);
             }
         } else if (truncType == 2) { // the two sided case
@@ -101,9 +139,8 @@ public final class GaussianDistCalc {
             else if (stdRndVariable < -truncLevel)
                 return (1.0);
             else {
-                double pUp = getCDF(truncLevel);
-                double pLow = getCDF(-truncLevel);
-                return ((pUp - prob) / (pUp - pLow));
+                Truncation trunc = getTruncation(truncType, truncLevel);
+                return ((trunc.pUp - prob) / (trunc.pUp - trunc.pLow));
             }
         } else if (truncType == 0)
             return (1.0 - prob); // no truncation
@@ -113,6 +150,73 @@ public final class GaussianDistCalc {
                             + "0, 1, or 2");
     }
 
+    /**
+     * This function calculates the exceedance probabilities for an array of
+     * standardized random variables, with the same truncation for all of them.
+     * The results are identical to calling getExceedProb(stdRndVariable,
+     * truncType, truncLevel) for each element, but the truncation level is
+     * checked, and the CDF at the truncation level(s) is computed, only once.
+     * 
+     * @param stdRndVariables
+     * @param truncType
+     *            set 0 for none, 1 for upper only, and 2 for two sided
+     * @param truncLevel
+     *            in units of SRV (must be positive, and can't = 0.0 for
+     *            truncType = 2)
+     * @param exceedProbs
+     *            filled in with the exceedance probabilities (must be at least
+     *            as long as stdRndVariables; it can be the same array)
+     */
+    public static void getExceedProbs(double[] stdRndVariables, int truncType,
+            double truncLevel, double[] exceedProbs) {
+
+        // check that truncLevel is an allowed value
+        if (truncType == 2) {
+            if (truncLevel <= 0.0)
+                throw new RuntimeException(
+                        "GaussianDistCalc.getExceedProbs(): truncLevel must be"
+                                + "greater than zero for truncType=2");
+        } else {
+            if (truncLevel < 0.0)
+                throw new RuntimeException(
+                        "GaussianDistCalc.getExceedProbs(): truncLevel"
+                                + "cannot be negative");
+        }
+
+        int num = stdRndVariables.length;
+        boolean fromTable = useCDFTable;
+        double srv;
+        if (truncType == 0) { // no truncation
+            for (int i = 0; i < num; i++)
+                exceedProbs[i] = 1.0 - cdf(stdRndVariables[i], fromTable);
+        } else if (truncType == 1) { // upper truncation
+            double pUp = getTruncation(truncType, truncLevel).pUp;
+            for (int i = 0; i < num; i++) {
+                srv = stdRndVariables[i];
+                if (srv > truncLevel)
+                    exceedProbs[i] = 0.0;
+                else
+                    exceedProbs[i] = 1.0 - cdf(srv, fromTable) / pUp;
+            }
+        } else if (truncType == 2) { // the two sided case
+            Truncation trunc = getTruncation(truncType, truncLevel);
+            double pUp = trunc.pUp;
+            double pLow = trunc.pLow;
+            for (int i = 0; i < num; i++) {
+                srv = stdRndVariables[i];
+                if (srv > truncLevel)
+                    exceedProbs[i] = 0.0;
+                else if (srv < -truncLevel)
+                    exceedProbs[i] = 1.0;
+                else
+                    exceedProbs[i] = (pUp - cdf(srv, fromTable)) / (pUp - pLow);
+            }
+        } else
+            throw new RuntimeException(
+                    "GaussianDistCalc.getExceedProbs(): truncType must be"
+                            + "0, 1, or 2");
+    }
+
     /**
      * This function calculates the exceedance probability for a truncated
      * Gaussian distribution. The distribution is non-symmetrically truncated on
@@ -174,6 +278,95 @@ public final class GaussianDistCalc {
             return 1.0 - result;
     }
 
+    /**
+     * This is a faster version of getCDF() that interpolates (cubic Hermite)
+     * in a precomputed table of the same approximation, rather than
+     * evaluating it. The table spans +/- 8 SRVs with a spacing of 1/256;
+     * outside this range getCDF() is used. Compared with getCDF(), the
+     * absolute difference is less than 1e-12 and the relative difference in
+     * the tails (below 1e-3) is less than 1e-8 (see testSpeed_getCDF()).
+     * 
+     * @param stdRndVariable
+     * @return CDF for the input SRV
+     */
+    public static double getCDF_FromTable(double stdRndVariable) {
+
+        double val = Math.abs(stdRndVariable);
+        if (!(val < CDF_TABLE_MAX))
+            return getCDF(stdRndVariable);
+
+        double x = val * CDF_TABLE_STEPS;
+        int i = (int) x;
+        double u = x - i;
+        double u2 = u * u;
+        double u3 = u2 * u;
+        double result =
+                (2 * u3 - 3 * u2 + 1) * cdfTailTable[i]
+                        + (u3 - 2 * u2 + u) * cdfTailSlopeTable[i]
+                        + (3 * u2 - 2 * u3) * cdfTailTable[i + 1]
+                        + (u3 - u2) * cdfTailSlopeTable[i + 1];
+        if (stdRndVariable < 0)
+            return result;
+        else
+            return 1.0 - result;
+    }
+
+    /**
+     * This sets whether the getExceedProb() methods for a single truncation
+     * level (and getExceedProbs()) use getCDF_FromTable() rather than getCDF()
+     * (false by default). This applies to the whole JVM; see
+     * getCDF_FromTable() for the accuracy of the faster mode.
+     * 
+     * @param useTable
+     */
+    public static void setUseCDFTable(boolean useTable) {
+        useCDFTable = useTable;
+    }
+
+    /**
+     * @return whether getCDF_FromTable() is used for exceedance probabilities
+     */
+    public static boolean isUseCDFTable() {
+        return useCDFTable;
+    }
+
+    private static double cdf(double stdRndVariable, boolean fromTable) {
+        return fromTable ? getCDF_FromTable(stdRndVariable)
+                : getCDF(stdRndVariable);
+    }
+
+    /*
+     * This returns the CDF values at the truncation level(s), reusing those
+     * of the previous call if the truncation is the same (which it usually is
+     * for a whole calculation). These are always computed with getCDF().
+     */
+    private static Truncation getTruncation(int truncType, double truncLevel) {
+        Truncation trunc = lastTruncation;
+        if (trunc.truncType != truncType || trunc.truncLevel != truncLevel) {
+            trunc = new Truncation(truncType, truncLevel);
+            lastTruncation = trunc;
+        }
+        return trunc;
+    }
+
+    /*
+     * Immutable holder for the CDF values at a truncation level, so that it
+     * can be shared between threads.
+     */
+    private static final class Truncation {
+        final int truncType;
+        final double truncLevel;
+        final double pUp;
+        final double pLow;
+
+        Truncation(int truncType, double truncLevel) {
+            this.truncType = truncType;
+            this.truncLevel = truncLevel;
+            this.pUp = getCDF(truncLevel);
+            this.pLow = getCDF(-truncLevel);
+        }
+    }
+
     /**
      * This returns the standardized random variable (SRV) associated with the
      * given exceedance probability. The tolerance specifies the accuracy of the
@@ -637,36 +830,72 @@ public final class GaussianDistCalc {
      */
     public static void testSpeed_getStandRandVar() {
 
-        System.out.println("starting tol=1e-1");
-        for (int i = 0; i < 1e5; ++i)
-            getStdRndVariable(0.2, 0, 2.0, 1e-1);
-        System.out.println("done");
-
-        System.out.println("starting tol=1e-2");
-        for (int i = 0; i < 1e5; ++i)
-            getStdRndVariable(0.2, 0, 2.0, 1e-2);
-        System.out.println("done");
-
-        System.out.println("starting tol=1e-3");
-        for (int i = 0; i < 1e5; ++i)
-            getStdRndVariable(0.2, 0, 2.0, 1e-3);
-        System.out.println("done");
-
-        System.out.println("starting tol=1e-4");
-        for (int i = 0; i < 1e5; ++i)
-            getStdRndVariable(0.2, 0, 2.0, 1e-4);
-        System.out.println("done");
-
-        System.out.println("starting tol=1e-5");
-        for (int i = 0; i < 1e5; ++i)
-            getStdRndVariable(0.2, 0, 2.0, 1e-5);
-        System.out.println("done");
-
-        System.out.println("starting tol=1e-6");
-        for (int i = 0; i < 1e5; ++i)
-            getStdRndVariable(0.2, 0, 2.0, 1e-6);
-        System.out.println("done");
+        int num = 100000;
+        double sum = 0;
+        // warm up the JIT so the first tolerance isn't penalized
+        for (int i = 0; i < num; ++i)
+            sum += getStdRndVariable(0.2, 0, 2.0, 1e-3);
+
+        for (double tol = 1e-1; tol >= 1e-6; tol /= 10) {
+            long start = System.nanoTime();
+            for (int i = 0; i < num; ++i)
+                sum += getStdRndVariable(0.2, 0, 2.0, tol);
+            double nsPerCall = (double) (System.nanoTime() - start) / num;
+            System.out.println("tol=" + (float) tol + ": "
+                    + new DecimalFormat("0.0").format(nsPerCall)
+                    + " ns per call");
+        }
+        // print the sum so the loops can't be optimized away
+        System.out.println("(checksum " + sum + ")");
+    }
 
+    /**
+     * This compares getCDF_FromTable() with getCDF(), both for speed (ns per
+     * call, over SRVs spanning +/- 10) and for accuracy (maximum absolute
+     * difference, and maximum relative difference where the lower tail is
+     * below 1e-3).
+     */
+    public static void testSpeed_getCDF() {
+
+        int num = 1000000;
+        double[] srvs = new double[num];
+        for (int i = 0; i < num; ++i)
+            srvs[i] = -10.0 + 20.0 * i / (num - 1);
+
+        double maxAbsDiff = 0, maxRelDiff = 0;
+        for (int i = 0; i < num; ++i) {
+            double exact = getCDF(srvs[i]);
+            double fromTable = getCDF_FromTable(srvs[i]);
+            double absDiff = Math.abs(fromTable - exact);
+            maxAbsDiff = Math.max(maxAbsDiff, absDiff);
+            // the lower tail only, as 1 - CDF loses the precision in the
+            // upper tail (for both methods)
+            if (srvs[i] < 0 && exact < 1e-3 && exact > 0)
+                maxRelDiff = Math.max(maxRelDiff, absDiff / exact);
+        }
+        System.out.println("max absolute difference = " + maxAbsDiff);
+        System.out.println("max relative tail difference = " + maxRelDiff);
+
+        DecimalFormat df = new DecimalFormat("0.0");
+        double sum = 0;
+        for (int rep = 0; rep < 5; ++rep) {
+            long start = System.nanoTime();
+            for (int i = 0; i < num; ++i)
+                sum += getCDF(srvs[i]);
+            long exactTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < num; ++i)
+                sum += getCDF_FromTable(srvs[i]);
+            long tableTime = System.nanoTime() - start;
+
+            System.out.println("getCDF: "
+                    + df.format((double) exactTime / num)
+                    + " ns per call; getCDF_FromTable: "
+                    + df.format((double) tableTime / num) + " ns per call");
+        }
+        // print the sum so the loops can't be optimized away
+        System.out.println("(checksum " + sum + ")");
     }
 
     /**
@@ -700,6 +929,7 @@ public final class GaussianDistCalc {
         // test_getCDF();
         // test_symmetry_getStandRandVar();
         // testSpeed_getStandRandVar();
+        // testSpeed_getCDF();
         // test2_getStandRandVar() ;
     }
 
@@ -21,6 +21,8 @@ package org.opensha.commons.geo;
 import static org.opensha.commons.geo.GeoTools.TO_DEG;
 import static org.opensha.commons.geo.GeoTools.TO_RAD;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import org.dom4j.Element;
@@ -35,7 +37,10 @@ import org.opensha.commons.metadata.XMLSaveable;
  * <br/>
  * For computational cenvenience, latitude and longitude values are converted
  * and stored internally in radians. Special <code>get***Rad()</code> methods
- * are provided to access this native format. <br/>
+ * are provided to access this native format. The sine and cosine of the
+ * latitude, which distance calculations need for every pair of points, are
+ * also computed once and stored (see {@link #getSinLat()} and
+ * {@link #getCosLat()}). <br/>
  * <br/>
  * <code>Location</code> instances are immutable.
  * 
@@ -58,6 +63,10 @@ public class Location implements Serializable, XMLSaveable, Cloneable,
     private double lon;
     private double depth;
 
+    // not serialized, recomputed by readObject()
+    private transient double sinLat;
+    private transient double cosLat;
+
     // for internal use by clone()
     private Location() {
     }
@@ -99,6 +108,44 @@ public class Location implements Serializable, XMLSaveable, Cloneable,
         this.lat = lat * TO_RAD;
         this.lon = lon * TO_RAD;
         this.depth = depth;
+        initTrig();
+    }
+
+    /**
+     * Creates a <code>Location</code> from a latitude and longitude in
+     * radians, such as those returned by {@link #getLatRad()} and
+     * {@link #getLonRad()}. The values are stored as they are (they are
+     * <i>NOT</i> validated or converted to and from decimal degrees), so a
+     * <code>Location</code> can be recreated exactly from the radians of
+     * another one.
+     *
+     * @param latRad
+     *            latitude in radians
+     * @param lonRad
+     *            longitude in radians
+     * @param depth
+     *            in km (positive down)
+     * @return a new <code>Location</code>
+     */
+    public static Location fromRadians(double latRad, double lonRad,
+            double depth) {
+        Location loc = new Location();
+        loc.lat = latRad;
+        loc.lon = lonRad;
+        loc.depth = depth;
+        loc.initTrig();
+        return loc;
+    }
+
+    private void initTrig() {
+        sinLat = Math.sin(lat);
+        cosLat = Math.cos(lat);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        initTrig();
     }
 
     /**
@@ -146,6 +193,28 @@ public class Location implements Serializable, XMLSaveable, Cloneable,
         return lon;
     }
 
+    /**
+     * Returns the sine of the latitude of this <code>Location</code>. The
+     * value is computed once, when the <code>Location</code> is created, and
+     * is identical to <code>Math.sin(getLatRad())</code>.
+     * 
+     * @return the sine of the <code>Location</code> latitude
+     */
+    public double getSinLat() {
+        return sinLat;
+    }
+
+    /**
+     * Returns the cosine of the latitude of this <code>Location</code>. The
+     * value is computed once, when the <code>Location</code> is created, and
+     * is identical to <code>Math.cos(getLatRad())</code>.
+     * 
+     * @return the cosine of the <code>Location</code> latitude
+     */
+    public double getCosLat() {
+        return cosLat;
+    }
+
     /**
      * Returns this <code>Location</code> formatted as a "lon,lat,depth"
      * <code>String</code> for use in KML documents. This differs from
@@ -183,6 +252,8 @@ public class Location implements Serializable, XMLSaveable, Cloneable,
         clone.lat = this.lat;
         clone.lon = this.lon;
         clone.depth = this.depth;
+        clone.sinLat = this.sinLat;
+        clone.cosLat = this.cosLat;
         return clone;
     }
 
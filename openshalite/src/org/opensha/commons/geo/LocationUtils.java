@@ -59,6 +59,11 @@ public final class LocationUtils {
      * 
      * TODO: Add log warnings when 'fast' methods are being used for points that
      * exceed some max separation.
+     * 
+     * The sines and cosines of latitudes are those cached by Location (and,
+     * for the batch methods, by the arrays of a FlatGriddedSurfaceAPI), which
+     * are identical to Math.sin() and Math.cos() of the latitude, so using them
+     * doesn't change any result.
      */
 
     /* No instantiation allowed */
@@ -100,7 +105,7 @@ public final class LocationUtils {
         // half length of chord connecting points
         double c =
                 (sinDlatBy2 * sinDlatBy2)
-                        + (Math.cos(lat1) * Math.cos(lat2) * sinDlonBy2 * sinDlonBy2);
+                        + (p1.getCosLat() * p2.getCosLat() * sinDlonBy2 * sinDlonBy2);
         return 2.0 * Math.atan2(Math.sqrt(c), Math.sqrt(1 - c));
     }
 
@@ -154,6 +159,185 @@ public final class LocationUtils {
         return EARTH_RADIUS_MEAN * Math.sqrt((dLat * dLat) + (dLon * dLon));
     }
 
+    /**
+     * Maximum latitudinal and longitudinal separation (in radians, equivalent
+     * to 1&#176;) of two points for which
+     * {@link #horzDistanceFast(Location, Location)} is used by
+     * {@link #horzDistanceAuto(Location, Location)}. Within it, the relative
+     * error of the fast distance is below 5&times;10<sup>-5</sup> (less than 5
+     * m) at all latitudes.
+     */
+    public static final double FAST_DISTANCE_MAX_SEPARATION = TO_RAD;
+
+    /**
+     * Calculates the distance between two <code>Location</code>s with
+     * {@link #horzDistanceFast(Location, Location)} if they are close (if
+     * their latitudinal and longitudinal separations both are at most
+     * {@link #FAST_DISTANCE_MAX_SEPARATION}), and with
+     * {@link #horzDistance(Location, Location)} otherwise. The relative error
+     * is thus bounded (see {@link #FAST_DISTANCE_MAX_SEPARATION}), and points
+     * spanning &#177;180&#176; are handled properly (their numeric
+     * longitudinal separation exceeds the limit).
+     * 
+     * @param p1
+     *            the first <code>Location</code> point
+     * @param p2
+     *            the second <code>Location</code> point
+     * @return the distance between the points in km
+     * @see #horzDistance(Location, Location)
+     * @see #horzDistanceFast(Location, Location)
+     */
+    public static double horzDistanceAuto(Location p1, Location p2) {
+        double dLat = Math.abs(p1.getLatRad() - p2.getLatRad());
+        double dLon = Math.abs(p1.getLonRad() - p2.getLonRad());
+        if (dLat <= FAST_DISTANCE_MAX_SEPARATION
+                && dLon <= FAST_DISTANCE_MAX_SEPARATION)
+            return horzDistanceFast(p1, p2);
+        return horzDistance(p1, p2);
+    }
+
+    /**
+     * Calculates the great circle surface distances between a
+     * <code>Location</code> and a sequence of points given by arrays of
+     * latitudes and longitudes (in radians) and of the cosines of the
+     * latitudes, such as the nodes of a FlatGriddedSurfaceAPI. The distance to
+     * the point at <code>offset + i</code> in the arrays is stored at
+     * <code>i</code> in <code>distances</code>, for <code>i</code> from 0 to
+     * <code>count - 1</code>; each is identical to
+     * {@link #horzDistance(Location, Location)} with <code>p</code> as the
+     * first point. The arrays are not checked.
+     * 
+     * @param p
+     *            the <code>Location</code> to compute the distances from
+     * @param latRads
+     *            the latitudes of the points (in radians)
+     * @param lonRads
+     *            the longitudes of the points (in radians)
+     * @param cosLats
+     *            the cosines of the latitudes of the points
+     * @param offset
+     *            the index of the first point in the arrays
+     * @param count
+     *            the number of points
+     * @param distances
+     *            filled in with the distances in km
+     * @see #horzDistance(Location, Location)
+     */
+    public static void horzDistances(Location p, double[] latRads,
+            double[] lonRads, double[] cosLats, int offset, int count,
+            double[] distances) {
+        double lat1 = p.getLatRad();
+        double lon1 = p.getLonRad();
+        double cosLat1 = p.getCosLat();
+        for (int i = 0; i < count; i++) {
+            int j = offset + i;
+            double sinDlatBy2 = Math.sin((latRads[j] - lat1) / 2.0);
+            double sinDlonBy2 = Math.sin((lonRads[j] - lon1) / 2.0);
+            double c =
+                    (sinDlatBy2 * sinDlatBy2)
+                            + (cosLat1 * cosLats[j] * sinDlonBy2 * sinDlonBy2);
+            distances[i] =
+                    EARTH_RADIUS_MEAN
+                            * (2.0 * Math.atan2(Math.sqrt(c), Math.sqrt(1 - c)));
+        }
+    }
+
+    /**
+     * Calculates the approximate distances between a <code>Location</code> and
+     * a sequence of points given by arrays of latitudes and longitudes (in
+     * radians), like {@link #horzDistances(Location, double[], double[],
+     * double[], int, int, double[])} but with
+     * {@link #horzDistanceFast(Location, Location)} (with <code>p</code> as
+     * the first point), which has the same limitations.
+     * 
+     * @param p
+     *            the <code>Location</code> to compute the distances from
+     * @param latRads
+     *            the latitudes of the points (in radians)
+     * @param lonRads
+     *            the longitudes of the points (in radians)
+     * @param offset
+     *            the index of the first point in the arrays
+     * @param count
+     *            the number of points
+     * @param distances
+     *            filled in with the distances in km
+     * @see #horzDistanceFast(Location, Location)
+     */
+    public static void horzDistancesFast(Location p, double[] latRads,
+            double[] lonRads, int offset, int count, double[] distances) {
+        double lat1 = p.getLatRad();
+        double lon1 = p.getLonRad();
+        for (int i = 0; i < count; i++) {
+            int j = offset + i;
+            double lat2 = latRads[j];
+            double dLat = lat1 - lat2;
+            double dLon = (lon1 - lonRads[j]) * Math.cos((lat1 + lat2) * 0.5);
+            distances[i] =
+                    EARTH_RADIUS_MEAN * Math.sqrt((dLat * dLat) + (dLon * dLon));
+        }
+    }
+
+    /**
+     * Calculates the distances between a <code>Location</code> and a sequence
+     * of points given by arrays of latitudes and longitudes (in radians) and
+     * of the cosines of the latitudes, like
+     * {@link #horzDistances(Location, double[], double[], double[], int, int, double[])}
+     * but with {@link #horzDistanceAuto(Location, Location)} (with
+     * <code>p</code> as the first point): the distance to each point is that
+     * of {@link #horzDistancesFast(Location, double[], double[], int, int, double[])}
+     * if it is within {@link #FAST_DISTANCE_MAX_SEPARATION} of <code>p</code>,
+     * and that of
+     * {@link #horzDistances(Location, double[], double[], double[], int, int, double[])}
+     * otherwise, so the relative error has the same bound.
+     * 
+     * @param p
+     *            the <code>Location</code> to compute the distances from
+     * @param latRads
+     *            the latitudes of the points (in radians)
+     * @param lonRads
+     *            the longitudes of the points (in radians)
+     * @param cosLats
+     *            the cosines of the latitudes of the points
+     * @param offset
+     *            the index of the first point in the arrays
+     * @param count
+     *            the number of points
+     * @param distances
+     *            filled in with the distances in km
+     * @see #horzDistanceAuto(Location, Location)
+     */
+    public static void horzDistancesAuto(Location p, double[] latRads,
+            double[] lonRads, double[] cosLats, int offset, int count,
+            double[] distances) {
+        double lat1 = p.getLatRad();
+        double lon1 = p.getLonRad();
+        double cosLat1 = p.getCosLat();
+        for (int i = 0; i < count; i++) {
+            int j = offset + i;
+            double lat2 = latRads[j];
+            double dLat = lat1 - lat2;
+            double dLon = lon1 - lonRads[j];
+            if (Math.abs(dLat) <= FAST_DISTANCE_MAX_SEPARATION
+                    && Math.abs(dLon) <= FAST_DISTANCE_MAX_SEPARATION) {
+                dLon *= Math.cos((lat1 + lat2) * 0.5);
+                distances[i] =
+                        EARTH_RADIUS_MEAN
+                                * Math.sqrt((dLat * dLat) + (dLon * dLon));
+            } else {
+                double sinDlatBy2 = Math.sin((lat2 - lat1) / 2.0);
+                double sinDlonBy2 = Math.sin((lonRads[j] - lon1) / 2.0);
+                double c =
+                        (sinDlatBy2 * sinDlatBy2)
+                                + (cosLat1 * cosLats[j] * sinDlonBy2 * sinDlonBy2);
+                distances[i] =
+                        EARTH_RADIUS_MEAN
+                                * (2.0 * Math.atan2(Math.sqrt(c),
+                                        Math.sqrt(1 - c)));
+            }
+        }
+    }
+
     /**
      * Returns the vertical separation between two <code>Location</code>s. The
      * returned value is not absolute and preserves the sign of the difference
@@ -387,10 +571,10 @@ public final class LocationUtils {
 
         // for starting points other than the poles:
         double dLon = p2.getLonRad() - p1.getLonRad();
-        double cosLat2 = Math.cos(lat2);
+        double cosLat2 = p2.getCosLat();
         double azRad =
                 Math.atan2(Math.sin(dLon) * cosLat2,
-                        Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1)
+                        p1.getCosLat() * p2.getSinLat() - p1.getSinLat()
                                 * cosLat2 * Math.cos(dLon));
 
         return (azRad + TWOPI) % TWOPI;
@@ -431,8 +615,7 @@ public final class LocationUtils {
      */
     public static Location
             location(Location p, double azimuth, double distance) {
-        return location(p.getLatRad(), p.getLonRad(), p.getDepth(), azimuth,
-                distance, 0);
+        return location(p, azimuth, distance, 0);
     }
 
     /**
@@ -448,20 +631,20 @@ public final class LocationUtils {
      * @return the end location
      */
     public static Location location(Location p, LocationVector d) {
-        return location(p.getLatRad(), p.getLonRad(), p.getDepth(),
-                d.getAzimuth() * TO_RAD, d.getHorzDistance(),
+        return location(p, d.getAzimuth() * TO_RAD, d.getHorzDistance(),
                 d.getVertDistance());
     }
 
     /*
-     * Internal helper; assumes lat, lon, and azimuth in radians, and depth and
-     * dist in km
+     * Internal helper; assumes azimuth in radians, and dist in km
      */
-    private static Location location(double lat, double lon, double depth,
-            double az, double dH, double dV) {
+    private static Location location(Location p, double az, double dH,
+            double dV) {
 
-        double sinLat1 = Math.sin(lat);
-        double cosLat1 = Math.cos(lat);
+        double lon = p.getLonRad();
+        double depth = p.getDepth();
+        double sinLat1 = p.getSinLat();
+        double cosLat1 = p.getCosLat();
         double ad = dH / EARTH_RADIUS_MEAN; // angular distance
         double sinD = Math.sin(ad);
         double cosD = Math.cos(ad);
@@ -88,4 +88,20 @@ public class DataUtils {
         return result;
     }
 
+    /**
+     * Mixes the bits of a <code>long</code> with the finalizer of the
+     * SplitMix64 generator (variant 13 of David Stafford's mixers), e.g. to
+     * derive well distributed seeds of random number generators from data
+     * values or indices.
+     * 
+     * @param z
+     *            value to mix
+     * @return the mixed value
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
 }
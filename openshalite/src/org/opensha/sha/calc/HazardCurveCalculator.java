@@ -21,6 +21,9 @@ package org.opensha.sha.calc;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 
@@ -41,9 +44,13 @@ import org.opensha.sha.earthquake.EqkRupForecastAPI;
 import org.opensha.sha.earthquake.EqkRupture;
 import org.opensha.sha.earthquake.ProbEqkRupture;
 import org.opensha.sha.earthquake.ProbEqkSource;
+import org.opensha.sha.earthquake.SourceSpatialIndex;
+import org.opensha.sha.earthquake.SpatiallyIndexedEqkRupForecastAPI;
 // import
 // org.opensha.sha.earthquake.rupForecastImpl.Frankel96.Frankel96_EqkRupForecast;
 import org.opensha.sha.imr.AttenuationRelationship;
+import org.opensha.sha.imr.DirectScalarIMR_API;
+import org.opensha.sha.imr.RuptureSiteValues;
 import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
 // import org.opensha.sha.imr.attenRelImpl.BJF_1997_AttenRel;
 import org.opensha.sha.util.TRTUtils;
@@ -332,11 +339,6 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
          */
         boolean poissonSource = false;
 
-        ArbitrarilyDiscretizedFunc condProbFunc =
-                (ArbitrarilyDiscretizedFunc) hazFunction.deepClone();
-        ArbitrarilyDiscretizedFunc sourceHazFunc =
-                (ArbitrarilyDiscretizedFunc) hazFunction.deepClone();
-
         // declare some varibles used in the calculation
         double qkProb, distance;
         int k;
@@ -344,6 +346,16 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
         // get the number of points
         int numPoints = hazFunction.getNum();
 
+        // the curves are accumulated in primitive arrays (indexed like the
+        // points of hazFunction) and only copied back to hazFunction at the
+        // end; this avoids a tree lookup per IML and rupture
+        double[] imlVals = new double[numPoints];
+        for (k = 0; k < numPoints; k++)
+            imlVals[k] = hazFunction.getX(k);
+        double[] hazVals = new double[numPoints];
+        double[] sourceHazVals = new double[numPoints];
+        double[] condProbVals = new double[numPoints];
+
         // define distance filtering stuff
         double maxDistance = maxDistanceParam.getValue();
         boolean includeMagDistFilter = includeMagDistFilterParam.getValue();
@@ -357,18 +369,40 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
             imr.setSite(site);
         }
 
+        // the IMRs that can compute directly from the rupture and site
+        // values are given these rather than the rupture (which saves the
+        // parameter change events); their site values are set once here
+        Map<ScalarIntensityMeasureRelationshipAPI, RuptureSiteValues> directValues =
+                new HashMap<ScalarIntensityMeasureRelationshipAPI, RuptureSiteValues>();
+        for (ScalarIntensityMeasureRelationshipAPI imr : imrMap.values()) {
+            if (imr instanceof DirectScalarIMR_API) {
+                RuptureSiteValues values = new RuptureSiteValues();
+                ((DirectScalarIMR_API) imr).setSiteValues(site, values);
+                directValues.put(imr, values);
+            }
+        }
+
         // get total number of sources
         numSources = eqkRupForecast.getNumSources();
         // System.out.println("Number of Sources: "+numSources);
         // System.out.println("ERF info: "+
         // eqkRupForecast.getClass().getName());
 
+        // if the ERF has a spatial index, only the sources it finds near the
+        // site are considered (the others are farther than maxDistance);
+        // otherwise all of them are
+        int[] sourceIndices = getCandidateSources(site, eqkRupForecast);
+        int numCandidates =
+                sourceIndices == null ? numSources : sourceIndices.length;
+
         // compute the total number of ruptures for updating the progress bar
         totRuptures = 0;
         sourceIndex = 0;
-        for (sourceIndex = 0; sourceIndex < numSources; ++sourceIndex)
+        for (int s = 0; s < numCandidates; ++s) {
+            sourceIndex = sourceIndices == null ? s : sourceIndices[s];
             totRuptures +=
                     eqkRupForecast.getSource(sourceIndex).getNumRuptures();
+        }
         // System.out.println("Total number of ruptures:"+ totRuptures);
 
         // init the current rupture number (also for progress bar)
@@ -376,7 +410,7 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
         int numRupRejected = 0;
 
         // initialize the hazard function to 1.0
-        initDiscretizeValues(hazFunction, 1.0);
+        Arrays.fill(hazVals, 1.0);
 
         // this boolean will tell us whether a source was actually used
         // (e.g., all sources could be outside MAX_DISTANCE, leading to
@@ -387,7 +421,8 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
             System.out.println(C + ": starting hazard curve calculation");
 
         // loop over sources
-        for (sourceIndex = 0; sourceIndex < numSources; sourceIndex++) {
+        for (int s = 0; s < numCandidates; s++) {
+            sourceIndex = sourceIndices == null ? s : sourceIndices[s];
 
             // get the ith source
             ProbEqkSource source = eqkRupForecast.getSource(sourceIndex);
@@ -397,6 +432,7 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
             TectonicRegionType trt = source.getTectonicRegionType();
             ScalarIntensityMeasureRelationshipAPI imr =
                     TRTUtils.getIMRForTRT(imrMap, trt);
+            RuptureSiteValues values = directValues.get(imr);
 
             // compute the source's distance from the site and skip if it's too
             // far away
@@ -423,7 +459,7 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
             // initialize the source hazard function to 0.0 if it's a
             // non-poisson source
             if (!poissonSource)
-                initDiscretizeValues(sourceHazFunc, 0.0);
+                Arrays.fill(sourceHazVals, 0.0);
 
             // get the number of ruptures for the current source
             int numRuptures = source.getNumRuptures();
@@ -446,13 +482,17 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
                 // above filter)
                 sourceUsed = true;
 
-                // set the EqkRup in the IMR
-                imr.setEqkRupture(rupture);
-
-                // get the conditional probability of exceedance from the IMR
-                condProbFunc =
-                        (ArbitrarilyDiscretizedFunc) imr
-                                .getExceedProbabilities(condProbFunc);
+                // set the EqkRup in the IMR, and get the conditional
+                // probability of exceedance from the IMR
+                if (values != null) {
+                    DirectScalarIMR_API directImr = (DirectScalarIMR_API) imr;
+                    directImr.setRuptureValues(rupture, site, values);
+                    directImr.getExceedProbabilities(values, imlVals,
+                            condProbVals);
+                } else {
+                    imr.setEqkRupture(rupture);
+                    imr.getExceedProbabilities(imlVals, condProbVals);
+                }
 
                 // For poisson source
                 if (poissonSource) {
@@ -473,30 +513,28 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
                                         + ") is too high for a Possion source (~infinite number of events)");
 
                     for (k = 0; k < numPoints; k++)
-                        hazFunction.set(
-                                k,
-                                hazFunction.getY(k)
+                        hazVals[k] =
+                                hazVals[k]
                                         * Math.pow(1 - qkProb,
-                                                condProbFunc.getY(k)));
+                                                condProbVals[k]);
                 }
                 // For non-Poissin source
                 else
                     for (k = 0; k < numPoints; k++)
-                        sourceHazFunc.set(k, sourceHazFunc.getY(k) + qkProb
-                                * condProbFunc.getY(k));
+                        sourceHazVals[k] =
+                                sourceHazVals[k] + qkProb * condProbVals[k];
             }
             // for non-poisson source:
             if (!poissonSource)
                 for (k = 0; k < numPoints; k++)
-                    hazFunction.set(k,
-                            hazFunction.getY(k) * (1 - sourceHazFunc.getY(k)));
+                    hazVals[k] = hazVals[k] * (1 - sourceHazVals[k]);
         }
 
         int i;
         // finalize the hazard function
         if (sourceUsed)
             for (i = 0; i < numPoints; ++i)
-                hazFunction.set(i, 1 - hazFunction.getY(i));
+                hazFunction.set(i, 1 - hazVals[i]);
         else
             this.initDiscretizeValues(hazFunction, 0.0);
 
@@ -509,6 +547,300 @@ public class HazardCurveCalculator extends UnicastRemoteObject implements
         return hazFunction;
     }
 
+    /**
+     * This function computes the hazard curves for a block of sites in a
+     * single pass over the sources and ruptures of the ERF (source, then
+     * rupture, then site), rather than one pass per site as getHazardCurve()
+     * does. Each rupture is therefore obtained, and set in the IMR, only once
+     * for the whole block, with only the site changing between the
+     * calculations of the exceedance probabilities. The curves are the same
+     * as those computed by getHazardCurve() for each site, with the same
+     * source and rupture distance cutoffs and magnitude-dependent distance
+     * filter. The block should be spatially compact, as the sources
+     * considered are those within maxDistance of any of its sites.
+     * 
+     * @param hazFunctions
+     *            : the functions where the hazard curves are placed, one per
+     *            site (in the same order), all with the same x-axis values
+     * @param sites
+     *            : site objects
+     * @param imrMap
+     *            : specifies which IMR to use with each tectonic region (as
+     *            in getHazardCurve())
+     * @param eqkRupForecast
+     *            : selected Earthquake rup forecast
+     * @return the hazFunctions
+     */
+    public
+            List<DiscretizedFuncAPI>
+            getHazardCurves(
+                    List<DiscretizedFuncAPI> hazFunctions,
+                    List<Site> sites,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> imrMap,
+                    EqkRupForecastAPI eqkRupForecast)
+                    throws java.rmi.RemoteException {
+
+        int numSites = sites.size();
+        if (hazFunctions.size() != numSites)
+            throw new IllegalArgumentException("Number of hazard functions ("
+                    + hazFunctions.size() + ") differs from number of sites ("
+                    + numSites + ")");
+        if (numSites == 0)
+            return hazFunctions;
+
+        this.currRuptures = -1;
+
+        boolean poissonSource = false;
+        double qkProb;
+        int k;
+
+        // the IMLs, which must be the same for all the functions
+        int numPoints = hazFunctions.get(0).getNum();
+        double[] imlVals = new double[numPoints];
+        for (k = 0; k < numPoints; k++)
+            imlVals[k] = hazFunctions.get(0).getX(k);
+        for (DiscretizedFuncAPI hazFunction : hazFunctions) {
+            boolean sameX = hazFunction.getNum() == numPoints;
+            for (k = 0; sameX && k < numPoints; k++)
+                sameX = hazFunction.getX(k) == imlVals[k];
+            if (!sameX)
+                throw new IllegalArgumentException(
+                        "Hazard functions must all have the same x values");
+        }
+
+        // one curve accumulator per site (as in getHazardCurve()); those of
+        // non-poisson sources are only allocated if there are any
+        double[][] hazVals = new double[numSites][numPoints];
+        for (int i = 0; i < numSites; i++)
+            Arrays.fill(hazVals[i], 1.0);
+        double[][] sourceHazVals = null;
+        double[] condProbVals = new double[numPoints];
+        boolean[] sourceUsed = new boolean[numSites];
+
+        // the sites within maxDistance of the current source, and their mag
+        // thresholds if we're to use the mag-dist cutoff filter
+        int[] nearSites = new int[numSites];
+        double[] magThresh = new double[numSites];
+
+        // define distance filtering stuff
+        double maxDistance = maxDistanceParam.getValue();
+        boolean includeMagDistFilter = includeMagDistFilterParam.getValue();
+
+        // initialize IMRs w/ max distance and reset parameter listeners (the
+        // site is set for each rupture)
+        for (ScalarIntensityMeasureRelationshipAPI imr : imrMap.values()) {
+            imr.resetParameterEventListeners();
+            imr.setUserMaxDistance(maxDistance);
+        }
+
+        // the site values of the IMRs that can compute directly from the
+        // rupture and site values (see getHazardCurve()), for each site
+        Map<ScalarIntensityMeasureRelationshipAPI, RuptureSiteValues[]> directValues =
+                new HashMap<ScalarIntensityMeasureRelationshipAPI, RuptureSiteValues[]>();
+        for (ScalarIntensityMeasureRelationshipAPI imr : imrMap.values()) {
+            if (imr instanceof DirectScalarIMR_API) {
+                RuptureSiteValues[] values = new RuptureSiteValues[numSites];
+                for (int i = 0; i < numSites; i++) {
+                    values[i] = new RuptureSiteValues();
+                    ((DirectScalarIMR_API) imr).setSiteValues(sites.get(i),
+                            values[i]);
+                }
+                directValues.put(imr, values);
+            }
+        }
+
+        numSources = eqkRupForecast.getNumSources();
+        int[] sourceIndices = getCandidateSources(sites, eqkRupForecast);
+        int numCandidates =
+                sourceIndices == null ? numSources : sourceIndices.length;
+
+        // compute the total number of ruptures for updating the progress bar
+        totRuptures = 0;
+        sourceIndex = 0;
+        for (int s = 0; s < numCandidates; ++s) {
+            sourceIndex = sourceIndices == null ? s : sourceIndices[s];
+            totRuptures +=
+                    eqkRupForecast.getSource(sourceIndex).getNumRuptures();
+        }
+
+        currRuptures = 0;
+
+        // the sites are visited in alternate directions for successive
+        // ruptures, so that the first site of a pass is usually the one the
+        // IMR was left with by the previous pass, and only the rupture needs
+        // to be set for it
+        boolean forward = true;
+
+        // loop over sources
+        for (int s = 0; s < numCandidates; s++) {
+            sourceIndex = sourceIndices == null ? s : sourceIndices[s];
+
+            ProbEqkSource source = eqkRupForecast.getSource(sourceIndex);
+
+            TectonicRegionType trt = source.getTectonicRegionType();
+            ScalarIntensityMeasureRelationshipAPI imr =
+                    TRTUtils.getIMRForTRT(imrMap, trt);
+            RuptureSiteValues[] siteValues = directValues.get(imr);
+
+            int numRuptures = source.getNumRuptures();
+
+            // find the sites the source isn't too far away from
+            int numNearSites = 0;
+            for (int i = 0; i < numSites; i++) {
+                double distance = source.getMinDistance(sites.get(i));
+                if (distance > maxDistance)
+                    continue;
+                if (includeMagDistFilter)
+                    magThresh[i] =
+                            magDistCutoffParam.getValue().getInterpolatedY(
+                                    distance);
+                nearSites[numNearSites++] = i;
+            }
+            if (numNearSites == 0) {
+                currRuptures += numRuptures; // update progress bar for
+                                             // skipped ruptures
+                continue;
+            }
+
+            poissonSource = source.isSourcePoissonian();
+            if (!poissonSource) {
+                if (sourceHazVals == null)
+                    sourceHazVals = new double[numSites][numPoints];
+                for (int j = 0; j < numNearSites; j++)
+                    Arrays.fill(sourceHazVals[nearSites[j]], 0.0);
+            }
+
+            // loop over the ruptures
+            for (int n = 0; n < numRuptures; n++, ++currRuptures) {
+
+                EqkRupture rupture = source.getRupture(n);
+                qkProb = ((ProbEqkRupture) rupture).getProbability();
+                double mag = rupture.getMag();
+                boolean rupSet = false;
+
+                // loop over the sites
+                for (int j = 0; j < numNearSites; j++) {
+                    int i = nearSites[forward ? j : numNearSites - 1 - j];
+
+                    // apply magThreshold if we're to use the mag-dist cutoff
+                    // filter
+                    if (includeMagDistFilter && mag < magThresh[i])
+                        continue;
+
+                    sourceUsed[i] = true;
+
+                    // set the site and EqkRup in the IMR
+                    Site site = sites.get(i);
+                    if (siteValues != null) {
+                        DirectScalarIMR_API directImr =
+                                (DirectScalarIMR_API) imr;
+                        directImr.setRuptureValues(rupture, site,
+                                siteValues[i]);
+                        directImr.getExceedProbabilities(siteValues[i],
+                                imlVals, condProbVals);
+                    } else {
+                        if (!rupSet) {
+                            if (imr.getSite() != site)
+                                imr.setSite(site);
+                            imr.setEqkRupture(rupture);
+                            rupSet = true;
+                        } else {
+                            imr.setSite(site);
+                        }
+
+                        imr.getExceedProbabilities(imlVals, condProbVals);
+                    }
+
+                    if (poissonSource) {
+                        // see getHazardCurve()
+                        if (Math.log(1.0 - qkProb) < -30.0)
+                            throw new RuntimeException(
+                                    "Error: The probability for this ProbEqkRupture ("
+                                            + qkProb
+                                            + ") is too high for a Possion source (~infinite number of events)");
+
+                        double[] siteHazVals = hazVals[i];
+                        for (k = 0; k < numPoints; k++)
+                            siteHazVals[k] =
+                                    siteHazVals[k]
+                                            * Math.pow(1 - qkProb,
+                                                    condProbVals[k]);
+                    } else {
+                        double[] siteSourceHazVals = sourceHazVals[i];
+                        for (k = 0; k < numPoints; k++)
+                            siteSourceHazVals[k] =
+                                    siteSourceHazVals[k] + qkProb
+                                            * condProbVals[k];
+                    }
+                }
+                if (rupSet)
+                    forward = !forward;
+            }
+
+            // for non-poisson source:
+            if (!poissonSource)
+                for (int j = 0; j < numNearSites; j++) {
+                    int i = nearSites[j];
+                    for (k = 0; k < numPoints; k++)
+                        hazVals[i][k] =
+                                hazVals[i][k] * (1 - sourceHazVals[i][k]);
+                }
+        }
+
+        // finalize the hazard functions
+        for (int i = 0; i < numSites; i++) {
+            DiscretizedFuncAPI hazFunction = hazFunctions.get(i);
+            if (sourceUsed[i])
+                for (k = 0; k < numPoints; ++k)
+                    hazFunction.set(k, 1 - hazVals[i][k]);
+            else
+                this.initDiscretizeValues(hazFunction, 0.0);
+        }
+
+        return hazFunctions;
+    }
+
+    /**
+     * Returns the indices (in increasing order) of the sources that may be
+     * within maxDistance of the site, found with the spatial index of the ERF,
+     * or null if the ERF doesn't have one.
+     */
+    private int[] getCandidateSources(Site site,
+            EqkRupForecastAPI eqkRupForecast) {
+        SourceSpatialIndex index = getSourceSpatialIndex(eqkRupForecast);
+        if (index == null)
+            return null;
+        return index.getSourceIndices(site.getLocation(),
+                maxDistanceParam.getValue());
+    }
+
+    /**
+     * Same as the previous method, for the sources that may be within
+     * maxDistance of any of the sites.
+     */
+    private int[] getCandidateSources(List<Site> sites,
+            EqkRupForecastAPI eqkRupForecast) {
+        SourceSpatialIndex index = getSourceSpatialIndex(eqkRupForecast);
+        if (index == null)
+            return null;
+        List<Location> locs = new ArrayList<Location>(sites.size());
+        for (Site site : sites)
+            locs.add(site.getLocation());
+        return index.getSourceIndices(locs, maxDistanceParam.getValue());
+    }
+
+    private SourceSpatialIndex getSourceSpatialIndex(
+            EqkRupForecastAPI eqkRupForecast) {
+        if (!(eqkRupForecast instanceof SpatiallyIndexedEqkRupForecastAPI))
+            return null;
+        SourceSpatialIndex index =
+                ((SpatiallyIndexedEqkRupForecastAPI) eqkRupForecast)
+                        .getSourceSpatialIndex();
+        if (index == null || index.getNumSources() != numSources)
+            return null;
+        return index;
+    }
+
     /**
      * This function computes an average hazard curve from a number of
      * stochastic event sets for the given Site, IMR, eqkRupForecast, where the
@@ -20,6 +20,7 @@ package org.opensha.sha.calc;
 
 import java.rmi.Remote;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.ListIterator;
 
@@ -170,6 +171,34 @@ public interface HazardCurveCalculatorAPI extends Remote {
                     EqkRupForecastAPI eqkRupForecast)
                     throws java.rmi.RemoteException;
 
+    /**
+     * This function computes the hazard curves for a block of sites in a
+     * single pass over the sources and ruptures of the ERF (source, then
+     * rupture, then site), setting each rupture in the IMR only once for the
+     * whole block. The curves are the same as those computed by
+     * getHazardCurve() for each site.
+     * 
+     * @param hazFunctions
+     *            : the functions where the hazard curves are placed, one per
+     *            site (in the same order), all with the same x-axis values
+     * @param sites
+     *            : site objects
+     * @param imrMap
+     *            : specifies which IMR to use with each tectonic region (as
+     *            in getHazardCurve())
+     * @param eqkRupForecast
+     *            : selected Earthquake rup forecast
+     * @return the hazFunctions
+     */
+    public
+            List<DiscretizedFuncAPI>
+            getHazardCurves(
+                    List<DiscretizedFuncAPI> hazFunctions,
+                    List<Site> sites,
+                    Map<TectonicRegionType, ScalarIntensityMeasureRelationshipAPI> imrMap,
+                    EqkRupForecastAPI eqkRupForecast)
+                    throws java.rmi.RemoteException;
+
     /**
      * This function computes a hazard curve for the given Site, IMR, and
      * ProbEqkrupture. The curve in place in the passed in hazFunction (with the
@@ -0,0 +1,296 @@
+package org.opensha.sha.earthquake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.opensha.commons.geo.GeoTools;
+import org.opensha.commons.geo.Location;
+
+/**
+ * <b>Title:</b> SourceSpatialIndex<br>
+ * <b>Description:</b> Spatial index over the sources of an earthquake rupture
+ * forecast, for finding the sources that may be within a given distance of a
+ * site (or of a block of sites) without computing the distance to every
+ * source. Each source is represented by a lat/lon bounding box, buffered by a
+ * distance in km (e.g. half the length of the longest rupture of a point or
+ * area source), and the boxes are registered in the cells of a regular lat/lon
+ * grid.<br>
+ *
+ * The index is conservative: a query can return sources that are farther than
+ * the given distance (so the distance to each returned source still has to be
+ * checked), but it doesn't leave out any source whose bounding box is within
+ * that distance. The distances are padded by DISTANCE_TOLERANCE to allow for
+ * the approximations made by the sources' getMinDistance(Site) methods. <br>
+ *
+ * The index is built with add(), which is not thread safe, and can then be
+ * queried by any number of threads.
+ */
+public class SourceSpatialIndex implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final static double DEFAULT_CELL_SIZE = 1.0;
+
+    /**
+     * Relative tolerance applied to distances (and buffers)
+     */
+    public final static double DISTANCE_TOLERANCE = 0.05;
+
+    // length of one degree of latitude (km)
+    private final static double KM_PER_DEGREE = GeoTools.EARTH_RADIUS_MEAN
+            * GeoTools.TO_RAD;
+
+    private final double cellSize;
+    private final int numLatCells;
+    private final int numLonCells;
+
+    // buffered bounding box of each source, in degrees (the longitudes of
+    // boxes that span all longitudes are NaN)
+    private double[] minLats = new double[16];
+    private double[] maxLats = new double[16];
+    private double[] minLons = new double[16];
+    private double[] maxLons = new double[16];
+    private int numSources = 0;
+
+    // indices of the sources whose boxes overlap each cell, keyed by
+    // cellKey()
+    private final HashMap<Integer, int[]> cells = new HashMap<Integer, int[]>();
+
+    /**
+     * Index with DEFAULT_CELL_SIZE
+     */
+    public SourceSpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param cellSize
+     *            size of the grid cells, in decimal degrees
+     */
+    public SourceSpatialIndex(double cellSize) {
+        if (!(cellSize > 0 && cellSize <= 90))
+            throw new IllegalArgumentException("Invalid cell size: "
+                    + cellSize);
+        this.cellSize = cellSize;
+        numLatCells = (int) Math.ceil(180 / cellSize);
+        numLonCells = (int) Math.ceil(360 / cellSize);
+    }
+
+    /**
+     * Adds the next source (sources must be added in the order of their
+     * indices, starting from 0).
+     *
+     * @param minLat
+     * @param maxLat
+     * @param minLon
+     * @param maxLon
+     *            bounding box of the source, in decimal degrees
+     * @param buffer
+     *            distance by which to extend the box, in km (e.g. to account
+     *            for ruptures that extend beyond the source's locations)
+     * @return the index of the source
+     */
+    public int add(double minLat, double maxLat, double minLon, double maxLon,
+            double buffer) {
+        if (minLat > maxLat || minLon > maxLon || buffer < 0)
+            throw new IllegalArgumentException("Invalid bounding box: "
+                    + minLat + ", " + maxLat + ", " + minLon + ", " + maxLon
+                    + " (buffer " + buffer + ")");
+        if (numSources == minLats.length) {
+            int n = 2 * numSources;
+            minLats = Arrays.copyOf(minLats, n);
+            maxLats = Arrays.copyOf(maxLats, n);
+            minLons = Arrays.copyOf(minLons, n);
+            maxLons = Arrays.copyOf(maxLons, n);
+        }
+        double latMargin = latMargin(buffer);
+        double[] lonRange =
+                lonRange(minLat - latMargin, maxLat + latMargin, minLon,
+                        maxLon, latMargin);
+        int source = numSources++;
+        minLats[source] = Math.max(minLat - latMargin, GeoTools.LAT_MIN);
+        maxLats[source] = Math.min(maxLat + latMargin, GeoTools.LAT_MAX);
+        minLons[source] = lonRange == null ? Double.NaN : lonRange[0];
+        maxLons[source] = lonRange == null ? Double.NaN : lonRange[1];
+
+        int firstLonCell = firstLonCell(lonRange);
+        int numCells = numLonCells(lonRange);
+        int firstLatCell = latCell(minLats[source]);
+        int lastLatCell = latCell(maxLats[source]);
+        for (int latCell = firstLatCell; latCell <= lastLatCell; latCell++) {
+            for (int c = 0; c < numCells; c++) {
+                Integer key = cellKey(latCell, firstLonCell + c);
+                int[] sources = cells.get(key);
+                if (sources == null) {
+                    sources = new int[] { source };
+                } else {
+                    sources = Arrays.copyOf(sources, sources.length + 1);
+                    sources[sources.length - 1] = source;
+                }
+                cells.put(key, sources);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * @return the number of sources added
+     */
+    public int getNumSources() {
+        return numSources;
+    }
+
+    /**
+     * Returns the indices of the sources that may be within maxDistance (km)
+     * of the given location, in increasing order.
+     */
+    public int[] getSourceIndices(Location loc, double maxDistance) {
+        return getSourceIndices(loc.getLatitude(), loc.getLatitude(),
+                loc.getLongitude(), loc.getLongitude(), maxDistance);
+    }
+
+    /**
+     * Returns the indices of the sources that may be within maxDistance (km)
+     * of any of the given locations, in increasing order.
+     */
+    public int[] getSourceIndices(List<Location> locs, double maxDistance) {
+        if (locs.isEmpty())
+            return new int[0];
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (Location loc : locs) {
+            minLat = Math.min(minLat, loc.getLatitude());
+            maxLat = Math.max(maxLat, loc.getLatitude());
+            minLon = Math.min(minLon, loc.getLongitude());
+            maxLon = Math.max(maxLon, loc.getLongitude());
+        }
+        return getSourceIndices(minLat, maxLat, minLon, maxLon, maxDistance);
+    }
+
+    /**
+     * Returns the indices of the sources that may be within maxDistance (km)
+     * of the given lat/lon box, in increasing order.
+     */
+    public int[] getSourceIndices(double minLat, double maxLat, double minLon,
+            double maxLon, double maxDistance) {
+        double latMargin = latMargin(maxDistance);
+        if (latMargin >= 180) {
+            int[] all = new int[numSources];
+            for (int i = 0; i < numSources; i++)
+                all[i] = i;
+            return all;
+        }
+        double[] lonRange =
+                lonRange(minLat - latMargin, maxLat + latMargin, minLon,
+                        maxLon, latMargin);
+        minLat = Math.max(minLat - latMargin, GeoTools.LAT_MIN);
+        maxLat = Math.min(maxLat + latMargin, GeoTools.LAT_MAX);
+
+        // collect the sources registered in the cells overlapping the box
+        // (with duplicates), and keep those whose boxes overlap it
+        ArrayList<int[]> cellSources = new ArrayList<int[]>();
+        int count = 0;
+        int firstLonCell = firstLonCell(lonRange);
+        int numCells = numLonCells(lonRange);
+        int lastLatCell = latCell(maxLat);
+        for (int latCell = latCell(minLat); latCell <= lastLatCell; latCell++) {
+            for (int c = 0; c < numCells; c++) {
+                int[] sources = cells.get(cellKey(latCell, firstLonCell + c));
+                if (sources != null) {
+                    cellSources.add(sources);
+                    count += sources.length;
+                }
+            }
+        }
+        int[] candidates = new int[count];
+        int n = 0;
+        for (int[] sources : cellSources)
+            for (int source : sources)
+                if (overlaps(source, minLat, maxLat, lonRange))
+                    candidates[n++] = source;
+        Arrays.sort(candidates, 0, n);
+        int numUnique = 0;
+        for (int i = 0; i < n; i++)
+            if (numUnique == 0 || candidates[i] != candidates[numUnique - 1])
+                candidates[numUnique++] = candidates[i];
+        return Arrays.copyOf(candidates, numUnique);
+    }
+
+    private boolean overlaps(int source, double minLat, double maxLat,
+            double[] lonRange) {
+        if (minLats[source] > maxLat || maxLats[source] < minLat)
+            return false;
+        if (lonRange == null || Double.isNaN(minLons[source]))
+            return true;
+        // the longitude ranges may differ by a multiple of 360
+        for (int shift = -360; shift <= 360; shift += 360)
+            if (minLons[source] + shift <= lonRange[1]
+                    && maxLons[source] + shift >= lonRange[0])
+                return true;
+        return false;
+    }
+
+    /*
+     * Latitude (in degrees) spanned by the given distance (in km), padded by
+     * DISTANCE_TOLERANCE.
+     */
+    private static double latMargin(double distance) {
+        return distance * (1 + DISTANCE_TOLERANCE) / KM_PER_DEGREE;
+    }
+
+    /*
+     * Extends the longitude range by the given margin (in degrees of
+     * latitude), scaled by the longest degree of longitude between minLat and
+     * maxLat. Returns null if the range covers all longitudes.
+     */
+    private static double[] lonRange(double minLat, double maxLat,
+            double minLon, double maxLon, double latMargin) {
+        double maxAbsLat = Math.max(Math.abs(minLat), Math.abs(maxLat));
+        if (maxAbsLat >= 89.0)
+            return null;
+        double lonMargin = latMargin / Math.cos(maxAbsLat * GeoTools.TO_RAD);
+        if (maxLon - minLon + 2 * lonMargin >= 360)
+            return null;
+        return new double[] { minLon - lonMargin, maxLon + lonMargin };
+    }
+
+    private int latCell(double lat) {
+        return Math.min((int) ((lat - GeoTools.LAT_MIN) / cellSize),
+                numLatCells - 1);
+    }
+
+    /*
+     * Not wrapped into [0, numLonCells), so that ranges can be iterated
+     */
+    private int lonCell(double lon) {
+        return (int) Math.floor((lon - GeoTools.LON_MIN) / cellSize);
+    }
+
+    private int firstLonCell(double[] lonRange) {
+        return lonRange == null ? 0 : lonCell(lonRange[0]);
+    }
+
+    /*
+     * Number of longitude cells overlapping the range (null for all
+     * longitudes)
+     */
+    private int numLonCells(double[] lonRange) {
+        if (lonRange == null)
+            return numLonCells;
+        return Math.min(lonCell(lonRange[1]) - lonCell(lonRange[0]) + 1,
+                numLonCells);
+    }
+
+    /*
+     * The longitude cell is wrapped into [0, numLonCells)
+     */
+    private Integer cellKey(int latCell, int lonCell) {
+        lonCell %= numLonCells;
+        if (lonCell < 0)
+            lonCell += numLonCells;
+        return latCell * numLonCells + lonCell;
+    }
+
+}
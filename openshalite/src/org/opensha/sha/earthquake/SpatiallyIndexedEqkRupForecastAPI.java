@@ -0,0 +1,18 @@
+package org.opensha.sha.earthquake;
+
+/**
+ * <b>Title:</b> SpatiallyIndexedEqkRupForecastAPI<br>
+ * <b>Description:</b> An Earthquake Rupture Forecast that provides a spatial
+ * index over its sources, which calculators can use to skip the sources that
+ * are too far from a site without getting them (see SourceSpatialIndex).<br>
+ */
+public interface SpatiallyIndexedEqkRupForecastAPI extends EqkRupForecastAPI {
+
+    /**
+     * Returns the spatial index over the current sources (i.e. those of the
+     * last updateForecast()), in which the indices are those of getSource(int).
+     * This can return null if no index is available.
+     */
+    public SourceSpatialIndex getSourceSpatialIndex();
+
+}
@@ -20,6 +20,7 @@ package org.opensha.sha.earthquake.rupForecastImpl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.opensha.commons.calc.magScalingRelations.MagAreaRelationship;
@@ -125,7 +126,22 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
     protected String NAME = "Floating Poisson Fault Source";
 
     // private fields
-    private ArrayList<ProbEqkRupture> ruptureList;
+    // the ruptures, made from ruptureGroups when first needed (unless
+    // streaming)
+    private volatile ArrayList<ProbEqkRupture> ruptureList;
+    // one group of ruptures per magnitude (and magScalingSigma branch), in
+    // the order of the ruptures
+    private ArrayList<RuptureGroup> ruptureGroups;
+    // index of the first rupture of each group (plus the total number of
+    // ruptures at the end)
+    private int[] groupFirstRupture;
+    private double rupOffset;
+    private double rake;
+    private int floatTypeFlag;
+    private boolean streamRuptures = false;
+    // the type given to setTectonicRegionType(), if any (this only applies to
+    // the ruptures; getTectonicRegionType() is not changed)
+    private TectonicRegionType ruptureTectRegType = null;
 
     // private ArrayList<Location> faultCornerLocations = new
     // ArrayList<Location>(); // used for the getMinDistance(Site) method
@@ -201,12 +217,16 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
         // getMinDistance(site) method
         mkApproxSourceSurface(faultSurface);
 
-        // make the rupture list
-        ruptureList = new ArrayList<ProbEqkRupture>();
+        // make the rupture groups (the ruptures themselves are made from
+        // these when needed)
+        this.rupOffset = rupOffset;
+        this.rake = rake;
+        this.floatTypeFlag = floatTypeFlag;
+        ruptureGroups = new ArrayList<RuptureGroup>();
         if (magScalingSigma == 0.0)
-            addRupturesToList(magDist, faultSurface, magScalingRel,
-                    magScalingSigma, rupAspectRatio, rupOffset, rake, minMag,
-                    0.0, 1.0, floatTypeFlag, fullFaultRupMagThresh);
+            addRuptureGroups(magDist, faultSurface, magScalingRel,
+                    magScalingSigma, rupAspectRatio, minMag, 0.0, 1.0,
+                    floatTypeFlag, fullFaultRupMagThresh);
         else {
             GaussianMagFreqDist gDist =
                     new GaussianMagFreqDist(-3.0, 3.0, 25, 0.0, 1.0, 1.0);
@@ -215,9 +235,9 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
             if (D)
                 System.out.println("gDist:\n" + gDist.toString());
             for (int m = 0; m < gDist.getNum(); m++) {
-                addRupturesToList(magDist, faultSurface, magScalingRel,
-                        magScalingSigma, rupAspectRatio, rupOffset, rake,
-                        minMag, gDist.getX(m), gDist.getY(m), floatTypeFlag,
+                addRuptureGroups(magDist, faultSurface, magScalingRel,
+                        magScalingSigma, rupAspectRatio, minMag,
+                        gDist.getX(m), gDist.getY(m), floatTypeFlag,
                         fullFaultRupMagThresh);
                 if (D)
                     System.out.println(m + "\t" + gDist.getX(m) + "\t"
@@ -225,6 +245,11 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
             }
         }
 
+        groupFirstRupture = new int[ruptureGroups.size() + 1];
+        for (int g = 0; g < ruptureGroups.size(); g++)
+            groupFirstRupture[g + 1] =
+                    groupFirstRupture[g] + ruptureGroups.get(g).numRup;
+
         lastDuration = duration;
     }
 
@@ -261,10 +286,13 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
      * @param newDuration
      */
     public void setDuration(double newDuration) {
-        for (int r = 0; r < ruptureList.size(); r++) {
-            ProbEqkRupture rup = ruptureList.get(r);
-            double rate = rup.getMeanAnnualRate(lastDuration);
-            rup.setProbability(1.0 - Math.exp(-duration * rate));
+        ArrayList<ProbEqkRupture> ruptureList = this.ruptureList;
+        if (ruptureList != null) {
+            for (int r = 0; r < ruptureList.size(); r++) {
+                ProbEqkRupture rup = ruptureList.get(r);
+                double rate = rup.getMeanAnnualRate(lastDuration);
+                rup.setProbability(1.0 - Math.exp(-duration * rate));
+            }
         }
         lastDuration = newDuration;
     }
@@ -275,9 +303,34 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
      * setTectonicRegionType)
      */
     public void setTectonicRegionType(TectonicRegionType tectRegType){
-    	for (int r = 0; r < ruptureList.size(); r++) {
-    		ruptureList.get(r).setTectRegType(tectRegType);
-    	}
+        ruptureTectRegType = tectRegType;
+        ArrayList<ProbEqkRupture> ruptureList = this.ruptureList;
+        if (ruptureList != null) {
+            for (int r = 0; r < ruptureList.size(); r++) {
+                ruptureList.get(r).setTectRegType(tectRegType);
+            }
+        }
+    }
+
+    /**
+     * This sets whether getRupture(n) makes the nth rupture on demand each
+     * time it's called (a new object each time), rather than returning it
+     * from the list of all the ruptures, which is made on the first call. The
+     * ruptures (and their order and probabilities) are the same either way,
+     * but streaming takes constant memory, so it's preferable when each
+     * rupture is only used once (as in hazard-curve calculations). The default
+     * is false. Turning streaming on discards the list of ruptures.
+     * 
+     * @param streamRuptures
+     */
+    public void setStreamRuptures(boolean streamRuptures) {
+        this.streamRuptures = streamRuptures;
+        if (streamRuptures)
+            ruptureList = null;
+    }
+
+    public boolean isStreamRuptures() {
+        return streamRuptures;
     }
 
     /**
@@ -312,21 +365,19 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
     }
 
     /**
-     * This method makes and adds ruptures to the list
+     * This method adds the groups of ruptures (one per magnitude) to the list
      */
-    private void addRupturesToList(IncrementalMagFreqDist magDist,
+    private void addRuptureGroups(IncrementalMagFreqDist magDist,
             EvenlyGriddedSurface faultSurface,
             MagScalingRelationship magScalingRel, double magScalingSigma,
-            double rupAspectRatio, double rupOffset, double rake,
-            double minMag, double numSigma, double weight, int floatTypeFlag,
-            double fullFaultRupMagThresh) {
+            double rupAspectRatio, double minMag, double numSigma,
+            double weight, int floatTypeFlag, double fullFaultRupMagThresh) {
 
         double rupLen;
         double rupWidth;
         int numRup;
         double mag;
         double rate;
-        double prob = Double.NaN;
 
         if (D)
             System.out.println(C + ": magScalingSigma=" + magScalingSigma);
@@ -377,58 +428,69 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
                                 faultSurface.getNumSubsetSurfacesAlongLength(
                                         rupLen, rupOffset);
 
-                    for (int r = 0; r < numRup; ++r) {
-                        probEqkRupture = new ProbEqkRupture();
-                        probEqkRupture.setAveRake(rake);
-                        EvenlyGriddedSurfaceAPI rupSurf = null;
-                        if (floatTypeFlag != 2){
-                        	rupSurf = faultSurface
-                            .getNthSubsetSurface(rupLen, rupWidth,
-                                    rupOffset, r);
-                        }
-                        else{
-                        	rupSurf = faultSurface
-                            .getNthSubsetSurfaceCenteredDownDip(rupLen,
-                                    rupWidth, rupOffset, r);
-                        }
-                        probEqkRupture.setRuptureSurface(rupSurf);
-                        probEqkRupture.setMag(mag);
-                        prob =
-                                (1.0 - Math.exp(-duration * weight * rate
-                                        / numRup));
-                        probEqkRupture.setProbability(prob);
-                        probEqkRupture.setTectRegType(
-                        		this.getTectonicRegionType());
-                        probEqkRupture.setHypocenterLocation(
-                        		rupSurf.getSurfaceCentre());
-                        ruptureList.add(probEqkRupture);
-                    }
-                    /*
-                     * if( D )
-                     * System.out.println(C+": ddw="+ddw+": mag="+mag+"; rupLen="
-                     * +rupLen+"; rupWidth="+rupWidth+
-                     * "; rate="+rate+"; timeSpan="+duration+"; numRup="+numRup+
-                     * "; weight="
-                     * +weight+"; prob="+prob+"; floatTypeFlag="+floatTypeFlag);
-                     */
-
+                    ruptureGroups.add(new RuptureGroup(mag, rate, weight,
+                            false, rupLen, rupWidth, numRup));
                 }
                 // Apply full fault rupture
                 else {
-                    probEqkRupture = new ProbEqkRupture();
-                    probEqkRupture.setAveRake(rake);
-                    probEqkRupture.setRuptureSurface(faultSurface);
-                    probEqkRupture.setHypocenterLocation(
-                    		faultSurface.getSurfaceCentre());
-                    probEqkRupture.setMag(mag);
-                    prob = (1.0 - Math.exp(-duration * weight * rate));
-                    probEqkRupture.setProbability(prob);
-                    ruptureList.add(probEqkRupture);
+                    ruptureGroups.add(new RuptureGroup(mag, rate, weight,
+                            true, Double.NaN, Double.NaN, 1));
                 }
             }
         }
     }
 
+    /**
+     * This makes the rth rupture of the given group
+     */
+    private ProbEqkRupture mkRupture(RuptureGroup group, int r) {
+        ProbEqkRupture rupture = new ProbEqkRupture();
+        rupture.setAveRake(rake);
+        double prob;
+        if (!group.fullFault) {
+            EvenlyGriddedSurfaceAPI rupSurf = null;
+            if (floatTypeFlag != 2) {
+                rupSurf =
+                        faultSurface.getNthSubsetSurface(group.rupLen,
+                                group.rupWidth, rupOffset, r);
+            } else {
+                rupSurf =
+                        faultSurface.getNthSubsetSurfaceCenteredDownDip(
+                                group.rupLen, group.rupWidth, rupOffset, r);
+            }
+            rupture.setRuptureSurface(rupSurf);
+            rupture.setMag(group.mag);
+            prob =
+                    (1.0 - Math.exp(-duration * group.weight * group.rate
+                            / group.numRup));
+            rupture.setProbability(prob);
+            rupture.setTectRegType(ruptureTectRegType != null
+                    ? ruptureTectRegType : this.getTectonicRegionType());
+            rupture.setHypocenterLocation(rupSurf.getSurfaceCentre());
+        } else {
+            rupture.setRuptureSurface(faultSurface);
+            rupture.setHypocenterLocation(faultSurface.getSurfaceCentre());
+            rupture.setMag(group.mag);
+            prob = (1.0 - Math.exp(-duration * group.weight * group.rate));
+            rupture.setProbability(prob);
+            if (ruptureTectRegType != null)
+                rupture.setTectRegType(ruptureTectRegType);
+        }
+        return rupture;
+    }
+
+    /**
+     * This makes the list of all the ruptures
+     */
+    private ArrayList<ProbEqkRupture> mkRuptureList() {
+        ArrayList<ProbEqkRupture> ruptures =
+                new ArrayList<ProbEqkRupture>(getNumRuptures());
+        for (RuptureGroup group : ruptureGroups)
+            for (int r = 0; r < group.numRup; r++)
+                ruptures.add(mkRupture(group, r));
+        return ruptures;
+    }
+
     /**
      * It returns a list of all the locations which make up the surface for this
      * source.
@@ -448,14 +510,36 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
      * @return the total num of rutures for all magnitudes
      */
     public int getNumRuptures() {
-        return ruptureList.size();
+        return groupFirstRupture[ruptureGroups.size()];
     }
 
     /**
-     * This method returns the nth Rupture in the list
+     * This method returns the nth Rupture in the list (or makes it, if
+     * streaming)
      */
     public ProbEqkRupture getRupture(int nthRupture) {
-        return (ProbEqkRupture) ruptureList.get(nthRupture);
+        if (streamRuptures) {
+            if (nthRupture < 0 || nthRupture >= getNumRuptures())
+                throw new IndexOutOfBoundsException("Rupture index "
+                        + nthRupture + " out of range [0, "
+                        + getNumRuptures() + ")");
+            int g = Arrays.binarySearch(groupFirstRupture, nthRupture);
+            // for a match take the last group starting there (groups can be
+            // empty), otherwise the group before the insertion point
+            if (g >= 0)
+                while (groupFirstRupture[g + 1] == nthRupture)
+                    g++;
+            else
+                g = -g - 2;
+            return mkRupture(ruptureGroups.get(g), nthRupture
+                    - groupFirstRupture[g]);
+        }
+        ArrayList<ProbEqkRupture> ruptureList = this.ruptureList;
+        if (ruptureList == null) {
+            ruptureList = mkRuptureList();
+            this.ruptureList = ruptureList;
+        }
+        return ruptureList.get(nthRupture);
     }
 
     /**
@@ -528,4 +612,28 @@ public class FloatingPoissonFaultSource extends ProbEqkSource {
     public String getName() {
         return NAME;
     }
+
+    /**
+     * The values needed to make the ruptures of one magnitude
+     */
+    private static class RuptureGroup {
+        final double mag;
+        final double rate;
+        final double weight;
+        final boolean fullFault;
+        final double rupLen;
+        final double rupWidth;
+        final int numRup;
+
+        RuptureGroup(double mag, double rate, double weight,
+                boolean fullFault, double rupLen, double rupWidth, int numRup) {
+            this.mag = mag;
+            this.rate = rate;
+            this.weight = weight;
+            this.fullFault = fullFault;
+            this.rupLen = rupLen;
+            this.rupWidth = rupWidth;
+            this.numRup = numRup;
+        }
+    }
 }
@@ -1,8 +1,9 @@
 package org.opensha.sha.earthquake.rupForecastImpl.GEM1;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.opensha.commons.calc.magScalingRelations.MagAreaRelationship;
 import org.opensha.commons.calc.magScalingRelations.MagScalingRelationship;
@@ -10,13 +11,20 @@ import org.opensha.commons.calc.magScalingRelations.magScalingRelImpl.PEER_tests
 import org.opensha.commons.calc.magScalingRelations.magScalingRelImpl.WC1994_MagAreaRelationship;
 import org.opensha.commons.calc.magScalingRelations.magScalingRelImpl.WC1994_MagLengthRelationship;
 import org.opensha.commons.data.TimeSpan;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.Region;
 import org.opensha.commons.param.BooleanParameter;
 import org.opensha.commons.param.DoubleParameter;
 import org.opensha.commons.param.ParameterList;
 import org.opensha.commons.param.StringParameter;
 import org.opensha.commons.param.event.ParameterChangeEvent;
 import org.opensha.sha.earthquake.EqkRupForecast;
+import org.opensha.sha.earthquake.FocalMechanism;
 import org.opensha.sha.earthquake.ProbEqkSource;
+import org.opensha.sha.earthquake.SourceSpatialIndex;
+import org.opensha.sha.earthquake.SpatiallyIndexedEqkRupForecastAPI;
+import org.opensha.sha.earthquake.griddedForecast.MagFreqDistsForFocalMechs;
 import org.opensha.sha.earthquake.rupForecastImpl.FloatingPoissonFaultSource;
 import org.opensha.sha.earthquake.rupForecastImpl.PointEqkSource;
 import org.opensha.sha.earthquake.rupForecastImpl.PointToLineSource;
@@ -27,7 +35,10 @@ import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMPointSource
 import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSourceData;
 import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSubductionFaultSourceData;
 import org.opensha.sha.faultSurface.ApproxEvenlyGriddedSurface;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.faultSurface.FlatGriddedSurface;
 import org.opensha.sha.faultSurface.StirlingGriddedSurface;
+import org.opensha.sha.magdist.IncrementalMagFreqDist;
 import org.opensha.sha.util.TectonicRegionType;
 
 /**
@@ -53,7 +64,8 @@ import org.opensha.sha.util.TectonicRegionType;
  * @version 1.0
  */
 
-public class GEM1ERF extends EqkRupForecast {
+public class GEM1ERF extends EqkRupForecast implements
+        SpatiallyIndexedEqkRupForecastAPI {
 
     // name of this ERF
     public final static String NAME = new String("GEM1 Eqk Rup Forecast");
@@ -371,7 +383,28 @@ public class GEM1ERF extends EqkRupForecast {
     public final static Boolean SOURCE_CACHE_PARAM_DEFAULT = false;
     private BooleanParameter sourceCacheParam;
 
-    private HashMap<Integer, ProbEqkSource> sourceCache = null;
+    public final static String STREAM_RUPTURES_PARAM_NAME = "Stream Ruptures";
+    public final static String STREAM_RUPTURES_PARAM_INFO =
+            "Makes the ruptures of area and fault sources when they are"
+                    + " needed rather than keeping them all, which uses less"
+                    + " memory when each rupture is only used once";
+    public final static Boolean STREAM_RUPTURES_PARAM_DEFAULT = false;
+    private BooleanParameter streamRupturesParam;
+    private boolean streamRupturesValue;
+
+    private GEM1SourceCache sourceCache = null;
+    // true if the cache was given with setSourceCache() (and so may be
+    // shared with other ERFs), rather than created for the parameter
+    private boolean sharedSourceCache = false;
+    // content keys of the source data given with setSourceCache() (null to
+    // key the cache on the source data objects)
+    private Map<GEMSourceData, String> sourceKeys = null;
+    // the calculation settings the sources depend on (set in
+    // updateForecast()), used with the source data to key the cache
+    private List<Object> sourceSettings;
+
+    // index over the sources of gemSourceDataList (made by updateForecast())
+    private volatile SourceSpatialIndex sourceSpatialIndex;
 
     private ArrayList<TectonicRegionType> tectonicRegionTypes;
 
@@ -741,7 +774,12 @@ public class GEM1ERF extends EqkRupForecast {
                         SOURCE_CACHE_PARAM_DEFAULT);
         sourceCacheParam.setInfo(SOURCE_CACHE_PARAM_INFO);
         if (sourceCacheParam.getValue())
-            sourceCache = new HashMap<Integer, ProbEqkSource>();
+            sourceCache = new GEM1SourceCache();
+
+        streamRupturesParam =
+                new BooleanParameter(STREAM_RUPTURES_PARAM_NAME,
+                        STREAM_RUPTURES_PARAM_DEFAULT);
+        streamRupturesParam.setInfo(STREAM_RUPTURES_PARAM_INFO);
 
         // Add the change listener to parameters
         minMagParam.addParameterChangeListener(this);
@@ -774,6 +812,7 @@ public class GEM1ERF extends EqkRupForecast {
         subductionScalingSigmaParam.addParameterChangeListener(this);
         // -- Other
         sourceCacheParam.addParameterChangeListener(this);
+        streamRupturesParam.addParameterChangeListener(this);
     }
 
     /**
@@ -854,6 +893,7 @@ public class GEM1ERF extends EqkRupForecast {
         }
 
         adjustableParams.addParameter(sourceCacheParam);
+        adjustableParams.addParameter(streamRupturesParam);
 
     }
 
@@ -869,11 +909,14 @@ public class GEM1ERF extends EqkRupForecast {
     protected ProbEqkSource
             mkFaultSource(GEMFaultSourceData gemFaultSourceData) {
 
-        StirlingGriddedSurface faultSurface =
-                new StirlingGriddedSurface(gemFaultSourceData.getTrace(),
+        // the surface and its floating ruptures share primitive coordinate
+        // arrays, so distances are computed without Location objects
+        FlatGriddedSurface faultSurface =
+                new FlatGriddedSurface(new StirlingGriddedSurface(
+                        gemFaultSourceData.getTrace(),
                         gemFaultSourceData.getDip(),
                         gemFaultSourceData.getSeismDepthUpp(),
-                        gemFaultSourceData.getSeismDepthLow(), faultDiscrValue);
+                        gemFaultSourceData.getSeismDepthLow(), faultDiscrValue));
 
         FloatingPoissonFaultSource src = null;
 
@@ -922,17 +965,18 @@ public class GEM1ERF extends EqkRupForecast {
         }
 
         src.setTectonicRegionType(gemFaultSourceData.getTectReg());
+        src.setStreamRuptures(streamRupturesValue);
         return src;
     }
 
     protected ProbEqkSource mkSubductionSource(
             GEMSubductionFaultSourceData gemSubductFaultSourceData) {
 
-        ApproxEvenlyGriddedSurface faultSurface =
-                new ApproxEvenlyGriddedSurface(
+        FlatGriddedSurface faultSurface =
+                new FlatGriddedSurface(new ApproxEvenlyGriddedSurface(
                         gemSubductFaultSourceData.getTopTrace(),
                         gemSubductFaultSourceData.getBottomTrace(),
-                        subductionDiscrValue);
+                        subductionDiscrValue));
 
         FloatingPoissonFaultSource src = null;
 
@@ -1001,6 +1045,7 @@ public class GEM1ERF extends EqkRupForecast {
         }
 
         src.setTectonicRegionType(gemSubductFaultSourceData.getTectReg());
+        src.setStreamRuptures(streamRupturesValue);
         return src;
     }
 
@@ -1020,6 +1065,7 @@ public class GEM1ERF extends EqkRupForecast {
                             areaSourceData.getAveHypoDepth(), duration,
                             minMagValue);
             src.setTectonicRegionType(areaSourceData.getTectReg());
+            src.setStreamRuptures(streamRupturesValue);
             return src;
         } else if (areaSrcRupTypeValue.equals(AREA_SRC_RUP_TYPE_LINE)) {
             PoissonAreaSource src =
@@ -1031,6 +1077,7 @@ public class GEM1ERF extends EqkRupForecast {
                             areaSrcMagScalingRel, areaSrcLowerSeisDepthValue,
                             duration, minMagValue);
             src.setTectonicRegionType(areaSourceData.getTectReg());
+            src.setStreamRuptures(streamRupturesValue);
             return src;
         } else if (areaSrcRupTypeValue.equals(AREA_SRC_RUP_TYPE_CROSS_HAIR)) {
             PoissonAreaSource src =
@@ -1042,6 +1089,7 @@ public class GEM1ERF extends EqkRupForecast {
                             areaSrcMagScalingRel, areaSrcLowerSeisDepthValue,
                             duration, minMagValue, 2, 0);
             src.setTectonicRegionType(areaSourceData.getTectReg());
+            src.setStreamRuptures(streamRupturesValue);
             return src;
         } else if (areaSrcRupTypeValue.equals(AREA_SRC_RUP_TYPE_SPOKED)) {
             PoissonAreaSource src =
@@ -1053,6 +1101,7 @@ public class GEM1ERF extends EqkRupForecast {
                             areaSrcMagScalingRel, areaSrcLowerSeisDepthValue,
                             duration, minMagValue, 16, 0);
             src.setTectonicRegionType(areaSourceData.getTectReg());
+            src.setStreamRuptures(streamRupturesValue);
             return src;
         } else if (areaSrcRupTypeValue.equals(AREA_SRC_RUP_TYPE_FINITE_SURF)) {
             throw new RuntimeException(NAME + " - "
@@ -1126,36 +1175,220 @@ public class GEM1ERF extends EqkRupForecast {
     /**
      * Returns the ith earthquake source
      * 
+     * This can be called by several threads at the same time after the
+     * forecast is updated: sources are either made for each call or taken from
+     * the (synchronized) cache, which only holds sources whose ruptures are all
+     * made before they are cached, and never changed afterwards.
+     * 
      * @param iSource
      *            : index of the source needed
      */
     public ProbEqkSource getSource(int iSource) {
         ProbEqkSource source = null;
-        if (sourceCache != null) {
-            source = sourceCache.get(new Integer(iSource));
+        GEMSourceData srcData = gemSourceDataList.get(iSource);
+        GEM1SourceCache cache = sourceCache;
+        Object sourceKey = null;
+        if (cache != null) {
+            Map<GEMSourceData, String> keys = sourceKeys;
+            sourceKey = keys == null ? srcData : keys.get(srcData);
+            // sources without a key aren't cached
+            if (sourceKey == null)
+                cache = null;
+            else
+                source = cache.get(sourceKey, sourceSettings);
         }
         if (source == null) {
-            GEMSourceData srcData = gemSourceDataList.get(iSource);
-            if (srcData instanceof GEMFaultSourceData)
-                source = mkFaultSource((GEMFaultSourceData) srcData);
-            else if (srcData instanceof GEMSubductionFaultSourceData)
-                source =
-                        mkSubductionSource((GEMSubductionFaultSourceData) srcData);
-            else if (srcData instanceof GEMPointSourceData)
-                source = mkGridSource((GEMPointSourceData) srcData);
-            else if (srcData instanceof GEMAreaSourceData)
-                source = mkAreaSource((GEMAreaSourceData) srcData);
-            else
-                throw new RuntimeException(NAME + ": " + srcData.getClass()
-                        + " not yet supported");
-            if (sourceCache != null) {
-                System.out.println("Caching source " + iSource);
-                sourceCache.put(new Integer(iSource), source);
+            source = mkSource(srcData);
+            // PointEqkSource reuses a single rupture object, and streamed
+            // sources remake their ruptures on demand, so neither can be
+            // shared between threads
+            if (cache != null && !streamRupturesValue
+                    && !(source instanceof PointEqkSource)) {
+                // build the ruptures of the sources that make them lazily,
+                // so that they are complete before being shared
+                if (source.getNumRuptures() > 0)
+                    source.getRupture(0);
+                source = cache.put(sourceKey, sourceSettings, source);
             }
         }
         return source;
     }
 
+    private ProbEqkSource mkSource(GEMSourceData srcData) {
+        if (srcData instanceof GEMFaultSourceData)
+            return mkFaultSource((GEMFaultSourceData) srcData);
+        else if (srcData instanceof GEMSubductionFaultSourceData)
+            return mkSubductionSource((GEMSubductionFaultSourceData) srcData);
+        else if (srcData instanceof GEMPointSourceData)
+            return mkGridSource((GEMPointSourceData) srcData);
+        else if (srcData instanceof GEMAreaSourceData)
+            return mkAreaSource((GEMAreaSourceData) srcData);
+        else
+            throw new RuntimeException(NAME + ": " + srcData.getClass()
+                    + " not yet supported");
+    }
+
+    /**
+     * Returns the spatial index over the sources, which is made by
+     * updateForecast() (or null if the forecast hasn't been updated yet).
+     * Each source is indexed by the bounding box of its region, fault
+     * trace(s) or location, buffered by the horizontal extent of the fault
+     * surface down dip for fault sources, and by half the length of the
+     * longest rupture for point and area sources with line ruptures.
+     */
+    public SourceSpatialIndex getSourceSpatialIndex() {
+        return sourceSpatialIndex;
+    }
+
+    /*
+     * The bounding boxes are computed from the source data, without making
+     * the sources (so without discretizing regions or fault surfaces).
+     */
+    private SourceSpatialIndex mkSourceSpatialIndex() {
+        SourceSpatialIndex index = new SourceSpatialIndex();
+        for (GEMSourceData srcData : gemSourceDataList) {
+            if (srcData instanceof GEMAreaSourceData) {
+                GEMAreaSourceData areaData = (GEMAreaSourceData) srcData;
+                Region reg = areaData.getRegion();
+                double buffer = 0.0;
+                if (isLineRupType(areaSrcRupTypeValue, AREA_SRC_RUP_TYPE_LINE,
+                        AREA_SRC_RUP_TYPE_CROSS_HAIR,
+                        AREA_SRC_RUP_TYPE_SPOKED))
+                    buffer =
+                            getMaxLength(areaData.getMagfreqDistFocMech(),
+                                    areaData.getAveRupTopVsMag(),
+                                    areaSrcLowerSeisDepthValue,
+                                    areaSrcMagScalingRel) / 2;
+                index.add(reg.getMinLat(), reg.getMaxLat(), reg.getMinLon(),
+                        reg.getMaxLon(), buffer);
+            } else if (srcData instanceof GEMPointSourceData) {
+                GEMPointSourceData pointData = (GEMPointSourceData) srcData;
+                Location loc =
+                        pointData.getHypoMagFreqDistAtLoc().getLocation();
+                double buffer = 0.0;
+                if (isLineRupType(griddedSeisRupTypeValue,
+                        GRIDDED_SEIS_RUP_TYPE_LINE,
+                        GRIDDED_SEIS_RUP_TYPE_CROSS_HAIR,
+                        GRIDDED_SEIS_RUP_TYPE_SPOKED))
+                    buffer =
+                            getMaxLength(pointData.getHypoMagFreqDistAtLoc(),
+                                    pointData.getAveRupTopVsMag(),
+                                    griddedSeisLowerSeisDepthValue,
+                                    griddedSeisMagScalingRel) / 2;
+                index.add(loc.getLatitude(), loc.getLatitude(),
+                        loc.getLongitude(), loc.getLongitude(), buffer);
+            } else if (srcData instanceof GEMFaultSourceData) {
+                GEMFaultSourceData faultData = (GEMFaultSourceData) srcData;
+                FaultTrace trace = faultData.getTrace();
+                double minDepth = Double.MAX_VALUE;
+                for (Location loc : trace)
+                    minDepth = Math.min(minDepth, loc.getDepth());
+                // the surface goes down dip from the trace to the lower
+                // seismogenic depth, on one side of the trace
+                double buffer =
+                        Math.max(0.0, (faultData.getSeismDepthLow() - minDepth)
+                                / Math.tan(faultData.getDip() * Math.PI / 180));
+                addBoundingBox(index, trace, null, buffer);
+            } else if (srcData instanceof GEMSubductionFaultSourceData) {
+                // the surface is between the top and bottom traces
+                GEMSubductionFaultSourceData subductionData =
+                        (GEMSubductionFaultSourceData) srcData;
+                addBoundingBox(index, subductionData.getTopTrace(),
+                        subductionData.getBottomTrace(), 0.0);
+            } else {
+                // unknown geometry: always a candidate
+                index.add(-90.0, 90.0, -180.0, 180.0, 0.0);
+            }
+        }
+        return index;
+    }
+
+    private static boolean isLineRupType(String rupType, String line,
+            String crossHair, String spoked) {
+        return rupType.equals(line) || rupType.equals(crossHair)
+                || rupType.equals(spoked);
+    }
+
+    /*
+     * Same as PoissonAreaSource.getMaxLength() (or
+     * PointToLineSource.getMaxLength()) for the source made from mfdFocMech,
+     * including the default focal mechanisms of area sources without any.
+     */
+    private static double getMaxLength(MagFreqDistsForFocalMechs mfdFocMech,
+            ArbitrarilyDiscretizedFunc aveRupTopVsMag, double lowerSeisDepth,
+            MagScalingRelationship magScalingRel) {
+        IncrementalMagFreqDist[] mfds = mfdFocMech.getMagFreqDistList();
+        FocalMechanism[] focalMechanisms = mfdFocMech.getFocalMechanismList();
+        if (focalMechanisms == null) {
+            focalMechanisms = new FocalMechanism[mfds.length];
+            for (int i = 0; i < mfds.length; i++)
+                focalMechanisms[i] = new FocalMechanism(Double.NaN, 90.0, 0);
+        }
+        return Math.max(0.0, PointToLineSource.computeMaxLength(mfds,
+                focalMechanisms, aveRupTopVsMag, lowerSeisDepth,
+                magScalingRel));
+    }
+
+    private static void addBoundingBox(SourceSpatialIndex index,
+            FaultTrace trace, FaultTrace otherTrace, double buffer) {
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (FaultTrace t : new FaultTrace[] { trace, otherTrace }) {
+            if (t == null)
+                continue;
+            for (Location loc : t) {
+                minLat = Math.min(minLat, loc.getLatitude());
+                maxLat = Math.max(maxLat, loc.getLatitude());
+                minLon = Math.min(minLon, loc.getLongitude());
+                maxLon = Math.max(maxLon, loc.getLongitude());
+            }
+        }
+        index.add(minLat, maxLat, minLon, maxLon, buffer);
+    }
+
+    /**
+     * Sets the cache used by getSource() (this enables caching regardless of
+     * the SOURCE_CACHE_PARAM_NAME parameter), with the sources keyed on their
+     * source data objects. The same cache can be given to any number of
+     * GEM1ERF instances built from the same source data objects (including
+     * ones used by different threads), so that each source is built only
+     * once. Set null to stop caching.
+     * 
+     * @param cache
+     */
+    public void setSourceCache(GEM1SourceCache cache) {
+        setSourceCache(cache, null);
+    }
+
+    /**
+     * Sets the cache used by getSource(), with the sources keyed on the given
+     * content keys of their source data (sources whose data has no key aren't
+     * cached). Two source data objects must have the same key only if they
+     * have the same content, e.g. a digest of the source model and the index
+     * of the source in it. The same cache can then be given to GEM1ERF
+     * instances built from different copies of the same source model, such as
+     * the ones deserialized for each block of sites of a job, so that each
+     * source is built only once. Set null to stop caching.
+     * 
+     * @param cache
+     * @param sourceKeys
+     *            content keys of the source data objects (null to key the
+     *            cache on the source data objects)
+     */
+    public void setSourceCache(GEM1SourceCache cache,
+            Map<GEMSourceData, String> sourceKeys) {
+        sourceCache = cache;
+        sharedSourceCache = cache != null;
+        this.sourceKeys = cache == null ? null : sourceKeys;
+    }
+
+    /**
+     * @return the cache used by getSource(), or null if sources aren't cached
+     */
+    public GEM1SourceCache getSourceCache() {
+        return sourceCache;
+    }
+
     /**
      * Get the number of earthquake sources
      * 
@@ -1260,11 +1493,32 @@ public class GEM1ERF extends EqkRupForecast {
                 // (floaterTypeName.equals(this.FLOATER_TYPE_CENTERED_DOWNDIP))
                 subductionFloaterTypeValue = 2;
 
-            // clear cache (if used) and garbage collect
-            if (sourceCache != null) {
-                sourceCache = null;
-                System.gc();
-            }
+            streamRupturesValue = streamRupturesParam.getValue();
+
+            sourceSettings =
+                    Arrays.asList(new Object[] { minMagValue,
+                            areaSrcRupTypeValue, areaSrcLowerSeisDepthValue,
+                            areaSrcDiscrValue,
+                            areaSrcMagScalingRelParam.getValue(),
+                            griddedSeisRupTypeValue,
+                            griddedSeisLowerSeisDepthValue,
+                            griddedSeisMagScalingRelParam.getValue(),
+                            faultRupOffsetValue, faultDiscrValue,
+                            faultMagScalingRelParam.getValue(),
+                            faultScalingSigmaValue, faultRupAspectRatioValue,
+                            faultFloaterTypeValue, subductionRupOffsetValue,
+                            subductionDiscrValue,
+                            subductionMagScalingRelParam.getValue(),
+                            subductionScalingSigmaValue,
+                            subductionRupAspectRatioValue,
+                            subductionFloaterTypeValue, duration,
+                            streamRupturesValue });
+
+            // sources built with the previous settings can't be used any more
+            // (a shared cache is left to evict them, as other ERFs may still
+            // be using them)
+            if (sourceCache != null && !sharedSourceCache)
+                sourceCache.clear();
 
             // make the list of sources
             gemSourceDataList = new ArrayList<GEMSourceData>();
@@ -1279,6 +1533,7 @@ public class GEM1ERF extends EqkRupForecast {
             if (includeSubductionSourcesParam.getValue()
                     && subductionSourceDataList != null)
                 gemSourceDataList.addAll(subductionSourceDataList);
+            sourceSpatialIndex = mkSourceSpatialIndex();
 
             parameterChangeFlag = false;
         }
@@ -1302,10 +1557,11 @@ public class GEM1ERF extends EqkRupForecast {
         if (paramName.equals(SOURCE_CACHE_PARAM_NAME)) {
             if ((Boolean) event.getParameter().getValue()) {
                 if (sourceCache == null)
-                    sourceCache = new HashMap<Integer, ProbEqkSource>();
+                    sourceCache = new GEM1SourceCache();
             } else {
                 sourceCache = null;
-                System.gc(); // garbage collection
+                sharedSourceCache = false;
+                sourceKeys = null;
             }
         } else
             parameterChangeFlag = true;
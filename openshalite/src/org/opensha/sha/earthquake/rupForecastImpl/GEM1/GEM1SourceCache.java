@@ -0,0 +1,187 @@
+package org.opensha.sha.earthquake.rupForecastImpl.GEM1;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opensha.sha.earthquake.ProbEqkSource;
+
+/**
+ * <p>
+ * Title: GEM1SourceCache
+ * </p>
+ * <p>
+ * Description: Bounded, thread-safe cache of the sources built by GEM1ERF
+ * from GEMSourceData. The size of the cache is measured as the total number of
+ * ruptures of the cached sources; when adding a source takes it above the
+ * maximum, the least recently used sources are evicted.
+ * </p>
+ * <p>
+ * Sources are keyed by a source key together with the ERF calculation
+ * settings they were built with. The source key identifies the content of the
+ * source data: GEM1ERF uses keys given with
+ * {@link GEM1ERF#setSourceCache(GEM1SourceCache, Map)} (e.g. a digest of the
+ * source model and the index of the source in it), or the GEMSourceData
+ * object itself (compared by identity) otherwise. With content keys one cache
+ * can be shared by any number of GEM1ERF instances (e.g. one per block of
+ * sites, in concurrent hazard calculations), even if each is built from its
+ * own copy of the source data. The source data must not be changed once sources built
+ * from it have been cached.
+ * </p>
+ *
+ * @see GEM1ERF#setSourceCache(GEM1SourceCache)
+ */
+public class GEM1SourceCache {
+
+    public final static long DEFAULT_MAX_RUPTURES = 1000000;
+
+    private final long maxRuptures;
+
+    // in access order, so that the first entry is the least recently used
+    private final LinkedHashMap<Key, ProbEqkSource> sources =
+            new LinkedHashMap<Key, ProbEqkSource>(16, 0.75f, true);
+
+    private long numRuptures = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Cache holding at most DEFAULT_MAX_RUPTURES ruptures.
+     */
+    public GEM1SourceCache() {
+        this(DEFAULT_MAX_RUPTURES);
+    }
+
+    /**
+     * @param maxRuptures
+     *            maximum total number of ruptures of the cached sources
+     */
+    public GEM1SourceCache(long maxRuptures) {
+        if (maxRuptures < 0)
+            throw new IllegalArgumentException(
+                    "maxRuptures cannot be negative");
+        this.maxRuptures = maxRuptures;
+    }
+
+    /**
+     * Returns the source with the given source key built with the given
+     * settings, or null if it's not in the cache.
+     */
+    public synchronized ProbEqkSource get(Object sourceKey, List<?> settings) {
+        ProbEqkSource source = sources.get(new Key(sourceKey, settings));
+        if (source == null)
+            missCount++;
+        else
+            hitCount++;
+        return source;
+    }
+
+    /**
+     * Adds the source with the given source key built with the given
+     * settings. If another thread has already added one for the same key,
+     * that source is kept and returned instead. Sources with more than the
+     * maximum number of ruptures are not cached.
+     *
+     * @return the cached source for the key (or the given source if it could
+     *         not be cached)
+     */
+    public synchronized ProbEqkSource put(Object sourceKey, List<?> settings,
+            ProbEqkSource source) {
+        Key key = new Key(sourceKey, settings);
+        ProbEqkSource cached = sources.get(key);
+        if (cached != null)
+            return cached;
+
+        long sourceRuptures = source.getNumRuptures();
+        if (sourceRuptures > maxRuptures)
+            return source;
+
+        sources.put(key, source);
+        numRuptures += sourceRuptures;
+        Iterator<Map.Entry<Key, ProbEqkSource>> it =
+                sources.entrySet().iterator();
+        while (numRuptures > maxRuptures && it.hasNext()) {
+            ProbEqkSource eldest = it.next().getValue();
+            numRuptures -= eldest.getNumRuptures();
+            it.remove();
+            evictionCount++;
+        }
+        return source;
+    }
+
+    /**
+     * Removes all sources (the counters are not reset).
+     */
+    public synchronized void clear() {
+        sources.clear();
+        numRuptures = 0;
+    }
+
+    public long getMaxRuptures() {
+        return maxRuptures;
+    }
+
+    /**
+     * @return the number of cached sources
+     */
+    public synchronized int size() {
+        return sources.size();
+    }
+
+    /**
+     * @return the total number of ruptures of the cached sources
+     */
+    public synchronized long getNumRuptures() {
+        return numRuptures;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "GEM1SourceCache: " + sources.size() + " sources, "
+                + numRuptures + "/" + maxRuptures + " ruptures, " + hitCount
+                + " hits, " + missCount + " misses, " + evictionCount
+                + " evictions";
+    }
+
+    /*
+     * Both the source key and the settings are compared by value (which is
+     * identity for GEMSourceData, as it doesn't implement equals).
+     */
+    private static final class Key {
+        private final Object sourceKey;
+        private final List<?> settings;
+
+        Key(Object sourceKey, List<?> settings) {
+            this.sourceKey = sourceKey;
+            this.settings = settings;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return sourceKey.equals(other.sourceKey)
+                    && settings.equals(other.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sourceKey.hashCode() + settings.hashCode();
+        }
+    }
+}
@@ -18,8 +18,11 @@
 
 package org.opensha.sha.earthquake.rupForecastImpl;
 
+import static org.opensha.commons.util.DataUtils.mix64;
+
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Random;
 
 import org.opensha.commons.calc.magScalingRelations.MagAreaRelationship;
 import org.opensha.commons.calc.magScalingRelations.MagLengthRelationship;
@@ -101,7 +104,9 @@ public class PointToLineSource extends ProbEqkSource implements
      * cloned and the depth is overwritten here). The strike in each
      * FocalMechanism of HypoMagFreqDistAtLoc is applied, or a random strike is
      * applied if this is NaN (a different random value for each and every
-     * rupture). This sets the source as Poissonian.
+     * rupture, which only depends on the location and the focal mechanism, so
+     * that the source is the same each time it is made). This sets the source
+     * as Poissonian.
      */
     public PointToLineSource(HypoMagFreqDistAtLoc hypoMagFreqDistAtLoc,
             ArbitrarilyDiscretizedFunc aveRupTopVersusMag,
@@ -150,6 +155,20 @@ public class PointToLineSource extends ProbEqkSource implements
     }
 
     protected double computeMaxLength() {
+        return computeMaxLength(magFreqDists, focalMechanisms,
+                aveRupTopVersusMag, lowerSeisDepth, magScalingRel);
+    }
+
+    /**
+     * Computes the length of the longest rupture of a source with the given
+     * magnitude frequency distributions and focal mechanisms (and other
+     * parameters as in the constructors), without making the source.
+     */
+    public static double computeMaxLength(
+            IncrementalMagFreqDist[] magFreqDists,
+            FocalMechanism[] focalMechanisms,
+            ArbitrarilyDiscretizedFunc aveRupTopVersusMag,
+            double lowerSeisDepth, MagScalingRelationship magScalingRel) {
         double max = 0;
         for (int i = 0; i < magFreqDists.length; i++) {
             double dip = focalMechanisms[i].getDip();
@@ -241,12 +260,37 @@ public class PointToLineSource extends ProbEqkSource implements
                     MagScalingRelationship magScalingRel,
                     double lowerSeisDepth, double duration, double minMag,
                     double weight) {
+        mkAndAddRuptures(location, magFreqDist, focalMech,
+                aveRupTopVersusMag, defaultHypoDepth, magScalingRel,
+                lowerSeisDepth, duration, minMag, weight, probEqkRuptureList,
+                rates);
+    }
+
+    /**
+     * This is the same as the previous method, but the ruptures and their
+     * rates are added to the given lists rather than to probEqkRuptureList and
+     * rates.
+     */
+    protected void
+            mkAndAddRuptures(Location location,
+                    IncrementalMagFreqDist magFreqDist,
+                    FocalMechanism focalMech,
+                    ArbitrarilyDiscretizedFunc aveRupTopVersusMag,
+                    double defaultHypoDepth,
+                    MagScalingRelationship magScalingRel,
+                    double lowerSeisDepth, double duration, double minMag,
+                    double weight, ArrayList<ProbEqkRupture> ruptureList,
+                    ArrayList<Double> rateList) {
 
         double dip = focalMech.getDip();
         double strike = focalMech.getStrike();
         boolean isStrikeRandom = false;
+        Random strikeRandom = null;
         if (Double.isNaN(strike)) {
             isStrikeRandom = true;
+            strikeRandom =
+                    new Random(getRandomStrikeSeed(location, magFreqDist,
+                            focalMech));
         }
 
         for (int m = 0; m < magFreqDist.getNum(); m++) {
@@ -294,7 +338,7 @@ public class PointToLineSource extends ProbEqkSource implements
 
                     // get randome strike if needed (between -90 and + 90)
                     if (isStrikeRandom) {
-                        strike = (Math.random() - 0.5) * 180.0;
+                        strike = (strikeRandom.nextDouble() - 0.5) * 180.0;
                     }
                     
                     // create fault trace
@@ -321,12 +365,28 @@ public class PointToLineSource extends ProbEqkSource implements
 
                 // add the rupture to the list and save the rate in case the
                 // duration changes
-                probEqkRuptureList.add(rupture);
-                rates.add(new Double(rate * weight));
+                ruptureList.add(rupture);
+                rateList.add(new Double(rate * weight));
             }
         }
     }
 
+    /**
+     * This returns the seed of the random strikes of the ruptures made at the
+     * given location for the given magFreqDist and focalMech. The seed only
+     * depends on these values, so the same ruptures are made with the same
+     * strikes whenever (and in whatever thread) they are made.
+     */
+    private static long getRandomStrikeSeed(Location location,
+            IncrementalMagFreqDist magFreqDist, FocalMechanism focalMech) {
+        long seed = mix64(Double.doubleToLongBits(location.getLatitude()));
+        seed = mix64(seed ^ Double.doubleToLongBits(location.getLongitude()));
+        seed = mix64(seed ^ Double.doubleToLongBits(focalMech.getDip()));
+        seed = mix64(seed ^ Double.doubleToLongBits(focalMech.getRake()));
+        seed = mix64(seed ^ Double.doubleToLongBits(magFreqDist.getMinX()));
+        return mix64(seed ^ magFreqDist.getNum());
+    }
+
     /**
      * This computes the rupture length. If magScalingRel is a mag-length
      * relationship, then the length from mag is returned. If magScalingRel is a
@@ -341,7 +401,7 @@ public class PointToLineSource extends ProbEqkSource implements
      * @param magScalingRel
      * @return
      */
-    private double getRupLength(double mag,
+    private static double getRupLength(double mag,
             ArbitrarilyDiscretizedFunc aveRupTopVersusMag,
             double lowerSeisDepth, double dip,
             MagScalingRelationship magScalingRel) {
@@ -374,7 +434,7 @@ public class PointToLineSource extends ProbEqkSource implements
     public LocationList getAllSourceLocs() {
         LocationList locList = new LocationList();
         for (int r = 0; r < getNumRuptures(); r++) {
-            locList.addAll(probEqkRuptureList.get(r).getRuptureSurface()
+            locList.addAll(getRupture(r).getRuptureSurface()
                     .getLocationList());
         }
         return locList;
@@ -387,6 +447,14 @@ public class PointToLineSource extends ProbEqkSource implements
         throw new RuntimeException("Method not supported");
     }
 
+    /**
+     * @return the length of the longest rupture (half of which is subtracted
+     *         from the distance to the location in getMinDistance(Site))
+     */
+    public double getMaxLength() {
+        return maxLength;
+    }
+
     /**
      * @return the number of rutures (equals number of mags with non-zero rates)
      */
@@ -412,6 +480,8 @@ public class PointToLineSource extends ProbEqkSource implements
      */
     public void setDuration(double duration) {
         this.duration = duration;
+        if (probEqkRuptureList == null)
+            return;
         for (int i = 0; i < probEqkRuptureList.size(); i++)
             probEqkRuptureList.get(i).setProbability(
                     1 - Math.exp(-rates.get(i) * duration));
@@ -54,6 +54,9 @@ public class PoissonAreaSource extends PointToLineSource implements
 	GriddedRegion gridReg;
 	boolean pointSources = false;
 	double[] nodeWeights;
+	boolean streamRuptures = false;
+	// the ruptures of the last node made when streaming
+	private transient volatile NodeRuptures lastNodeRuptures;
 
 	/**
 	 * This constructor treats all ruptures as point sources.
@@ -104,7 +107,7 @@ public class PoissonAreaSource extends PointToLineSource implements
 	 */
 	private void computeNodeWeights() {
 		int numPts = gridReg.getNodeCount();
-		nodeWeights = new double[numPts];
+		double[] nodeWeights = new double[numPts];
 		double tot = 0;
 		for (int i = 0; i < numPts; i++) {
 			double latitude = gridReg.locationForIndex(i).getLatitude();
@@ -114,6 +117,7 @@ public class PoissonAreaSource extends PointToLineSource implements
 		for (int i = 0; i < numPts; i++) {
 			nodeWeights[i] = nodeWeights[i] / tot;
 		}
+		this.nodeWeights = nodeWeights;
 	}
 
 	/*
@@ -151,92 +155,168 @@ public class PoissonAreaSource extends PointToLineSource implements
 
 	private void mkAllRuptures() {
 
-		probEqkRuptureList = new ArrayList<ProbEqkRupture>();
-		rates = new ArrayList<Double>();
+		ArrayList<ProbEqkRupture> ruptures = new ArrayList<ProbEqkRupture>();
+		ArrayList<Double> rupRates = new ArrayList<Double>();
 
 		// computes the node wts (including fact that area changes with
 		// latitude)
 		computeNodeWeights();
 
+		for (int j = 0; j < gridReg.getNodeCount(); j++)
+			mkNodeRuptures(j, ruptures, rupRates);
+
+		// check num ruptures
+		if (numRuptures != ruptures.size())
+			throw new RuntimeException("Error in computing number of ruptures");
+
+		rates = rupRates;
+		probEqkRuptureList = ruptures;
+	}
+
+	/**
+	 * This makes the ruptures of the jth node of the gridded region, adding
+	 * them (and their rates) to the given lists. The node weights must have
+	 * been computed.
+	 */
+	private void mkNodeRuptures(int j, ArrayList<ProbEqkRupture> ruptures,
+			ArrayList<Double> rupRates) {
+
 		// If they are point sources
 		if (pointSources) {
-			for (int j = 0; j < gridReg.getNodeCount(); j++) {
-				Location loc = gridReg.getNodeList().get(j);
-				for (int k = 0; k < magFreqDists.length; k++) {
-					IncrementalMagFreqDist mfd = magFreqDists[k];
-					for (int w = 0; w < mfd.getNum(); w++) {
-						double mag = mfd.getX(w);
-						double rate = mfd.getY(w) * nodeWeights[j];
-						double prob = 1.0 - Math.exp(-duration * (rate));
-						if (mag >= minMag && prob > 0) {
-							ProbEqkRupture rup = new ProbEqkRupture();
-							rup.setMag(mag);
-							rup.setProbability(prob);
-							rup.setAveRake(focalMechanisms[k].getRake());
-							Location hypoLoc = new Location(loc.getLatitude(),
-									loc.getLongitude(), defaultHypoDepth);
-							rup.setPointSurface(hypoLoc,
-									focalMechanisms[k].getDip());
-							rup.setHypocenterLocation(hypoLoc);
-							rup.setTectRegType(this.getTectonicRegionType());
-
-							// Adding the rupture
-							probEqkRuptureList.add(rup);
-							rates.add(rate);
-						}
+			Location loc = gridReg.getNodeList().get(j);
+			for (int k = 0; k < magFreqDists.length; k++) {
+				IncrementalMagFreqDist mfd = magFreqDists[k];
+				for (int w = 0; w < mfd.getNum(); w++) {
+					double mag = mfd.getX(w);
+					double rate = mfd.getY(w) * nodeWeights[j];
+					double prob = 1.0 - Math.exp(-duration * (rate));
+					if (mag >= minMag && prob > 0) {
+						ProbEqkRupture rup = new ProbEqkRupture();
+						rup.setMag(mag);
+						rup.setProbability(prob);
+						rup.setAveRake(focalMechanisms[k].getRake());
+						Location hypoLoc = new Location(loc.getLatitude(),
+								loc.getLongitude(), defaultHypoDepth);
+						rup.setPointSurface(hypoLoc,
+								focalMechanisms[k].getDip());
+						rup.setHypocenterLocation(hypoLoc);
+						rup.setTectRegType(this.getTectonicRegionType());
+
+						// Adding the rupture
+						ruptures.add(rup);
+						rupRates.add(rate);
 					}
 				}
 			}
 		} else { // non-point source
 
-			for (int j = 0; j < gridReg.getNodeCount(); j++) {
-				location = gridReg.getNodeList().get(j);
-				if (numStrikes == -1) { // random or applied strike
-					for (int i = 0; i < magFreqDists.length; i++) {
+			Location location = gridReg.getNodeList().get(j);
+			if (numStrikes == -1) { // random or applied strike
+				for (int i = 0; i < magFreqDists.length; i++) {
+					mkAndAddRuptures(location, magFreqDists[i],
+							focalMechanisms[i], aveRupTopVersusMag,
+							defaultHypoDepth, magScalingRel, lowerSeisDepth,
+							duration, minMag, nodeWeights[j], ruptures,
+							rupRates);
+				}
+			} else { // spoked source
+				// set the strikes
+				double deltaStrike = 180 / numStrikes;
+				double[] strike = new double[numStrikes];
+				for (int n = 0; n < numStrikes; n++)
+					strike[n] = firstStrike + n * deltaStrike;
+				double weight = nodeWeights[j] / numStrikes;
+				for (int i = 0; i < magFreqDists.length; i++) {
+					FocalMechanism focalMech = focalMechanisms[i].copy(); // COPY
+																			// THIS
+					for (int s = 0; s < numStrikes; s++) {
+						focalMech.setStrike(strike[s]);
 						mkAndAddRuptures(location, magFreqDists[i],
-								focalMechanisms[i], aveRupTopVersusMag,
+								focalMech, aveRupTopVersusMag,
 								defaultHypoDepth, magScalingRel,
-								lowerSeisDepth, duration, minMag,
-								nodeWeights[j]);
-					}
-				} else { // spoked source
-					// set the strikes
-					double deltaStrike = 180 / numStrikes;
-					double[] strike = new double[numStrikes];
-					for (int n = 0; n < numStrikes; n++)
-						strike[n] = firstStrike + n * deltaStrike;
-					double weight = nodeWeights[j] / numStrikes;
-					for (int i = 0; i < magFreqDists.length; i++) {
-						FocalMechanism focalMech = focalMechanisms[i].copy(); // COPY
-																				// THIS
-						for (int s = 0; s < numStrikes; s++) {
-							focalMech.setStrike(strike[s]);
-							mkAndAddRuptures(location, magFreqDists[i],
-									focalMech, aveRupTopVersusMag,
-									defaultHypoDepth, magScalingRel,
-									lowerSeisDepth, duration, minMag, weight);
-						}
+								lowerSeisDepth, duration, minMag, weight,
+								ruptures, rupRates);
 					}
 				}
 			}
-
 		}
-
-		// check num ruptures
-		if (numRuptures != probEqkRuptureList.size())
-			throw new RuntimeException("Error in computing number of ruptures");
-
 	}
 
 	/**
 	 * This makes and returns the nth probEqkRupture for this source.
 	 */
 	public ProbEqkRupture getRupture(int nthRupture) {
+		if (streamRuptures)
+			return getStreamedRupture(nthRupture);
 		if (probEqkRuptureList == null)
 			mkAllRuptures();
 		return probEqkRuptureList.get(nthRupture);
 	}
 
+	/**
+	 * When streaming, only the ruptures of one node are kept: those of the
+	 * node of the nth rupture, which are made if they aren't the ones already
+	 * kept. Iterating over the ruptures in order therefore makes the ruptures
+	 * of each node once, and takes memory for one node at a time.
+	 */
+	private ProbEqkRupture getStreamedRupture(int nthRupture) {
+		if (nthRupture < 0 || nthRupture >= numRuptures)
+			throw new IndexOutOfBoundsException("Rupture index " + nthRupture
+					+ " out of range [0, " + numRuptures + ")");
+		int numNodeRuptures = numRuptures / gridReg.getNodeCount();
+		int node = nthRupture / numNodeRuptures;
+		NodeRuptures nodeRuptures = lastNodeRuptures;
+		if (nodeRuptures == null || nodeRuptures.node != node) {
+			if (nodeWeights == null)
+				computeNodeWeights();
+			ArrayList<ProbEqkRupture> ruptures = new ArrayList<ProbEqkRupture>(
+					numNodeRuptures);
+			mkNodeRuptures(node, ruptures, new ArrayList<Double>(
+					numNodeRuptures));
+			if (ruptures.size() != numNodeRuptures)
+				throw new RuntimeException(
+						"Error in computing number of ruptures");
+			nodeRuptures = new NodeRuptures(node, ruptures);
+			lastNodeRuptures = nodeRuptures;
+		}
+		return nodeRuptures.ruptures.get(nthRupture % numNodeRuptures);
+	}
+
+	/**
+	 * This sets whether the ruptures are streamed rather than all made (and
+	 * kept) on the first call to getRupture(n). When streaming, only the
+	 * ruptures of one node of the gridded region are kept at a time, so the
+	 * memory used doesn't depend on the size of the region. The ruptures, and
+	 * their order and probabilities, are the same either way (random strikes,
+	 * where the strike of the focal mechanism is NaN, are drawn from a seed
+	 * that only depends on the node and the focal mechanism, so remade
+	 * ruptures get the same strikes). The default is false.
+	 * Turning streaming on discards the ruptures already made.
+	 * 
+	 * @param streamRuptures
+	 */
+	public void setStreamRuptures(boolean streamRuptures) {
+		this.streamRuptures = streamRuptures;
+		if (streamRuptures) {
+			probEqkRuptureList = null;
+			rates = null;
+		} else
+			lastNodeRuptures = null;
+	}
+
+	public boolean isStreamRuptures() {
+		return streamRuptures;
+	}
+
+	/**
+	 * This sets the duration used in computing Poisson probabilities (the
+	 * ruptures made from now on when streaming use the new duration).
+	 */
+	public void setDuration(double duration) {
+		super.setDuration(duration);
+		lastNodeRuptures = null;
+	}
+
 	/**
 	 * This constructor takes a Region, grid resolution (grid spacing),
 	 * MagFreqDistsForFocalMechs, depth as a function of mag
@@ -327,4 +407,17 @@ public class PoissonAreaSource extends PointToLineSource implements
 		return dist;
 	}
 
+	/**
+	 * The ruptures of one node of the gridded region
+	 */
+	private static class NodeRuptures {
+		final int node;
+		final ArrayList<ProbEqkRupture> ruptures;
+
+		NodeRuptures(int node, ArrayList<ProbEqkRupture> ruptures) {
+			this.node = node;
+			this.ruptures = ruptures;
+		}
+	}
+
 }
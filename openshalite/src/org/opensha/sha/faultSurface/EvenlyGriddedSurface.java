@@ -259,8 +259,8 @@ public abstract class EvenlyGriddedSurface extends Container2D<Location>
                                                                         // a if
                                                                         // b>a
 
-        return (new GriddedSubsetSurface((int) numSubSurfaceRows,
-                (int) numSubSurfaceCols, startRow, startCol, this));
+        return newSubsetSurface((int) numSubSurfaceRows,
+                (int) numSubSurfaceCols, startRow, startCol);
     }
 
     /**
@@ -339,8 +339,20 @@ public abstract class EvenlyGriddedSurface extends Container2D<Location>
          * +", numSubSurfaceCols="+numSubSurfaceCols+", startRow="
          * +startRow+", startCol="+startCol);
          */
-        return (new GriddedSubsetSurface(numSubSurfaceRows, numSubSurfaceCols,
-                startRow, startCol, this));
+        return newSubsetSurface(numSubSurfaceRows, numSubSurfaceCols,
+                startRow, startCol);
+    }
+
+    /**
+     * Creates the subset surfaces returned by getNthSubsetSurface() and the
+     * other subset methods: a window of this surface with the given size,
+     * starting at the given row and column. Subclasses can override this to
+     * return their own kind of subset surface.
+     */
+    protected GriddedSubsetSurface newSubsetSurface(int numRows, int numCols,
+            int startRow, int startCol) {
+        return new GriddedSubsetSurface(numRows, numCols, startRow, startCol,
+                this);
     }
 
     /**
@@ -0,0 +1,74 @@
+package org.opensha.sha.faultSurface;
+
+/**
+ * <b>Title:</b> FlatGriddedSubsetSurface
+ * <p>
+ *
+ * <b>Description:</b> Subset surface of a FlatGriddedSurface, that shares
+ * the coordinate arrays of the main surface (so it copies no data).
+ * <p>
+ *
+ * @see FlatGriddedSurface#getNthSubsetSurface(double, double, double, int)
+ */
+public class FlatGriddedSubsetSurface extends GriddedSubsetSurface implements
+        FlatGriddedSurfaceAPI {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param numRows
+     *            Specifies the length of the window.
+     * @param numCols
+     *            Specifies the height of the window
+     * @param startRow
+     *            Start row into the main surface.
+     * @param startCol
+     *            Start column into the main surface.
+     * @param data
+     *            The main surface this is a window into
+     * @exception ArrayIndexOutOfBoundsException
+     *                Thrown if window indexes exceed the main surface indexes.
+     */
+    public FlatGriddedSubsetSurface(int numRows, int numCols, int startRow,
+            int startCol, FlatGriddedSurface data)
+            throws ArrayIndexOutOfBoundsException {
+        super(numRows, numCols, startRow, startCol, data);
+    }
+
+    /**
+     * The main surface must be a FlatGriddedSurface.
+     */
+    @Override
+    public void setNewMainSurface(EvenlyGriddedSurface gs) {
+        if (!(gs instanceof FlatGriddedSurface))
+            throw new IllegalArgumentException(
+                    "The main surface must be a FlatGriddedSurface");
+        super.setNewMainSurface(gs);
+    }
+
+    private FlatGriddedSurface getMainSurface() {
+        return (FlatGriddedSurface) data;
+    }
+
+    public double[] getLatRads() {
+        return getMainSurface().getLatRads();
+    }
+
+    public double[] getLonRads() {
+        return getMainSurface().getLonRads();
+    }
+
+    public double[] getDepths() {
+        return getMainSurface().getDepths();
+    }
+
+    public double[] getCosLats() {
+        return getMainSurface().getCosLats();
+    }
+
+    public int getIndex(int row, int column) {
+        return getMainSurface().getIndex(getStartRow() + row,
+                getStartCol() + column);
+    }
+
+}
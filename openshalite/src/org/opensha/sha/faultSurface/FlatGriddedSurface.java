@@ -0,0 +1,251 @@
+package org.opensha.sha.faultSurface;
+
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import org.opensha.commons.geo.Location;
+
+/**
+ * <b>Title:</b> FlatGriddedSurface
+ * <p>
+ *
+ * <b>Description:</b> Immutable copy of an evenly gridded surface, that
+ * stores the coordinates of its nodes in parallel primitive arrays (see
+ * FlatGriddedSurfaceAPI) instead of one Location object per node. This takes
+ * a fraction of the memory of the original surface, and lets distance
+ * calculations loop over the arrays. The locations returned by getLocation()
+ * and the iterators are created on demand, and are equal (to the last bit) to
+ * those of the original surface.
+ * <p>
+ *
+ * The subset surfaces (e.g. of floating ruptures) are FlatGriddedSubsetSurface
+ * views that share the arrays of this surface.
+ *
+ * @see FlatGriddedSubsetSurface
+ */
+public class FlatGriddedSurface extends EvenlyGriddedSurface implements
+        FlatGriddedSurfaceAPI {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Class name for debugging. */
+    protected final static String C = "FlatGriddedSurface";
+
+    private final double[] latRads;
+    private final double[] lonRads;
+    private final double[] depths;
+    private final double[] cosLats;
+
+    /**
+     * Copies the given surface (its locations, grid spacings, average strike
+     * and dip, and name).
+     */
+    public FlatGriddedSurface(EvenlyGriddedSurfaceAPI surface) {
+        // no Location array is allocated
+        super(0, 0, surface.getGridSpacingAlongStrike(), surface
+                .getGridSpacingDownDip());
+        sameGridSpacing = surface.isGridSpacingSame();
+        aveStrike = surface.getAveStrike();
+        aveDip = surface.getAveDip();
+        name = surface.getName();
+
+        numRows = surface.getNumRows();
+        numCols = surface.getNumCols();
+        size = (long) numRows * (long) numCols;
+        int n = numRows * numCols;
+        latRads = new double[n];
+        lonRads = new double[n];
+        depths = new double[n];
+        cosLats = new double[n];
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                Location loc = surface.getLocation(row, col);
+                int i = getIndex(row, col);
+                latRads[i] = loc.getLatRad();
+                lonRads[i] = loc.getLonRad();
+                depths[i] = loc.getDepth();
+                cosLats[i] = loc.getCosLat();
+            }
+        }
+    }
+
+    public double[] getLatRads() {
+        return latRads;
+    }
+
+    public double[] getLonRads() {
+        return lonRads;
+    }
+
+    public double[] getDepths() {
+        return depths;
+    }
+
+    public double[] getCosLats() {
+        return cosLats;
+    }
+
+    public int getIndex(int row, int column) {
+        return row * numCols + column;
+    }
+
+    /** Creates the location of the given node. */
+    @Override
+    public Location get(int row, int column) {
+        checkBounds(row, column, C + ": get(): ");
+        int i = getIndex(row, column);
+        return Location.fromRadians(latRads[i], lonRads[i], depths[i]);
+    }
+
+    /**
+     * This method throws UnsupportedOperationException, as the surface is
+     * immutable.
+     */
+    @Override
+    public void set(int row, int column, Location obj) {
+        throw new UnsupportedOperationException(C + " is immutable");
+    }
+
+    /**
+     * This method throws UnsupportedOperationException, as the surface is
+     * immutable.
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException(C + " is immutable");
+    }
+
+    @Override
+    public boolean exist(int row, int column) {
+        checkBounds(row, column, C + ": exist(): ");
+        return true;
+    }
+
+    @Override
+    public Object[][] toJava2D() {
+        Object[][] d = new Object[numRows][numCols];
+        for (int row = 0; row < numRows; row++)
+            for (int col = 0; col < numCols; col++)
+                d[row][col] = get(row, col);
+        return d;
+    }
+
+    @Override
+    public ListIterator<Location> getColumnIterator(int row)
+            throws ArrayIndexOutOfBoundsException {
+        if (row >= numRows)
+            throw new ArrayIndexOutOfBoundsException(C
+                    + ": getColumnIterator(): "
+                    + "Row cannot be greater than max index");
+        return new NodeIterator(row, 0, 1, numCols, 0);
+    }
+
+    @Override
+    public ListIterator<Location> getRowIterator(int column)
+            throws ArrayIndexOutOfBoundsException {
+        if (column >= numCols)
+            throw new ArrayIndexOutOfBoundsException(C
+                    + ": getRowIterator(): "
+                    + "Column cannot be greater than max index");
+        return new NodeIterator(0, column, numRows, 1, 1);
+    }
+
+    @Override
+    public ListIterator<Location> getAllByColumnsIterator() {
+        return new NodeIterator(0, 0, numRows, numCols, 1);
+    }
+
+    @Override
+    public ListIterator<Location> getAllByRowsIterator() {
+        return new NodeIterator(0, 0, numRows, numCols, 0);
+    }
+
+    @Override
+    public ListIterator<Location> listIterator() {
+        return getAllByRowsIterator();
+    }
+
+    @Override
+    protected GriddedSubsetSurface newSubsetSurface(int numRows, int numCols,
+            int startRow, int startCol) {
+        return new FlatGriddedSubsetSurface(numRows, numCols, startRow,
+                startCol, this);
+    }
+
+    /*
+     * Iterator over a block of nodes, by rows (order 0) or by columns (order
+     * 1). Like the iterators of Container2D, it only moves forward.
+     */
+    private class NodeIterator implements ListIterator<Location> {
+
+        private final int startRow;
+        private final int startCol;
+        private final int blockRows;
+        private final int blockCols;
+        private final int order;
+        private int cursor = 0;
+
+        NodeIterator(int startRow, int startCol, int blockRows,
+                int blockCols, int order) {
+            this.startRow = startRow;
+            this.startCol = startCol;
+            this.blockRows = blockRows;
+            this.blockCols = blockCols;
+            this.order = order;
+        }
+
+        public boolean hasNext() {
+            return cursor < blockRows * blockCols;
+        }
+
+        public Location next() {
+            if (!hasNext())
+                throw new NoSuchElementException(
+                        "You have iterated past the last element.");
+            int row, col;
+            if (order == 0) {
+                row = cursor / blockCols;
+                col = cursor % blockCols;
+            } else {
+                row = cursor % blockRows;
+                col = cursor / blockRows;
+            }
+            cursor++;
+            return get(startRow + row, startCol + col);
+        }
+
+        public int nextIndex() {
+            return cursor;
+        }
+
+        public boolean hasPrevious() {
+            throw new UnsupportedOperationException(
+                    "hasPrevious() Not implemented.");
+        }
+
+        public Location previous() {
+            throw new UnsupportedOperationException(
+                    "previous() Not implemented.");
+        }
+
+        public int previousIndex() {
+            throw new UnsupportedOperationException(
+                    "previousIndex() Not implemented.");
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove() Not implemented.");
+        }
+
+        public void set(Location obj) {
+            throw new UnsupportedOperationException(
+                    "set(Object obj) Not implemented.");
+        }
+
+        public void add(Location obj) {
+            throw new UnsupportedOperationException(
+                    "add(Object obj) Not implemented.");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.opensha.sha.faultSurface;
+
+/**
+ * <b>Title:</b> FlatGriddedSurfaceAPI
+ * <p>
+ *
+ * <b>Description:</b> An evenly gridded surface whose node coordinates are
+ * stored in parallel primitive arrays (latitude and longitude in radians,
+ * depth in km, and the cosine of the latitude), so that they can be read
+ * without creating Location objects. The arrays may be shared by several
+ * surfaces (e.g. a fault surface and the subset surfaces of its ruptures), so
+ * the node (row, column) of a surface is at getIndex(row, column) in the
+ * arrays, and the nodes of a row are at consecutive indices.
+ * <p>
+ *
+ * The arrays are returned as they are, not copied, and must not be modified:
+ * the locations of the nodes can't be changed (setLocation() throws
+ * UnsupportedOperationException), although the window of a subset surface can
+ * be moved.
+ *
+ * @see FlatGriddedSurface
+ * @see FlatGriddedSubsetSurface
+ */
+public interface FlatGriddedSurfaceAPI extends EvenlyGriddedSurfaceAPI {
+
+    /** Latitudes of the nodes, in radians */
+    public double[] getLatRads();
+
+    /** Longitudes of the nodes, in radians */
+    public double[] getLonRads();
+
+    /** Depths of the nodes, in km */
+    public double[] getDepths();
+
+    /** Cosines of the latitudes of the nodes */
+    public double[] getCosLats();
+
+    /**
+     * Returns the index of the node (row, column) in the coordinate arrays
+     * (the indices are not checked).
+     */
+    public int getIndex(int row, int column);
+
+}
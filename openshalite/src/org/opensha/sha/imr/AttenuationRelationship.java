@@ -654,6 +654,94 @@ ScalarIntensityMeasureRelationshipAPI {
 		return intensityMeasureLevels;
 	}
 
+	/**
+	 * This fills in the exceedance probabilities for multiple intensity-measure
+	 * levels given the mean and stdDev computed from current independent
+	 * parameter values. This gives the same results as
+	 * getExceedProbabilities(DiscretizedFuncAPI), but the mean, stdDev and the
+	 * sigma truncation type and level are resolved only once per call, and no
+	 * function or data point objects are involved. The value of the
+	 * intensity-measure parameter is neither used nor changed.
+	 * 
+	 * @param imls
+	 *            The intensity-measure levels
+	 * @param exceedProbs
+	 *            Filled in with the exceedance probability of each level (must
+	 *            be at least as long as imls)
+	 * @exception ParameterException
+	 *                Description of the Exception
+	 */
+	public void getExceedProbabilities(double[] imls, double[] exceedProbs)
+			throws ParameterException {
+
+		double stdDev = getStdDev();
+		double mean = getMean();
+		getExceedProbabilities(mean, stdDev, imls, exceedProbs);
+	}
+
+	/**
+	 * This fills in the exceedance probabilities for multiple intensity-measure
+	 * levels given the mean and stdDev, considering the sigma truncation type
+	 * and level (see getExceedProbabilities(double[], double[])).
+	 * 
+	 * @param mean
+	 * @param stdDev
+	 * @param imls
+	 *            The intensity-measure levels
+	 * @param exceedProbs
+	 *            Filled in with the exceedance probability of each level (must
+	 *            be at least as long as imls)
+	 */
+	protected void getExceedProbabilities(double mean, double stdDev,
+			double[] imls, double[] exceedProbs) {
+
+		if (exceedProbs.length < imls.length) {
+			throw new IllegalArgumentException(C
+					+ ": getExceedProbabilities(): result array is shorter"
+					+ " than the array of intensity-measure levels");
+		}
+
+		int numLevels = imls.length;
+
+		if (stdDev != 0) {
+			for (int i = 0; i < numLevels; i++)
+				exceedProbs[i] = (imls[i] - mean) / stdDev;
+			String sigTrType = sigmaTruncTypeParam.getValue();
+			if (sigTrType.equals(SigmaTruncTypeParam.SIGMA_TRUNC_TYPE_NONE)) {
+				GaussianDistCalc.getExceedProbs(exceedProbs, 0, 0.0,
+						exceedProbs);
+			} else {
+				double numSig =
+						((Double) ((ParameterAPI) sigmaTruncLevelParam)
+								.getValue()).doubleValue();
+				int truncType =
+						sigTrType.equals(SigmaTruncTypeParam.SIGMA_TRUNC_TYPE_1SIDED) ? 1
+								: 2;
+				GaussianDistCalc.getExceedProbs(exceedProbs, truncType,
+						numSig, exceedProbs);
+			}
+		} else {
+			for (int i = 0; i < numLevels; i++)
+				exceedProbs[i] = imls[i] > mean ? 0 : 1;
+		}
+	}
+
+	/**
+	 * Returns the value of the given Double parameter of a site, or NaN if the
+	 * value is null (for the setSiteValues() method of a DirectScalarIMR_API).
+	 * 
+	 * @param site
+	 * @param paramName
+	 * @return
+	 * @throws ParameterException
+	 *             if the site doesn't have the parameter
+	 */
+	protected static double getSiteParamValue(Site site, String paramName)
+			throws ParameterException {
+		Double value = (Double) site.getParameter(paramName).getValue();
+		return value == null ? Double.NaN : value.doubleValue();
+	}
+
 	/**
 	 * This method will compute the total probability of exceedance for a
 	 * PointEqkSource (including the probability of each rupture). It is assumed
@@ -727,7 +815,7 @@ ScalarIntensityMeasureRelationshipAPI {
 				((Double) ((ParameterAPI) exceedProbParam).getValue())
 				.doubleValue();
 		double stRndVar;
-		String sigTrType = (String) sigmaTruncTypeParam.getValue();
+		String sigTrType = sigmaTruncTypeParam.getValue();
 
 		// compute the iml from exceed probability based on truncation type:
 
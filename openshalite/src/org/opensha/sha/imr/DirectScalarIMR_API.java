@@ -0,0 +1,85 @@
+package org.opensha.sha.imr;
+
+import org.opensha.commons.data.Site;
+import org.opensha.sha.earthquake.EqkRupture;
+
+/**
+ * <b>Title:</b> DirectScalarIMR_API
+ * <p>
+ *
+ * <b>Description:</b> A scalar IMR that can also compute its mean and standard
+ * deviation directly from primitive rupture and site values (see
+ * RuptureSiteValues), without setting its site, rupture and propagation effect
+ * parameters. Setting a parameter creates a change event and notifies the
+ * listeners of the parameter, which takes much longer than the computation
+ * itself when it's done for each rupture and site of a hazard calculation.
+ * <p>
+ *
+ * The parameters are still used for the configuration of the IMR (intensity
+ * measure type and period, standard deviation type, component, sigma
+ * truncation, user max distance, ...), and these must be set as usual. The
+ * methods of this interface don't set or use the site, rupture and
+ * propagation effect parameters, so these are left as they were.
+ * <p>
+ *
+ * For the same site and rupture, the results are identical to those of the
+ * parameter methods (setSite(), setEqkRupture(), getMean(), getStdDev() and
+ * getExceedProbabilities()).
+ *
+ * @see RuptureSiteValues
+ */
+public interface DirectScalarIMR_API extends
+        ScalarIntensityMeasureRelationshipAPI {
+
+    /**
+     * Sets the site values (those that setSite() would set) that this IMR
+     * depends on.
+     *
+     * @param site
+     *            The site
+     * @param values
+     *            The values to set
+     */
+    public void setSiteValues(Site site, RuptureSiteValues values);
+
+    /**
+     * Sets the rupture values and the distances (those that setEqkRupture()
+     * would set) that this IMR depends on. The site values are not set.
+     *
+     * @param eqkRupture
+     *            The rupture
+     * @param site
+     *            The site to compute the distances for
+     * @param values
+     *            The values to set
+     */
+    public void setRuptureValues(EqkRupture eqkRupture, Site site,
+            RuptureSiteValues values);
+
+    /**
+     * @return The mean (in natural-log space) for the given values
+     */
+    public double getMean(RuptureSiteValues values);
+
+    /**
+     * @return The standard deviation for the given values
+     */
+    public double getStdDev(RuptureSiteValues values);
+
+    /**
+     * This fills in the exceedance probability for multiple intensityMeasure
+     * levels given as an array, with the mean and standard deviation for the
+     * given values (like getExceedProbabilities(double[], double[])).
+     *
+     * @param values
+     *            The rupture and site values
+     * @param imls
+     *            The intensityMeasure levels
+     * @param exceedProbs
+     *            Filled in with the associated exceedance probabilities (must
+     *            be at least as long as imls)
+     */
+    public void getExceedProbabilities(RuptureSiteValues values,
+            double[] imls, double[] exceedProbs);
+
+}
@@ -34,6 +34,7 @@ import org.opensha.sha.imr.param.PropagationEffectParams.DistanceJBParameter;
 import org.opensha.sha.imr.param.PropagationEffectParams.DistanceRupParameter;
 import org.opensha.sha.imr.param.PropagationEffectParams.DistanceSeisParameter;
 import org.opensha.sha.imr.param.PropagationEffectParams.DistanceX_Parameter;
+import org.opensha.sha.imr.param.PropagationEffectParams.RuptureDistances;
 import org.opensha.sha.imr.param.PropagationEffectParams.WarningDoublePropagationEffectParameter;
 
 /**
@@ -289,8 +290,9 @@ public class PropagationEffect implements java.io.Serializable,
 
     private void computeDistanceX() {
         distanceX =
-                ((Double) distanceX_Parameter.getValue(eqkRupture, site))
-                        .doubleValue();
+                RuptureDistances.get(eqkRupture.getRuptureSurface(),
+                        site.getLocation()).getDistanceX();
+        DISTANCE_X_STALE = false;
     }
 
     /**
@@ -302,34 +304,23 @@ public class PropagationEffect implements java.io.Serializable,
 
             Location loc1 = site.getLocation();
             Location loc2;
-            distanceJB = Double.MAX_VALUE;
-            distanceSeis = Double.MAX_VALUE;
-            distanceRup = Double.MAX_VALUE;
 
             double horzDist, vertDist, rupDist;
 
             EvenlyGriddedSurfaceAPI rupSurf = eqkRupture.getRuptureSurface();
             int numLocs = rupSurf.getNumCols() * rupSurf.getNumRows();
 
-            // flag to project to seisDepth if only one row and depth is below
-            // seisDepth
-            boolean projectToDepth = false;
-            if (rupSurf.getNumRows() == 1
-                    && rupSurf.getLocation(0, 0).getDepth() < seisDepth)
-                projectToDepth = true;
-
-            // get locations to iterate over depending on dip
-            ListIterator it;
-            if (rupSurf.getAveDip() > 89) {
-                it = rupSurf.getColumnIterator(0);
-                if (rupSurf.getLocation(0, 0).getDepth() < seisDepth)
-                    projectToDepth = true;
-            } else
-                it = rupSurf.getLocationsIterator();
-
-            while (it.hasNext()) {
-
-                loc2 = (Location) it.next();
+            if (numLocs > 1 || !POINT_SRC_CORR) {
+                // all the distances in one pass over the surface (shared
+                // with the propagation effect parameters)
+                RuptureDistances distances =
+                        RuptureDistances.get(rupSurf, loc1);
+                distanceJB = distances.getDistanceJB(APPROX_HORZ_DIST);
+                distanceRup = distances.getDistanceRup(APPROX_HORZ_DIST);
+                distanceSeis = distances.getDistanceSeis(APPROX_HORZ_DIST);
+            } else {
+                // point source
+                loc2 = rupSurf.getLocation(0, 0);
 
                 // get the vertical distance
                 vertDist = LocationUtils.vertDistance(loc1, loc2);
@@ -340,50 +331,33 @@ public class PropagationEffect implements java.io.Serializable,
                 else
                     horzDist = LocationUtils.horzDistance(loc1, loc2);
 
-                // make point source correction if desired
-
-                if (numLocs == 1) {
-                    if (POINT_SRC_CORR) {
-                        // Wells and Coppersmith L(M) for "all" focal mechanisms
-                        // this correction comes from work by Ned Field and
-                        // Bruce Worden
-                        // it assumes a vertically dipping straight fault with
-                        // random
-                        // hypocenter and strike
-                        double rupLen =
-                                Math.pow(10.0,
-                                        -3.22 + 0.69 * eqkRupture.getMag());
-                        double corr =
-                                0.7071
-                                        + (1.0 - 0.7071)
-                                        / (1 + Math.pow(rupLen
-                                                / (horzDist * 0.87), 1.1));
-                        horzDist *= corr;
-                    }
-                }
-
-                if (horzDist < distanceJB)
-                    distanceJB = horzDist;
+                // make point source correction
+                // Wells and Coppersmith L(M) for "all" focal mechanisms
+                // this correction comes from work by Ned Field and
+                // Bruce Worden
+                // it assumes a vertically dipping straight fault with
+                // random
+                // hypocenter and strike
+                double rupLen =
+                        Math.pow(10.0, -3.22 + 0.69 * eqkRupture.getMag());
+                double corr =
+                        0.7071
+                                + (1.0 - 0.7071)
+                                / (1 + Math.pow(rupLen / (horzDist * 0.87),
+                                        1.1));
+                horzDist *= corr;
+
+                distanceJB = horzDist;
 
                 rupDist = horzDist * horzDist + vertDist * vertDist;
-                if (rupDist < distanceRup)
-                    distanceRup = rupDist;
+                distanceRup = Math.pow(rupDist, 0.5);
 
-                if (loc2.getDepth() >= seisDepth) {
-                    if (rupDist < distanceSeis)
-                        distanceSeis = rupDist;
-                }
-                // take care of shallow line or point source case
-                else if (projectToDepth) {
+                // a shallow point source is put at the seisDepth
+                if (loc2.getDepth() < seisDepth)
                     rupDist = horzDist * horzDist + seisDepth * seisDepth;
-                    if (rupDist < distanceSeis)
-                        distanceSeis = rupDist;
-                }
+                distanceSeis = Math.pow(rupDist, 0.5);
             }
 
-            distanceRup = Math.pow(distanceRup, 0.5);
-            distanceSeis = Math.pow(distanceSeis, 0.5);
-
             // fix distanceJB if needed
             if (fix_dist_JB)
                 if (rupSurf.getNumCols() > 1 && rupSurf.getNumRows() > 1) {
@@ -0,0 +1,163 @@
+package org.opensha.sha.imr;
+
+/**
+ * <b>Title:</b> RuptureSiteValues
+ * <p>
+ *
+ * <b>Description:</b> The primitive values of a rupture and a site that the
+ * mean and standard deviation of a DirectScalarIMR_API depend on: the rupture
+ * values (magnitude, rake, dip, depth to top and width), the distances between
+ * the rupture and the site, and the site values (Vs30 and its type, and the
+ * depths to the 1.0 and 2.5 km/sec shear wave velocity horizons).
+ * <p>
+ *
+ * The values are usually set by the setSiteValues() and setRuptureValues()
+ * methods of an IMR, which read them from a Site and an EqkRupture the way its
+ * setSite() and setEqkRupture() methods would; an IMR only sets (and uses) the
+ * values it depends on, the others are left untouched. Unlike parameter
+ * values, the values are not validated, and no change events are fired when
+ * they are set.
+ *
+ * @see DirectScalarIMR_API
+ */
+public class RuptureSiteValues {
+
+    // rupture values
+    private double mag = Double.NaN;
+    private double rake = Double.NaN;
+    private double dip = Double.NaN;
+    private double rupTopDepth = Double.NaN;
+    private double rupWidth = Double.NaN;
+
+    // distances
+    private double distanceRup = Double.NaN;
+    private double distanceJB = Double.NaN;
+    private double distanceX = Double.NaN;
+
+    // site values
+    private double vs30 = Double.NaN;
+    private boolean vs30Measured = false;
+    private double depthTo1pt0kmPerSec = Double.NaN;
+    private double depthTo2pt5kmPerSec = Double.NaN;
+
+    /** @return the moment magnitude */
+    public double getMag() {
+        return mag;
+    }
+
+    public void setMag(double mag) {
+        this.mag = mag;
+    }
+
+    /** @return the average rake (degrees) */
+    public double getRake() {
+        return rake;
+    }
+
+    public void setRake(double rake) {
+        this.rake = rake;
+    }
+
+    /** @return the average dip of the rupture surface (degrees) */
+    public double getDip() {
+        return dip;
+    }
+
+    public void setDip(double dip) {
+        this.dip = dip;
+    }
+
+    /** @return the depth to the top of the rupture (km) */
+    public double getRupTopDepth() {
+        return rupTopDepth;
+    }
+
+    public void setRupTopDepth(double rupTopDepth) {
+        this.rupTopDepth = rupTopDepth;
+    }
+
+    /** @return the down-dip width of the rupture (km) */
+    public double getRupWidth() {
+        return rupWidth;
+    }
+
+    public void setRupWidth(double rupWidth) {
+        this.rupWidth = rupWidth;
+    }
+
+    /** @return the shortest distance to the rupture surface (km) */
+    public double getDistanceRup() {
+        return distanceRup;
+    }
+
+    public void setDistanceRup(double distanceRup) {
+        this.distanceRup = distanceRup;
+    }
+
+    /**
+     * @return the shortest horizontal distance to the surface projection of
+     *         the rupture (km)
+     */
+    public double getDistanceJB() {
+        return distanceJB;
+    }
+
+    public void setDistanceJB(double distanceJB) {
+        this.distanceJB = distanceJB;
+    }
+
+    /**
+     * @return the horizontal distance to the extended top edge of the rupture
+     *         (km), which is negative on the footwall (see DistanceX_Parameter)
+     */
+    public double getDistanceX() {
+        return distanceX;
+    }
+
+    public void setDistanceX(double distanceX) {
+        this.distanceX = distanceX;
+    }
+
+    /** @return the 30-meter shear wave velocity (m/sec) */
+    public double getVs30() {
+        return vs30;
+    }
+
+    public void setVs30(double vs30) {
+        this.vs30 = vs30;
+    }
+
+    /** @return whether Vs30 is measured (rather than inferred) */
+    public boolean isVs30Measured() {
+        return vs30Measured;
+    }
+
+    public void setVs30Measured(boolean vs30Measured) {
+        this.vs30Measured = vs30Measured;
+    }
+
+    /**
+     * @return the depth to the 1.0 km/sec shear wave velocity horizon (m), or
+     *         NaN if it's unknown
+     */
+    public double getDepthTo1pt0kmPerSec() {
+        return depthTo1pt0kmPerSec;
+    }
+
+    public void setDepthTo1pt0kmPerSec(double depthTo1pt0kmPerSec) {
+        this.depthTo1pt0kmPerSec = depthTo1pt0kmPerSec;
+    }
+
+    /**
+     * @return the depth to the 2.5 km/sec shear wave velocity horizon (km), or
+     *         NaN if it's unknown
+     */
+    public double getDepthTo2pt5kmPerSec() {
+        return depthTo2pt5kmPerSec;
+    }
+
+    public void setDepthTo2pt5kmPerSec(double depthTo2pt5kmPerSec) {
+        this.depthTo2pt5kmPerSec = depthTo2pt5kmPerSec;
+    }
+
+}
@@ -121,6 +121,20 @@ public interface ScalarIntensityMeasureRelationshipAPI extends
     public DiscretizedFuncAPI getExceedProbabilities(
             DiscretizedFuncAPI intensityMeasureLevels);
 
+    /**
+     * This fills in the exceedance probability for multiple intensityMeasure
+     * levels given as an array; the mean and standard deviation are computed
+     * only once for all the levels. The value of the intensityMeasure is
+     * neither used nor changed.
+     * 
+     * @param imls
+     *            The intensityMeasure levels
+     * @param exceedProbs
+     *            Filled in with the associated exceedance probabilities (must
+     *            be at least as long as imls)
+     */
+    public void getExceedProbabilities(double[] imls, double[] exceedProbs);
+
     /**
      * This calculates the intensity-measure level for each SA Period associated
      * with the given probability. The x values in the returned function
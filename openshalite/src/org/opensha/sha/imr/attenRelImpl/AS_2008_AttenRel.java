@@ -41,8 +41,9 @@ import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 import org.opensha.sha.faultSurface.FaultTrace;
 import org.opensha.sha.faultSurface.StirlingGriddedSurface;
 import org.opensha.sha.imr.AttenuationRelationship;
+import org.opensha.sha.imr.DirectScalarIMR_API;
 import org.opensha.sha.imr.PropagationEffect;
-import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.RuptureSiteValues;
 import org.opensha.sha.imr.param.EqkRuptureParams.AftershockParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.DipParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.FaultTypeParam;
@@ -127,7 +128,7 @@ import org.opensha.sha.imr.param.SiteParams.Vs30_TypeParam;
  */
 
 public class AS_2008_AttenRel extends AttenuationRelationship implements
-        ScalarIntensityMeasureRelationshipAPI, NamedObjectAPI,
+        DirectScalarIMR_API, NamedObjectAPI,
         ParameterChangeListener {
 
     // Name of IMR
@@ -602,14 +603,28 @@ public class AS_2008_AttenRel extends AttenuationRelationship implements
         double rJB = rRup - distRupMinusJB_OverRup * rRup;
         double rX = rRup - distRupMinusDistX_OverRup * rRup;
 
-        // Returns the index of the period just below Td (Eq. 21)
-        double Td = Math.pow(10, -1.25 + 0.3 * mag);
-        int iTd = searchTdIndex(Td);
-
         // compute rock PGA (note that value of depthTo1pt0kmPerSec has no
         // influence)
         computeRockPGA(rJB, rX);
 
+        return getMean(iper, vs30, depthTo1pt0kmPerSec, rRup, rJB, rX,
+                hangingWallFlagParam.getValue(), f_as, f_rv, f_nm, mag, dip,
+                rupWidth, depthTop, pga_rock);
+    }
+
+    /*
+     * The mean for the given values, including the f10 term and the
+     * extrapolation beyond Td, given rock PGA.
+     */
+    private double getMean(int iper, double vs30, double depthTo1pt0kmPerSec,
+            double rRup, double rJB, double rX, boolean hw, double f_as,
+            double f_rv, double f_nm, double mag, double dip, double rupWidth,
+            double depthTop, double pga_rock) {
+
+        // Returns the index of the period just below Td (Eq. 21)
+        double Td = Math.pow(10, -1.25 + 0.3 * mag);
+        int iTd = searchTdIndex(Td);
+
         double basinDepth;
         if (Double.isNaN(depthTo1pt0kmPerSec)) {
             if (vs30 < 180)
@@ -630,19 +645,22 @@ public class AS_2008_AttenRel extends AttenuationRelationship implements
         double mean = 0.0;
         if (per[iper] < Td || (Td >= 10.0 && iTd == 22)) {
             mean =
-                    (getMean(iper, 0, vs30, rRup, rJB, f_as, rX, f_rv, f_nm,
-                            mag, dip, rupWidth, depthTop, pga_rock)) + f10;
+                    (getMean(iper, 0, vs30, rRup, rJB, f_as, rX, hw, f_rv,
+                            f_nm, mag, dip, rupWidth, depthTop, pga_rock))
+                            + f10;
             // System.out.println("From getMean, if(per<Td), mean = "+
             // Math.exp(mean));
 
         } else {
             double medSa1100WithTdMinus =
-                    Math.exp(getMean(iTd, 0, 1100.0, rRup, rJB, f_as, rX, f_rv,
-                            f_nm, mag, dip, rupWidth, depthTop, pga_rock));
+                    Math.exp(getMean(iTd, 0, 1100.0, rRup, rJB, f_as, rX, hw,
+                            f_rv, f_nm, mag, dip, rupWidth, depthTop,
+                            pga_rock));
 
             double medSa1100WithTdPlus =
                     Math.exp(getMean(iTd + 1, 0, 1100.0, rRup, rJB, f_as, rX,
-                            f_rv, f_nm, mag, dip, rupWidth, depthTop, pga_rock));
+                            hw, f_rv, f_nm, mag, dip, rupWidth, depthTop,
+                            pga_rock));
             // System.out.println("From getMean, pga_rock = "+pga_rock+" Tdminus = "+per[iTd]+", meanSa1100TdMinus= "+
             // medSa1100WithTdMinus
             // +", Tdplus = "+per[iTd+1]+", meanSa1100TdPlus= "+
@@ -686,10 +704,21 @@ public class AS_2008_AttenRel extends AttenuationRelationship implements
     private void computeRockPGA(double rJB, double rX) {
         if (rock_pga_is_not_fresh) {
             pga_rock =
-                    Math.exp(getMean(1, 0, 1100.0, rRup, rJB, f_as, rX, f_rv,
-                            f_nm, mag, dip, rupWidth, depthTop, 0.0));
+                    getRockPGA(rRup, rJB, rX, hangingWallFlagParam.getValue(),
+                            f_as, f_rv, f_nm, mag, dip, rupWidth, depthTop);
             rock_pga_is_not_fresh = false;
         }
+
+    }
+
+    /*
+     * Rock PGA (for Vs30 = 1100 m/sec) for the given values.
+     */
+    private double getRockPGA(double rRup, double rJB, double rX, boolean hw,
+            double f_as, double f_rv, double f_nm, double mag, double dip,
+            double rupWidth, double depthTop) {
+        return Math.exp(getMean(1, 0, 1100.0, rRup, rJB, f_as, rX, hw, f_rv,
+                f_nm, mag, dip, rupWidth, depthTop, 0.0));
     }
 
     /**
@@ -715,6 +744,147 @@ public class AS_2008_AttenRel extends AttenuationRelationship implements
         return stdDev;
     }
 
+    /**
+     * Sets Vs30, its type and the depth to 1.0 km/sec.
+     */
+    public void setSiteValues(Site site, RuptureSiteValues values) {
+        values.setVs30(getSiteParamValue(site, Vs30_Param.NAME));
+        values.setVs30Measured(Vs30_TypeParam.VS30_TYPE_MEASURED.equals(site
+                .getParameter(Vs30_TypeParam.NAME).getValue()));
+        values.setDepthTo1pt0kmPerSec(getSiteParamValue(site,
+                DepthTo1pt0kmPerSecParam.NAME));
+    }
+
+    /**
+     * Sets the magnitude, the rake, the dip, the depth to top and the width of
+     * the rupture, distanceRup, distanceJB and distanceX. The rupture is not an
+     * aftershock (as in setEqkRupture()).
+     */
+    public void setRuptureValues(EqkRupture eqkRupture, Site site,
+            RuptureSiteValues values) {
+        values.setMag(eqkRupture.getMag());
+        values.setRake(eqkRupture.getAveRake());
+        EvenlyGriddedSurfaceAPI surface = eqkRupture.getRuptureSurface();
+        values.setRupTopDepth(surface.getLocation(0, 0).getDepth());
+        values.setDip(surface.getAveDip());
+        values.setRupWidth(surface.getSurfaceWidth());
+        propagationEffect.setAll(eqkRupture, site);
+        values.setDistanceRup(propagationEffect.getDistanceRup());
+        values.setDistanceJB(propagationEffect.getDistanceJB());
+        values.setDistanceX(propagationEffect.getDistanceX());
+    }
+
+    public double getMean(RuptureSiteValues values) {
+
+        // check if distance is beyond the user specified max
+        if (values.getDistanceRup() > USER_MAX_DISTANCE) {
+            return VERY_SMALL_MEAN;
+        }
+
+        if (intensityMeasureChanged) {
+            setCoeffIndex(); // intensityMeasureChanged is set to false in this
+                             // method
+        }
+
+        return new Values(values).getMean();
+    }
+
+    public double getStdDev(RuptureSiteValues values) {
+
+        if (intensityMeasureChanged) {
+            setCoeffIndex(); // intensityMeasureChanged is set to false in this
+                             // method
+        }
+
+        return new Values(values).getStdDev();
+    }
+
+    /**
+     * Rock PGA is only computed once for the mean and the standard deviation.
+     */
+    public void getExceedProbabilities(RuptureSiteValues values,
+            double[] imls, double[] exceedProbs) {
+
+        if (intensityMeasureChanged) {
+            setCoeffIndex(); // intensityMeasureChanged is set to false in this
+                             // method
+        }
+
+        Values v = new Values(values);
+        double stdDev = v.getStdDev();
+        double mean;
+        if (values.getDistanceRup() > USER_MAX_DISTANCE)
+            mean = VERY_SMALL_MEAN;
+        else
+            mean = v.getMean();
+        getExceedProbabilities(mean, stdDev, imls, exceedProbs);
+    }
+
+    /*
+     * The primitive form of the parameters for the given values: the style of
+     * faulting, distances and hanging-wall flag are those that setEqkRupture()
+     * and setPropagationEffectParams() give the parameters (so the results are
+     * identical), and the rupture is not an aftershock.
+     */
+    private class Values {
+
+        private final double mag, f_rv, f_nm, depthTop, rupWidth, dip;
+        private final double vs30, vsm, depthTo1pt0kmPerSec;
+        private final double rRup, rJB, rX;
+        private final boolean hw;
+        private final double pga_rock;
+
+        Values(RuptureSiteValues values) {
+            mag = values.getMag();
+            double rake = values.getRake();
+            f_rv = (rake > 30 && rake < 150) ? 1 : 0;
+            f_nm = (rake > -150 && rake < -30) ? 1 : 0;
+            depthTop = values.getRupTopDepth();
+            rupWidth = values.getRupWidth();
+            dip = values.getDip();
+
+            vs30 = values.getVs30();
+            vsm = values.isVs30Measured() ? 1 : 0;
+            depthTo1pt0kmPerSec = values.getDepthTo1pt0kmPerSec();
+
+            rRup = values.getDistanceRup();
+            double distX = values.getDistanceX();
+            double distRupMinusJB_OverRup, distRupMinusDistX_OverRup;
+            if (rRup > 0.0) {
+                distRupMinusJB_OverRup =
+                        (rRup - values.getDistanceJB()) / rRup;
+                if (distX >= 0.0) {
+                    distRupMinusDistX_OverRup = (rRup - distX) / rRup;
+                    hw = true;
+                } else {
+                    distRupMinusDistX_OverRup = (rRup + distX) / rRup;
+                    hw = false;
+                }
+            } else {
+                distRupMinusJB_OverRup = 0.0;
+                distRupMinusDistX_OverRup = 0.0;
+                hw = true;
+            }
+            rJB = rRup - distRupMinusJB_OverRup * rRup;
+            rX = rRup - distRupMinusDistX_OverRup * rRup;
+
+            pga_rock =
+                    getRockPGA(rRup, rJB, rX, hw, 0, f_rv, f_nm, mag, dip,
+                            rupWidth, depthTop);
+        }
+
+        double getMean() {
+            return AS_2008_AttenRel.this.getMean(iper, vs30,
+                    depthTo1pt0kmPerSec, rRup, rJB, rX, hw, 0, f_rv, f_nm,
+                    mag, dip, rupWidth, depthTop, pga_rock);
+        }
+
+        double getStdDev() {
+            return AS_2008_AttenRel.this.getStdDev(iper, stdDevType,
+                    componentParam.getValue(), vs30, pga_rock, vsm, mag);
+        }
+    }
+
     /**
      * Allows the user to set the default parameter values for the selected
      * Attenuation Relationship.
@@ -1136,14 +1306,12 @@ public class AS_2008_AttenRel extends AttenuationRelationship implements
      */
 
     private double getMean(int iper, int iTd, double vs30, double rRup,
-            double rJB, double f_as, double rX, double f_rv, double f_nm,
-            double mag, double dip, double rupWidth, double depthTop,
-            double pga_rock) {
+            double rJB, double f_as, double rX, boolean hw, double f_rv,
+            double f_nm, double mag, double dip, double rupWidth,
+            double depthTop, double pga_rock) {
 
         double rR, v1, vs30Star, f1, f4, f5, f6, f8;
 
-        boolean hw = hangingWallFlagParam.getValue();
-
         f4 = 0.0;
 
         // if(rX>=0.0){
@@ -1298,6 +1466,15 @@ public class AS_2008_AttenRel extends AttenuationRelationship implements
      */
     public double getStdDev(int iper, String stdDevType, String component,
             double vs30, double pga_rock, double vsm) {
+        return getStdDev(iper, stdDevType, component, vs30, pga_rock, vsm,
+                mag);
+    }
+
+    /*
+     * The standard deviation for the given magnitude.
+     */
+    private double getStdDev(int iper, String stdDevType, String component,
+            double vs30, double pga_rock, double vsm, double mag) {
 
         if (stdDevType.equals(StdDevTypeParam.STD_DEV_TYPE_NONE))
             return 0.0;
@@ -34,8 +34,9 @@ import org.opensha.commons.param.event.ParameterChangeListener;
 import org.opensha.commons.param.event.ParameterChangeWarningListener;
 import org.opensha.sha.earthquake.EqkRupture;
 import org.opensha.sha.imr.AttenuationRelationship;
+import org.opensha.sha.imr.DirectScalarIMR_API;
 import org.opensha.sha.imr.PropagationEffect;
-import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.RuptureSiteValues;
 import org.opensha.sha.imr.param.EqkRuptureParams.FaultTypeParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.MagParam;
 import org.opensha.sha.imr.param.IntensityMeasureParams.DampingParam;
@@ -96,8 +97,7 @@ import org.opensha.sha.imr.param.SiteParams.Vs30_Param;
  */
 
 public class BA_2008_AttenRel extends AttenuationRelationship implements
-        ScalarIntensityMeasureRelationshipAPI, NamedObjectAPI,
-        ParameterChangeListener {
+        DirectScalarIMR_API, NamedObjectAPI, ParameterChangeListener {
 
     // Debugging stuff
     private final static String C = "BA_2008_AttenRel";
@@ -363,6 +363,61 @@ public class BA_2008_AttenRel extends AttenuationRelationship implements
         return getStdDev(iper, stdDevType, fltType);
     }
 
+    /**
+     * Sets Vs30.
+     */
+    public void setSiteValues(Site site, RuptureSiteValues values) {
+        values.setVs30(getSiteParamValue(site, Vs30_Param.NAME));
+    }
+
+    /**
+     * Sets the magnitude, the rake and distanceJB.
+     */
+    public void setRuptureValues(EqkRupture eqkRupture, Site site,
+            RuptureSiteValues values) {
+        values.setMag(eqkRupture.getMag());
+        values.setRake(eqkRupture.getAveRake());
+        values.setDistanceJB(distanceJBParam.calcValue(eqkRupture, site));
+    }
+
+    public double getMean(RuptureSiteValues values) {
+
+        double rjb = values.getDistanceJB();
+
+        // check if distance is beyond the user specified max
+        if (rjb > USER_MAX_DISTANCE) {
+            return VERY_SMALL_MEAN;
+        }
+
+        if (intensityMeasureChanged) {
+            setCoeffIndex(); // intensityMeasureChanged is set to false in this
+                             // method
+        }
+
+        double mag = values.getMag();
+        String fltType = getFaultTypeFromRake(values.getRake());
+
+        // remember that pga4nl term uses coeff index 0
+        double pga4nl = Math.exp(getMean(0, 760, rjb, mag, fltType, 0.0));
+        return getMean(iper, values.getVs30(), rjb, mag, fltType, pga4nl);
+    }
+
+    public double getStdDev(RuptureSiteValues values) {
+        if (intensityMeasureChanged) {
+            setCoeffIndex();// intensityMeasureChanged is set to false in this
+                            // method
+        }
+        return getStdDev(iper, stdDevType,
+                getFaultTypeFromRake(values.getRake()));
+    }
+
+    public void getExceedProbabilities(RuptureSiteValues values,
+            double[] imls, double[] exceedProbs) {
+        double stdDev = getStdDev(values);
+        double mean = getMean(values);
+        getExceedProbabilities(mean, stdDev, imls, exceedProbs);
+    }
+
     /**
      * Determines the style of faulting from the rake angle. Their report is not
      * explicit, so these ranges come from an email that told us to decide, but
@@ -375,16 +430,24 @@ public class BA_2008_AttenRel extends AttenuationRelationship implements
      */
     protected void setFaultTypeFromRake(double rake)
             throws InvalidRangeException {
+        fltTypeParam.setValue(getFaultTypeFromRake(rake));
+    }
+
+    /**
+     * @return the style of faulting for the given rake angle (see
+     *         setFaultTypeFromRake())
+     */
+    protected String getFaultTypeFromRake(double rake) {
         if (rake <= 30 && rake >= -30)
-            fltTypeParam.setValue(FLT_TYPE_STRIKE_SLIP);
+            return FLT_TYPE_STRIKE_SLIP;
         else if (rake <= -150 || rake >= 150)
-            fltTypeParam.setValue(FLT_TYPE_STRIKE_SLIP);
+            return FLT_TYPE_STRIKE_SLIP;
         else if (rake > 30 && rake < 150)
-            fltTypeParam.setValue(FLT_TYPE_REVERSE);
+            return FLT_TYPE_REVERSE;
         else if (rake > -150 && rake < -30)
-            fltTypeParam.setValue(FLT_TYPE_NORMAL);
+            return FLT_TYPE_NORMAL;
         else
-            fltTypeParam.setValue(FLT_TYPE_UNKNOWN);
+            return FLT_TYPE_UNKNOWN;
     }
 
     /**
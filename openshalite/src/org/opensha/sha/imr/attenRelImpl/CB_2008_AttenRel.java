@@ -41,8 +41,9 @@ import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 // import org.opensha.sha.faultSurface.FaultTrace;
 // import org.opensha.sha.faultSurface.StirlingGriddedSurface;
 import org.opensha.sha.imr.AttenuationRelationship;
+import org.opensha.sha.imr.DirectScalarIMR_API;
 import org.opensha.sha.imr.PropagationEffect;
-import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.RuptureSiteValues;
 import org.opensha.sha.imr.param.EqkRuptureParams.DipParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.FaultTypeParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.MagParam;
@@ -117,7 +118,7 @@ import org.opensha.sha.imr.param.SiteParams.Vs30_Param;
  */
 
 public class CB_2008_AttenRel extends AttenuationRelationship implements
-        ScalarIntensityMeasureRelationshipAPI, NamedObjectAPI,
+        DirectScalarIMR_API, NamedObjectAPI,
         ParameterChangeListener {
 
     // Debugging stuff
@@ -650,7 +651,7 @@ public class CB_2008_AttenRel extends AttenuationRelationship implements
                     Math.exp(getMean(2, 1100, rRup, rJB, f_rv, f_nm, mag, dip,
                             depthTop, depthTo2pt5kmPerSec, magSaturation, 0));
 
-        component = (String) componentParam.getValue();
+        component = componentParam.getValue();
 
         double stdDev = getStdDev(iper, stdDevType, component, vs30, pga_rock);
 
@@ -659,6 +660,132 @@ public class CB_2008_AttenRel extends AttenuationRelationship implements
         return stdDev;
     }
 
+    /**
+     * Sets Vs30 and the depth to 2.5 km/sec.
+     */
+    public void setSiteValues(Site site, RuptureSiteValues values) {
+        values.setVs30(getSiteParamValue(site, Vs30_Param.NAME));
+        values.setDepthTo2pt5kmPerSec(getSiteParamValue(site,
+                DepthTo2pt5kmPerSecParam.NAME));
+    }
+
+    /**
+     * Sets the magnitude, the rake, the dip, the depth to top of rupture,
+     * distanceRup and distanceJB.
+     */
+    public void setRuptureValues(EqkRupture eqkRupture, Site site,
+            RuptureSiteValues values) {
+        values.setMag(eqkRupture.getMag());
+        values.setRake(eqkRupture.getAveRake());
+        EvenlyGriddedSurfaceAPI surface = eqkRupture.getRuptureSurface();
+        values.setRupTopDepth(surface.getLocation(0, 0).getDepth());
+        values.setDip(surface.getAveDip());
+        propagationEffect.setAll(eqkRupture, site);
+        values.setDistanceRup(propagationEffect.getDistanceRup());
+        values.setDistanceJB(propagationEffect.getDistanceJB());
+    }
+
+    public double getMean(RuptureSiteValues values) {
+
+        double rRup = values.getDistanceRup();
+
+        // check if distance is beyond the user specified max
+        if (rRup > USER_MAX_DISTANCE) {
+            return VERY_SMALL_MEAN;
+        }
+
+        if (intensityMeasureChanged) {
+            setCoeffIndex(); // intensityMeasureChanged is set to false in this
+                             // method
+        }
+
+        double rJB = getDistanceJB(values);
+        double rake = values.getRake();
+        double f_rv = (rake > 30 && rake < 150) ? 1 : 0;
+        double f_nm = (rake > -150 && rake < -30) ? 1 : 0;
+        double mag = values.getMag();
+        double dip = values.getDip();
+        double depthTop = values.getRupTopDepth();
+        double vs30 = values.getVs30();
+        double depthTo2pt5kmPerSec = getDepthTo2pt5kmPerSec(values);
+
+        double pga_rock =
+                Math.exp(getMean(2, 1100, rRup, rJB, f_rv, f_nm, mag, dip,
+                        depthTop, depthTo2pt5kmPerSec, magSaturation, 0));
+
+        double mean =
+                getMean(iper, vs30, rRup, rJB, f_rv, f_nm, mag, dip, depthTop,
+                        depthTo2pt5kmPerSec, magSaturation, pga_rock);
+
+        // make sure SA does not exceed PGA if per < 0.2 (page 11 of pre-print)
+        if (iper < 3 || iper > 11) // not SA period between 0.02 and 0.15
+            return mean;
+        else {
+            double pga_mean =
+                    getMean(2, vs30, rRup, rJB, f_rv, f_nm, mag, dip, depthTop,
+                            depthTo2pt5kmPerSec, magSaturation, pga_rock);
+            return Math.max(mean, pga_mean);
+        }
+    }
+
+    public double getStdDev(RuptureSiteValues values) {
+        if (intensityMeasureChanged) {
+            setCoeffIndex(); // intensityMeasureChanged is set to false in this
+                             // method
+        }
+
+        double vs30 = values.getVs30();
+
+        double pga_rock = Double.NaN;
+        if (vs30 < k1[iper]) {
+            double rake = values.getRake();
+            double f_rv = (rake > 30 && rake < 150) ? 1 : 0;
+            double f_nm = (rake > -150 && rake < -30) ? 1 : 0;
+            pga_rock =
+                    Math.exp(getMean(2, 1100, values.getDistanceRup(),
+                            getDistanceJB(values), f_rv, f_nm,
+                            values.getMag(), values.getDip(),
+                            values.getRupTopDepth(),
+                            getDepthTo2pt5kmPerSec(values), magSaturation, 0));
+        }
+
+        return getStdDev(iper, stdDevType, componentParam.getValue(),
+                vs30, pga_rock);
+    }
+
+    public void getExceedProbabilities(RuptureSiteValues values,
+            double[] imls, double[] exceedProbs) {
+        double stdDev = getStdDev(values);
+        double mean = getMean(values);
+        getExceedProbabilities(mean, stdDev, imls, exceedProbs);
+    }
+
+    /*
+     * rJB as getMean() computes it, from rRup and the value that
+     * setPropagationEffectParams() gives distRupMinusJB_OverRupParam (so the
+     * results are identical).
+     */
+    private static double getDistanceJB(RuptureSiteValues values) {
+        double rRup = values.getDistanceRup();
+        double distRupMinusJB_OverRup =
+                rRup == 0 ? 0.0 : (rRup - values.getDistanceJB()) / rRup;
+        return rRup - distRupMinusJB_OverRup * rRup;
+    }
+
+    /*
+     * The depth to 2.5 km/sec, or its default value for Vs30 if it's unknown.
+     */
+    private static double getDepthTo2pt5kmPerSec(RuptureSiteValues values) {
+        double depth = values.getDepthTo2pt5kmPerSec();
+        if (Double.isNaN(depth)) {
+            if (values.getVs30() <= 2500)
+                depth = 2;
+            else
+                depth = 0;
+        }
+        return depth;
+    }
+
     /**
      * Allows the user to set the default parameter values for the selected
      * Attenuation Relationship.
@@ -683,7 +810,7 @@ public class CB_2008_AttenRel extends AttenuationRelationship implements
         dipParam.setValueAsDefault();
         vs30 = ((Double) vs30Param.getValue()).doubleValue();
         mag = ((Double) magParam.getValue()).doubleValue();
-        stdDevType = (String) stdDevTypeParam.getValue();
+        stdDevType = stdDevTypeParam.getValue();
 
     }
 
@@ -1100,7 +1227,7 @@ public class CB_2008_AttenRel extends AttenuationRelationship implements
         } else if (pName.equals(magParam.NAME)) {
             mag = ((Double) val).doubleValue();
         } else if (pName.equals(FaultTypeParam.NAME)) {
-            String fltType = (String) fltTypeParam.getValue();
+            String fltType = fltTypeParam.getValue();
             if (fltType.equals(FLT_TYPE_NORMAL)) {
                 f_rv = 0;
                 f_nm = 1;
@@ -1118,7 +1245,7 @@ public class CB_2008_AttenRel extends AttenuationRelationship implements
         } else if (pName.equals(DipParam.NAME)) {
             dip = ((Double) val).doubleValue();
         } else if (pName.equals(ComponentParam.NAME)) {
-            component = (String) componentParam.getValue();
+            component = componentParam.getValue();
         } else if (pName.equals(PeriodParam.NAME)) {
             intensityMeasureChanged = true;
         }
@@ -35,8 +35,9 @@ import org.opensha.commons.param.event.ParameterChangeWarningListener;
 import org.opensha.sha.earthquake.EqkRupture;
 import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 import org.opensha.sha.imr.AttenuationRelationship;
+import org.opensha.sha.imr.DirectScalarIMR_API;
 import org.opensha.sha.imr.PropagationEffect;
-import org.opensha.sha.imr.ScalarIntensityMeasureRelationshipAPI;
+import org.opensha.sha.imr.RuptureSiteValues;
 import org.opensha.sha.imr.param.EqkRuptureParams.AftershockParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.DipParam;
 import org.opensha.sha.imr.param.EqkRuptureParams.FaultTypeParam;
@@ -125,7 +126,7 @@ import org.opensha.sha.imr.param.SiteParams.Vs30_TypeParam;
  */
 
 public class CY_2008_AttenRel extends AttenuationRelationship implements
-		ScalarIntensityMeasureRelationshipAPI, NamedObjectAPI,
+		DirectScalarIMR_API, NamedObjectAPI,
 		ParameterChangeListener {
 
 	// Debugging stuff
@@ -503,6 +504,121 @@ public class CY_2008_AttenRel extends AttenuationRelationship implements
 				aftershock, stdDevType, f_meas);
 	}
 
+	/**
+	 * Sets Vs30, its type and the depth to 1.0 km/sec.
+	 */
+	public void setSiteValues(Site site, RuptureSiteValues values) {
+		values.setVs30(getSiteParamValue(site, Vs30_Param.NAME));
+		values.setVs30Measured(Vs30_TypeParam.VS30_TYPE_MEASURED.equals(site
+				.getParameter(Vs30_TypeParam.NAME).getValue()));
+		values.setDepthTo1pt0kmPerSec(getSiteParamValue(site,
+				DepthTo1pt0kmPerSecParam.NAME));
+	}
+
+	/**
+	 * Sets the magnitude, the rake, the dip, the depth to top of rupture,
+	 * distanceRup, distanceJB and distanceX. The rupture is not an aftershock
+	 * (as in setEqkRupture()).
+	 */
+	public void setRuptureValues(EqkRupture eqkRupture, Site site,
+			RuptureSiteValues values) {
+		values.setMag(eqkRupture.getMag());
+		values.setRake(eqkRupture.getAveRake());
+		EvenlyGriddedSurfaceAPI surface = eqkRupture.getRuptureSurface();
+		values.setDip(surface.getAveDip());
+		values.setRupTopDepth(surface.getLocation(0, 0).getDepth());
+		propagationEffect.setAll(eqkRupture, site);
+		values.setDistanceRup(propagationEffect.getDistanceRup());
+		values.setDistanceJB(propagationEffect.getDistanceJB());
+		values.setDistanceX(propagationEffect.getDistanceX());
+	}
+
+	public double getMean(RuptureSiteValues values) {
+
+		// check if distance is beyond the user specified max
+		if (values.getDistanceRup() > USER_MAX_DISTANCE) {
+			return VERY_SMALL_MEAN;
+		}
+
+		if (intensityMeasureChanged) {
+			setCoeffIndex();// intensityMeasureChanged is set to false in this
+							// method
+			lnYref_is_not_fresh = true;
+		}
+
+		return getMean(iper, values.getVs30(), values
+				.getDepthTo1pt0kmPerSec(), get_lnYref(iper, values));
+	}
+
+	public double getStdDev(RuptureSiteValues values) {
+		if (intensityMeasureChanged) {
+			setCoeffIndex();// intensityMeasureChanged is set to false in this
+							// method
+			lnYref_is_not_fresh = true;
+		}
+
+		return getStdDev(iper, values.getVs30(), values.getMag(), 0,
+				stdDevType, values.isVs30Measured() ? 1 : 0, get_lnYref(iper,
+						values));
+	}
+
+	/**
+	 * lnYref is only computed once for the mean and the standard deviation.
+	 */
+	public void getExceedProbabilities(RuptureSiteValues values,
+			double[] imls, double[] exceedProbs) {
+		if (intensityMeasureChanged) {
+			setCoeffIndex();// intensityMeasureChanged is set to false in this
+							// method
+			lnYref_is_not_fresh = true;
+		}
+
+		double lnYref = get_lnYref(iper, values);
+		double vs30 = values.getVs30();
+		double stdDev = getStdDev(iper, vs30, values.getMag(), 0, stdDevType,
+				values.isVs30Measured() ? 1 : 0, lnYref);
+		double mean;
+		if (values.getDistanceRup() > USER_MAX_DISTANCE)
+			mean = VERY_SMALL_MEAN;
+		else
+			mean = getMean(iper, vs30, values.getDepthTo1pt0kmPerSec(), lnYref);
+		getExceedProbabilities(mean, stdDev, imls, exceedProbs);
+	}
+
+	/*
+	 * lnYref for the given values, with the style of faulting, distance ratios
+	 * and hanging-wall flag that setEqkRupture() and
+	 * setPropagationEffectParams() give the parameters (so the results are
+	 * identical).
+	 */
+	private double get_lnYref(int iper, RuptureSiteValues values) {
+		double rake = values.getRake();
+		double f_rv = (rake >= 30 && rake <= 150) ? 1 : 0;
+		double f_nm = (rake >= -120 && rake <= -60) ? 1 : 0;
+
+		double rRup = values.getDistanceRup();
+		double distX = values.getDistanceX();
+		double distRupMinusJB_OverRup, distRupMinusDistX_OverRup, f_hw;
+		if (rRup > 0.0) {
+			distRupMinusJB_OverRup = (rRup - values.getDistanceJB()) / rRup;
+			if (distX >= 0.0) {
+				distRupMinusDistX_OverRup = (rRup - distX) / rRup;
+				f_hw = 1.0;
+			} else {
+				distRupMinusDistX_OverRup = (rRup + distX) / rRup;
+				f_hw = 0.0;
+			}
+		} else {
+			distRupMinusJB_OverRup = 0;
+			distRupMinusDistX_OverRup = 0;
+			f_hw = 1.0;
+		}
+
+		return get_lnYref(iper, f_rv, f_nm, rRup, distRupMinusJB_OverRup,
+				distRupMinusDistX_OverRup, f_hw, values.getDip(), values
+						.getMag(), values.getRupTopDepth(), 0);
+	}
+
 	/**
 	 * Allows the user to set the default parameter values for the selected
 	 * Attenuation Relationship.
@@ -796,6 +912,15 @@ public class CY_2008_AttenRel extends AttenuationRelationship implements
 					distRupMinusDistX_OverRup, f_hw, dip, mag, depthTop,
 					aftershock);
 
+		return getMean(iper, vs30, depthTo1pt0kmPerSec, lnYref);
+	}
+
+	/*
+	 * The mean for the given lnYref.
+	 */
+	private double getMean(int iper, double vs30, double depthTo1pt0kmPerSec,
+			double lnYref) {
+
 		// set basinDepth default if depthTo1pt0kmPerSec is NaN
 		double basinDepth;
 		if (Double.isNaN(depthTo1pt0kmPerSec))
@@ -848,6 +973,19 @@ public class CY_2008_AttenRel extends AttenuationRelationship implements
 			double rRup, double distRupMinusJB_OverRup,
 			double distRupMinusDistX_OverRup, double f_hw, double dip,
 			double mag, double depthTop, double aftershock) {
+		lnYref = get_lnYref(iper, f_rv, f_nm, rRup, distRupMinusJB_OverRup,
+				distRupMinusDistX_OverRup, f_hw, dip, mag, depthTop,
+				aftershock);
+		lnYref_is_not_fresh = false;
+	}
+
+	/*
+	 * Returns lnYref without storing it (see compute_lnYref()).
+	 */
+	private double get_lnYref(int iper, double f_rv, double f_nm,
+			double rRup, double distRupMinusJB_OverRup,
+			double distRupMinusDistX_OverRup, double f_hw, double dip,
+			double mag, double depthTop, double aftershock) {
 		// compute rJB
 		double distanceJB = rRup - distRupMinusJB_OverRup * rRup;
 		double distX = rRup - distRupMinusDistX_OverRup * rRup;
@@ -857,7 +995,7 @@ public class CY_2008_AttenRel extends AttenuationRelationship implements
 		double altDist = Math.sqrt(distanceJB * distanceJB + depthTop
 				* depthTop);
 
-		lnYref = c1[iper]
+		return c1[iper]
 				+ (c1a[iper] * f_rv + c1b[iper] * f_nm + c7[iper]
 						* (depthTop - 4.0))
 				* (1 - aftershock)
@@ -886,8 +1024,6 @@ public class CY_2008_AttenRel extends AttenuationRelationship implements
 				* Math.tanh(distX * cosDelta * cosDelta / c9a[iper])
 				* (1 - altDist / (rRup + 0.001));
 
-		lnYref_is_not_fresh = false;
-
 		// System.out.println(rRup+"\t"+distanceJB+"\t"+distX+"\t"+f_hw+"\t"+lnYref);
 
 	}
@@ -919,15 +1055,25 @@ public class CY_2008_AttenRel extends AttenuationRelationship implements
 			double mag, double depthTop, double aftershock, String stdDevType,
 			double f_meas) {
 
-		double magTest = Math.min(Math.max(mag, 5.0), 7.0) - 5.0;
-
-		double tau = tau1[iper] + (tau2[iper] - tau1[iper]) / 2 * magTest;
-
 		if (lnYref_is_not_fresh)
 			compute_lnYref(iper, f_rv, f_nm, rRup, distRupMinusJB_OverRup,
 					distRupMinusDistX_OverRup, f_hw, dip, mag, depthTop,
 					aftershock);
 
+		return getStdDev(iper, vs30, mag, aftershock, stdDevType, f_meas,
+				lnYref);
+	}
+
+	/*
+	 * The standard deviation for the given lnYref.
+	 */
+	private double getStdDev(int iper, double vs30, double mag,
+			double aftershock, String stdDevType, double f_meas, double lnYref) {
+
+		double magTest = Math.min(Math.max(mag, 5.0), 7.0) - 5.0;
+
+		double tau = tau1[iper] + (tau2[iper] - tau1[iper]) / 2 * magTest;
+
 		double b = phi2[iper]
 				* (Math.exp(phi3[iper] * (Math.min(vs30, 1130) - 360)) - Math
 						.exp(phi3[iper] * (1130 - 360))); // Equation 10
@@ -18,16 +18,12 @@
 
 package org.opensha.sha.imr.param.PropagationEffectParams;
 
-import java.util.ListIterator;
 
 import org.dom4j.Element;
 import org.opensha.commons.exceptions.ConstraintException;
-import org.opensha.commons.geo.Location;
-import org.opensha.commons.geo.LocationUtils;
 import org.opensha.commons.param.DoubleConstraint;
 import org.opensha.commons.param.ParameterConstraintAPI;
 import org.opensha.commons.param.WarningParameterAPI;
-import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 
 /**
  * <b>Title:</b> DistanceRupParameter
@@ -126,35 +122,12 @@ public class DistRupMinusJB_OverRupParameter extends
     protected void calcValueFromSiteAndEqkRup() {
         if ((this.site != null) && (this.eqkRupture != null)) {
 
-            Location loc1 = site.getLocation();
-            double minRupDistance = Double.MAX_VALUE;
-            double minHorzDistance = Double.MAX_VALUE;
-            double horzDist, vertDist, totalDist;
-
-            EvenlyGriddedSurfaceAPI rupSurf = eqkRupture.getRuptureSurface();
-
-            // get locations to iterate over depending on dip
-            ListIterator it;
-            if (rupSurf.getAveDip() > 89)
-                it = rupSurf.getColumnIterator(0);
-            else
-                it = rupSurf.getLocationsIterator();
-
-            while (it.hasNext()) {
-
-                Location loc2 = (Location) it.next();
-
-                horzDist = LocationUtils.horzDistance(loc1, loc2);
-                vertDist = LocationUtils.vertDistance(loc1, loc2);
-
-                totalDist = horzDist * horzDist + vertDist * vertDist;
-                if (totalDist < minRupDistance)
-                    minRupDistance = totalDist;
-                if (horzDist < minHorzDistance)
-                    minHorzDistance = horzDist;
-
-            }
-            totalDist = Math.sqrt(minRupDistance);
+            RuptureDistances distances =
+                    RuptureDistances.get(eqkRupture.getRuptureSurface(),
+                            site.getLocation());
+            double minHorzDistance = distances.getDistanceJB(false);
+            double totalDist =
+                    Math.sqrt(distances.getDistanceRupSquared(false));
             if (totalDist == 0)
                 this.setValueIgnoreWarning(new Double(0));
             else {
@@ -18,15 +18,16 @@
 
 package org.opensha.sha.imr.param.PropagationEffectParams;
 
-import java.util.ListIterator;
 
 import org.dom4j.Element;
+import org.opensha.commons.data.Site;
 import org.opensha.commons.exceptions.ConstraintException;
 import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.LocationUtils;
 import org.opensha.commons.param.DoubleConstraint;
 import org.opensha.commons.param.ParameterConstraintAPI;
 import org.opensha.commons.param.WarningParameterAPI;
+import org.opensha.sha.earthquake.EqkRupture;
 import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 
 /**
@@ -126,47 +127,47 @@ public class DistanceJBParameter extends
      */
     protected void calcValueFromSiteAndEqkRup() {
         if ((this.site != null) && (this.eqkRupture != null)) {
+            this.setValueIgnoreWarning(new Double(calcValue(eqkRupture, site)));
+        } else
+            this.setValue(null);
+    }
 
-            Location loc1 = site.getLocation();
-            Location loc2;
-            double minDistance = 999999;
-            double currentDistance;
-
-            EvenlyGriddedSurfaceAPI rupSurf = eqkRupture.getRuptureSurface();
-
-            // get locations to iterate over depending on dip
-            ListIterator it;
-            if (rupSurf.getAveDip() > 89)
-                it = rupSurf.getColumnIterator(0);
-            else
-                it = rupSurf.getLocationsIterator();
-
-            while (it.hasNext()) {
-
-                loc2 = (Location) it.next();
-                currentDistance = LocationUtils.horzDistance(loc1, loc2);
-                if (currentDistance < minDistance)
-                    minDistance = currentDistance;
+    /**
+     * Computes the value of this parameter for the given rupture and site,
+     * without setting it (so no change event is fired, and the site and
+     * rupture of this parameter are not changed).
+     * 
+     * @param eqkRupture
+     * @param site
+     * @return the distance (km)
+     */
+    public double calcValue(EqkRupture eqkRupture, Site site) {
+
+        Location loc1, loc2;
+
+        EvenlyGriddedSurfaceAPI rupSurf = eqkRupture.getRuptureSurface();
+
+        double minDistance =
+                RuptureDistances.get(rupSurf, site.getLocation())
+                        .getDistanceJB(false);
+        minDistance = Math.min(minDistance, 999999);
+
+        // fix distanceJB if needed
+        if (fix_dist_JB)
+            if (rupSurf.getNumCols() > 1 && rupSurf.getNumRows() > 1) {
+                double d1, d2, min_dist;
+                loc1 = rupSurf.getLocation(0, 0);
+                loc2 = rupSurf.getLocation(1, 1);
+                d1 = LocationUtils.horzDistance(loc1, loc2);
+                loc1 = rupSurf.getLocation(0, 1);
+                loc2 = rupSurf.getLocation(1, 0);
+                d2 = LocationUtils.horzDistance(loc1, loc2);
+                min_dist = Math.min(d1, d1) / 2;
+                if (minDistance <= min_dist)
+                    minDistance = 0;
             }
 
-            // fix distanceJB if needed
-            if (fix_dist_JB)
-                if (rupSurf.getNumCols() > 1 && rupSurf.getNumRows() > 1) {
-                    double d1, d2, min_dist;
-                    loc1 = rupSurf.getLocation(0, 0);
-                    loc2 = rupSurf.getLocation(1, 1);
-                    d1 = LocationUtils.horzDistance(loc1, loc2);
-                    loc1 = rupSurf.getLocation(0, 1);
-                    loc2 = rupSurf.getLocation(1, 0);
-                    d2 = LocationUtils.horzDistance(loc1, loc2);
-                    min_dist = Math.min(d1, d1) / 2;
-                    if (minDistance <= min_dist)
-                        minDistance = 0;
-                }
-
-            this.setValueIgnoreWarning(new Double(minDistance));
-        } else
-            this.setValue(null);
+        return minDistance;
     }
 
     /**
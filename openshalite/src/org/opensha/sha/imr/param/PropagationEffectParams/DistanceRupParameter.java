@@ -18,16 +18,12 @@
 
 package org.opensha.sha.imr.param.PropagationEffectParams;
 
-import java.util.ListIterator;
 
 import org.dom4j.Element;
 import org.opensha.commons.exceptions.ConstraintException;
-import org.opensha.commons.geo.Location;
-import org.opensha.commons.geo.LocationUtils;
 import org.opensha.commons.param.DoubleConstraint;
 import org.opensha.commons.param.ParameterConstraintAPI;
 import org.opensha.commons.param.WarningParameterAPI;
-import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 
 /**
  * <b>Title:</b> DistanceRupParameter
@@ -128,27 +124,11 @@ public class DistanceRupParameter extends
     protected void calcValueFromSiteAndEqkRup() {
         if ((this.site != null) && (this.eqkRupture != null)) {
 
-            Location loc1 = site.getLocation();
-            double minDistance = 999999;
-            double horzDist, vertDist, totalDist;
-
-            EvenlyGriddedSurfaceAPI rupSurf = eqkRupture.getRuptureSurface();
-
-            // get locations to iterate over depending on dip
-            ListIterator it;
-            if (rupSurf.getAveDip() > 89)
-                it = rupSurf.getColumnIterator(0);
-            else
-                it = rupSurf.getLocationsIterator();
-
-            while (it.hasNext()) {
-                Location loc2 = (Location) it.next();
-                horzDist = LocationUtils.horzDistance(loc1, loc2);
-                vertDist = LocationUtils.vertDistance(loc1, loc2);
-                totalDist = horzDist * horzDist + vertDist * vertDist;
-                if (totalDist < minDistance)
-                    minDistance = totalDist;
-            }
+            double minDistance =
+                    RuptureDistances.get(eqkRupture.getRuptureSurface(),
+                            site.getLocation()).getDistanceRupSquared(false);
+            // the squared distance is capped at 999999
+            minDistance = Math.min(minDistance, 999999);
 
             this.setValueIgnoreWarning(new Double(Math.pow(minDistance, 0.5)));
 
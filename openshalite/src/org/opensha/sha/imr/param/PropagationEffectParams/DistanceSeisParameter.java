@@ -18,16 +18,12 @@
 
 package org.opensha.sha.imr.param.PropagationEffectParams;
 
-import java.util.ListIterator;
 
 import org.dom4j.Element;
 import org.opensha.commons.exceptions.ConstraintException;
-import org.opensha.commons.geo.Location;
-import org.opensha.commons.geo.LocationUtils;
 import org.opensha.commons.param.DoubleConstraint;
 import org.opensha.commons.param.ParameterConstraintAPI;
 import org.opensha.commons.param.WarningParameterAPI;
-import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
 
 /**
  * <b>Title:</b> DistanceSeisParameter
@@ -135,52 +131,12 @@ public class DistanceSeisParameter extends
     protected void calcValueFromSiteAndEqkRup() {
         if ((this.site != null) && (this.eqkRupture != null)) {
 
-            Location loc1 = site.getLocation();
-            double minDistance = Double.MAX_VALUE;
-            double totalDist, horzDist, vertDist;
-
-            EvenlyGriddedSurfaceAPI rupSurf = eqkRupture.getRuptureSurface();
-
-            // flag to project to seisDepth if only one row and depth is below
-            // seisDepth
-            boolean projectToDepth = false;
-            if (rupSurf.getNumRows() == 1
-                    && rupSurf.getLocation(0, 0).getDepth() < seisDepth)
-                projectToDepth = true;
-
-            // get locations to iterate over depending on dip
-            ListIterator it;
-            if (rupSurf.getAveDip() > 89) {
-                it = rupSurf.getColumnIterator(0);
-                if (rupSurf.getLocation(0, 0).getDepth() < seisDepth)
-                    projectToDepth = true;
-            } else
-                it = rupSurf.getLocationsIterator();
-
-            while (it.hasNext()) {
-
-                Location loc2 = (Location) it.next();
-                // ignore locations with depth less than siesDepth (unless
-                // projectToDepth=true):
-                if (loc2.getDepth() >= seisDepth) {
-                    horzDist = LocationUtils.horzDistance(loc1, loc2);
-                    vertDist = LocationUtils.vertDistance(loc1, loc2);
-                    totalDist = horzDist * horzDist + vertDist * vertDist;
-                    if (totalDist < minDistance)
-                        minDistance = totalDist;
-                }
-                // put a zero-depth point source at the seisDepth
-                else if (projectToDepth) {
-                    horzDist = LocationUtils.horzDistance(loc1, loc2);
-                    totalDist = horzDist * horzDist + seisDepth * seisDepth;
-                    if (totalDist < minDistance)
-                        minDistance = totalDist;
-                }
-
-            }
-            // take square root before returning
-            // Steve- is this effiecient?
-            this.setValueIgnoreWarning(new Double(Math.pow(minDistance, 0.5)));
+            // locations shallower than seisDepth are ignored, unless the
+            // surface is a single row or vertical, in which case they are
+            // projected to seisDepth (see RuptureDistances)
+            this.setValueIgnoreWarning(new Double(RuptureDistances.get(
+                    eqkRupture.getRuptureSurface(), site.getLocation())
+                    .getDistanceSeis(false)));
 
         } else
             this.setValue(null);
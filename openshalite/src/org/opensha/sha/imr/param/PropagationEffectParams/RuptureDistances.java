@@ -0,0 +1,328 @@
+package org.opensha.sha.imr.param.PropagationEffectParams;
+
+import java.util.Arrays;
+import java.util.ListIterator;
+
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationUtils;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
+import org.opensha.sha.faultSurface.FlatGriddedSurfaceAPI;
+
+/**
+ * <b>Title:</b> RuptureDistances
+ * <p>
+ *
+ * <b>Description:</b> Distances between a rupture surface and a site, shared
+ * by the propagation effect parameters and PropagationEffect. DistanceRup,
+ * DistanceJB and DistanceSeis are computed together, in a single pass over the
+ * coordinates of the surface nodes (which are read from the arrays of a
+ * FlatGriddedSurfaceAPI, or copied to primitive arrays once per surface for
+ * other surfaces), either with the exact great circle horizontal distance (as
+ * LocationUtils.horzDistance) or with the approximate one (as
+ * LocationUtils.horzDistanceFast). DistanceX is computed on demand, from the
+ * extended rupture trace (see DistanceX_Parameter) that is built once per
+ * surface.
+ * <p>
+ *
+ * Each thread keeps the distances of the last (surface, site location) pair
+ * it asked for, and the node coordinates of the last surface, so the
+ * parameters of a GMPE that are set for the same rupture and site (or a
+ * loop over sites for the same rupture) don't traverse the surface again.
+ * Pairs are matched by the identity of the surface and of the (immutable)
+ * site location; a surface whose number of rows and columns or whose first
+ * and last locations are replaced (or, for a FlatGriddedSurfaceAPI, whose
+ * window is moved) is treated as a new surface, but other changes to the
+ * locations of a surface are not detected.
+ * <p>
+ *
+ * The nodes considered are the same as those of the original parameters: the
+ * first row (the upper trace) of the surface if its average dip is greater than
+ * 89 degrees, all the nodes otherwise.
+ *
+ * @see DistanceRupParameter
+ * @see DistanceJBParameter
+ * @see DistanceSeisParameter
+ * @see DistanceX_Parameter
+ */
+public class RuptureDistances {
+
+    private static final double seisDepth = DistanceSeisParameter.seisDepth;
+
+    private static final ThreadLocal<RuptureDistances[]> LAST =
+            new ThreadLocal<RuptureDistances[]>() {
+                @Override
+                protected RuptureDistances[] initialValue() {
+                    return new RuptureDistances[1];
+                }
+            };
+
+    private final Surface surface;
+    private final Location siteLoc;
+
+    // minimum horizontal distance, and minimum squared rupture and seis
+    // distances, for the exact (0) and approximate (1) horizontal distances
+    private final double[] minHorzDist = new double[2];
+    private final double[] minRupDistSq = new double[2];
+    private final double[] minSeisDistSq = new double[2];
+    private final boolean[] computed = new boolean[2];
+
+    private double distanceX;
+    private boolean distanceXComputed = false;
+
+    private RuptureDistances(Surface surface, Location siteLoc) {
+        this.surface = surface;
+        this.siteLoc = siteLoc;
+    }
+
+    /**
+     * Returns the distances between the given surface and site location,
+     * reusing those of the last call of the current thread if they were for
+     * the same pair.
+     */
+    public static RuptureDistances get(EvenlyGriddedSurfaceAPI rupSurf,
+            Location siteLoc) {
+        RuptureDistances[] last = LAST.get();
+        RuptureDistances distances = last[0];
+        if (distances != null && distances.siteLoc == siteLoc
+                && distances.surface.isFor(rupSurf))
+            return distances;
+        Surface surface =
+                distances != null && distances.surface.isFor(rupSurf)
+                        ? distances.surface : new Surface(rupSurf);
+        distances = new RuptureDistances(surface, siteLoc);
+        last[0] = distances;
+        return distances;
+    }
+
+    /**
+     * @return the shortest distance (km) to the rupture surface, with the
+     *         approximate or exact horizontal distance
+     */
+    public double getDistanceRup(boolean approxHorzDist) {
+        return Math.pow(getDistanceRupSquared(approxHorzDist), 0.5);
+    }
+
+    /**
+     * @return the square of getDistanceRup(approxHorzDist)
+     */
+    public double getDistanceRupSquared(boolean approxHorzDist) {
+        int mode = compute(approxHorzDist);
+        return minRupDistSq[mode];
+    }
+
+    /**
+     * @return the shortest horizontal distance (km) to the nodes of the
+     *         rupture surface, without the correction of
+     *         DistanceJBParameter.fix_dist_JB
+     */
+    public double getDistanceJB(boolean approxHorzDist) {
+        int mode = compute(approxHorzDist);
+        return minHorzDist[mode];
+    }
+
+    /**
+     * @return the shortest distance (km) to the part of the rupture surface
+     *         that is deeper than DistanceSeisParameter.seisDepth
+     *         (Double.MAX_VALUE if there is no such part)
+     */
+    public double getDistanceSeis(boolean approxHorzDist) {
+        int mode = compute(approxHorzDist);
+        return Math.pow(minSeisDistSq[mode], 0.5);
+    }
+
+    /**
+     * @return DistanceX (see DistanceX_Parameter)
+     */
+    public double getDistanceX() {
+        if (!distanceXComputed) {
+            distanceX = surface.getDistanceX(siteLoc);
+            distanceXComputed = true;
+        }
+        return distanceX;
+    }
+
+    /*
+     * Single pass over the nodes of the surface, for the given horizontal
+     * distance. The horizontal distances of each row are those of the batch
+     * methods LocationUtils.horzDistances() and horzDistancesFast() (with the
+     * site as first location), and the vertical ones those of vertDistance(),
+     * so the results are identical to theirs.
+     */
+    private int compute(boolean approxHorzDist) {
+        int mode = approxHorzDist ? 1 : 0;
+        if (computed[mode])
+            return mode;
+
+        double depth1 = siteLoc.getDepth();
+
+        double[] lats = surface.lats;
+        double[] lons = surface.lons;
+        double[] depths = surface.depths;
+        double[] cosLats = surface.cosLats;
+        double[] horzDists = surface.horzDists;
+        boolean projectToDepth = surface.projectToDepth;
+
+        double minHorz = Double.MAX_VALUE;
+        double minRupSq = Double.MAX_VALUE;
+        double minSeisSq = Double.MAX_VALUE;
+        double horzDist, vertDist, rupDist;
+        int[] rowStarts = surface.rowStarts;
+        int rowLength = surface.rowLength;
+        for (int r = 0; r < rowStarts.length; r++) {
+            int start = rowStarts[r];
+            if (approxHorzDist)
+                LocationUtils.horzDistancesFast(siteLoc, lats, lons, start,
+                        rowLength, horzDists);
+            else
+                LocationUtils.horzDistances(siteLoc, lats, lons, cosLats,
+                        start, rowLength, horzDists);
+            for (int k = 0; k < rowLength; k++) {
+                int i = start + k;
+                horzDist = horzDists[k];
+                vertDist = depths[i] - depth1;
+
+                if (horzDist < minHorz)
+                    minHorz = horzDist;
+
+                rupDist = horzDist * horzDist + vertDist * vertDist;
+                if (rupDist < minRupSq)
+                    minRupSq = rupDist;
+
+                if (depths[i] >= seisDepth) {
+                    if (rupDist < minSeisSq)
+                        minSeisSq = rupDist;
+                }
+                // put a zero-depth point source at the seisDepth
+                else if (projectToDepth) {
+                    rupDist = horzDist * horzDist + seisDepth * seisDepth;
+                    if (rupDist < minSeisSq)
+                        minSeisSq = rupDist;
+                }
+            }
+        }
+        minHorzDist[mode] = minHorz;
+        minRupDistSq[mode] = minRupSq;
+        minSeisDistSq[mode] = minSeisSq;
+        computed[mode] = true;
+        return mode;
+    }
+
+    /*
+     * Node coordinates of a rupture surface, and the things that only depend
+     * on the surface. The nodes to consider are the rows of rowLength nodes
+     * starting at the indices rowStarts of the arrays, which are those of the
+     * surface if it is a FlatGriddedSurfaceAPI, or copies of its locations.
+     */
+    private static final class Surface {
+
+        private final EvenlyGriddedSurfaceAPI rupSurf;
+        private final int numRows;
+        private final int numCols;
+        // for other surfaces than FlatGriddedSurfaceAPI
+        private final Location firstLoc;
+        private final Location lastLoc;
+
+        private final double[] lats;
+        private final double[] lons;
+        private final double[] depths;
+        private final double[] cosLats;
+        private final int[] rowStarts;
+        private final int rowLength;
+        // horizontal distances of the nodes of a row, filled in by compute()
+        private final double[] horzDists;
+
+        // whether to project shallow nodes to seisDepth for DistanceSeis
+        private final boolean projectToDepth;
+
+        private DistanceX_Parameter.ExtendedTrace extendedTrace;
+
+        Surface(EvenlyGriddedSurfaceAPI rupSurf) {
+            this.rupSurf = rupSurf;
+            numRows = rupSurf.getNumRows();
+            numCols = rupSurf.getNumCols();
+            boolean vertical = rupSurf.getAveDip() > 89;
+
+            if (rupSurf instanceof FlatGriddedSurfaceAPI) {
+                FlatGriddedSurfaceAPI flatSurf = (FlatGriddedSurfaceAPI) rupSurf;
+                firstLoc = null;
+                lastLoc = null;
+                lats = flatSurf.getLatRads();
+                lons = flatSurf.getLonRads();
+                depths = flatSurf.getDepths();
+                cosLats = flatSurf.getCosLats();
+                // only the upper trace if vertical
+                rowStarts = new int[vertical ? 1 : numRows];
+                for (int r = 0; r < rowStarts.length; r++)
+                    rowStarts[r] = flatSurf.getIndex(r, 0);
+                rowLength = numCols;
+            } else {
+                firstLoc = rupSurf.getLocation(0, 0);
+                lastLoc = rupSurf.getLocation(numRows - 1, numCols - 1);
+
+                // get locations to iterate over depending on dip
+                ListIterator<Location> it;
+                if (vertical)
+                    it = rupSurf.getColumnIterator(0);
+                else
+                    it = rupSurf.getLocationsIterator();
+
+                double[] lats = new double[numRows * numCols];
+                double[] lons = new double[lats.length];
+                double[] depths = new double[lats.length];
+                double[] cosLats = new double[lats.length];
+                int n = 0;
+                while (it.hasNext()) {
+                    Location loc = it.next();
+                    if (n == lats.length) {
+                        lats = Arrays.copyOf(lats, 2 * n + 1);
+                        lons = Arrays.copyOf(lons, lats.length);
+                        depths = Arrays.copyOf(depths, lats.length);
+                        cosLats = Arrays.copyOf(cosLats, lats.length);
+                    }
+                    lats[n] = loc.getLatRad();
+                    lons[n] = loc.getLonRad();
+                    depths[n] = loc.getDepth();
+                    cosLats[n] = loc.getCosLat();
+                    n++;
+                }
+                this.lats = Arrays.copyOf(lats, n);
+                this.lons = Arrays.copyOf(lons, n);
+                this.depths = Arrays.copyOf(depths, n);
+                this.cosLats = Arrays.copyOf(cosLats, n);
+                rowStarts = new int[] { 0 };
+                rowLength = n;
+            }
+
+            horzDists = new double[rowLength];
+
+            // project to seisDepth if only one row, or vertical, and depth is
+            // below seisDepth
+            projectToDepth =
+                    (numRows == 1 || vertical)
+                            && depths[rowStarts[0]] < seisDepth;
+        }
+
+        boolean isFor(EvenlyGriddedSurfaceAPI rupSurf) {
+            if (this.rupSurf != rupSurf || rupSurf.getNumRows() != numRows
+                    || rupSurf.getNumCols() != numCols)
+                return false;
+            if (firstLoc == null) {
+                // the window of a subset surface may have moved
+                FlatGriddedSurfaceAPI flatSurf = (FlatGriddedSurfaceAPI) rupSurf;
+                return flatSurf.getLatRads() == lats
+                        && flatSurf.getIndex(0, 0) == rowStarts[0];
+            }
+            return rupSurf.getLocation(0, 0) == firstLoc
+                    && rupSurf.getLocation(numRows - 1, numCols - 1) == lastLoc;
+        }
+
+        double getDistanceX(Location siteLoc) {
+            // set to zero if it's a point source
+            if (numCols == 1)
+                return 0.0;
+            if (extendedTrace == null)
+                extendedTrace = new DistanceX_Parameter.ExtendedTrace(rupSurf);
+            return extendedTrace.getDistanceX(siteLoc);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.opensha.sha.imr.param.PropagationEffectParams;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opensha.commons.data.Site;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.geo.BorderType;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.LocationUtils;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.param.StringParameter;
+import org.opensha.sha.earthquake.EqkRupture;
+import org.opensha.sha.earthquake.FocalMechanism;
+import org.opensha.sha.earthquake.ProbEqkSource;
+import org.opensha.sha.earthquake.griddedForecast.MagFreqDistsForFocalMechs;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.GEM1ERF;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMAreaSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMFaultSourceData;
+import org.opensha.sha.earthquake.rupForecastImpl.GEM1.SourceData.GEMSourceData;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurfaceAPI;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.magdist.GutenbergRichterMagFreqDist;
+import org.opensha.sha.util.TectonicRegionType;
+
+/**
+ * Checks that the distance parameters, which read their values from
+ * RuptureDistances, are bit-identical to the per-parameter loops over the
+ * surface locations they replaced, for the (floating) ruptures of dipping and
+ * vertical faults and for the line ruptures of an area source.
+ */
+public class RuptureDistancesTest {
+
+    @Test
+    public void distancesEqualPerParameterLoops() {
+        List<EqkRupture> ruptures = ruptures();
+        Random rn = new Random(11);
+        List<Site> sites = new ArrayList<Site>();
+        for (int i = 0; i < 20; i++)
+            sites.add(new Site(new Location(37.8 + 1.2 * rn.nextDouble(),
+                    12.8 + 1.4 * rn.nextDouble())));
+
+        DistanceRupParameter distanceRup = new DistanceRupParameter(0.0);
+        DistanceJBParameter distanceJB = new DistanceJBParameter(0.0);
+        DistanceSeisParameter distanceSeis =
+                new DistanceSeisParameter(DistanceSeisParameter.seisDepth);
+        for (EqkRupture rupture : ruptures) {
+            for (Site site : sites) {
+                distanceRup.setValue(rupture, site);
+                distanceJB.setValue(rupture, site);
+                distanceSeis.setValue(rupture, site);
+                EvenlyGriddedSurfaceAPI surface = rupture.getRuptureSurface();
+                Location loc = site.getLocation();
+                assertEquals(distanceRup(surface, loc),
+                        (Double) distanceRup.getValue(), 0.0);
+                assertEquals(distanceJB(surface, loc),
+                        (Double) distanceJB.getValue(), 0.0);
+                assertEquals(distanceSeis(surface, loc),
+                        (Double) distanceSeis.getValue(), 0.0);
+            }
+        }
+    }
+
+    private static ListIterator<Location> locations(
+            EvenlyGriddedSurfaceAPI surface) {
+        if (surface.getAveDip() > 89)
+            return surface.getColumnIterator(0);
+        return surface.getLocationsIterator();
+    }
+
+    private static double distanceRup(EvenlyGriddedSurfaceAPI surface,
+            Location siteLoc) {
+        double minDistance = 999999;
+        ListIterator<Location> it = locations(surface);
+        while (it.hasNext()) {
+            Location loc = it.next();
+            double horzDist = LocationUtils.horzDistance(siteLoc, loc);
+            double vertDist = LocationUtils.vertDistance(siteLoc, loc);
+            minDistance =
+                    Math.min(minDistance, horzDist * horzDist + vertDist
+                            * vertDist);
+        }
+        return Math.pow(minDistance, 0.5);
+    }
+
+    private static double distanceJB(EvenlyGriddedSurfaceAPI surface,
+            Location siteLoc) {
+        double minDistance = 999999;
+        ListIterator<Location> it = locations(surface);
+        while (it.hasNext())
+            minDistance =
+                    Math.min(minDistance, LocationUtils.horzDistance(siteLoc,
+                            it.next()));
+        return minDistance;
+    }
+
+    private static double distanceSeis(EvenlyGriddedSurfaceAPI surface,
+            Location siteLoc) {
+        double seisDepth = DistanceSeisParameter.seisDepth;
+        boolean projectToDepth =
+                surface.getLocation(0, 0).getDepth() < seisDepth
+                        && (surface.getNumRows() == 1 || surface.getAveDip() > 89);
+        double minDistance = Double.MAX_VALUE;
+        ListIterator<Location> it = locations(surface);
+        while (it.hasNext()) {
+            Location loc = it.next();
+            double horzDist = LocationUtils.horzDistance(siteLoc, loc);
+            if (loc.getDepth() >= seisDepth) {
+                double vertDist = LocationUtils.vertDistance(siteLoc, loc);
+                minDistance =
+                        Math.min(minDistance, horzDist * horzDist + vertDist
+                                * vertDist);
+            } else if (projectToDepth) {
+                minDistance =
+                        Math.min(minDistance, horzDist * horzDist + seisDepth
+                                * seisDepth);
+            }
+        }
+        return Math.pow(minDistance, 0.5);
+    }
+
+    /**
+     * Every other rupture of a dipping fault, a vertical fault and an area
+     * source with line ruptures.
+     */
+    private static List<EqkRupture> ruptures() {
+        ArrayList<GEMSourceData> sources = new ArrayList<GEMSourceData>();
+
+        FaultTrace dipping = new FaultTrace("dipping");
+        dipping.add(new Location(38.2, 13.2, 0.0));
+        dipping.add(new Location(38.4, 13.5, 0.0));
+        dipping.add(new Location(38.6, 13.8, 0.0));
+        sources.add(new GEMFaultSourceData("1", "dipping",
+                TectonicRegionType.ACTIVE_SHALLOW,
+                new GutenbergRichterMagFreqDist(1.0, 0.01, 6.05, 7.05, 11),
+                dipping, 45.0, 90.0, 15.0, 1.0, true));
+        FaultTrace vertical = new FaultTrace("vertical");
+        vertical.add(new Location(38.0, 13.6, 0.0));
+        vertical.add(new Location(38.3, 13.9, 0.0));
+        sources.add(new GEMFaultSourceData("2", "vertical",
+                TectonicRegionType.ACTIVE_SHALLOW,
+                new GutenbergRichterMagFreqDist(1.0, 0.01, 6.05, 7.05, 11),
+                vertical, 90.0, 0.0, 12.0, 0.0, true));
+
+        LocationList border = new LocationList();
+        border.add(new Location(38.0, 13.0));
+        border.add(new Location(38.0, 13.4));
+        border.add(new Location(38.3, 13.4));
+        border.add(new Location(38.3, 13.0));
+        ArbitrarilyDiscretizedFunc topOfRupture =
+                new ArbitrarilyDiscretizedFunc();
+        topOfRupture.set(6.0, 5.0);
+        topOfRupture.set(8.0, 0.0);
+        sources.add(new GEMAreaSourceData("3", "area",
+                TectonicRegionType.ACTIVE_SHALLOW, new Region(border,
+                        BorderType.MERCATOR_LINEAR),
+                new MagFreqDistsForFocalMechs(new GutenbergRichterMagFreqDist(
+                        1.0, 0.05, 5.05, 6.95, 20), new FocalMechanism(30.0,
+                        60.0, 0.0)), topOfRupture, 5.0));
+
+        GEM1ERF erf = GEM1ERF.getGEM1ERF(sources, 50.0);
+        ((StringParameter) erf.getAdjustableParameterList().getParameter(
+                GEM1ERF.AREA_SRC_RUP_TYPE_NAME))
+                .setValue(GEM1ERF.AREA_SRC_RUP_TYPE_LINE);
+        erf.updateForecast();
+
+        List<EqkRupture> ruptures = new ArrayList<EqkRupture>();
+        for (int s = 0; s < erf.getNumSources(); s++) {
+            ProbEqkSource source = erf.getSource(s);
+            for (int r = 0; r < source.getNumRuptures(); r += 2)
+                ruptures.add(source.getRupture(r));
+        }
+        return ruptures;
+    }
+}
@@ -79,8 +79,11 @@ def compute_disagg_matrix(job_ctxt, site, poe, result_dir):
         config.get('kvs', 'host'),
         int(config.get('kvs', 'port')))
 
-    erf = general.generate_erf(job_ctxt.job_id, cache)
-    gmpe_map = general.generate_gmpe_map(job_ctxt.job_id, cache)
+    try:
+        erf = general.generate_erf(job_ctxt.job_id, cache)
+        gmpe_map = general.generate_gmpe_map(job_ctxt.job_id, cache)
+    finally:
+        cache.close()
     general.set_gmpe_params(gmpe_map, job_ctxt.params)
 
     imls = general.get_iml_list(job_ctxt['INTENSITY_MEASURE_LEVELS'],
@@ -107,7 +110,7 @@ def compute_disagg_matrix(job_ctxt, site, poe, result_dir):
         vs30_type, vs30, z1pt0, z2pt5)
 
     matrix_path = save_5d_matrix_to_h5(result_dir,
-                                       numpy.array(matrix_result.getMatrix()))
+                                       _get_matrix(matrix_result))
 
     return (matrix_result.getGMV(), matrix_path)
 
@@ -156,6 +159,26 @@ def _compute_matrix(calc, lat, lon, erf, gmpe_map, poe, imls, vs30_type, vs30,
         lat, lon, erf, gmpe_map, poe, imls, vs30_type, vs30, z1pt0, z2pt5)
 
 
+def _get_matrix(matrix_result):
+    """Get the 5D disaggregation matrix of a `DisaggregationResult` as a numpy
+    array.
+
+    The matrix is held by the Java object in a flat array, in the row-major
+    order of numpy (and of HDF5 datasets): the Java code copies it in one
+    block to the memory of the numpy array, wrapped as a direct buffer, instead
+    of converting the elements of nested Java arrays one at a time.
+
+    :param matrix_result:
+        jpype `org.gem.calc.DisaggregationResult` object.
+
+    :returns: 5-dimensional :class:`numpy.ndarray`
+    """
+    jpype = java.jvm()
+    matrix = numpy.empty(tuple(matrix_result.getDims()), dtype=numpy.float64)
+    matrix_result.getMatrix(jpype.nio.convertToDirectBuffer(matrix))
+    return matrix
+
+
 def save_5d_matrix_to_h5(directory, matrix):
     """Save a full disaggregation matrix to the specified directory with a
     random unique filename (using uuid).
@@ -29,6 +29,7 @@ from openquake.output import hazard as hazard_output
 from openquake.utils import stats
 from openquake.utils import tasks as utils_tasks
 from openquake.calculators.hazard import general
+from openquake.calculators.hazard.event_based.gmf_binary import read_gmfs
 
 LOG = logs.LOG
 
@@ -105,7 +106,7 @@ class EventBasedHazardCalculator(general.BaseHazardCalculator):
                 stochastic_set_key = kvs.tokens.stochastic_set_key(
                     self.job_ctxt.job_id, i, j)
                 LOG.info("Writing output for ses %s" % stochastic_set_key)
-                ses = kvs.get_value_json_decoded(stochastic_set_key)
+                ses = read_gmfs(kvs.get_client().get(stochastic_set_key))
                 if ses:
                     self.serialize_gmf(ses)
 
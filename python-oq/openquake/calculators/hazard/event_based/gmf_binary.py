@@ -0,0 +1,69 @@
+# Copyright (c) 2010-2012, GEM Foundation.
+#
+# OpenQuake is free software: you can redistribute it and/or modify it
+# under the terms of the GNU Affero General Public License as published
+# by the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+#
+# OpenQuake is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU Affero General Public License
+# along with OpenQuake.  If not, see <http://www.gnu.org/licenses/>.
+
+"""Reader of the binary ground motion fields of the event-based hazard
+calculator.
+
+This module only depends on the standard library, so that the format can be
+checked against the Java writer (see GmfBinaryWriterTest in java-oq).
+"""
+
+import struct
+
+
+# Header and rupture records of the binary ground motion fields written by
+# the Java GmfBinaryWriter (all values are big-endian).
+GMF_MAGIC = 0x474D4642
+GMF_VERSION = 1
+
+
+def read_gmfs(data):
+    """Decode the ground motion fields of a stochastic event set.
+
+    :param data: the binary ground motion fields, as written by
+        HazardCalculator.generateAndSaveGMFs(), or None
+    :returns: a dict of the form
+        {gmf_id: {rupture_id: {site_id: {'lat': lat, 'lon': lon,
+        'mag': ln(gmv)}}}}, or None if there is no data
+    """
+    if not data:
+        return None
+
+    magic, version, id_len = struct.unpack_from(">iiH", data)
+    if magic != GMF_MAGIC or version != GMF_VERSION:
+        raise ValueError("unsupported ground motion field data")
+    offset = 10
+    gmf_id = data[offset:offset + id_len].decode("utf-8")
+    offset += id_len
+    (num_sites,) = struct.unpack_from(">i", data, offset)
+    offset += 4
+    coords = struct.unpack_from(">%dd" % (2 * num_sites), data, offset)
+    offset += 16 * num_sites
+
+    ruptures = {}
+    while offset < len(data):
+        rupture_index, num_values = struct.unpack_from(">ii", data, offset)
+        offset += 8
+        site_indices = struct.unpack_from(">%di" % num_values, data, offset)
+        offset += 4 * num_values
+        values = struct.unpack_from(">%dd" % num_values, data, offset)
+        offset += 8 * num_values
+        ruptures[str(rupture_index)] = dict(
+            (str(site), {'lat': coords[2 * site],
+                         'lon': coords[2 * site + 1],
+                         'mag': value})
+            for site, value in zip(site_indices, values))
+
+    return {gmf_id: ruptures}
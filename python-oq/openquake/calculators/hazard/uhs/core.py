@@ -99,8 +99,11 @@ def compute_uhs(the_job, site):
         config.get('kvs', 'host'),
         int(config.get('kvs', 'port')))
 
-    erf = general.generate_erf(the_job.job_id, cache)
-    gmpe_map = general.generate_gmpe_map(the_job.job_id, cache)
+    try:
+        erf = general.generate_erf(the_job.job_id, cache)
+        gmpe_map = general.generate_gmpe_map(the_job.job_id, cache)
+    finally:
+        cache.close()
     general.set_gmpe_params(gmpe_map, the_job.params)
 
     uhs_calc = java.jclass('UHSCalculator')(periods, poes, imls, erf, gmpe_map,
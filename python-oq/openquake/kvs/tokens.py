@@ -24,6 +24,7 @@ _KVS_KEY_SEPARATOR = '!'
 
 # hazard tokens
 SOURCE_MODEL_TOKEN = 'sources'
+SOURCE_MODEL_DIGEST_TOKEN = 'sources_digest'
 GMPE_TOKEN = 'gmpe'
 ERF_KEY_TOKEN = 'erf'
 MGM_KEY_TOKEN = 'mgm'
@@ -107,6 +108,12 @@ def source_model_key(job_id):
     return _generate_key(job_id, SOURCE_MODEL_TOKEN)
 
 
+def source_model_digest_key(job_id):
+    """ Return the KVS key for the digest of the source model of the given
+    job"""
+    return _generate_key(job_id, SOURCE_MODEL_DIGEST_TOKEN)
+
+
 def gmpe_key(job_id):
     """ Return the KVS key for the GMPE of the given job"""
     return _generate_key(job_id, GMPE_TOKEN)